@@ -33,6 +33,10 @@ import lombok.Value;
 import org.springframework.hateoas.Link;
 import org.springframework.hateoas.Links;
 
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
 import java.util.function.BiFunction;
 import java.util.stream.Stream;
 
@@ -69,5 +73,40 @@ public class Paging {
         return stream.skip(getStartFrom()).limit(getPageSize());
     }
 
+    /**
+     * Sorts and pages the stream while it is consumed, keeping at most <code>startFrom + pageSize</code>
+     * elements in memory. Elements that compare equal keep their order, like with {@link Stream#sorted}.
+     */
+    public <T> Stream<T> apply(Stream<T> stream, Comparator<? super T> comparator) {
+        final long keep = getStartFrom() + getPageSize();
+        if (keep < 0 || keep >= Integer.MAX_VALUE) {
+            return apply(stream.sorted(comparator));
+        }
+
+        final Comparator<Ranked<T>> ranking = Comparator.<Ranked<T>, T>comparing(r -> r.element, comparator)
+            .thenComparingLong(r -> r.rank);
+        final PriorityQueue<Ranked<T>> lastFirst = new PriorityQueue<>(ranking.reversed());
+        final long[] rank = {0};
+        stream.forEachOrdered(element -> {
+            lastFirst.add(new Ranked<>(element, rank[0]++));
+            if (lastFirst.size() > keep) {
+                lastFirst.poll();
+            }
+        });
+
+        final List<Ranked<T>> page = new ArrayList<>(lastFirst);
+        page.sort(ranking);
+        return page.stream().skip(getStartFrom()).map(r -> r.element);
+    }
+
+    private static final class Ranked<T> {
+        final T element;
+        final long rank;
+
+        Ranked(T element, long rank) {
+            this.element = element;
+            this.rank = rank;
+        }
+    }
 
 }
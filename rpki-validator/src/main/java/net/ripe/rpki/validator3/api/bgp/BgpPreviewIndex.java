@@ -0,0 +1,461 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2018 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.rpki.validator3.api.bgp;
+
+import net.ripe.ipresource.Asn;
+import net.ripe.ipresource.IpRange;
+import net.ripe.rpki.validator3.api.SearchTerm;
+import net.ripe.rpki.validator3.api.Sorting;
+import net.ripe.rpki.validator3.api.bgp.BgpPreviewService.BgpPreviewEntry;
+import net.ripe.rpki.validator3.api.bgp.BgpPreviewService.Validity;
+import org.apache.commons.lang3.tuple.Pair;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.IntBinaryOperator;
+import java.util.function.IntUnaryOperator;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Validated BGP preview entries, as row numbers into the packed RIS entries presorted in each of the orders
+ * supported by the API. Entry objects are only created for the entries that are returned.
+ * <p>
+ * The rows sorted by prefix double as an interval index: since prefixes are either nested or disjoint,
+ * the prefixes overlapping a range are the ones starting inside it plus the less specific prefixes of
+ * its start address. Searches therefore take time logarithmic in the number of entries plus linear in
+ * the number of matches, and paging through all entries only touches the entries of the page.
+ */
+final class BgpPreviewIndex {
+
+    private static final Validity[] VALIDITIES = Validity.values();
+
+    static final BgpPreviewIndex EMPTY = of(Collections.emptyList(), (origin, prefix) -> Validity.UNKNOWN);
+
+    @FunctionalInterface
+    interface Validator {
+        Validity validate(long origin, IpRange prefix);
+    }
+
+    enum Order {
+        PREFIX, ASN, VALIDITY;
+
+        static Order of(Sorting.By by) {
+            switch (by) {
+                case ASN:
+                    return ASN;
+                case VALIDITY:
+                    return VALIDITY;
+                default:
+                    return PREFIX;
+            }
+        }
+    }
+
+    // Rows are numbered consecutively over the tables, the rows of a table start at its offset
+    private final PackedBgpRisEntries[] tables;
+    private final int[] offsets;
+    private final byte[] validities;
+
+    private final int[] byPrefix;
+    private final int[] byAsn;
+    private final int[] byValidity;
+
+    private BgpPreviewIndex(PackedBgpRisEntries[] tables, int[] offsets, byte[] validities, int[] byPrefix, int[] byAsn, int[] byValidity) {
+        this.tables = tables;
+        this.offsets = offsets;
+        this.validities = validities;
+        this.byPrefix = byPrefix;
+        this.byAsn = byAsn;
+        this.byValidity = byValidity;
+    }
+
+    static BgpPreviewIndex of(Collection<PackedBgpRisEntries> entries, Validator validator) {
+        final PackedBgpRisEntries[] tables = entries.toArray(new PackedBgpRisEntries[0]);
+        final int[] offsets = new int[tables.length + 1];
+        for (int i = 0; i < tables.length; i++) {
+            offsets[i + 1] = offsets[i] + tables[i].size();
+        }
+        final int size = offsets[tables.length];
+
+        final BgpPreviewIndex unvalidated = new BgpPreviewIndex(tables, offsets, new byte[size], null, null, null);
+        final byte[] validities = new byte[size];
+        IntStream.range(0, size).parallel().forEach(row -> validities[row] = (byte) unvalidated.validate(row, validator).ordinal());
+
+        // The tables are sorted by prefix and origin already, so this mostly merges them. The stable sort
+        // by origin then keeps the rows of an origin ordered by prefix.
+        final int[] byPrefix = IntStream.range(0, size).toArray();
+        IntArrays.sort(byPrefix, unvalidated::comparePrefixAndOrigin);
+        final int[] byAsn = byPrefix.clone();
+        IntArrays.sort(byAsn, unvalidated::compareOrigin);
+
+        return new BgpPreviewIndex(tables, offsets, validities, byPrefix, byAsn, sortedByValidity(byPrefix, validities));
+    }
+
+    int size() {
+        return validities.length;
+    }
+
+    /**
+     * @return the entries matching the search term (all entries when it is null) in the requested order.
+     */
+    Found find(SearchTerm searchTerm, Sorting sorting) {
+        final Order order = Order.of(sorting.getBy());
+        final Selection selection = searchTerm == null
+            ? new Selection(view(order), 0, size(), EnumSet.of(order))
+            : select(searchTerm);
+        return selection.orderedBy(order, sorting.getDirection() == Sorting.Direction.DESC);
+    }
+
+    /**
+     * @return the entries with a prefix contained in the given prefix, ordered by prefix.
+     */
+    List<BgpPreviewEntry> findContainedIn(IpRange prefix) {
+        final List<BgpPreviewEntry> result = new ArrayList<>();
+        for (int i = firstStartingIn(prefix), end = endStartingIn(prefix); i < end; i++) {
+            if (prefixLength(byPrefix[i]) >= prefix.getPrefixLength()) {
+                result.add(entry(byPrefix[i]));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Re-evaluates the validity of the entries contained in any of the changed prefixes. Other entries
+     * keep their validity, as it only depends on the ROA prefixes covering them.
+     *
+     * @return the index with the updated validities and the number of entries that were re-evaluated.
+     */
+    Pair<BgpPreviewIndex, Integer> revalidate(Collection<IpRange> changedPrefixes, Validator validator) {
+        final BitSet affected = new BitSet(size());
+        for (IpRange prefix : changedPrefixes) {
+            for (int i = firstStartingIn(prefix), end = endStartingIn(prefix); i < end; i++) {
+                if (prefixLength(byPrefix[i]) >= prefix.getPrefixLength()) {
+                    affected.set(byPrefix[i]);
+                }
+            }
+        }
+
+        final int[] rows = affected.stream().toArray();
+        final byte[] updated = validities.clone();
+        IntStream.range(0, rows.length).parallel().forEach(i -> updated[rows[i]] = (byte) validate(rows[i], validator).ordinal());
+        if (Arrays.equals(updated, validities)) {
+            return Pair.of(this, rows.length);
+        }
+
+        // Equal prefixes and origins have the same validity, so only the order by validity changes
+        return Pair.of(new BgpPreviewIndex(tables, offsets, updated, byPrefix, byAsn, sortedByValidity(byPrefix, updated)), rows.length);
+    }
+
+    private static int[] sortedByValidity(int[] byPrefix, byte[] validities) {
+        final int[] starts = new int[VALIDITIES.length + 1];
+        for (byte validity : validities) {
+            starts[validity + 1]++;
+        }
+        for (int i = 1; i < starts.length; i++) {
+            starts[i] += starts[i - 1];
+        }
+        final int[] result = new int[byPrefix.length];
+        for (int row : byPrefix) {
+            result[starts[validities[row]]++] = row;
+        }
+        return result;
+    }
+
+    private int[] view(Order order) {
+        switch (order) {
+            case ASN:
+                return byAsn;
+            case VALIDITY:
+                return byValidity;
+            case PREFIX:
+            default:
+                return byPrefix;
+        }
+    }
+
+    private Selection select(SearchTerm searchTerm) {
+        if (searchTerm.asAsn() != null) {
+            final long asn = searchTerm.asAsn();
+            // All entries have the same origin, so ordering by ASN and by prefix is the same
+            return new Selection(byAsn,
+                lowerBound(byAsn, row -> Long.compare(origin(row), asn)),
+                upperBound(byAsn, row -> Long.compare(origin(row), asn)),
+                EnumSet.of(Order.ASN, Order.PREFIX));
+        }
+        if (searchTerm.asIpRange() != null) {
+            final int[] rows = overlapping(searchTerm.asIpRange());
+            return new Selection(rows, 0, rows.length, EnumSet.of(Order.PREFIX));
+        }
+        switch (searchTerm.asString().trim().toUpperCase()) {
+            case "VALID":
+                return withValidity(Validity.VALID, Validity.VALID);
+            case "INVALID":
+                return withValidity(Validity.INVALID_ASN, Validity.INVALID_LENGTH);
+            case "ASN":
+            case "INVALID ASN":
+                return withValidity(Validity.INVALID_ASN, Validity.INVALID_ASN);
+            case "LENGTH":
+            case "INVALID LENGTH":
+                return withValidity(Validity.INVALID_LENGTH, Validity.INVALID_LENGTH);
+            case "UNKNOWN":
+                return withValidity(Validity.UNKNOWN, Validity.UNKNOWN);
+            default:
+                return new Selection(new int[0], 0, 0, EnumSet.allOf(Order.class));
+        }
+    }
+
+    private Selection withValidity(Validity first, Validity last) {
+        // When all entries have the same validity, ordering by validity and by prefix is the same
+        return new Selection(byValidity,
+            lowerBound(byValidity, row -> validity(row).compareTo(first)),
+            upperBound(byValidity, row -> validity(row).compareTo(last)),
+            first == last ? EnumSet.of(Order.VALIDITY, Order.PREFIX) : EnumSet.of(Order.VALIDITY));
+    }
+
+    /**
+     * @return the rows with a prefix overlapping the range, ordered by prefix.
+     */
+    private int[] overlapping(IpRange range) {
+        final boolean ipv4 = isIpv4(range);
+        final int bits = range.getType().getBitSize();
+        final BigInteger start = range.getStart().getValue();
+
+        final IntStream.Builder result = IntStream.builder();
+        for (int length = 0; length < bits; length++) {
+            final BigInteger lessSpecific = start.shiftRight(bits - length).shiftLeft(bits - length);
+            if (lessSpecific.compareTo(start) < 0) {
+                final long high = high(ipv4, lessSpecific);
+                final long low = low(ipv4, lessSpecific);
+                final int prefixLength = length;
+                for (int i = lowerBound(byPrefix, row -> comparePrefix(row, ipv4, high, low, prefixLength)),
+                     end = upperBound(byPrefix, row -> comparePrefix(row, ipv4, high, low, prefixLength)); i < end; i++) {
+                    result.add(byPrefix[i]);
+                }
+            }
+        }
+        for (int i = firstStartingIn(range), end = endStartingIn(range); i < end; i++) {
+            result.add(byPrefix[i]);
+        }
+        return result.build().toArray();
+    }
+
+    private int firstStartingIn(IpRange range) {
+        final boolean ipv4 = isIpv4(range);
+        final BigInteger start = range.getStart().getValue();
+        return lowerBound(byPrefix, row -> comparePrefix(row, ipv4, high(ipv4, start), low(ipv4, start), 0));
+    }
+
+    private int endStartingIn(IpRange range) {
+        final boolean ipv4 = isIpv4(range);
+        final BigInteger end = range.getEnd().getValue();
+        return upperBound(byPrefix, row -> comparePrefix(row, ipv4, high(ipv4, end), low(ipv4, end), Integer.MAX_VALUE));
+    }
+
+    private static boolean isIpv4(IpRange range) {
+        switch (range.getType()) {
+            case IPv4:
+                return true;
+            case IPv6:
+                return false;
+            default:
+                throw new IllegalArgumentException("invalid IP prefix type: " + range.getType());
+        }
+    }
+
+    private static long high(boolean ipv4, BigInteger address) {
+        return ipv4 ? address.longValue() : address.shiftRight(64).longValue();
+    }
+
+    private static long low(boolean ipv4, BigInteger address) {
+        return ipv4 ? 0 : address.longValue();
+    }
+
+    private int table(int row) {
+        int table = 0;
+        while (row >= offsets[table + 1]) {
+            table++;
+        }
+        return table;
+    }
+
+    private long origin(int row) {
+        final int table = table(row);
+        return tables[table].getOrigin(row - offsets[table]);
+    }
+
+    private int prefixLength(int row) {
+        final int table = table(row);
+        return tables[table].getPrefixLength(row - offsets[table]);
+    }
+
+    private Validity validity(int row) {
+        return VALIDITIES[validities[row]];
+    }
+
+    private Validity validate(int row, Validator validator) {
+        final int table = table(row);
+        return validator.validate(tables[table].getOrigin(row - offsets[table]), tables[table].getPrefix(row - offsets[table]));
+    }
+
+    private BgpPreviewEntry entry(int row) {
+        final int table = table(row);
+        return BgpPreviewEntry.of(new Asn(tables[table].getOrigin(row - offsets[table])), tables[table].getPrefix(row - offsets[table]), validity(row));
+    }
+
+    private int comparePrefix(int row, boolean ipv4, long addressHigh, long addressLow, int prefixLength) {
+        final int table = table(row);
+        return tables[table].comparePrefix(row - offsets[table], ipv4, addressHigh, addressLow, prefixLength);
+    }
+
+    private int comparePrefix(int row, int other) {
+        final int table = table(row);
+        final int otherTable = table(other);
+        return tables[table].comparePrefix(row - offsets[table], tables[otherTable], other - offsets[otherTable]);
+    }
+
+    private int compareOrigin(int row, int other) {
+        final int table = table(row);
+        final int otherTable = table(other);
+        return tables[table].compareOrigin(row - offsets[table], tables[otherTable], other - offsets[otherTable]);
+    }
+
+    private int comparePrefixAndOrigin(int row, int other) {
+        final int c = comparePrefix(row, other);
+        return c != 0 ? c : compareOrigin(row, other);
+    }
+
+    private IntBinaryOperator comparator(Order order) {
+        switch (order) {
+            case ASN:
+                return (a, b) -> {
+                    final int c = compareOrigin(a, b);
+                    return c != 0 ? c : comparePrefix(a, b);
+                };
+            case VALIDITY:
+                return (a, b) -> {
+                    final int c = Byte.compare(validities[a], validities[b]);
+                    return c != 0 ? c : comparePrefixAndOrigin(a, b);
+                };
+            case PREFIX:
+            default:
+                return this::comparePrefixAndOrigin;
+        }
+    }
+
+    private static int lowerBound(int[] rows, IntUnaryOperator compareToKey) {
+        int low = 0;
+        int high = rows.length;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (compareToKey.applyAsInt(rows[mid]) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static int upperBound(int[] rows, IntUnaryOperator compareToKey) {
+        int low = 0;
+        int high = rows.length;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (compareToKey.applyAsInt(rows[mid]) <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Matching rows together with the orders they are already sorted in, so only matches that are
+     * requested in a different order need to be sorted.
+     */
+    private final class Selection {
+        private final int[] rows;
+        private final int from;
+        private final int to;
+        private final Set<Order> sortedBy;
+
+        Selection(int[] rows, int from, int to, Set<Order> sortedBy) {
+            this.rows = rows;
+            this.from = from;
+            this.to = to;
+            this.sortedBy = sortedBy;
+        }
+
+        Found orderedBy(Order order, boolean descending) {
+            if (sortedBy.contains(order)) {
+                return new Found(rows, from, to, descending);
+            }
+            final int[] sorted = Arrays.copyOfRange(rows, from, to);
+            IntArrays.sort(sorted, comparator(order));
+            return new Found(sorted, 0, sorted.length, descending);
+        }
+    }
+
+    /**
+     * Sorted matches of a search. Holds on to the index, so it can be read after the index was replaced.
+     */
+    final class Found {
+        private final int[] rows;
+        private final int from;
+        private final int to;
+        private final boolean descending;
+
+        private Found(int[] rows, int from, int to, boolean descending) {
+            this.rows = rows;
+            this.from = from;
+            this.to = to;
+            this.descending = descending;
+        }
+
+        int size() {
+            return to - from;
+        }
+
+        Stream<BgpPreviewEntry> page(long startFrom, long pageSize) {
+            final int first = (int) Math.min(startFrom, size());
+            final int last = (int) Math.min(first + Math.min(pageSize, Integer.MAX_VALUE), size());
+            return IntStream.range(first, last).mapToObj(i -> entry(descending ? rows[to - 1 - i] : rows[from + i]));
+        }
+    }
+}
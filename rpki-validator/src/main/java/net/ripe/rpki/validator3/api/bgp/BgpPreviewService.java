@@ -30,6 +30,10 @@
 package net.ripe.rpki.validator3.api.bgp;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Sets;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import io.swagger.annotations.ApiModelProperty;
 import lombok.extern.slf4j.Slf4j;
 import net.ripe.ipresource.Asn;
@@ -55,13 +59,13 @@ import net.ripe.rpki.validator3.util.Locks;
 import net.ripe.rpki.validator3.util.Time;
 import org.apache.commons.lang.Validate;
 import org.apache.commons.lang3.tuple.Pair;
+import org.apache.commons.lang3.tuple.Triple;
 import org.joda.time.DateTime;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.math.BigInteger;
-import java.util.AbstractCollection;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -71,14 +75,13 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.TreeMap;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
-import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
-import static java.util.Comparator.comparing;
 import static java.util.Comparator.comparingInt;
 import static net.ripe.rpki.validator3.api.ModelPropertyDescriptions.*;
 
@@ -90,6 +93,9 @@ public class BgpPreviewService {
 
     private final BgpRisDownloader bgpRisDownloader;
 
+    private final MeterRegistry meterRegistry;
+    private final DistributionSummary revalidatedEntries;
+
     // Lock held while downloading RIS dumps to avoid running multiple downloads simultaneously.
     // When you need both this lock and the dataLock this lock must be acquired first!
     private final ReentrantLock downloadLock = new ReentrantLock();
@@ -105,7 +111,9 @@ public class BgpPreviewService {
     private ImmutableList<ValidatedRoaPrefix> validatedRoaPrefixes = ImmutableList.of();
     private ImmutableList<RoaPrefixAssertion> roaPrefixAssertions = ImmutableList.of();
     private ImmutableList<IgnoreFilter> ignoreFilters = ImmutableList.of();
-    private Map<String, ImmutableList<BgpPreviewEntry>> bgpPreviewEntries = new TreeMap<>();
+    // The entries of each RIS dump as retrieved, the index holds their validity
+    private Map<String, PackedBgpRisEntries> bgpRisEntries = new TreeMap<>();
+    private BgpPreviewIndex bgpPreviewIndex = BgpPreviewIndex.EMPTY;
 
     public enum Validity {
         UNKNOWN, VALID, INVALID_ASN, INVALID_LENGTH
@@ -178,58 +186,6 @@ public class BgpPreviewService {
             }
         }
 
-        private static Predicate<BgpPreviewEntry> matches(SearchTerm searchTerm) {
-            if (searchTerm == null) {
-                return x -> true;
-            }
-            if (searchTerm.asAsn() != null) {
-                Long asn = searchTerm.asAsn();
-                return x -> asn == Integer.toUnsignedLong(x.origin);
-            }
-            if (searchTerm.asIpRange() != null) {
-                IpRange range = searchTerm.asIpRange();
-                return x -> range.overlaps(x.getPrefix());
-            }
-            switch (searchTerm.asString().trim().toUpperCase()) {
-                case "VALID":
-                    return (x) -> x.getValidity() == Validity.VALID;
-                case "INVALID":
-                    return (x) -> x.getValidity() == Validity.INVALID_ASN || x.getValidity() == Validity.INVALID_LENGTH;
-                case "ASN":
-                case "INVALID ASN":
-                    return (x) -> x.getValidity() == Validity.INVALID_ASN;
-                case "LENGTH":
-                case "INVALID LENGTH":
-                    return (x) -> x.getValidity() == Validity.INVALID_LENGTH;
-                case "UNKNOWN":
-                    return (x) -> x.getValidity() == Validity.UNKNOWN;
-                default:
-                    return (x) -> false;
-            }
-        }
-
-        private static Comparator<? super BgpPreviewEntry> comparator(Sorting sorting) {
-            Comparator<BgpPreviewEntry> columns;
-            switch (sorting.getBy()) {
-                case ASN:
-                    columns = comparing(BgpPreviewEntry::getOrigin)
-                            .thenComparing(BgpPreviewEntry::getPrefix)
-                            .thenComparing(BgpPreviewEntry::getValidity);
-                    break;
-                case VALIDITY:
-                    columns = comparing(BgpPreviewEntry::getValidity)
-                            .thenComparing(BgpPreviewEntry::getPrefix)
-                            .thenComparing(BgpPreviewEntry::getOrigin);
-                    break;
-                case TA:
-                default:
-                    columns = comparing(BgpPreviewEntry::getPrefix)
-                            .thenComparing(BgpPreviewEntry::getOrigin)
-                            .thenComparing(BgpPreviewEntry::getValidity);
-            }
-            return sorting.getDirection() == Sorting.Direction.DESC ? columns.reversed() : columns;
-        }
-
         public abstract IpRange getPrefix();
         abstract BgpPreviewEntry ofValidity(Validity validity);
 
@@ -261,6 +217,9 @@ public class BgpPreviewService {
         }
 
         BgpPreviewEntry ofValidity(Validity validity) {
+            if (validity == this.validity) {
+                return this;
+            }
             return new BgpPreviewEntry4(origin, validity, prefixLength, prefix);
         }
 
@@ -313,6 +272,9 @@ public class BgpPreviewService {
 
         BgpPreviewEntry ofValidity(Validity validity) {
             Validate.notNull(validity, "validity must not be null");
+            if (validity == this.validity) {
+                return this;
+            }
             return new BgpPreviewEntry6(origin, validity, prefixLength, prefixHi, prefixLo);
         }
     }
@@ -324,10 +286,16 @@ public class BgpPreviewService {
             BgpRisDownloader bgpRisDownloader,
             ValidatedRpkiObjects validatedRpkiObjects,
             IgnoreFilterService ignoreFilterService,
-            RoaPrefixAssertionsService roaPrefixAssertionsService
+            RoaPrefixAssertionsService roaPrefixAssertionsService,
+            MeterRegistry meterRegistry
     ) {
         this.bgpRisVisibilityThreshold = bgpRisVisibilityThreshold;
         this.bgpRisDownloader = bgpRisDownloader;
+        this.meterRegistry = meterRegistry;
+        this.revalidatedEntries = DistributionSummary.builder("rpkivalidator.bgp.preview.revalidated.entries")
+            .description("Number of BGP preview entries re-evaluated after a change of the ROA prefixes")
+            .baseUnit("entries")
+            .register(meterRegistry);
         this.bgpRisDumps = Arrays.stream(bgpRisDumpUrls).map(url ->
                 BgpRisDump.of(url, null, Optional.empty()))
                 .collect(Collectors.toList());
@@ -340,19 +308,10 @@ public class BgpPreviewService {
     public void downloadRisPreview() {
         Locks.locked(downloadLock, () -> {
             log.info("Updating BGP RIS dumps");
-            final List<BgpRisDump<BgpPreviewEntry>> updated = Locks.locked(dataLock.readLock(), () -> bgpRisDumps)
+            final List<BgpRisDump> updated = Locks.locked(dataLock.readLock(), () -> bgpRisDumps)
                     .stream()
-                    .map(dump -> bgpRisDownloader.fetch(dump, entry -> {
-                        if (entry.getVisibility() >= bgpRisVisibilityThreshold && makesSenseToShowInPreview(entry)) {
-                            return Stream.of(BgpPreviewEntry.of(
-                                    entry.getOrigin(),
-                                    entry.getPrefix(),
-                                    Validity.UNKNOWN
-                            ));
-                        } else {
-                            return Stream.empty();
-                        }
-                    }))
+                    .map(dump -> bgpRisDownloader.fetch(dump, (origin, prefixLength, visibility) ->
+                        visibility >= bgpRisVisibilityThreshold && makesSenseToShowInPreview(prefixLength)))
                     .collect(Collectors.toList());
             updateBgpRisDump(updated);
             log.info("Finished updating BGP RIS dumps");
@@ -368,29 +327,10 @@ public class BgpPreviewService {
         }
         final Sorting finalSorting = sorting;
         final Paging finalPaging = paging;
-        final Predicate<BgpPreviewEntry> searchPredicate = BgpPreviewEntry.matches(searchTerm);
-
-        return Locks.locked(dataLock.readLock(), () -> {
-            final int count;
-            if (searchTerm == null) {
-                count = bgpPreviewEntries.values().stream().map(AbstractCollection::size).reduce(0, Integer::sum);
-            } else {
-                count = (int) bgpPreviewEntries
-                    .values()
-                    .stream()
-                    .flatMap(Collection::stream)
-                    .filter(searchPredicate)
-                    .count();
-            }
 
-            Stream<BgpPreviewEntry> entries = bgpPreviewEntries
-                .values()
-                .stream()
-                .flatMap(Collection::stream)
-                .filter(searchPredicate)
-                .sorted(BgpPreviewEntry.comparator(finalSorting))
-                .skip(finalPaging.getStartFrom())
-                .limit(finalPaging.getPageSize());
+        return queryTimer(searchTerm).record(() -> Locks.locked(dataLock.readLock(), () -> {
+            // The index is immutable, so the page can be read after the lock is released
+            final BgpPreviewIndex.Found found = bgpPreviewIndex.find(searchTerm, finalSorting);
 
             DateTime lastModified = bgpRisDumps.stream()
                 .map(BgpRisDump::getLastModified)
@@ -398,51 +338,71 @@ public class BgpPreviewService {
                 .max(Comparator.naturalOrder())
                 .orElse(DateTime.now());
 
-            return BgpPreviewResult.of(count, lastModified.getMillis(), entries);
-        });
+            return BgpPreviewResult.of(found.size(), lastModified.getMillis(), found.page(finalPaging.getStartFrom(), finalPaging.getPageSize()));
+        }));
     }
 
     public List<BgpPreviewEntry> findAffected(IpRange prefix, Integer maximumLength) {
-        return Locks.locked(dataLock.readLock(), () -> bgpPreviewEntries
-            .values()
-            .parallelStream()
-            .flatMap(Collection::stream)
-            .filter(entry -> prefix.contains(entry.getPrefix()))
-            .collect(Collectors.toList()));
+        return queryTimer("affected").record(() -> Locks.locked(dataLock.readLock(), () -> bgpPreviewIndex.findContainedIn(prefix)));
+    }
+
+    private Timer queryTimer(SearchTerm searchTerm) {
+        if (searchTerm == null) {
+            return queryTimer("all");
+        } else if (searchTerm.asAsn() != null) {
+            return queryTimer("asn");
+        } else if (searchTerm.asIpRange() != null) {
+            return queryTimer("prefix");
+        } else {
+            return queryTimer("validity");
+        }
     }
 
-    public void updateBgpRisDump(Collection<BgpRisDump<BgpPreviewEntry>> updated) {
+    private Timer queryTimer(String query) {
+        return Timer.builder("rpkivalidator.bgp.preview.query.duration")
+            .description("Time to search the BGP preview")
+            .tag("query", query)
+            .publishPercentiles(0.5, 0.95, 0.99)
+            .register(meterRegistry);
+    }
+
+    public void updateBgpRisDump(Collection<BgpRisDump> updated) {
+        final Map<String, PackedBgpRisEntries> packed = new HashMap<>();
+        for (BgpRisDump dump : updated) {
+            dump.getEntries().ifPresent(entries -> packed.put(dump.getUrl(), entries));
+        }
+
         Locks.locked(dataLock.writeLock(), () -> {
-            final Map<String, ImmutableList<BgpPreviewEntry>> updatedDumps = new HashMap<>(this.bgpPreviewEntries);
-            for (BgpRisDump<BgpPreviewEntry> dump : updated) {
-                dump.getEntries().ifPresent(entries -> updatedDumps.put(dump.getUrl(), entries));
-            }
+            final Map<String, PackedBgpRisEntries> updatedDumps = new TreeMap<>(this.bgpRisEntries);
+            updatedDumps.putAll(packed);
 
-            this.bgpPreviewEntries = validateBgpRisEntries(updatedDumps, this.roaPrefixes);
+            this.bgpRisEntries = updatedDumps;
+            this.bgpPreviewIndex = validateBgpRisEntries(updatedDumps.values(), this.roaPrefixes);
             this.bgpRisDumps = updated.stream().map(x -> BgpRisDump.of(x.getUrl(), x.getLastModified(), Optional.empty())).collect(Collectors.toList());
         });
     }
 
-    private static boolean makesSenseToShowInPreview(BgpRisEntry entry) {
-        return !DEFAULT_IPV4_ROUTE.equals(entry.getPrefix()) &&
-            !DEFAULT_IPV6_ROUTE.equals(entry.getPrefix());
+    /**
+     * The parser only accepts prefixes without bits set beyond their length, so the default routes are
+     * the only prefixes of length zero.
+     */
+    private static boolean makesSenseToShowInPreview(int prefixLength) {
+        return prefixLength > 0;
     }
 
     void updateValidatedRoaPrefixes(Stream<ValidatedRoaPrefix> prefixes) {
         Locks.locked(dataLock.writeLock(), () -> {
             this.validatedRoaPrefixes = ImmutableList.copyOf(prefixes.iterator());
-            this.roaPrefixes = recalculateRoaPrefixes(this.validatedRoaPrefixes, this.ignoreFilters, this.roaPrefixAssertions);
             this.filteredRoaPrefixes = recalculateFilteredRoaPrefixes(this.validatedRoaPrefixes, this.ignoreFilters);
-            this.bgpPreviewEntries = validateBgpRisEntries(this.bgpPreviewEntries, this.roaPrefixes);
+            revalidateBgpRisEntries(recalculateRoaPrefixes(this.validatedRoaPrefixes, this.ignoreFilters, this.roaPrefixAssertions));
         });
     }
 
     private void updateIgnoreFilters(Collection<IgnoreFilter> filters) {
         Locks.locked(dataLock.writeLock(), () -> {
             this.ignoreFilters = ImmutableList.copyOf(filters);
-            this.roaPrefixes = recalculateRoaPrefixes(this.validatedRoaPrefixes, this.ignoreFilters, this.roaPrefixAssertions);
             this.filteredRoaPrefixes = recalculateFilteredRoaPrefixes(this.validatedRoaPrefixes, this.ignoreFilters);
-            this.bgpPreviewEntries = validateBgpRisEntries(this.bgpPreviewEntries, this.roaPrefixes);
+            revalidateBgpRisEntries(recalculateRoaPrefixes(this.validatedRoaPrefixes, this.ignoreFilters, this.roaPrefixAssertions));
         });
     }
 
@@ -453,8 +413,7 @@ public class BgpPreviewService {
                     .map(p -> RoaPrefixAssertion.of(p.getAsn(), p.getPrefix(), p.getMaxPrefixLength(), p.getId(), p.getComment()))
                     .iterator()
             );
-            this.roaPrefixes = recalculateRoaPrefixes(this.validatedRoaPrefixes, this.ignoreFilters, this.roaPrefixAssertions);
-            this.bgpPreviewEntries = validateBgpRisEntries(this.bgpPreviewEntries, this.roaPrefixes);
+            revalidateBgpRisEntries(recalculateRoaPrefixes(this.validatedRoaPrefixes, this.ignoreFilters, this.roaPrefixAssertions));
         });
     }
 
@@ -501,31 +460,61 @@ public class BgpPreviewService {
         return roaPrefixes;
     }
 
-    private <T> Map<T, ImmutableList<BgpPreviewEntry>> validateBgpRisEntries(Map<T, ImmutableList<BgpPreviewEntry>> bgpRisEntries, IntervalMap<IpRange, List<RoaPrefixDefinition>> roaPrefixes) {
-        return bgpRisEntries.entrySet().stream().collect(
-                Collectors.toMap(
-                        Map.Entry::getKey,
-                        entry -> validateBgpRisEntries(entry.getValue(), roaPrefixes))
+    /**
+     * Only the validity of the entries contained in a ROA prefix that was added, removed or changed can be
+     * affected, so only these entries are re-evaluated.
+     */
+    private void revalidateBgpRisEntries(IntervalMap<IpRange, List<RoaPrefixDefinition>> updatedRoaPrefixes) {
+        final Set<IpRange> changedPrefixes = changedPrefixes(this.roaPrefixes, updatedRoaPrefixes);
+        this.roaPrefixes = updatedRoaPrefixes;
+
+        final Pair<Pair<BgpPreviewIndex, Integer>, Long> timed = Time.timed(() -> this.bgpPreviewIndex.revalidate(
+            changedPrefixes,
+            (origin, prefix) -> validateBgpRisEntry(updatedRoaPrefixes, origin, prefix)
+        ));
+        final int revalidated = timed.getLeft().getRight();
+        this.bgpPreviewIndex = timed.getLeft().getLeft();
+        this.revalidatedEntries.record(revalidated);
+        log.info(
+            "Re-evaluated {} of {} BGP preview entries for {} changed ROA prefixes in {} ms",
+            revalidated,
+            this.bgpPreviewIndex.size(),
+            changedPrefixes.size(),
+            timed.getRight()
         );
     }
 
-    private ImmutableList<BgpPreviewEntry> validateBgpRisEntries(
-            ImmutableList<BgpPreviewEntry> bgpRisEntries,
+    private static Set<IpRange> changedPrefixes(
+            IntervalMap<IpRange, List<RoaPrefixDefinition>> roaPrefixes,
+            IntervalMap<IpRange, List<RoaPrefixDefinition>> updatedRoaPrefixes
+    ) {
+        // Validity only depends on the ASN, prefix and effective length of a ROA prefix
+        final Set<Triple<IpRange, Long, Integer>> before = roaPrefixDefinitions(roaPrefixes);
+        final Set<Triple<IpRange, Long, Integer>> after = roaPrefixDefinitions(updatedRoaPrefixes);
+        return Sets.symmetricDifference(before, after).stream().map(Triple::getLeft).collect(Collectors.toSet());
+    }
+
+    private static Set<Triple<IpRange, Long, Integer>> roaPrefixDefinitions(IntervalMap<IpRange, List<RoaPrefixDefinition>> roaPrefixes) {
+        return Stream.of(DEFAULT_IPV4_ROUTE, DEFAULT_IPV6_ROUTE)
+            .flatMap(route -> roaPrefixes.findExactAndAllMoreSpecific(route).stream())
+            .flatMap(Collection::stream)
+            .map(p -> Triple.of(p.getPrefix(), p.getAsn(), p.getEffectiveLength()))
+            .collect(Collectors.toSet());
+    }
+
+    private BgpPreviewIndex validateBgpRisEntries(
+            Collection<PackedBgpRisEntries> bgpRisEntries,
             IntervalMap<IpRange, List<RoaPrefixDefinition>> roaPrefixes
     ) {
-        final Pair<ImmutableList<BgpPreviewEntry>, Long> timed = Time.timed(() -> {
-            final ImmutableList.Builder<BgpPreviewEntry> builder = ImmutableList.builder();
-            bgpRisEntries.parallelStream()
-                    .map(bgpRisEntry -> bgpRisEntry.ofValidity(validateBgpRisEntry(roaPrefixes, bgpRisEntry)))
-                    .forEachOrdered(builder::add);
-            return builder.build();
-        });
+        final Pair<BgpPreviewIndex, Long> timed = Time.timed(() -> BgpPreviewIndex.of(
+                bgpRisEntries,
+                (origin, prefix) -> validateBgpRisEntry(roaPrefixes, origin, prefix)
+        ));
 
-        // FIXME This logging is strange
         log.debug(
                 "validateBgpRisEntries duration: {} ms ({} RIS entries, {} validated ROA prefixes, {} ignore filters, {} ROA prefix assertions)",
                 timed.getRight(),
-                bgpRisEntries.size(),
+                timed.getLeft().size(),
                 validatedRoaPrefixes.size(),
                 ignoreFilters.size(),
                 roaPrefixAssertions.size()
@@ -535,13 +524,14 @@ public class BgpPreviewService {
 
     private static Validity validateBgpRisEntry(
             IntervalMap<IpRange, List<RoaPrefixDefinition>> roaPrefixes,
-            BgpPreviewEntry bgpRisEntry
+            long origin,
+            IpRange prefix
     ) {
         Validity validity = Validity.UNKNOWN;
-        final int bgpPrefixLength = bgpRisEntry.getPrefix().getPrefixLength();
-        for (List<RoaPrefixDefinition> rs : roaPrefixes.findExactAndAllLessSpecific(bgpRisEntry.getPrefix())) {
+        final int bgpPrefixLength = prefix.getPrefixLength();
+        for (List<RoaPrefixDefinition> rs : roaPrefixes.findExactAndAllLessSpecific(prefix)) {
             for (RoaPrefixDefinition r : rs) {
-                if (r.getAsn() == Integer.toUnsignedLong(bgpRisEntry.origin)) {
+                if (r.getAsn() == origin) {
                     if (r.getEffectiveLength() < bgpPrefixLength) {
                         validity = Validity.INVALID_LENGTH;
                     } else {
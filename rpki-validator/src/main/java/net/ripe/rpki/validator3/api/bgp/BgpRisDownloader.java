@@ -29,30 +29,26 @@
  */
 package net.ripe.rpki.validator3.api.bgp;
 
-import com.google.common.collect.ImmutableList;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
-import net.ripe.ipresource.Asn;
-import net.ripe.ipresource.IpRange;
 import net.ripe.rpki.validator3.domain.metrics.HttpClientMetricsService;
 import net.ripe.rpki.validator3.util.HttpStreaming;
+import net.ripe.rpki.validator3.util.InstrumentedExecutors;
 import org.eclipse.jetty.client.HttpClient;
 import org.eclipse.jetty.client.api.Request;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import javax.validation.constraints.NotNull;
-import java.io.BufferedReader;
+import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.util.*;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
 import java.util.function.BiFunction;
-import java.util.function.Function;
 import java.util.function.Supplier;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import java.util.stream.Stream;
 import java.util.zip.GZIPInputStream;
 
 @Component
@@ -60,17 +56,29 @@ import java.util.zip.GZIPInputStream;
 public class BgpRisDownloader {
     private final HttpClientMetricsService httpMetrics;
 
+    private static final int GZIP_BUFFER_SIZE = 64 * 1024;
+
     private HttpClient httpClient;
 
+    private final int parseThreads;
+    private final ExecutorService parseExecutor;
+
     @Autowired
-    public BgpRisDownloader(HttpClientMetricsService httpMetrics, HttpClient httpClient) {
+    public BgpRisDownloader(HttpClientMetricsService httpMetrics, HttpClient httpClient,
+                            @Value("${rpki.validator.bgp.ris.parse.threads:1}") int parseThreads,
+                            MeterRegistry registry) {
         this.httpMetrics = httpMetrics;
         this.httpClient = httpClient;
+        this.parseThreads = parseThreads;
+        this.parseExecutor = parseThreads > 1 ? InstrumentedExecutors.newFixedThreadPool("bgp-ris-parse", parseThreads, registry) : null;
 
         assert httpClient.isStarted();
     }
 
-    public <T> BgpRisDump<T> fetch(@NotNull BgpRisDump dump, Function<BgpRisEntry, Stream<T>> mapper) {
+    /**
+     * @param filter the announcements to keep, the others are dropped while parsing.
+     */
+    public BgpRisDump fetch(@NotNull BgpRisDump dump, BgpRisDumpParser.Filter filter) {
         log.info("attempting to download new BGP RIS preview dump from {}", dump.url);
         long before = System.currentTimeMillis();
         String statusDescription = "200";
@@ -85,12 +93,8 @@ public class BgpRisDownloader {
         };
         final BiFunction<InputStream, Long, BgpRisDump> streamReader = (stream, lastModified) -> {
             try {
-                Stream<BgpRisEntry> entries = parse(new GZIPInputStream(stream));
-                // Collect the stream to a list here to avoid closing the HTTP stream before
-                // all entries have been parsed.
-                ImmutableList.Builder<T> builder = ImmutableList.builder();
-                entries.flatMap(mapper).forEach(builder::add);
-                return BgpRisDump.of(dump.url, new DateTime(lastModified), Optional.of(builder.build()));
+                final PackedBgpRisEntries entries = parse(new GZIPInputStream(stream, GZIP_BUFFER_SIZE), filter);
+                return BgpRisDump.of(dump.url, new DateTime(lastModified), Optional.of(entries));
             } catch (Exception e) {
                 log.error("Error downloading RIS dump: " + dump.url);
                 return dump;
@@ -110,30 +114,10 @@ public class BgpRisDownloader {
         }
     }
 
-    public static Stream<BgpRisEntry> parse(final InputStream is) {
-        return new BufferedReader(new InputStreamReader(is)).lines()
-                .map(s -> {
-                    try {
-                        return parseLine(s);
-                    } catch (Exception e) {
-                        log.error("Unparseable line: " + s);
-                        return null;
-                    }
-                })
-                .filter(Objects::nonNull);
-    }
-
-    private static Pattern regexp = Pattern.compile("^\\s*([0-9]+)\\s+([0-9a-fA-F.:/]+)\\s+([0-9]+)\\s*$");
-
-    private static BgpRisEntry parseLine(final String line) {
-        final Matcher matcher = regexp.matcher(line);
-        if (matcher.matches()) {
-            final Asn asn = Asn.parse(matcher.group(1));
-            final IpRange prefix = IpRange.parse(matcher.group(2));
-            final int visibility = Integer.parseInt(matcher.group(3));
-            return BgpRisEntry.of(asn, prefix, visibility);
-        }
-        return null;
+    PackedBgpRisEntries parse(InputStream in, BgpRisDumpParser.Filter filter) throws IOException {
+        return parseExecutor == null
+            ? BgpRisDumpParser.parse(in, filter)
+            : BgpRisDumpParser.parse(in, filter, parseExecutor, parseThreads);
     }
 
     private String formatAsRFC2616(DateTime d) {
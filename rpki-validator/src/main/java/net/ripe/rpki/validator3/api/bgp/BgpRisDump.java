@@ -29,15 +29,14 @@
  */
 package net.ripe.rpki.validator3.api.bgp;
 
-import com.google.common.collect.ImmutableList;
 import lombok.Data;
 import org.joda.time.DateTime;
 
 import java.util.Optional;
 
 @Data(staticConstructor = "of")
-public class BgpRisDump<T> {
+public class BgpRisDump {
     final String url;
     final DateTime lastModified;
-    final Optional<ImmutableList<T>> entries;
+    final Optional<PackedBgpRisEntries> entries;
 }
@@ -0,0 +1,381 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2018 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.rpki.validator3.api.bgp;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Parses RIS dump files, lines of "&lt;origin ASN&gt; &lt;prefix&gt; &lt;visibility&gt;", byte by byte
+ * straight into {@link PackedBgpRisEntries}, without creating strings or objects per line.
+ * <p>
+ * Lines that are not an announcement, like the comments at the start of a dump, are skipped. The
+ * decoding of large dumps can be spread over an executor, in chunks that end at a line boundary.
+ */
+@Slf4j
+final class BgpRisDumpParser {
+
+    @FunctionalInterface
+    interface Filter {
+        boolean accept(long origin, int prefixLength, int visibility);
+    }
+
+    static final Filter ALL = (origin, prefixLength, visibility) -> true;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int CHUNK_SIZE = 1024 * 1024;
+    private static final long MAX_ASN = 0xFFFFFFFFL;
+
+    private final Filter filter;
+    private final PackedBgpRisEntries.Builder builder = PackedBgpRisEntries.builder();
+    // The groups of the IPv6 address being parsed
+    private final int[] groups = new int[8];
+    private int position;
+    private long addressHigh;
+    private long addressLow;
+    private int skipped;
+
+    private BgpRisDumpParser(Filter filter) {
+        this.filter = filter;
+    }
+
+    static PackedBgpRisEntries parse(InputStream in, Filter filter) throws IOException {
+        final BgpRisDumpParser parser = new BgpRisDumpParser(filter);
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int start = 0;
+        int end = 0;
+        int read;
+        while ((read = in.read(buffer, end, buffer.length - end)) >= 0) {
+            end += read;
+            final int lineEnd = afterLastNewline(buffer, start, end);
+            parser.parseLines(buffer, start, lineEnd);
+            start = Math.max(start, lineEnd);
+            if (end == buffer.length) {
+                if (start == 0) {
+                    buffer = Arrays.copyOf(buffer, 2 * buffer.length);
+                } else {
+                    System.arraycopy(buffer, start, buffer, 0, end - start);
+                    end -= start;
+                    start = 0;
+                }
+            }
+        }
+        parser.parseLines(buffer, start, end);
+        return parser.finish();
+    }
+
+    /**
+     * Reads the stream on the calling thread, and parses chunks of it on the executor.
+     */
+    static PackedBgpRisEntries parse(InputStream in, Filter filter, ExecutorService executor, int parallelism) throws IOException {
+        final Deque<Future<BgpRisDumpParser>> pending = new ArrayDeque<>();
+        final PackedBgpRisEntries.Builder result = PackedBgpRisEntries.builder();
+        int skipped = 0;
+        try {
+            byte[] chunk = new byte[CHUNK_SIZE];
+            int end = 0;
+            int read;
+            while ((read = in.read(chunk, end, chunk.length - end)) >= 0) {
+                end += read;
+                if (end < chunk.length) {
+                    continue;
+                }
+                final int lineEnd = afterLastNewline(chunk, 0, end);
+                if (lineEnd < 0) {
+                    chunk = Arrays.copyOf(chunk, 2 * chunk.length);
+                    continue;
+                }
+                final byte[] next = new byte[CHUNK_SIZE];
+                System.arraycopy(chunk, lineEnd, next, 0, end - lineEnd);
+                pending.add(submit(executor, filter, chunk, lineEnd));
+                chunk = next;
+                end -= lineEnd;
+
+                // Keep the decompressed data in memory bounded when parsing falls behind
+                while (pending.size() > 2 * parallelism) {
+                    skipped += merge(result, pending.removeFirst());
+                }
+            }
+            pending.add(submit(executor, filter, chunk, end));
+            while (!pending.isEmpty()) {
+                skipped += merge(result, pending.removeFirst());
+            }
+        } finally {
+            pending.forEach(future -> future.cancel(true));
+        }
+        log.debug("Skipped {} lines that are not announcements", skipped);
+        return result.build();
+    }
+
+    private static Future<BgpRisDumpParser> submit(ExecutorService executor, Filter filter, byte[] chunk, int end) {
+        return executor.submit(() -> {
+            final BgpRisDumpParser parser = new BgpRisDumpParser(filter);
+            parser.parseLines(chunk, 0, end);
+            return parser;
+        });
+    }
+
+    private static int merge(PackedBgpRisEntries.Builder result, Future<BgpRisDumpParser> parsed) throws IOException {
+        try {
+            final BgpRisDumpParser parser = parsed.get();
+            result.addAll(parser.builder);
+            return parser.skipped;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while parsing RIS dump");
+        } catch (ExecutionException e) {
+            throw new IOException("error while parsing RIS dump", e.getCause());
+        }
+    }
+
+    private PackedBgpRisEntries finish() {
+        log.debug("Skipped {} lines that are not announcements", skipped);
+        return builder.build();
+    }
+
+    private static int afterLastNewline(byte[] bytes, int from, int to) {
+        for (int i = to - 1; i >= from; i--) {
+            if (bytes[i] == '\n') {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    private void parseLines(byte[] bytes, int from, int to) {
+        int lineStart = from;
+        for (int i = from; i < to; i++) {
+            if (bytes[i] == '\n') {
+                parseLine(bytes, lineStart, i);
+                lineStart = i + 1;
+            }
+        }
+        if (lineStart < to) {
+            parseLine(bytes, lineStart, to);
+        }
+    }
+
+    private void parseLine(byte[] line, int from, int to) {
+        position = from;
+        skipWhitespace(line, to);
+        if (position == to) {
+            return;
+        }
+        if (!parseAnnouncement(line, to)) {
+            skipped++;
+        }
+    }
+
+    private boolean parseAnnouncement(byte[] line, int to) {
+        final long origin = parseDecimal(line, to, MAX_ASN);
+        if (origin < 0 || skipWhitespace(line, to) == 0) {
+            return false;
+        }
+
+        final boolean ipv4 = isIpv4(line, to);
+        if (!(ipv4 ? parseIpv4(line, to) : parseIpv6(line, to))) {
+            return false;
+        }
+        if (position == to || line[position++] != '/') {
+            return false;
+        }
+        final long prefixLength = parseDecimal(line, to, ipv4 ? 32 : 128);
+        if (prefixLength < 0 || !isPrefix(ipv4, (int) prefixLength) || skipWhitespace(line, to) == 0) {
+            return false;
+        }
+
+        final long visibility = parseDecimal(line, to, Integer.MAX_VALUE);
+        if (visibility < 0) {
+            return false;
+        }
+        skipWhitespace(line, to);
+        if (position != to) {
+            return false;
+        }
+
+        if (filter.accept(origin, (int) prefixLength, (int) visibility)) {
+            if (ipv4) {
+                builder.addIpv4(origin, (int) addressHigh, (int) prefixLength, (int) visibility);
+            } else {
+                builder.addIpv6(origin, addressHigh, addressLow, (int) prefixLength, (int) visibility);
+            }
+        }
+        return true;
+    }
+
+    private int skipWhitespace(byte[] line, int to) {
+        final int start = position;
+        while (position < to && isWhitespace(line[position])) {
+            position++;
+        }
+        return position - start;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\r' || b == '\f' || b == 0x0B;
+    }
+
+    /**
+     * @return the value of the digits at the current position, or -1 when there are none or the value exceeds the maximum.
+     */
+    private long parseDecimal(byte[] line, int to, long maximum) {
+        final int start = position;
+        long value = 0;
+        while (position < to && line[position] >= '0' && line[position] <= '9') {
+            value = 10 * value + (line[position++] - '0');
+            if (value > maximum) {
+                return -1;
+            }
+        }
+        return position == start ? -1 : value;
+    }
+
+    private boolean isIpv4(byte[] line, int to) {
+        for (int i = position; i < to && line[i] != '/'; i++) {
+            if (line[i] == ':') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean parseIpv4(byte[] line, int to) {
+        long address = 0;
+        for (int i = 0; i < 4; i++) {
+            if (i > 0 && (position == to || line[position++] != '.')) {
+                return false;
+            }
+            final long octet = parseDecimal(line, to, 255);
+            if (octet < 0) {
+                return false;
+            }
+            address = (address << 8) | octet;
+        }
+        addressHigh = address;
+        addressLow = 0;
+        return true;
+    }
+
+    /**
+     * Parses the hexadecimal groups of an IPv6 address, with at most one "::". Addresses with an embedded
+     * IPv4 address do not appear in the dumps and are not supported.
+     */
+    private boolean parseIpv6(byte[] line, int to) {
+        int count = 0;
+        int compressedAt = -1;
+        if (position + 1 < to && line[position] == ':' && line[position + 1] == ':') {
+            compressedAt = 0;
+            position += 2;
+        }
+        while (position < to && line[position] != '/') {
+            if (count == groups.length) {
+                return false;
+            }
+            final int group = parseHexGroup(line, to);
+            if (group < 0) {
+                return false;
+            }
+            groups[count++] = group;
+            if (position == to || line[position] != ':') {
+                break;
+            }
+            position++;
+            if (position < to && line[position] == ':') {
+                if (compressedAt >= 0) {
+                    return false;
+                }
+                compressedAt = count;
+                position++;
+            } else if (position == to || line[position] == '/') {
+                return false;
+            }
+        }
+
+        final int zeros = groups.length - count;
+        if (compressedAt < 0 ? zeros != 0 : zeros == 0) {
+            return false;
+        }
+        long high = 0;
+        long low = 0;
+        for (int i = 0; i < groups.length; i++) {
+            final int group = compressedAt < 0 || i < compressedAt ? groups[i]
+                : i < compressedAt + zeros ? 0
+                : groups[i - zeros];
+            if (i < 4) {
+                high = (high << 16) | group;
+            } else {
+                low = (low << 16) | group;
+            }
+        }
+        addressHigh = high;
+        addressLow = low;
+        return true;
+    }
+
+    private int parseHexGroup(byte[] line, int to) {
+        final int start = position;
+        int value = 0;
+        while (position < to && position - start < 4) {
+            final int digit = Character.digit(line[position], 16);
+            if (digit < 0) {
+                break;
+            }
+            value = (value << 4) | digit;
+            position++;
+        }
+        return position == start ? -1 : value;
+    }
+
+    /**
+     * @return true when the bits of the address beyond the prefix length are all zero.
+     */
+    private boolean isPrefix(boolean ipv4, int prefixLength) {
+        if (ipv4) {
+            return lowBitsAreZero(addressHigh, 32 - prefixLength);
+        } else if (prefixLength <= 64) {
+            return addressLow == 0 && lowBitsAreZero(addressHigh, 64 - prefixLength);
+        } else {
+            return lowBitsAreZero(addressLow, 128 - prefixLength);
+        }
+    }
+
+    private static boolean lowBitsAreZero(long value, int bits) {
+        return bits >= 64 ? value == 0 : (value & ((1L << bits) - 1)) == 0;
+    }
+}
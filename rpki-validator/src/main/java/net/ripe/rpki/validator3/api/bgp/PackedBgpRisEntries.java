@@ -0,0 +1,282 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2018 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.rpki.validator3.api.bgp;
+
+import net.ripe.ipresource.Asn;
+import net.ripe.ipresource.IpRange;
+import net.ripe.ipresource.Ipv4Address;
+import net.ripe.ipresource.Ipv6Address;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * RIS announcements packed in primitive arrays, one array per column, like {@link PackedIpRange} but
+ * without an object per entry.
+ * <p>
+ * Entries are sorted by prefix and origin, in the order of {@link IpRange#compareTo}. IPv4 entries come
+ * before IPv6 entries, so the address family of an entry follows from its row.
+ */
+final class PackedBgpRisEntries {
+
+    static final PackedBgpRisEntries EMPTY = builder().build();
+
+    // The amount to add to convert a 64-bit signed value to a 64-bit unsigned
+    // value when the signed value is negative. This is equal to 2^64.
+    private static final BigInteger TWO_TO_THE_POWER_OF_64 = BigInteger.ONE.shiftLeft(64);
+
+    private final int ipv4Count;
+    private final int[] ipv4Addresses;
+    // Two values per IPv6 entry, the high and the low 64 bits of the address.
+    private final long[] ipv6Addresses;
+    private final byte[] prefixLengths;
+    private final int[] origins;
+    private final short[] visibilities;
+
+    private PackedBgpRisEntries(int ipv4Count, int[] ipv4Addresses, long[] ipv6Addresses, byte[] prefixLengths, int[] origins, short[] visibilities) {
+        this.ipv4Count = ipv4Count;
+        this.ipv4Addresses = ipv4Addresses;
+        this.ipv6Addresses = ipv6Addresses;
+        this.prefixLengths = prefixLengths;
+        this.origins = origins;
+        this.visibilities = visibilities;
+    }
+
+    static Builder builder() {
+        return new Builder();
+    }
+
+    static PackedBgpRisEntries of(Collection<BgpRisEntry> entries) {
+        final Builder builder = builder();
+        entries.forEach(entry -> builder.add(entry.getOrigin(), entry.getPrefix(), entry.getVisibility()));
+        return builder.build();
+    }
+
+    int size() {
+        return origins.length;
+    }
+
+    boolean isIpv4(int row) {
+        return row < ipv4Count;
+    }
+
+    long getOrigin(int row) {
+        return Integer.toUnsignedLong(origins[row]);
+    }
+
+    int getPrefixLength(int row) {
+        return prefixLengths[row] & 0xFF;
+    }
+
+    int getVisibility(int row) {
+        return visibilities[row];
+    }
+
+    /**
+     * @return the address as unsigned value for IPv4, or the high 64 bits of the address for IPv6.
+     */
+    long getAddressHigh(int row) {
+        return isIpv4(row) ? Integer.toUnsignedLong(ipv4Addresses[row]) : ipv6Addresses[2 * (row - ipv4Count)];
+    }
+
+    /**
+     * @return zero for IPv4, or the low 64 bits of the address for IPv6.
+     */
+    long getAddressLow(int row) {
+        return isIpv4(row) ? 0 : ipv6Addresses[2 * (row - ipv4Count) + 1];
+    }
+
+    /**
+     * Creates the prefix of an entry, only meant for entries that are returned, not for searching.
+     */
+    IpRange getPrefix(int row) {
+        if (isIpv4(row)) {
+            return IpRange.prefix(new Ipv4Address(getAddressHigh(row)), getPrefixLength(row));
+        }
+        return IpRange.prefix(new Ipv6Address(unsigned(getAddressHigh(row)).shiftLeft(64).add(unsigned(getAddressLow(row)))), getPrefixLength(row));
+    }
+
+    /**
+     * Compares the prefix of an entry with a prefix given as address family, address and length,
+     * without creating any objects.
+     */
+    int comparePrefix(int row, boolean ipv4, long addressHigh, long addressLow, int prefixLength) {
+        if (isIpv4(row) != ipv4) {
+            return ipv4 ? 1 : -1;
+        }
+        int c = Long.compareUnsigned(getAddressHigh(row), addressHigh);
+        if (c == 0) {
+            c = Long.compareUnsigned(getAddressLow(row), addressLow);
+        }
+        return c != 0 ? c : Integer.compare(getPrefixLength(row), prefixLength);
+    }
+
+    int comparePrefix(int row, PackedBgpRisEntries that, int thatRow) {
+        return comparePrefix(row, that.isIpv4(thatRow), that.getAddressHigh(thatRow), that.getAddressLow(thatRow), that.getPrefixLength(thatRow));
+    }
+
+    int compareOrigin(int row, PackedBgpRisEntries that, int thatRow) {
+        return Integer.compareUnsigned(origins[row], that.origins[thatRow]);
+    }
+
+    private static BigInteger unsigned(long value) {
+        final BigInteger result = BigInteger.valueOf(value);
+        return value < 0 ? result.add(TWO_TO_THE_POWER_OF_64) : result;
+    }
+
+    /**
+     * Collects entries in growing arrays per address family, and sorts them when built.
+     */
+    static final class Builder {
+        private final Columns ipv4 = new Columns(1);
+        private final Columns ipv6 = new Columns(2);
+
+        void add(Asn origin, IpRange prefix, int visibility) {
+            final BigInteger address = prefix.getStart().getValue();
+            switch (prefix.getType()) {
+                case IPv4:
+                    addIpv4(origin.longValue(), address.intValue(), prefix.getPrefixLength(), visibility);
+                    break;
+                case IPv6:
+                    addIpv6(origin.longValue(), address.shiftRight(64).longValue(), address.longValue(), prefix.getPrefixLength(), visibility);
+                    break;
+                default:
+                    throw new IllegalArgumentException("invalid IP prefix type: " + prefix.getType());
+            }
+        }
+
+        void addIpv4(long origin, int address, int prefixLength, int visibility) {
+            ipv4.add(origin, prefixLength, visibility, Integer.toUnsignedLong(address), 0);
+        }
+
+        void addIpv6(long origin, long addressHigh, long addressLow, int prefixLength, int visibility) {
+            ipv6.add(origin, prefixLength, visibility, addressHigh, addressLow);
+        }
+
+        void addAll(Builder that) {
+            ipv4.addAll(that.ipv4);
+            ipv6.addAll(that.ipv6);
+        }
+
+        PackedBgpRisEntries build() {
+            final int[] ipv4Rows = ipv4.sortedRows();
+            final int[] ipv6Rows = ipv6.sortedRows();
+            final int size = ipv4Rows.length + ipv6Rows.length;
+
+            final int[] ipv4Addresses = new int[ipv4Rows.length];
+            final long[] ipv6Addresses = new long[2 * ipv6Rows.length];
+            final byte[] prefixLengths = new byte[size];
+            final int[] origins = new int[size];
+            final short[] visibilities = new short[size];
+            for (int i = 0; i < ipv4Rows.length; i++) {
+                final int row = ipv4Rows[i];
+                ipv4Addresses[i] = (int) ipv4.addresses[row];
+                ipv4.copy(row, i, prefixLengths, origins, visibilities);
+            }
+            for (int i = 0; i < ipv6Rows.length; i++) {
+                final int row = ipv6Rows[i];
+                ipv6Addresses[2 * i] = ipv6.addresses[2 * row];
+                ipv6Addresses[2 * i + 1] = ipv6.addresses[2 * row + 1];
+                ipv6.copy(row, ipv4Rows.length + i, prefixLengths, origins, visibilities);
+            }
+            return new PackedBgpRisEntries(ipv4Rows.length, ipv4Addresses, ipv6Addresses, prefixLengths, origins, visibilities);
+        }
+    }
+
+    private static final class Columns {
+        private final int addressWidth;
+        private int size;
+        private long[] addresses = new long[0];
+        private byte[] prefixLengths = new byte[0];
+        private int[] origins = new int[0];
+        private short[] visibilities = new short[0];
+
+        Columns(int addressWidth) {
+            this.addressWidth = addressWidth;
+        }
+
+        void add(long origin, int prefixLength, int visibility, long addressHigh, long addressLow) {
+            if (size == origins.length) {
+                grow(Math.max(1024, size + (size >> 1)));
+            }
+            addresses[size * addressWidth] = addressHigh;
+            if (addressWidth > 1) {
+                addresses[size * addressWidth + 1] = addressLow;
+            }
+            prefixLengths[size] = (byte) prefixLength;
+            origins[size] = (int) origin;
+            visibilities[size] = (short) Math.min(visibility, Short.MAX_VALUE);
+            size++;
+        }
+
+        void addAll(Columns that) {
+            if (size + that.size > origins.length) {
+                grow(size + that.size);
+            }
+            System.arraycopy(that.addresses, 0, addresses, size * addressWidth, that.size * addressWidth);
+            System.arraycopy(that.prefixLengths, 0, prefixLengths, size, that.size);
+            System.arraycopy(that.origins, 0, origins, size, that.size);
+            System.arraycopy(that.visibilities, 0, visibilities, size, that.size);
+            size += that.size;
+        }
+
+        private void grow(int capacity) {
+            addresses = Arrays.copyOf(addresses, capacity * addressWidth);
+            prefixLengths = Arrays.copyOf(prefixLengths, capacity);
+            origins = Arrays.copyOf(origins, capacity);
+            visibilities = Arrays.copyOf(visibilities, capacity);
+        }
+
+        int[] sortedRows() {
+            final int[] rows = new int[size];
+            for (int i = 0; i < size; i++) {
+                rows[i] = i;
+            }
+            IntArrays.sort(rows, (a, b) -> {
+                for (int i = 0; i < addressWidth; i++) {
+                    final int c = Long.compareUnsigned(addresses[a * addressWidth + i], addresses[b * addressWidth + i]);
+                    if (c != 0) {
+                        return c;
+                    }
+                }
+                final int c = Integer.compare(prefixLengths[a] & 0xFF, prefixLengths[b] & 0xFF);
+                return c != 0 ? c : Integer.compareUnsigned(origins[a], origins[b]);
+            });
+            return rows;
+        }
+
+        void copy(int row, int to, byte[] prefixLengths, int[] origins, short[] visibilities) {
+            prefixLengths[to] = this.prefixLengths[row];
+            origins[to] = this.origins[row];
+            visibilities[to] = this.visibilities[row];
+        }
+    }
+}
@@ -42,7 +42,9 @@ import net.ripe.rpki.validator3.api.trustanchors.TaStatus;
 import net.ripe.rpki.validator3.api.util.BuildInformation;
 import net.ripe.rpki.validator3.api.util.Dates;
 import net.ripe.rpki.validator3.background.BackgroundJobs;
+import net.ripe.rpki.validator3.domain.validation.ValidatedRpkiObjects;
 import net.ripe.rpki.validator3.storage.Storage;
+import net.ripe.rpki.validator3.storage.data.Key;
 import net.ripe.rpki.validator3.storage.stores.TrustAnchors;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Profile;
@@ -82,13 +84,17 @@ public class HealthController {
     @Autowired
     private Storage storage;
 
+    @Autowired
+    private ValidatedRpkiObjects validatedRpkiObjects;
+
     @ApiOperation("Get result of validator health checks")
     @GetMapping
     public ResponseEntity<ApiResponse<?>> health() {
         try {
             final List<TaHealth> trustAnchorReady = storage.readTx(tx -> trustAnchors.getStatuses(tx))
                 .stream()
-                .map(taStatus -> new TaHealth(taStatus.getTaName(), taStatus.isCompletedValidation()))
+                .map(taStatus -> new TaHealth(taStatus.getTaName(), taStatus.isCompletedValidation(),
+                    validatedRpkiObjects.isCarriedOver(Key.of(Long.parseLong(taStatus.getId())))))
                 .collect(Collectors.toList());
 
             final Map<String, Boolean> bgpDumpReady = bgpPreviewService.getBgpDumps().stream().
@@ -115,6 +121,8 @@ public class HealthController {
     static class TaHealth {
         private String taName;
         private boolean complete;
+        // Serving the objects of the last validation before the restart until this one completes.
+        private boolean carriedOver;
     }
 
     @GetMapping(path = "/backgrounds")
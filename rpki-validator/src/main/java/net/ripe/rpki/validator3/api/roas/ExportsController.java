@@ -105,6 +105,7 @@ public class ExportsController {
             response.setStatus(HttpServletResponse.SC_NO_CONTENT);
             return null;
         }
+        markCarriedOver(response);
 
         return new JsonExport(vrpStream());
     }
@@ -118,6 +119,7 @@ public class ExportsController {
             response.setStatus(HttpServletResponse.SC_NO_CONTENT);
             return;
         }
+        markCarriedOver(response);
 
         try (CSVWriter writer = new CSVWriter(response.getWriter())) {
             writer.writeNext(new String[]{"ASN", "IP Prefix", "Max Length", "Trust Anchor"});
@@ -140,6 +142,7 @@ public class ExportsController {
             response.setStatus(HttpServletResponse.SC_NO_CONTENT);
             return null;
         }
+        markCarriedOver(response);
         return new JsonExportExtended(vrpExtendedStream());
     }
 
@@ -152,6 +155,7 @@ public class ExportsController {
             response.setStatus(HttpServletResponse.SC_NO_CONTENT);
             return;
         }
+        markCarriedOver(response);
 
         try (CSVWriter writer = new CSVWriter(response.getWriter())) {
             writer.writeNext(new String[]{"ASN", "IP Prefix", "Max Length", "Trust Anchor",
@@ -169,6 +173,18 @@ public class ExportsController {
         }
     }
 
+    /**
+     * Until every trust anchor has been validated again after a restart, part of the VRPs come from
+     * the snapshot of the previous run. Flag those responses as stale.
+     */
+    private void markCarriedOver(HttpServletResponse response) {
+        validatedRpkiObjects.carriedOverSince().ifPresent(since -> response.setHeader("Warning", staleWarning(since)));
+    }
+
+    static String staleWarning(Instant carriedOverSince) {
+        return String.format("110 - \"Response is Stale: carried over from validation at %s\"", carriedOverSince);
+    }
+
     /**
      * Get the stream of VRPs based only on ROAs, but having more fields.
      */
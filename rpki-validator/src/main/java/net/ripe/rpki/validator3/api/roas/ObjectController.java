@@ -44,6 +44,7 @@ import net.ripe.rpki.validator3.api.trustanchors.TrustAnchorResource;
 import net.ripe.rpki.validator3.domain.IgnoreFiltersPredicate;
 import net.ripe.rpki.validator3.domain.validation.ValidatedRpkiObjects;
 import net.ripe.rpki.validator3.storage.Storage;
+import net.ripe.rpki.validator3.storage.Tx;
 import net.ripe.rpki.validator3.storage.data.RpkiRepository;
 import net.ripe.rpki.validator3.storage.data.TrustAnchor;
 import net.ripe.rpki.validator3.storage.stores.RpkiRepositories;
@@ -130,28 +131,34 @@ public class ObjectController {
 
         final Stream<RouterCertificate> combinedAssertions = Stream.concat(filteredRouterCertificates, bgpSecAssertions).distinct();
 
-        final boolean noPendingRepositories = storage.readTx(tx ->
-            trustAnchorList.stream().allMatch(ta -> {
-                final Map<RpkiRepository.Status, Long> statusLongMap = rpkiRepositories.countByStatus(tx, ta.key(), true);
-                final Long pendingRepoNumber = statusLongMap.get(RpkiRepository.Status.PENDING);
-                return pendingRepoNumber == null || pendingRepoNumber == 0L;
-            }));
-
-        final boolean allTasDoneInitialLoading = storage.readTx(tx -> trustAnchors.allInitialCertificateTreeValidationRunsCompleted(tx));
+        // Trust anchors carried over from before a restart are served as-is until they are validated
+        // again, their repositories are pending only because they are fetched again.
+        final boolean ready = storage.readTx(tx ->
+            trustAnchorList.stream().allMatch(ta -> validatedRpkiObjects.isCarriedOver(ta.key()) ||
+                ta.isInitialCertificateTreeValidationRunCompleted() && noPendingRepositories(tx, ta)));
 
         final List<TrustAnchorResource> trustAnchorResources = trustAnchorList.stream()
             .map(ta -> TrustAnchorResource.of(ta, Locale.ROOT))
             .collect(Collectors.toList());
 
-        return ResponseEntity.ok(ApiResponse.<ValidatedObjects>builder()
+        final ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        validatedRpkiObjects.carriedOverSince().ifPresent(since ->
+            response.header("Warning", ExportsController.staleWarning(since)));
+        return response.body(ApiResponse.<ValidatedObjects>builder()
             .data(new ValidatedObjects(
-                allTasDoneInitialLoading && noPendingRepositories,
+                ready,
                 trustAnchorResources,
                 combinedPrefixes,
                 combinedAssertions))
             .build());
     }
 
+    private boolean noPendingRepositories(Tx.Read tx, TrustAnchor trustAnchor) {
+        final Map<RpkiRepository.Status, Long> statusLongMap = rpkiRepositories.countByStatus(tx, trustAnchor.key(), true);
+        final Long pendingRepoNumber = statusLongMap.get(RpkiRepository.Status.PENDING);
+        return pendingRepoNumber == null || pendingRepoNumber == 0L;
+    }
+
     @Value
     public static class ValidatedObjects {
         @ApiModelProperty(position = 1)
@@ -130,7 +130,7 @@ public class RpkiObjectController {
     private Stream<RpkiObj> getRpkiObjsPerTa(TrustAnchor trustAnchor) {
         return storage.readTx(tx ->
                 validationRuns.findLatestSuccessfulCaTreeValidationRun(tx, trustAnchor)
-                        .map(vr -> getAssociatedRpkiObjects(tx, vr, getCheckMap(vr)))
+                        .map(vr -> getAssociatedRpkiObjects(tx, vr, getCheckMap(tx, vr)))
                         .orElse(Stream.empty())
                         .collect(Collectors.toList()))
                 .stream()
@@ -163,8 +163,8 @@ public class RpkiObjectController {
                 });
     }
 
-    private Map<String, ValidationCheck> getCheckMap(CertificateTreeValidationRun vr) {
-        return vr.getValidationChecks().stream().collect(Collectors.toMap(
+    private Map<String, ValidationCheck> getCheckMap(Tx.Read tx, CertificateTreeValidationRun vr) {
+        return validationRuns.findValidationChecks(tx, vr).stream().collect(Collectors.toMap(
                 ValidationCheck::getLocation,
                 Function.identity(),
                 (a, b) -> {
@@ -199,16 +199,19 @@ public class RpkiObjectController {
         final IpResourceSet ipResources = new IpResourceSet();
 
         final Pair<Set<String>, List<X509ResourceCertificate>> txResult = storage.readTx(tx -> {
-            final Set<String> roaAKIs = objectStream(rpkiObjects.streamObjects(tx, RpkiObject.Type.ROA), "roa")
-                    .filter(p -> p instanceof RoaCms)
-                    .map(p -> Hex.format(((RoaCms) p).getCertificate().getAuthorityKeyIdentifier()))
-                    .collect(Collectors.toSet());
-
-            final List<X509ResourceCertificate> allCerts = objectStream(rpkiObjects.streamObjects(tx, RpkiObject.Type.CER), "cer")
-                    .filter(p -> p instanceof X509ResourceCertificate)
-                    .map(p -> (X509ResourceCertificate) p)
-                    .collect(Collectors.toList());
-            return Pair.of(roaAKIs, allCerts);
+            try (Stream<byte[]> roas = rpkiObjects.streamObjects(tx, RpkiObject.Type.ROA);
+                 Stream<byte[]> cers = rpkiObjects.streamObjects(tx, RpkiObject.Type.CER)) {
+                final Set<String> roaAKIs = objectStream(roas, "roa")
+                        .filter(p -> p instanceof RoaCms)
+                        .map(p -> Hex.format(((RoaCms) p).getCertificate().getAuthorityKeyIdentifier()))
+                        .collect(Collectors.toSet());
+
+                final List<X509ResourceCertificate> allCerts = objectStream(cers, "cer")
+                        .filter(p -> p instanceof X509ResourceCertificate)
+                        .map(p -> (X509ResourceCertificate) p)
+                        .collect(Collectors.toList());
+                return Pair.of(roaAKIs, allCerts);
+            }
         });
 
         Set<String> roaAKIs = txResult.getLeft();
@@ -272,17 +275,21 @@ public class RpkiObjectController {
         try (final CSVWriter writer = new CSVWriter(response.getWriter())) {
             writer.writeNext(new String[]{"Subject", "Resources"});
 
-            Stream<byte[]> byteStream = storage.readTx(tx -> rpkiObjects.streamObjects(tx, RpkiObject.Type.CER));
-            objectStream(byteStream, "cer")
-                    .forEachOrdered(c -> {
-                        if (c instanceof X509ResourceCertificate) {
-                            final X509ResourceCertificate cert = (X509ResourceCertificate) c;
-                            writer.writeNext(new String[]{
-                                    cert.getSubject().toString(),
-                                    cert.getResources().toString()
-                            });
-                        }
-                    });
+            // the object stream is only valid within the transaction, write the rows as they are read
+            storage.readTx0(tx -> {
+                try (Stream<byte[]> cers = rpkiObjects.streamObjects(tx, RpkiObject.Type.CER)) {
+                    cers.map(bytes -> CertificateRepositoryObjectFactory.createCertificateRepositoryObject(bytes, newValidationResult("whatever.cer")))
+                        .forEachOrdered(c -> {
+                            if (c instanceof X509ResourceCertificate) {
+                                final X509ResourceCertificate cert = (X509ResourceCertificate) c;
+                                writer.writeNext(new String[]{
+                                        cert.getSubject().toString(),
+                                        cert.getResources().toString()
+                                });
+                            }
+                        });
+                }
+            });
         }
     }
 
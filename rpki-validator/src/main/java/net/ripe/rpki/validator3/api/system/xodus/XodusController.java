@@ -35,6 +35,7 @@ import net.ripe.rpki.validator3.api.InternalApiCall;
 import net.ripe.rpki.validator3.domain.cleanup.ValidationRunCleanupService;
 import net.ripe.rpki.validator3.storage.xodus.Xodus;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
@@ -42,6 +43,7 @@ import org.springframework.web.bind.annotation.RestController;
 import java.util.Map;
 
 @InternalApiCall
+@ConditionalOnProperty(name = "rpki.validator.storage", havingValue = "xodus", matchIfMissing = true)
 @RestController
 @RequestMapping(path = "/api/xodus", produces = {ValidatorApi.API_MIME_TYPE, "application/json"})
 @Slf4j
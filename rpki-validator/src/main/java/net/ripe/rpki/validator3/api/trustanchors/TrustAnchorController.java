@@ -37,6 +37,8 @@ import net.ripe.rpki.validator3.api.*;
 import net.ripe.rpki.validator3.api.validationruns.ValidationCheckResource;
 import net.ripe.rpki.validator3.api.validationruns.ValidationRunController;
 import net.ripe.rpki.validator3.api.validationruns.ValidationRunResource;
+import net.ripe.rpki.validator3.background.TriggerQueue;
+import net.ripe.rpki.validator3.background.ValidationScheduler;
 import net.ripe.rpki.validator3.storage.Tx;
 import net.ripe.rpki.validator3.storage.data.Key;
 import net.ripe.rpki.validator3.storage.data.TrustAnchor;
@@ -94,6 +96,8 @@ public class TrustAnchorController {
     private ValidationRuns validationRuns;
     @Autowired
     private MessageSource messageSource;
+    @Autowired
+    private ValidationScheduler validationScheduler;
 
     @Autowired
     private Storage storage;
@@ -161,6 +165,17 @@ public class TrustAnchorController {
                     .orElse(ResponseEntity.notFound().build()));
     }
 
+    @ApiOperation("Validate the certificate tree of a trust anchor as soon as possible")
+    @PostMapping(path = "/{id}/validate")
+    public ResponseEntity<?> validate(@PathVariable long id) {
+        return storage.readTx(tx -> trustAnchors.get(tx, Key.of(id)))
+            .map(trustAnchor -> {
+                validationScheduler.triggerCertificateTreeValidation(trustAnchor, TriggerQueue.Priority.MANUAL);
+                return ResponseEntity.accepted().build();
+            })
+            .orElse(ResponseEntity.notFound().build());
+    }
+
     @GetMapping(path = "/{id}/validation-run")
     public ResponseEntity<ApiResponse<ValidationRunResource>> validationResults(@PathVariable long id, HttpServletResponse response, Locale locale) throws IOException {
         Optional<TrustAnchorValidationRun> validationRun = storage.readTx(tx ->
@@ -195,15 +210,17 @@ public class TrustAnchorController {
         return storage.readTx(tx -> {
             int totalCount = validationRuns.countValidationChecksForValidationRun(tx, id, searchTerm);
 
-            Stream<ValidationCheckResource> checks = validationRuns.findValidationChecksForValidationRun(tx, id, paging, searchTerm, sorting)
-                    .map(check -> ValidationCheckResource.of(check, messageSource.getMessage(check, locale)));
+            // collect the page while the transaction is still open
+            final List<ValidationCheckResource> checks = validationRuns.findValidationChecksForValidationRun(tx, id, paging, searchTerm, sorting)
+                    .map(check -> ValidationCheckResource.of(check, messageSource.getMessage(check, locale)))
+                    .collect(Collectors.toList());
 
             Links links = Paging.links(startFrom, pageSize, totalCount,
                     (sf, ps) -> methodOn(TrustAnchorController.class).validationChecks(id, sf, ps, searchString, sortBy, sortDirection, locale));
 
             return ResponseEntity.ok(ApiResponse.<Stream<ValidationCheckResource>>builder()
                     .links(links)
-                    .data(checks)
+                    .data(checks.stream())
                     .metadata(Metadata.of(totalCount))
                     .build()
             );
@@ -226,7 +243,10 @@ public class TrustAnchorController {
     private ApiResponse<TrustAnchorResource> trustAnchorResource(Tx.Read tx, TrustAnchor trustAnchor, Locale locale) {
             Optional<TrustAnchorValidationRun> validationRun = validationRuns.findLatestCompletedForTrustAnchor(tx, trustAnchor);
             ArrayList<Object> includes = new ArrayList<>(1);
-            validationRun.ifPresent(run -> includes.add(ValidationRunResource.of(run, vr -> validationRuns.getObjectCount(tx, vr), messageSource, locale)));
+            validationRun.ifPresent(run -> includes.add(ValidationRunResource.of(run,
+                    vr -> validationRuns.getObjectCount(tx, vr),
+                    vr -> validationRuns.findValidationChecks(tx, vr),
+                    messageSource, locale)));
             return ApiResponse.<TrustAnchorResource>builder().data(
                     TrustAnchorResource.of(trustAnchor, locale)
             ).includes(includes).build();
@@ -83,6 +83,7 @@ public class ValidationRunController {
                                 .stream()
                                 .map(validationRun -> ValidationRunResource.of(validationRun,
                                         vr -> validationRuns.getObjectCount(tx, vr),
+                                        vr -> validationRuns.findValidationChecks(tx, vr),
                                         messageSource, locale))
                                 .collect(Collectors.toList())
                 )));
@@ -97,6 +98,7 @@ public class ValidationRunController {
                                 .stream()
                                 .map(validationRun -> ValidationRunResource.of(validationRun,
                                         vr -> validationRuns.getObjectCount(tx, vr),
+                                        vr -> validationRuns.findValidationChecks(tx, vr),
                                         messageSource, locale))
                                 .collect(Collectors.toList())
                 )));
@@ -112,6 +114,7 @@ public class ValidationRunController {
                                 validationRuns.findLatestCompletedCaTreeValidationRun(tx, ta)
                                         .map(validationRun -> Stream.of(ValidationRunResource.of(validationRun,
                                                 vr -> validationRuns.getObjectCount(tx, vr),
+                                                vr -> validationRuns.findValidationChecks(tx, vr),
                                                 messageSource, locale)))
                                         .orElse(Stream.empty()))
                                 .collect(Collectors.toList())
@@ -124,7 +127,9 @@ public class ValidationRunController {
                 validationRuns.get(tx, ValidationRun.class, id)
                         .map(validationRun ->
                                 ResponseEntity.ok(ApiResponse.data(ValidationRunResource.of(validationRun,
-                                        vr -> validationRuns.getObjectCount(tx, vr), messageSource, locale))))
+                                        vr -> validationRuns.getObjectCount(tx, vr),
+                                        vr -> validationRuns.findValidationChecks(tx, vr),
+                                        messageSource, locale))))
                         .orElse(ResponseEntity.notFound().build()));
     }
 }
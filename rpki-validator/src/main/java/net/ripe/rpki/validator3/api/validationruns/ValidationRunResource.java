@@ -40,6 +40,7 @@ import net.ripe.rpki.validator3.storage.data.validation.CertificateTreeValidatio
 import net.ripe.rpki.validator3.storage.data.validation.RrdpRepositoryValidationRun;
 import net.ripe.rpki.validator3.storage.data.validation.RsyncRepositoryValidationRun;
 import net.ripe.rpki.validator3.storage.data.validation.TrustAnchorValidationRun;
+import net.ripe.rpki.validator3.storage.data.validation.ValidationCheck;
 import net.ripe.rpki.validator3.storage.data.validation.ValidationRun;
 import org.springframework.context.MessageSource;
 import org.springframework.hateoas.Link;
@@ -89,6 +90,7 @@ public class ValidationRunResource {
 
     public static ValidationRunResource of(ValidationRun validationRun,
                                            Function<ValidationRun, Integer> objectCounter,
+                                           Function<ValidationRun, List<ValidationCheck>> checks,
                                            MessageSource messageSource,
                                            Locale locale) {
         List<Link> links = new ArrayList<>();
@@ -100,7 +102,7 @@ public class ValidationRunResource {
             .completedAt(validationRun.getCompletedAt())
             .status(validationRun.getStatus().name())
             .validationChecks(
-                validationRun.getValidationChecks()
+                checks.apply(validationRun)
                     .stream()
                     .map(check -> ValidationCheckResource.of(check, check.formattedMessage(messageSource, locale)))
                     .collect(Collectors.toList())
@@ -109,6 +109,10 @@ public class BackgroundJobs extends JobListenerSupport {
         schedule(CertificateTreeObjectExpirationValidationJob.class,
             futureDate(1, MINUTE),
             typicalSchedule().withIntervalInMinutes(1));
+
+        schedule(StorageMaintenanceJob.class,
+            futureDate(1, MINUTE),
+            typicalSchedule().withIntervalInMinutes(1));
     }
 
     private <T extends Trigger> void schedule(Class<? extends Job> jobClass, Date startAt, ScheduleBuilder<T> schedule) throws SchedulerException {
@@ -58,7 +58,7 @@ public class CertificateTreeObjectExpirationValidationJob implements Job {
     @Autowired
     private ValidationScheduler validationScheduler;
 
-    Consumer<TrustAnchor> triggerCertificateTreeValidation = (ta) -> validationScheduler.triggerCertificateTreeValidation(ta);
+    Consumer<TrustAnchor> triggerCertificateTreeValidation = (ta) -> validationScheduler.triggerCertificateTreeValidation(ta, TriggerQueue.Priority.EXPIRING);
 
     @Override
     public void execute(JobExecutionContext context) throws JobExecutionException {
@@ -0,0 +1,292 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2018 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.rpki.validator3.background;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import net.ripe.rpki.validator3.util.Futures;
+import net.ripe.rpki.validator3.util.InstrumentedExecutors;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * Periodically runs an action for each of a (potentially very large) set of keys,
+ * such as polling RRDP repositories.
+ * <p>
+ * Keys are kept in a hashed timer wheel: a single ticker thread only looks at the
+ * slot of the current tick, so the cost of scheduling does not depend on the number
+ * of keys. Due actions are handed to a fixed pool of workers. An action is never
+ * run concurrently with itself: the next run is scheduled after the current one
+ * finishes, `interval` plus or minus a random jitter after it started.
+ * Asynchronous actions finish when the future they return completes, so they only
+ * occupy a worker while they are actually doing something. The first
+ * run happens within the jitter window after scheduling. The jitter spreads keys
+ * that were added at the same time, e.g. at startup, so they do not all fire at
+ * once.
+ * <p>
+ * The scheduler owns its ticker and worker threads; {@link #close()} stops both.
+ */
+@Slf4j
+public class PollingScheduler<K> implements AutoCloseable {
+
+    private final long tickMs;
+    private final double jitter;
+    private final LongSupplier clock;
+    private final Executor workers;
+    private final long startedAt;
+
+    private final Map<K, Entry> entries = new ConcurrentHashMap<>();
+
+    /*
+     * The wheel is only accessed by the ticker. Entries (re)scheduled by other threads
+     * are handed over through `incoming`.
+     */
+    private final Queue<Entry>[] wheel;
+    private final int mask;
+    private final Queue<Entry> incoming = new ConcurrentLinkedQueue<>();
+    private long currentTick;
+
+    private final Counter runs;
+    private final Timer lateness;
+
+    // Only set when the scheduler created its own threads, see close().
+    private ScheduledExecutorService ticker;
+    private ExecutorService workerPool;
+
+    public PollingScheduler(String name, Duration tick, int workers, double jitter, MeterRegistry registry) {
+        this(name, tick.toMillis(), 4096, jitter, System::currentTimeMillis,
+            InstrumentedExecutors.newFixedThreadPool(name, workers, registry),
+            registry);
+        this.workerPool = (ExecutorService) this.workers;
+        this.ticker = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat(name + "-ticker").setDaemon(true).build());
+        ticker.scheduleAtFixedRate(this::advance, tickMs, tickMs, TimeUnit.MILLISECONDS);
+    }
+
+    @SuppressWarnings("unchecked")
+    PollingScheduler(String name, long tickMs, int wheelSize, double jitter, LongSupplier clock, Executor workers, MeterRegistry registry) {
+        Preconditions.checkArgument(Integer.bitCount(wheelSize) == 1, "wheel size must be a power of two");
+        Preconditions.checkArgument(jitter >= 0 && jitter < 1, "jitter must be in [0, 1)");
+        this.tickMs = tickMs;
+        this.jitter = jitter;
+        this.clock = clock;
+        this.workers = workers;
+        this.startedAt = clock.getAsLong();
+        this.wheel = new Queue[wheelSize];
+        for (int i = 0; i < wheelSize; i++) {
+            this.wheel[i] = new ArrayDeque<>();
+        }
+        this.mask = wheelSize - 1;
+
+        this.runs = Counter.builder("rpkivalidator.polling.runs")
+            .description("Number of scheduled actions started")
+            .tag("scheduler", name)
+            .register(registry);
+        this.lateness = Timer.builder("rpkivalidator.polling.lateness")
+            .description("Time between the planned and the actual start of an action")
+            .tag("scheduler", name)
+            .register(registry);
+        Gauge.builder("rpkivalidator.polling.keys", entries, Map::size)
+            .description("Number of keys scheduled")
+            .tag("scheduler", name)
+            .register(registry);
+    }
+
+    /**
+     * Schedules the action for the key, unless the key is already scheduled.
+     *
+     * @return true if the key was not scheduled yet.
+     */
+    public boolean schedule(K key, Duration interval, Runnable action) {
+        return scheduleAsync(key, interval, workers -> {
+            action.run();
+            return CompletableFuture.completedFuture(null);
+        });
+    }
+
+    /**
+     * Schedules the asynchronous action for the key, unless the key is already scheduled.
+     * The action is started on a worker and must not wait for anything; it gets the workers
+     * to run its later stages on.
+     *
+     * @return true if the key was not scheduled yet.
+     */
+    public boolean scheduleAsync(K key, Duration interval, Function<Executor, ? extends CompletionStage<?>> action) {
+        final Entry entry = new Entry(key, interval.toMillis(), action);
+        if (entries.putIfAbsent(key, entry) != null) {
+            return false;
+        }
+        entry.enqueue(clock.getAsLong() + randomJitter(entry.intervalMs));
+        return true;
+    }
+
+    /**
+     * Stops running the action for the key. A run that is already in progress is not interrupted.
+     *
+     * @return true if the key was scheduled.
+     */
+    public boolean cancel(K key) {
+        final Entry entry = entries.remove(key);
+        if (entry == null) {
+            return false;
+        }
+        entry.cancelled = true;
+        return true;
+    }
+
+    public boolean isScheduled(K key) {
+        return entries.containsKey(key);
+    }
+
+    /**
+     * Cancels all keys and stops the ticker and the workers. Runs that are in progress
+     * are interrupted.
+     */
+    @Override
+    public void close() {
+        entries.values().forEach(entry -> entry.cancelled = true);
+        entries.clear();
+        if (ticker != null) {
+            ticker.shutdownNow();
+        }
+        if (workerPool != null) {
+            workerPool.shutdownNow();
+        }
+    }
+
+    void advance() {
+        try {
+            advanceTo(clock.getAsLong());
+        } catch (RuntimeException e) {
+            log.error("Could not advance the polling scheduler", e);
+        }
+    }
+
+    /**
+     * Processes all ticks up to `now`. Only called by the ticker (or a test standing in for it).
+     */
+    void advanceTo(long now) {
+        final long targetTick = tickOf(now);
+        Entry entry;
+        while ((entry = incoming.poll()) != null) {
+            if (!entry.cancelled) {
+                wheel[(int) (Math.max(entry.dueTick, currentTick) & mask)].add(entry);
+            }
+        }
+        for (; currentTick <= targetTick; currentTick++) {
+            final Iterator<Entry> slot = wheel[(int) (currentTick & mask)].iterator();
+            while (slot.hasNext()) {
+                entry = slot.next();
+                if (entry.cancelled) {
+                    slot.remove();
+                } else if (entry.dueTick <= currentTick) {
+                    slot.remove();
+                    workers.execute(entry::run);
+                }
+            }
+        }
+    }
+
+    private long tickOf(long time) {
+        return Math.max(0, time - startedAt) / tickMs;
+    }
+
+    private long randomJitter(long intervalMs) {
+        final long window = (long) (intervalMs * jitter);
+        return window == 0 ? 0 : ThreadLocalRandom.current().nextLong(window);
+    }
+
+    private class Entry {
+        final K key;
+        final long intervalMs;
+        final Function<Executor, ? extends CompletionStage<?>> action;
+        volatile boolean cancelled;
+        // Planned start of the next run, and the tick in which it falls.
+        long dueAt;
+        long dueTick;
+
+        Entry(K key, long intervalMs, Function<Executor, ? extends CompletionStage<?>> action) {
+            this.key = key;
+            this.intervalMs = intervalMs;
+            this.action = action;
+        }
+
+        void enqueue(long at) {
+            dueAt = at;
+            dueTick = tickOf(at);
+            incoming.add(this);
+        }
+
+        void run() {
+            if (cancelled) {
+                return;
+            }
+            final long started = clock.getAsLong();
+            runs.increment();
+            lateness.record(Math.max(0, started - dueAt), TimeUnit.MILLISECONDS);
+            CompletionStage<?> running;
+            try {
+                running = action.apply(workers);
+            } catch (Exception e) {
+                running = Futures.failed(e);
+            }
+            running.whenComplete((result, failure) -> {
+                if (failure != null) {
+                    log.error("Scheduled action for {} failed", key, failure);
+                }
+                if (!cancelled) {
+                    final long window = (long) (intervalMs * jitter);
+                    enqueue(started + intervalMs - window / 2 + randomJitter(intervalMs));
+                }
+            });
+        }
+    }
+}
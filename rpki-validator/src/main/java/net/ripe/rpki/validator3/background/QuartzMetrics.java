@@ -0,0 +1,109 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2018 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.rpki.validator3.background;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import net.ripe.rpki.validator3.util.InstrumentedExecutors;
+import org.quartz.JobExecutionContext;
+import org.quartz.JobExecutionException;
+import org.quartz.Scheduler;
+import org.quartz.SchedulerException;
+import org.quartz.Trigger;
+import org.quartz.listeners.JobListenerSupport;
+import org.quartz.listeners.TriggerListenerSupport;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Exports the saturation of the Quartz thread pool with the same meters as
+ * {@link InstrumentedExecutors}. The time between the scheduled and the actual fire time
+ * is reported as queue time, misfired triggers as rejected tasks.
+ */
+@Component
+public class QuartzMetrics extends JobListenerSupport {
+
+    private static final String NAME = "quartz";
+
+    private final Timer idle;
+    private final Timer execution;
+
+    @Autowired
+    public QuartzMetrics(Scheduler scheduler, MeterRegistry registry) throws SchedulerException {
+        this.idle = Timer.builder("executor.idle").tag("name", NAME).register(registry);
+        this.execution = Timer.builder("executor").tag("name", NAME).register(registry);
+        final Counter rejected = InstrumentedExecutors.rejected(NAME, registry);
+
+        Gauge.builder("executor.active", scheduler, QuartzMetrics::currentlyExecutingJobs).tag("name", NAME).register(registry);
+        Gauge.builder("executor.pool.max", scheduler.getMetaData().getThreadPoolSize(), Integer::doubleValue).tag("name", NAME).register(registry);
+
+        scheduler.getListenerManager().addJobListener(this);
+        scheduler.getListenerManager().addTriggerListener(new TriggerListenerSupport() {
+            @Override
+            public String getName() {
+                return QuartzMetrics.class.getName();
+            }
+
+            @Override
+            public void triggerMisfired(Trigger trigger) {
+                rejected.increment();
+            }
+        });
+    }
+
+    @Override
+    public String getName() {
+        return QuartzMetrics.class.getName();
+    }
+
+    @Override
+    public void jobToBeExecuted(JobExecutionContext context) {
+        if (context.getScheduledFireTime() != null) {
+            idle.record(Math.max(0, context.getFireTime().getTime() - context.getScheduledFireTime().getTime()), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public void jobWasExecuted(JobExecutionContext context, JobExecutionException jobException) {
+        execution.record(context.getJobRunTime(), TimeUnit.MILLISECONDS);
+    }
+
+    private static double currentlyExecutingJobs(Scheduler scheduler) {
+        try {
+            return scheduler.getCurrentlyExecutingJobs().size();
+        } catch (SchedulerException e) {
+            return Double.NaN;
+        }
+    }
+}
@@ -29,44 +29,29 @@
  */
 package net.ripe.rpki.validator3.background;
 
-import lombok.Getter;
-import lombok.Setter;
-import net.ripe.rpki.validator3.domain.validation.RpkiRepositoryValidationService;
-import net.ripe.rpki.validator3.storage.data.RpkiRepository;
+import net.ripe.rpki.validator3.storage.xodus.XodusMaintenance;
 import org.quartz.DisallowConcurrentExecution;
 import org.quartz.Job;
-import org.quartz.JobBuilder;
-import org.quartz.JobDetail;
 import org.quartz.JobExecutionContext;
-import org.quartz.JobKey;
+import org.quartz.JobExecutionException;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 
 @DisallowConcurrentExecution
-public class RrdpRepositoryValidationJob implements Job {
-
-    private static final String RPKI_REPOSITORY_ID = "rpkiRepositoryId";
+class StorageMaintenanceJob implements Job {
 
+    /**
+     * Only present when the validator runs on Xodus storage.
+     */
     @Autowired
-    private RpkiRepositoryValidationService rpkiRepositoryValidationService;
-
-    @Getter
-    @Setter
-    private long rpkiRepositoryId;
+    private ObjectProvider<XodusMaintenance> xodusMaintenance;
 
     @Override
-    public void execute(JobExecutionContext context) {
-        rpkiRepositoryValidationService.validateRrdpRpkiRepository(rpkiRepositoryId);
-    }
-
-    static JobDetail buildJob(RpkiRepository rpkiRepository) {
-        return JobBuilder.newJob(RrdpRepositoryValidationJob.class)
-            .withIdentity(getJobKey(rpkiRepository))
-            .usingJobData(RPKI_REPOSITORY_ID, rpkiRepository.key().asLong())
-            .build();
-    }
-
-    static JobKey getJobKey(RpkiRepository rpkiRepository) {
-        return new JobKey(String.format("%s#%s#%d", rpkiRepository.getType(),
-                rpkiRepository.getRrdpNotifyUri(), rpkiRepository.key().asLong()));
+    public void execute(JobExecutionContext context) throws JobExecutionException {
+        try {
+            xodusMaintenance.ifAvailable(XodusMaintenance::run);
+        } catch (Exception e) {
+            throw new JobExecutionException(e);
+        }
     }
 }
@@ -0,0 +1,274 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2018 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.rpki.validator3.background;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Runs keyed actions on a fixed number of workers, not more often than a
+ * certain interval per key and most urgent first.
+ * <p>
+ * There is at most one pending action per key: triggering a key that is already
+ * waiting replaces its runnable, keeps the time of the first trigger and raises
+ * the priority if the new trigger is more urgent. Triggering a key that is
+ * currently running schedules one more run after the current one finishes. So
+ * the queue never holds more entries than there are keys, however often they
+ * are triggered.
+ * <p>
+ * Of all the actions that are due, workers pick the one with the most urgent
+ * priority, and the longest waiting one within the same priority. Only
+ * {@link Priority#MANUAL} triggers skip the minimum interval.
+ * <p>
+ * The queue owns its worker threads; {@link #close()} stops them.
+ */
+@Slf4j
+public class TriggerQueue<K> implements AutoCloseable {
+
+    public enum Priority {
+        /** Explicitly requested by an operator. */
+        MANUAL,
+        /** Trust anchor that has not been completely validated since it was added. */
+        PENDING,
+        /** Objects of the last validation run have expired in the meantime. */
+        EXPIRING,
+        /** Everything else, such as updated repositories. */
+        ROUTINE
+    }
+
+    private final long minIntervalMs;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+
+    /*
+     * All state below is guarded by the lock. `waiting` contains only the actions that
+     * can be picked up by a worker, i.e. not the ones queued behind a running action.
+     */
+    private final Map<K, KeyState> keys = new HashMap<>();
+    private final NavigableSet<Action> waiting = new TreeSet<>(
+        Comparator.<Action, Priority>comparing(a -> a.priority)
+            .thenComparingLong(a -> a.enqueuedAt)
+            .thenComparingLong(a -> a.sequence));
+    private long sequence;
+
+    private final Counter merged;
+    private final Map<Priority, Timer> latency = new EnumMap<>(Priority.class);
+
+    private final ExecutorService executor;
+
+    public TriggerQueue(String name, long minIntervalMs, int workers, MeterRegistry registry) {
+        this.minIntervalMs = minIntervalMs;
+
+        this.merged = Counter.builder("rpkivalidator.trigger.merged")
+            .description("Number of triggers merged into an already queued action")
+            .tag("queue", name)
+            .register(registry);
+        for (Priority priority : Priority.values()) {
+            latency.put(priority, Timer.builder("rpkivalidator.trigger.latency")
+                .description("Time between the first trigger and the start of the action")
+                .tag("queue", name)
+                .tag("priority", priority.name().toLowerCase())
+                .register(registry));
+        }
+        Gauge.builder("rpkivalidator.trigger.queued", this, TriggerQueue::queued)
+            .description("Number of actions waiting to be run")
+            .tag("queue", name)
+            .register(registry);
+
+        this.executor = Executors.newFixedThreadPool(workers,
+            new ThreadFactoryBuilder().setNameFormat(name + "-%d").setDaemon(true).build());
+        for (int i = 0; i < workers; i++) {
+            executor.execute(this::work);
+        }
+    }
+
+    public void trigger(K key, Priority priority, Runnable r) {
+        lock.lock();
+        try {
+            final long now = System.currentTimeMillis();
+            final KeyState state = keys.computeIfAbsent(key, k -> new KeyState());
+            final Action queued = state.queued;
+            if (queued == null) {
+                state.queued = new Action(key, priority, now, sequence++, r);
+                if (!state.running) {
+                    waiting.add(state.queued);
+                }
+            } else {
+                merged.increment();
+                final boolean isWaiting = waiting.remove(queued);
+                state.queued = queued.merge(priority, r);
+                if (isWaiting) {
+                    waiting.add(state.queued);
+                }
+            }
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Drops all queued actions and stops the workers. Actions that are running are interrupted.
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            waiting.clear();
+            keys.clear();
+        } finally {
+            lock.unlock();
+        }
+        executor.shutdownNow();
+    }
+
+    int queued() {
+        lock.lock();
+        try {
+            return (int) keys.values().stream().filter(s -> s.queued != null).count();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void work() {
+        while (!Thread.currentThread().isInterrupted()) {
+            final Action action;
+            try {
+                action = take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            latency.get(action.priority).record(System.currentTimeMillis() - action.enqueuedAt, TimeUnit.MILLISECONDS);
+            try {
+                action.runnable.run();
+            } catch (Exception e) {
+                log.error("Action for {} failed", action.key, e);
+            } finally {
+                finished(action.key);
+            }
+        }
+    }
+
+    private Action take() throws InterruptedException {
+        lock.lock();
+        try {
+            while (true) {
+                final long now = System.currentTimeMillis();
+                long nextDueAt = Long.MAX_VALUE;
+                for (Action action : waiting) {
+                    final KeyState state = keys.get(action.key);
+                    final long dueAt = action.priority == Priority.MANUAL ? now : state.lastStartedAt + minIntervalMs;
+                    if (dueAt <= now) {
+                        waiting.remove(action);
+                        state.queued = null;
+                        state.running = true;
+                        state.lastStartedAt = now;
+                        return action;
+                    }
+                    nextDueAt = Math.min(nextDueAt, dueAt);
+                }
+                if (nextDueAt == Long.MAX_VALUE) {
+                    changed.await();
+                } else {
+                    changed.await(nextDueAt - now, TimeUnit.MILLISECONDS);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void finished(K key) {
+        lock.lock();
+        try {
+            final KeyState state = keys.get(key);
+            if (state == null) {
+                // the queue was closed while the action was running
+                return;
+            }
+            state.running = false;
+            if (state.queued != null) {
+                waiting.add(state.queued);
+                changed.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private class KeyState {
+        // Start of the last execution, zero if it never ran.
+        long lastStartedAt;
+        boolean running;
+        // The next execution for this key, if any.
+        Action queued;
+    }
+
+    private class Action {
+        final K key;
+        final Priority priority;
+        // Time of the first trigger that was merged into this action.
+        final long enqueuedAt;
+        final long sequence;
+        final Runnable runnable;
+
+        Action(K key, Priority priority, long enqueuedAt, long sequence, Runnable runnable) {
+            this.key = key;
+            this.priority = priority;
+            this.enqueuedAt = enqueuedAt;
+            this.sequence = sequence;
+            this.runnable = runnable;
+        }
+
+        Action merge(Priority other, Runnable runnable) {
+            final Priority mostUrgent = other.compareTo(priority) < 0 ? other : priority;
+            return new Action(key, mostUrgent, enqueuedAt, sequence, runnable);
+        }
+    }
+}
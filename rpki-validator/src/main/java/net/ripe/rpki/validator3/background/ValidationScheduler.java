@@ -30,10 +30,12 @@
 package net.ripe.rpki.validator3.background;
 
 import com.google.common.base.Preconditions;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import net.ripe.rpki.validator3.api.ValidatorApi;
 import net.ripe.rpki.validator3.domain.validation.CertificateTreeValidationService;
+import net.ripe.rpki.validator3.domain.validation.RpkiRepositoryValidationService;
 import net.ripe.rpki.validator3.storage.data.Key;
 import net.ripe.rpki.validator3.storage.data.RpkiRepository;
 import net.ripe.rpki.validator3.storage.data.TrustAnchor;
@@ -49,6 +51,7 @@ import org.springframework.core.env.Profiles;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PreDestroy;
 import java.time.Duration;
 
 @Component
@@ -62,24 +65,36 @@ public class ValidationScheduler {
     @Getter
     private final Duration rrpdRepositoryDownloadInterval;
 
-    private final Throttled<Key> throttledTreeValidation;
+    private final PollingScheduler<Key> rrdpRepositoryPolling;
+
+    private final TriggerQueue<Key> treeValidationQueue;
 
     private boolean enabled = true;
 
     private final CertificateTreeValidationService validationService;
 
+    private final RpkiRepositoryValidationService repositoryValidationService;
+
     @Autowired
     public ValidationScheduler(Scheduler scheduler,
                                @Value("${rpki.validator.rsync.repository.download.interval:PT10M}") String rsyncRepositoryDownloadInterval,
                                @Value("${rpki.validator.rrdp.repository.download.interval:PT2M}") String rrpdRepositoryDownloadInterval,
+                               @Value("${rpki.validator.rrdp.repository.download.threads:16}") int rrdpRepositoryDownloadThreads,
+                               @Value("${rpki.validator.tree.validation.threads:0}") int treeValidationThreads,
                                @Lazy CertificateTreeValidationService validationService,
-                               Environment environment) {
+                               @Lazy RpkiRepositoryValidationService repositoryValidationService,
+                               Environment environment,
+                               MeterRegistry meterRegistry) {
         this.scheduler = scheduler;
         this.rsyncRepositoryDownloadInterval = Duration.parse(rsyncRepositoryDownloadInterval);
         this.rrpdRepositoryDownloadInterval = Duration.parse(rrpdRepositoryDownloadInterval);
         this.validationService = validationService;
+        this.repositoryValidationService = repositoryValidationService;
 
-        this.throttledTreeValidation = new Throttled<>(30_000);
+        this.rrdpRepositoryPolling = new PollingScheduler<>("rrdp-polling", Duration.ofSeconds(1),
+            rrdpRepositoryDownloadThreads, 0.1, meterRegistry);
+        this.treeValidationQueue = new TriggerQueue<>("tree-validation", 30_000,
+            treeValidationThreads > 0 ? treeValidationThreads : Runtime.getRuntime().availableProcessors(), meterRegistry);
 
         // Disable scheduling during tests
         if (environment.acceptsProfiles(Profiles.of("test"))) {
@@ -121,7 +136,7 @@ public class ValidationScheduler {
         }
     }
 
-    public synchronized void addRrdpRpkiRepository(RpkiRepository rpkiRepository) {
+    public void addRrdpRpkiRepository(RpkiRepository rpkiRepository) {
         if (!enabled) {
             return;
         }
@@ -133,20 +148,10 @@ public class ValidationScheduler {
             "rpkiRepository id %s is not valid",
             rpkiRepository.key()
         );
-        try {
-            if (!scheduler.checkExists(RrdpRepositoryValidationJob.getJobKey(rpkiRepository))) {
-                log.info("Adding repository to the scheduler {}", rpkiRepository);
-
-                scheduler.scheduleJob(
-                        RrdpRepositoryValidationJob.buildJob(rpkiRepository),
-                        TriggerBuilder.newTrigger()
-                                .startNow()
-                                .withSchedule(SimpleScheduleBuilder.repeatSecondlyForever((int)rrpdRepositoryDownloadInterval.getSeconds()))
-                                .build()
-                );
-            }
-        } catch (SchedulerException ex) {
-            throw new RuntimeException(ex);
+        final long id = rpkiRepository.key().asLong();
+        if (rrdpRepositoryPolling.scheduleAsync(rpkiRepository.key(), rrpdRepositoryDownloadInterval,
+                workers -> repositoryValidationService.validateRrdpRpkiRepository(id, workers))) {
+            log.info("Adding repository to the scheduler {}", rpkiRepository);
         }
     }
 
@@ -154,24 +159,26 @@ public class ValidationScheduler {
         if (!enabled) {
             return;
         }
-        try {
-            boolean jobDeleted = scheduler.deleteJob(RrdpRepositoryValidationJob.getJobKey(repository));
-            if (!jobDeleted) {
-                throw new EmptyResultDataAccessException("validation job for RPKI repository not found", 1);
-            }
-        } catch (SchedulerException ex) {
-            throw new RuntimeException(ex);
+        if (!rrdpRepositoryPolling.cancel(repository.key())) {
+            throw new EmptyResultDataAccessException("validation job for RPKI repository not found", 1);
         }
     }
 
     /**
      * Triggers certificate tree validation but throttles to avoid running too frequently.
+     * Trust anchors that have not been completely validated yet go before routine re-validations.
      */
     public void triggerCertificateTreeValidation(TrustAnchor trustAnchor) {
+        triggerCertificateTreeValidation(trustAnchor, trustAnchor.isInitialCertificateTreeValidationRunCompleted()
+            ? TriggerQueue.Priority.ROUTINE
+            : TriggerQueue.Priority.PENDING);
+    }
+
+    public void triggerCertificateTreeValidation(TrustAnchor trustAnchor, TriggerQueue.Priority priority) {
         if (!enabled) {
             return;
         }
-        throttledTreeValidation.trigger(trustAnchor.getId(), () -> {
+        treeValidationQueue.trigger(trustAnchor.getId(), priority, () -> {
             log.debug("Re-validating the CA tree for TA {}", trustAnchor.getName());
             validationService.validate(trustAnchor.getId().asLong());
         });
@@ -180,4 +187,11 @@ public class ValidationScheduler {
     public void disable() {
         this.enabled = false;
     }
+
+    @PreDestroy
+    public void stop() {
+        log.info("Stopping RRDP polling and certificate tree validation");
+        rrdpRepositoryPolling.close();
+        treeValidationQueue.close();
+    }
 }
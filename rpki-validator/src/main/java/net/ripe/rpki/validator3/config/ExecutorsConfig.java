@@ -0,0 +1,120 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2018 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.rpki.validator3.config;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import io.undertow.Undertow;
+import lombok.extern.slf4j.Slf4j;
+import net.ripe.rpki.validator3.util.ForkJoin;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.embedded.undertow.UndertowServletWebServerFactory;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.xnio.OptionMap;
+import org.xnio.Options;
+import org.xnio.Xnio;
+import org.xnio.XnioWorker;
+import org.xnio.management.XnioWorkerMXBean;
+
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Names and metrics for the thread pools that are not created by the validator itself. See
+ * {@link net.ripe.rpki.validator3.util.InstrumentedExecutors} for the meters.
+ */
+@Slf4j
+@Configuration
+public class ExecutorsConfig {
+
+    @Bean
+    public MeterBinder forkJoinPoolMetrics() {
+        return registry -> {
+            new ExecutorServiceMetrics(ForkJoinPool.commonPool(), "fork-join-common", Tags.empty()).bindTo(registry);
+
+            Gauge.builder("executor.active", ForkJoin::activeManagedBlockers)
+                .description("The number of blocking calls that run with a compensating thread in the common pool")
+                .tag("name", "fork-join-blocking")
+                .register(registry);
+            Gauge.builder("executor.pool.max", ForkJoin::maximumManagedBlockers)
+                .tag("name", "fork-join-blocking")
+                .register(registry);
+            FunctionCounter.builder("executor.rejected", ForkJoin.class, c -> ForkJoin.unmanagedBlockingCount())
+                .description("The number of blocking calls that ran without a compensating thread")
+                .tag("name", "fork-join-blocking")
+                .register(registry);
+        };
+    }
+
+    /**
+     * The worker of the embedded web server, created here instead of by Undertow so that it can be monitored.
+     * Undertow does not shut down a worker it was given, this bean's destroy method does.
+     */
+    @Bean(destroyMethod = "shutdown")
+    public XnioWorker undertowWorker(
+        @Value("${server.undertow.threads.io:#{T(java.lang.Math).max(T(java.lang.Runtime).getRuntime().availableProcessors(), 2)}}") int ioThreads,
+        @Value("${server.undertow.threads.worker:0}") int workerThreads
+    ) throws IOException {
+        final int taskThreads = workerThreads > 0 ? workerThreads : ioThreads * 8;
+        log.info("Undertow worker uses {} I/O threads and {} task threads", ioThreads, taskThreads);
+        return Xnio.getInstance(Undertow.class.getClassLoader()).createWorker(OptionMap.builder()
+            .set(Options.WORKER_NAME, "undertow")
+            .set(Options.WORKER_IO_THREADS, ioThreads)
+            .set(Options.WORKER_TASK_CORE_THREADS, taskThreads)
+            .set(Options.WORKER_TASK_MAX_THREADS, taskThreads)
+            // The remaining options are the ones Undertow uses for its own worker
+            .set(Options.CONNECTION_HIGH_WATER, 1000000)
+            .set(Options.CONNECTION_LOW_WATER, 1000000)
+            .set(Options.TCP_NODELAY, true)
+            .set(Options.CORK, true)
+            .getMap());
+    }
+
+    @Bean
+    public WebServerFactoryCustomizer<UndertowServletWebServerFactory> undertowWorkerCustomizer(XnioWorker undertowWorker) {
+        return factory -> factory.addBuilderCustomizers(builder -> builder.setWorker(undertowWorker));
+    }
+
+    @Bean
+    public MeterBinder undertowWorkerMetrics(XnioWorker undertowWorker) {
+        final XnioWorkerMXBean worker = undertowWorker.getMXBean();
+        return registry -> {
+            Gauge.builder("executor.active", worker, XnioWorkerMXBean::getBusyWorkerThreadCount).tag("name", "undertow").register(registry);
+            Gauge.builder("executor.queued", worker, XnioWorkerMXBean::getWorkerQueueSize).tag("name", "undertow").register(registry);
+            Gauge.builder("executor.pool.size", worker, XnioWorkerMXBean::getWorkerPoolSize).tag("name", "undertow").register(registry);
+            Gauge.builder("executor.pool.max", worker, XnioWorkerMXBean::getMaxWorkerPoolSize).tag("name", "undertow").register(registry);
+        };
+    }
+}
@@ -29,9 +29,11 @@
  */
 package net.ripe.rpki.validator3.config;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import net.ripe.rpki.validator3.api.util.BuildInformation;
 import net.ripe.rpki.validator3.util.HappyEyeballsResolver;
+import net.ripe.rpki.validator3.util.InstrumentedExecutors;
 import org.eclipse.jetty.client.HttpClient;
 import org.eclipse.jetty.client.HttpProxy;
 import org.eclipse.jetty.client.ProxyConfiguration;
@@ -59,19 +61,23 @@ public class HttpClientConfig {
     @Value("${rpki.validator.rrdp.trust.all.tls.certificates}")
     private boolean trustAllTlsCertificates;
 
+    @Value("${rpki.validator.http.client.threads:200}")
+    private int httpClientThreads;
+
     private HttpClient httpClientInstance;
 
 
 
     @Bean
     @Scope("singleton")
-    public HttpClient client(BuildInformation buildInformation) throws Exception {
+    public HttpClient client(BuildInformation buildInformation, MeterRegistry meterRegistry) throws Exception {
         if (trustAllTlsCertificates) {
             log.warn("All TLS certificates are being accepted: HTTPS is effectively disabled. This is **NOT** recommended.");
         }
 
         final SslContextFactory sslContextFactory = new SslContextFactory.Client(trustAllTlsCertificates);
         httpClientInstance = new HttpClient(sslContextFactory);
+        httpClientInstance.setExecutor(InstrumentedExecutors.newJettyThreadPool("http-client", httpClientThreads, meterRegistry));
         log.info("Trust all TLS certificates: {}, proxy host is {}, proxy port is {}", trustAllTlsCertificates, proxyHost, proxyPort);
         if (proxyHost != null && proxyPort != null) {
             ProxyConfiguration proxyConfig = httpClientInstance.getProxyConfiguration();
@@ -29,6 +29,9 @@
  */
 package net.ripe.rpki.validator3.domain.cleanup;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
 import net.ripe.rpki.validator3.api.util.InstantWithoutNanos;
 import net.ripe.rpki.validator3.storage.Storage;
@@ -41,6 +44,7 @@ import org.springframework.stereotype.Service;
 
 import java.time.Duration;
 import java.time.Instant;
+import java.util.concurrent.TimeUnit;
 
 @Service
 @Slf4j
@@ -53,18 +57,31 @@ public class RpkiObjectCleanupService {
 
     private final Storage storage;
 
+    private final Timer cleanupDuration;
+    private final Counter deletedObjects;
 
     public RpkiObjectCleanupService(@Value("${rpki.validator.rpki.object.cleanup.grace.duration}") String cleanupGraceDuration,
-                                    Storage storage) {
+                                    Storage storage,
+                                    MeterRegistry registry) {
         this.cleanupGraceDuration = Duration.parse(cleanupGraceDuration);
         log.info("Configured to remove objects older than {}", cleanupGraceDuration);
         this.storage = storage;
+        this.cleanupDuration = Timer.builder("rpkivalidator.cleanup.duration")
+                .description("Duration of the removal of RPKI objects that are no longer reachable")
+                .tag("type", "rpki_objects")
+                .register(registry);
+        this.deletedObjects = Counter.builder("rpkivalidator.cleanup.deleted")
+                .description("Number of RPKI objects removed because they are no longer reachable")
+                .tag("type", "rpki_objects")
+                .register(registry);
     }
 
     public long cleanupRpkiObjects() throws Exception {
         final InstantWithoutNanos unreachableSince = InstantWithoutNanos.now().minus(cleanupGraceDuration);
         final Pair<Long, Long> deleted = Time.timed(() -> rpkiObjects.deleteUnreachableObjects(unreachableSince));
         log.info("Removed {} RPKI objects that have not been marked reachable since {}, took {}ms", deleted.getLeft(), unreachableSince, deleted.getRight());
+        cleanupDuration.record(deleted.getRight(), TimeUnit.MILLISECONDS);
+        deletedObjects.increment(deleted.getLeft());
         storage.gc();
         return deleted.getLeft();
     }
@@ -65,8 +65,8 @@ public class ValidationRunCleanupService {
         InstantWithoutNanos completedBefore = InstantWithoutNanos.now().minus(cleanupGraceDuration);
         Long t = Time.timed(() -> {
             // Delete all validation runs older than `cleanupGraceDuration` that have a later validation run.
-            oldCount.set(storage.writeTx(tx -> validationRuns.removeOldValidationRuns(tx, completedBefore)));
-            orphanCount.set(storage.writeTx(tx -> validationRuns.removeOrphanValidationRunAssociations(tx)));
+            oldCount.set(validationRuns.removeOldValidationRuns(completedBefore));
+            orphanCount.set(validationRuns.removeOrphanValidationRunAssociations());
         });
         log.info("Removed {} old validation runs and {} orphans in {}ms", oldCount.get(), orphanCount.get(), t);
         storage.gc();
@@ -0,0 +1,206 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2018 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.rpki.validator3.domain.retrieval;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.net.URI;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps track of failing repository fetches, so that unreachable repositories do not
+ * tie up workers on every scheduled attempt.
+ * <p>
+ * A repository that failed is not attempted again until an exponentially growing,
+ * jittered delay has passed. When `breakerThreshold` fetches from the same host
+ * failed in a row the breaker for that host opens: all its repositories fail fast
+ * until the host delay has passed, after which a single probe is let through. The
+ * first successful fetch from a host closes its breaker and clears the delay of all
+ * its repositories. While the breaker is closed, a success only clears the delay of
+ * the repository itself.
+ */
+@Component
+@Slf4j
+public class FetchBackoff {
+
+    private final Clock clock;
+    private final Duration minDelay;
+    private final Duration maxDelay;
+    private final int breakerThreshold;
+
+    /* All state is guarded by `this`, fetches are far too infrequent for contention to matter. */
+    private final Map<String, Host> hosts = new HashMap<>();
+
+    private final Counter skippedBackoff;
+    private final Counter skippedBreaker;
+    private final Timer failedRrdp;
+    private final Timer failedRsync;
+
+    @Autowired
+    public FetchBackoff(@Value("${rpki.validator.fetch.backoff.min:PT1M}") String minDelay,
+                        @Value("${rpki.validator.fetch.backoff.max:PT1H}") String maxDelay,
+                        @Value("${rpki.validator.fetch.breaker.threshold:3}") int breakerThreshold,
+                        MeterRegistry registry) {
+        this(Clock.systemUTC(), Duration.parse(minDelay), Duration.parse(maxDelay), breakerThreshold, registry);
+    }
+
+    FetchBackoff(Clock clock, Duration minDelay, Duration maxDelay, int breakerThreshold, MeterRegistry registry) {
+        this.clock = clock;
+        this.minDelay = minDelay;
+        this.maxDelay = maxDelay;
+        this.breakerThreshold = breakerThreshold;
+
+        this.skippedBackoff = skippedCounter(registry, "backoff");
+        this.skippedBreaker = skippedCounter(registry, "breaker");
+        this.failedRrdp = failedTimer(registry, "rrdp");
+        this.failedRsync = failedTimer(registry, "rsync");
+        Gauge.builder("rpkivalidator.fetch.breakers.open", this, FetchBackoff::openBreakers)
+            .description("Number of hosts for which fetches currently fail fast")
+            .register(registry);
+    }
+
+    /**
+     * @return false if the repository should not be fetched now. Every attempt that is
+     * allowed must be reported with {@link #succeeded(String)} or {@link #failed(String, long)}.
+     */
+    public synchronized boolean shouldAttempt(String uri) {
+        final Instant now = clock.instant();
+        final Host host = hosts.get(hostOf(uri));
+        if (host == null) {
+            return true;
+        }
+        final Instant repositoryNextAttempt = host.repositories.get(uri);
+        if (repositoryNextAttempt != null && now.isBefore(repositoryNextAttempt)) {
+            skippedBackoff.increment();
+            return false;
+        }
+        if (host.failures < breakerThreshold) {
+            return true;
+        }
+        // Half-open: let a single probe through, unless the previous one never reported back.
+        if (now.isBefore(host.nextAttempt) || (host.probingSince != null && now.isBefore(host.probingSince.plus(maxDelay)))) {
+            skippedBreaker.increment();
+            return false;
+        }
+        host.probingSince = now;
+        return true;
+    }
+
+    public synchronized void succeeded(String uri) {
+        final String hostName = hostOf(uri);
+        final Host host = hosts.get(hostName);
+        if (host == null) {
+            return;
+        }
+        if (host.failures >= breakerThreshold) {
+            log.info("Host of {} is reachable again, closing its breaker", uri);
+            hosts.remove(hostName);
+            return;
+        }
+        host.failures = 0;
+        host.repositoryFailures.remove(uri);
+        host.repositories.remove(uri);
+        if (host.repositories.isEmpty()) {
+            hosts.remove(hostName);
+        }
+    }
+
+    public synchronized void failed(String uri, long durationMs) {
+        (uri.startsWith("rsync:") ? failedRsync : failedRrdp).record(durationMs, TimeUnit.MILLISECONDS);
+
+        final Instant now = clock.instant();
+        final Host host = hosts.computeIfAbsent(hostOf(uri), h -> new Host());
+        host.probingSince = null;
+        host.failures++;
+        if (host.failures >= breakerThreshold) {
+            host.nextAttempt = now.plus(delay(host.failures - breakerThreshold + 1));
+            if (host.failures == breakerThreshold) {
+                log.warn("Fetching from the host of {} failed {} times in a row, opening its breaker", uri, host.failures);
+            }
+        }
+        final int repositoryFailures = host.repositoryFailures.merge(uri, 1, Integer::sum);
+        host.repositories.put(uri, now.plus(delay(repositoryFailures)));
+    }
+
+    synchronized int openBreakers() {
+        return (int) hosts.values().stream().filter(h -> h.failures >= breakerThreshold).count();
+    }
+
+    /**
+     * Exponential in the number of failures, capped at `maxDelay` and randomised between
+     * half and the full value so that repositories that failed together do not retry together.
+     */
+    private Duration delay(int failures) {
+        final long exponential = minDelay.toMillis() << Math.min(failures - 1, 30);
+        final long capped = Math.min(exponential < 0 ? Long.MAX_VALUE : exponential, maxDelay.toMillis());
+        return Duration.ofMillis(capped / 2 + ThreadLocalRandom.current().nextLong(capped / 2 + 1));
+    }
+
+    private static String hostOf(String uri) {
+        final String authority = URI.create(uri).getAuthority();
+        return authority == null ? uri : authority.toLowerCase();
+    }
+
+    private static Counter skippedCounter(MeterRegistry registry, String reason) {
+        return Counter.builder("rpkivalidator.fetch.skipped")
+            .description("Number of repository fetches skipped because of earlier failures")
+            .tag("reason", reason)
+            .register(registry);
+    }
+
+    private static Timer failedTimer(MeterRegistry registry, String protocol) {
+        return Timer.builder("rpkivalidator.fetch.failed.duration")
+            .description("Time spent on repository fetches that failed")
+            .tag("protocol", protocol)
+            .register(registry);
+    }
+
+    private static class Host {
+        // Consecutive failures of any repository on this host.
+        int failures;
+        Instant nextAttempt = Instant.MIN;
+        Instant probingSince;
+        final Map<String, Integer> repositoryFailures = new HashMap<>();
+        final Map<String, Instant> repositories = new HashMap<>();
+    }
+}
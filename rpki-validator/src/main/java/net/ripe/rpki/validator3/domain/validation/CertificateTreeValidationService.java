@@ -50,6 +50,7 @@ import net.ripe.rpki.validator3.domain.metrics.TrustAnchorMetricsService;
 import net.ripe.rpki.validator3.domain.validation.ValidatedRpkiObjects.Accumulator;
 import net.ripe.rpki.validator3.domain.validation.ValidatedRpkiObjects.TrustAnchorData;
 import net.ripe.rpki.validator3.storage.Storage;
+import net.ripe.rpki.validator3.storage.StorageLoad;
 import net.ripe.rpki.validator3.storage.Tx;
 import net.ripe.rpki.validator3.storage.data.Key;
 import net.ripe.rpki.validator3.storage.data.Ref;
@@ -112,6 +113,7 @@ public class CertificateTreeValidationService {
     private final TrustAnchors trustAnchors;
     private final Storage storage;
     private final ValidatedRpkiObjects validatedRpkiObjects;
+    private final StorageLoad storageLoad;
 
     @Autowired
     public CertificateTreeValidationService(RpkiObjects rpkiObjects,
@@ -123,7 +125,8 @@ public class CertificateTreeValidationService {
                                             ValidatedRpkiObjects validatedRpkiObjects,
                                             Storage storage,
                                             TrustAnchorMetricsService taMetricsService,
-                                            ValidationConfig validationConfig) {
+                                            ValidationConfig validationConfig,
+                                            StorageLoad storageLoad) {
         this.rpkiObjects = rpkiObjects;
         this.rpkiRepositories = rpkiRepositories;
         this.settings = settings;
@@ -134,7 +137,7 @@ public class CertificateTreeValidationService {
         this.storage = storage;
         this.taMetricsService = taMetricsService;
         this.validationConfig = validationConfig;
-
+        this.storageLoad = storageLoad;
     }
 
     /** Log at INFO when below threshold, log at WARN when above */
@@ -158,7 +161,8 @@ public class CertificateTreeValidationService {
         Optional<TrustAnchor> maybeTrustAnchor = storage.readTx(tx -> trustAnchors.get(tx, Key.of(trustAnchorId)));
         if (maybeTrustAnchor.isPresent()) {
             final TrustAnchor trustAnchor = maybeTrustAnchor.get();
-            Bench.mark0("validateTa " + trustAnchor.getName(), () -> validateTa(trustAnchor));
+            storageLoad.during(() ->
+                Bench.mark0("validateTa " + trustAnchor.getName(), () -> validateTa(trustAnchor)));
         } else {
             log.error("Couldn't find trust anchor {}", trustAnchorId);
         }
@@ -176,6 +180,7 @@ public class CertificateTreeValidationService {
         String trustAnchorLocation = trustAnchor.getLocations().get(0);
         ValidationResult validations = ValidationResult.withLocation(trustAnchorLocation).withoutStoringPassingChecks();
 
+        boolean publishTaObjects = false;
         try {
             X509ResourceCertificate trustAnchorCertificate = trustAnchor.getCertificate();
             validations.rejectIfNull(trustAnchorCertificate, VALIDATOR_TRUST_ANCHOR_CERTIFICATE_AVAILABLE);
@@ -218,31 +223,37 @@ public class CertificateTreeValidationService {
                 log.warn("TA {} does not contain any valid, non-expired objects", trustAnchor.getName());
             }
 
-            storage.writeTx0(tx -> {
-                validationRuns.add(tx, validationRun);
-                Long t = Time.timed(() -> accumulator.forEach(key -> validationRuns.associateRpkiObjectKey(tx, validationRun, key)));
-                logForDuration("Associated {} objects with the validation run {} in {}ms", accumulator.size(), validationRun.key(), t);
+            // The run is stored as running and only published by completing it in the finally block, so the
+            // associations and reachability can be written in separate transactions without a long write lock.
+            storage.writeTx0(tx -> validationRuns.add(tx, validationRun));
 
-                markTaObjectsReachable(tx, trustAnchorCertificate);
+            Long t = Time.timed(() -> storage.writeTx0(tx -> validationRuns.associateRpkiObjectKeys(tx, validationRun, accumulator.getKeys())));
+            logForDuration("Associated {} objects with the validation run {} in {}ms", accumulator.size(), validationRun.key(), t);
 
-                Long tmr = Time.timed(() -> rpkiObjects.markReachable(tx, accumulator.getKeys()));
-                logForDuration("Marked {} objects as reachable in {}ms", accumulator.size(), tmr);
+            Long tmr = Time.timed(() -> rpkiObjects.markReachable(accumulator.getKeys()));
+            logForDuration("Marked {} objects as reachable in {}ms", accumulator.size(), tmr);
 
-                if (isValidationRunCompleted(validations)) {
-                    trustAnchor.markInitialCertificateTreeValidationRunCompleted();
-                    trustAnchors.update(tx, trustAnchor);
-                    if (!settings.isInitialValidationRunCompleted(tx) && trustAnchors.allInitialCertificateTreeValidationRunsCompleted(tx)) {
-                        settings.markInitialValidationRunCompleted(tx);
-                        log.info("All trust anchors have completed their initial certificate tree validation run, validator is now ready");
-                    }
-                }
-            });
+            publishTaObjects = true;
             if (!accumulator.isEmpty()) {
-                validatedRpkiObjects.updateByKey(trustAnchorRef, accumulator);
+                validatedRpkiObjects.update(trustAnchor, accumulator);
             }
         } finally {
             validationRun.completeWith(validations);
-            storage.writeTx0(tx -> validationRuns.update(tx, validationRun));
+            final boolean markTaObjects = publishTaObjects;
+            storage.writeTx0(tx -> {
+                if (markTaObjects) {
+                    markTaObjectsReachable(tx, trustAnchor.getCertificate());
+                    if (isValidationRunCompleted(validations)) {
+                        trustAnchor.markInitialCertificateTreeValidationRunCompleted();
+                        trustAnchors.update(tx, trustAnchor);
+                        if (!settings.isInitialValidationRunCompleted(tx) && trustAnchors.allInitialCertificateTreeValidationRunsCompleted(tx)) {
+                            settings.markInitialValidationRunCompleted(tx);
+                            log.info("All trust anchors have completed their initial certificate tree validation run, validator is now ready");
+                        }
+                    }
+                }
+                validationRuns.update(tx, validationRun);
+            });
             long delta = System.currentTimeMillis() - begin;
             logForDuration("Tree validation {} for {} in {}ms", validationRun.getStatus().toString().toLowerCase(), trustAnchor.getName(), delta);
             taMetricsService.update(trustAnchor, validationRun, delta);
@@ -250,16 +261,16 @@ public class CertificateTreeValidationService {
     }
 
     private void markTaObjectsReachable(Tx.Write tx, X509ResourceCertificate taCertificate) {
-        final InstantWithoutNanos now = InstantWithoutNanos.now();
         rpkiObjects.findLatestMftByAKI(tx, taCertificate.getSubjectKeyIdentifier())
             .ifPresent(manifest -> {
-                rpkiObjects.markReachable(tx, manifest.key(), now);
+                final List<Key> reachable = new ArrayList<>();
+                reachable.add(manifest.key());
                 manifest.get(ManifestCms.class, newValidationResult("ta-manifest.mft"))
                     .ifPresent(manifestCms ->
                         rpkiObjects.findObjectsInManifest(tx, manifestCms)
-                            .forEach((entry, rpkiObject) ->
-                                rpkiObjects.markReachable(tx, rpkiObject.key(), now))
+                            .forEach((entry, rpkiObject) -> reachable.add(rpkiObject.key()))
                     );
+                rpkiObjects.markReachable(tx, reachable);
             });
     }
 
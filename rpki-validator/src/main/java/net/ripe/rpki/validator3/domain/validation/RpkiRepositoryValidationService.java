@@ -39,8 +39,11 @@ import net.ripe.rpki.validator3.background.ValidationScheduler;
 import net.ripe.rpki.validator3.domain.ErrorCodes;
 import net.ripe.rpki.validator3.domain.RpkiObjectUtils;
 import net.ripe.rpki.validator3.domain.metrics.RsyncMetricsService;
+import net.ripe.rpki.validator3.domain.retrieval.FetchBackoff;
+import net.ripe.rpki.validator3.rrdp.RrdpDownloadException;
 import net.ripe.rpki.validator3.rrdp.RrdpService;
 import net.ripe.rpki.validator3.storage.Storage;
+import net.ripe.rpki.validator3.storage.StorageLoad;
 import net.ripe.rpki.validator3.storage.Tx;
 import net.ripe.rpki.validator3.storage.data.Key;
 import net.ripe.rpki.validator3.storage.data.Ref;
@@ -54,6 +57,7 @@ import net.ripe.rpki.validator3.storage.stores.RpkiObjects;
 import net.ripe.rpki.validator3.storage.stores.RpkiRepositories;
 import net.ripe.rpki.validator3.storage.stores.TrustAnchors;
 import net.ripe.rpki.validator3.storage.stores.ValidationRuns;
+import net.ripe.rpki.validator3.util.Futures;
 import net.ripe.rpki.validator3.util.Hex;
 import net.ripe.rpki.validator3.util.Rsync;
 import net.ripe.rpki.validator3.util.RsyncFactory;
@@ -81,6 +85,8 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
@@ -108,6 +114,8 @@ public class RpkiRepositoryValidationService {
     private final RsyncFactory rsyncFactory;
 
     private final RsyncMetricsService rsyncMetrics;
+    private final StorageLoad storageLoad;
+    private final FetchBackoff fetchBackoff;
 
     @Autowired
     public RpkiRepositoryValidationService(
@@ -118,7 +126,9 @@ public class RpkiRepositoryValidationService {
             TrustAnchors trustAnchors,
             Storage storage,
             @Value("${rpki.validator.rsync.local.storage.directory}") File rsyncLocalStorageDirectory,
-            ValidationScheduler validationScheduler, RsyncFactory rsyncFactory, RsyncMetricsService rsyncMetrics) {
+            ValidationScheduler validationScheduler, RsyncFactory rsyncFactory, RsyncMetricsService rsyncMetrics,
+            StorageLoad storageLoad,
+            FetchBackoff fetchBackoff) {
         this.validationRuns = validationRuns;
         this.rpkiRepositories = rpkiRepositories;
         this.rpkiObjects = rpkiObjects;
@@ -129,14 +139,28 @@ public class RpkiRepositoryValidationService {
         this.validationScheduler = validationScheduler;
         this.rsyncFactory = rsyncFactory;
         this.rsyncMetrics = rsyncMetrics;
+        this.storageLoad = storageLoad;
+        this.fetchBackoff = fetchBackoff;
     }
 
-    public void validateRrdpRpkiRepository(long rpkiRepositoryId) {
+    /**
+     * Fetches and stores the RRDP repository. The downloads do not tie up a thread, everything
+     * else runs on the executor.
+     */
+    public CompletableFuture<Void> validateRrdpRpkiRepository(long rpkiRepositoryId, Executor executor) {
+        return storageLoad.duringAsync(() -> doValidateRrdpRpkiRepository(rpkiRepositoryId, executor));
+    }
+
+    private CompletableFuture<Void> doValidateRrdpRpkiRepository(long rpkiRepositoryId, Executor executor) {
         final Key key = Key.of(rpkiRepositoryId);
         final RpkiRepository rpkiRepository = storage.readTx(tx -> rpkiRepositories.get(tx, key).orElse(null));
         if (rpkiRepository == null) {
             log.info("RPKI repository with key {} doesn't exist ", rpkiRepositoryId);
-            return;
+            return CompletableFuture.completedFuture(null);
+        }
+        if (!fetchBackoff.shouldAttempt(rpkiRepository.getRrdpNotifyUri())) {
+            log.info("Skipping RPKI repository {} after earlier failures", rpkiRepository);
+            return CompletableFuture.completedFuture(null);
         }
         log.info("Starting RPKI repository validation for " + rpkiRepository);
         final ValidationResult validationResult = newValidationResult(rpkiRepository.getRrdpNotifyUri());
@@ -148,47 +172,71 @@ public class RpkiRepositoryValidationService {
             return newVR;
         });
 
-        boolean triggerCaTreeAfter = false;
+        final long started = System.currentTimeMillis();
+        CompletableFuture<Boolean> stored;
         try {
             final String uri = rpkiRepository.getRrdpNotifyUri();
             if (isRrdpUri(uri)) {
-                boolean changedAtLeastOneObject = rrdpService.storeRepository(rpkiRepository, validationRun);
-
-                triggerCaTreeAfter = changedAtLeastOneObject || rpkiRepository.isPending();
-                if (validationRun.isFailed()) {
-                    rpkiRepository.setFailed();
+                stored = rrdpService.storeRepository(rpkiRepository, validationRun, executor).thenApply(changedAtLeastOneObject -> {
+                    final boolean triggerCaTreeAfter = changedAtLeastOneObject || rpkiRepository.isPending();
+                    if (validationRun.isFailed()) {
+                        rpkiRepository.setFailed();
+                    } else {
+                        rpkiRepository.setDownloaded();
+                    }
+                    return triggerCaTreeAfter;
+                });
+            } else {
+                if (isRsyncUri(uri)) {
+                    validationResult.error("rsync.repository.not.supported");
                 } else {
-                    rpkiRepository.setDownloaded();
+                    log.error("Unsupported type of the URI " + uri);
                 }
-            } else if (isRsyncUri(uri)) {
-                validationResult.error("rsync.repository.not.supported");
-            } else {
-                log.error("Unsupported type of the URI " + uri);
+                stored = CompletableFuture.completedFuture(false);
             }
+        } catch (Exception e) {
+            stored = Futures.failed(e);
+        }
 
-            if (validationResult.hasFailures()) {
+        return stored.handleAsync((triggerCaTreeAfter, failure) -> {
+            // Only failed transfers count towards backing off, content that fails to validate or
+            // store is fetched again on the next attempt
+            final boolean downloadFailed = failure != null && Futures.unwrap(failure) instanceof RrdpDownloadException;
+            if (downloadFailed) {
+                rpkiRepository.setFailed();
+            } else if (failure != null) {
+                log.error("Error validating repository " + rpkiRepository, failure);
+                validationRun.setFailed();
+            } else if (validationResult.hasFailures()) {
                 validationRun.setFailed();
             } else {
                 validationRun.setSucceeded();
             }
-        } catch (Exception e) {
-            log.error("Error validating repository " + rpkiRepository, e);
-            validationRun.setFailed();
-        } finally {
+
+            if (downloadFailed) {
+                fetchBackoff.failed(rpkiRepository.getRrdpNotifyUri(), System.currentTimeMillis() - started);
+            } else {
+                fetchBackoff.succeeded(rpkiRepository.getRrdpNotifyUri());
+            }
             storage.writeTx0(tx -> {
                 rpkiRepositories.update(tx, rpkiRepository);
                 validationRuns.update(tx, validationRun);
             });
-            if (triggerCaTreeAfter) {
+            if (failure == null && triggerCaTreeAfter) {
                 storage.readTx0(tx ->
                     rpkiRepository.getTrustAnchors().keySet().forEach(taRef ->
                         trustAnchors.get(tx, taRef.key())
                             .ifPresent(validationScheduler::triggerCertificateTreeValidation)));
             }
-        }
+            return null;
+        }, executor);
     }
 
     public void validateRsyncRepositories() {
+        storageLoad.during(this::doValidateRsyncRepositories);
+    }
+
+    private void doValidateRsyncRepositories() {
         InstantWithoutNanos cutoffTime = InstantWithoutNanos.now().minus(validationScheduler.getRsyncRepositoryDownloadInterval());
         log.info("updating all rsync repositories that have not been downloaded since {}", cutoffTime);
 
@@ -234,7 +282,8 @@ public class RpkiRepositoryValidationService {
 
     Set<TrustAnchor> prefetchRepository(RpkiRepository repository) {
         final Set<TrustAnchor> affectedTrustAnchors = new HashSet<>();
-        if (repository.isPending() && repository.getType() == RpkiRepository.Type.RSYNC_PREFETCH) {
+        if (repository.isPending() && repository.getType() == RpkiRepository.Type.RSYNC_PREFETCH
+                && fetchBackoff.shouldAttempt(repository.getRsyncRepositoryUri())) {
             log.info("Processing rsync-prefetch repository {}", repository);
 
             final RsyncRepositoryValidationRun validationRun = makeAndStoreRsyncValidationRun();
@@ -282,6 +331,10 @@ public class RpkiRepositoryValidationService {
 
             RpkiRepository parentRepository = findDownloadedParentRepository(fetchedLocations, repository);
             if (parentRepository == null) {
+                if (!fetchBackoff.shouldAttempt(repository.getRsyncRepositoryUri())) {
+                    log.info("Skipping rsync repository {} after earlier failures", repository.getLocationUri());
+                    return validationResult;
+                }
                 fetchRsyncRepository(repository, targetDirectory, validationResult);
                 if (validationResult.hasFailureForCurrentLocation()) {
                     return validationResult;
@@ -471,6 +524,11 @@ public class RpkiRepositoryValidationService {
         int exitStatus = timed.getLeft();
 
         rsyncMetrics.update(rpkiRepository.getLocationUri(), exitStatus, timed.getRight());
+        if (exitStatus == 0) {
+            fetchBackoff.succeeded(rpkiRepository.getRsyncRepositoryUri());
+        } else {
+            fetchBackoff.failed(rpkiRepository.getRsyncRepositoryUri(), timed.getRight());
+        }
 
         validationResult.rejectIfTrue(exitStatus != 0, ErrorCodes.RSYNC_FETCH, String.valueOf(exitStatus), ArrayUtils.toString(rsync.getErrorLines()));
         if (validationResult.hasFailureForCurrentLocation()) {
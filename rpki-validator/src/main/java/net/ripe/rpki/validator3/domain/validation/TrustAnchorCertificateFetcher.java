@@ -0,0 +1,269 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2018 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.rpki.validator3.domain.validation;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import net.ripe.rpki.commons.crypto.CertificateRepositoryObject;
+import net.ripe.rpki.commons.crypto.util.CertificateRepositoryObjectFactory;
+import net.ripe.rpki.commons.crypto.x509cert.X509CertificateUtil;
+import net.ripe.rpki.commons.crypto.x509cert.X509ResourceCertificate;
+import net.ripe.rpki.commons.validation.ValidationLocation;
+import net.ripe.rpki.commons.validation.ValidationResult;
+import net.ripe.rpki.validator3.domain.ErrorCodes;
+import net.ripe.rpki.validator3.domain.retrieval.TrustAnchorRetrievalService;
+import net.ripe.rpki.validator3.storage.data.Key;
+import net.ripe.rpki.validator3.storage.data.RpkiObject;
+import net.ripe.rpki.validator3.storage.data.TrustAnchor;
+import net.ripe.rpki.validator3.util.InstrumentedExecutors;
+import org.jooq.lambda.tuple.Tuple2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.net.URI;
+import java.security.GeneralSecurityException;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static net.ripe.rpki.validator3.domain.RpkiObjectUtils.newValidationResult;
+
+/**
+ * Fetches the certificate of a trust anchor from the first of its locations that answers.
+ * <p>
+ * Locations are tried in order of their observed latency, and in order of preference for locations
+ * without one. When a location does not answer within the hedge delay the next location is started
+ * as well, and when it fails the next location is started right away. An attempt only succeeds with
+ * a certificate that matches the public key of the trust anchor locator, the first one wins and the
+ * remaining attempts are cancelled.
+ */
+@Component
+@Slf4j
+public class TrustAnchorCertificateFetcher {
+
+    /**
+     * Weight of the latest sample in the moving average of the latency of a location.
+     */
+    private static final double LATENCY_WEIGHT = 0.3;
+
+    private final TrustAnchorRetrievalService retrievalService;
+    private final long hedgeDelayMs;
+    private final ExecutorService executor;
+    private final MeterRegistry registry;
+
+    /**
+     * Moving average of the latency in milliseconds per trust anchor and location. A failure counts
+     * as at least ten times the hedge delay, so that failing locations are tried after working ones.
+     */
+    private final Map<Key, Map<URI, Double>> latencies = new ConcurrentHashMap<>();
+
+    @Autowired
+    public TrustAnchorCertificateFetcher(TrustAnchorRetrievalService retrievalService,
+                                         @Value("${rpki.validator.trust.anchor.fetch.hedge.delay:PT5S}") String hedgeDelay,
+                                         MeterRegistry registry) {
+        this(retrievalService, Duration.parse(hedgeDelay),
+            InstrumentedExecutors.newFixedThreadPool("trust-anchor-fetch", 16, registry), registry);
+    }
+
+    TrustAnchorCertificateFetcher(TrustAnchorRetrievalService retrievalService, Duration hedgeDelay,
+                                  ExecutorService executor, MeterRegistry registry) {
+        this.retrievalService = retrievalService;
+        this.hedgeDelayMs = hedgeDelay.toMillis();
+        this.executor = executor;
+        this.registry = registry;
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * @return (URI of certificate, certificate). The checks of all completed attempts are added to
+     * the validation result, and its current location is the location of the certificate.
+     */
+    public Optional<Tuple2<URI, X509ResourceCertificate>> fetch(TrustAnchor trustAnchor, ValidationResult validationResult) {
+        final ValidationLocation initialLocation = validationResult.getCurrentLocation();
+        final List<URI> locations = locationsByLatency(trustAnchor);
+        final CompletionService<X509ResourceCertificate> completion = new ExecutorCompletionService<>(executor);
+        final Map<Future<X509ResourceCertificate>, Attempt> pending = new HashMap<>();
+
+        int next = 0;
+        try {
+            while (next < locations.size() || !pending.isEmpty()) {
+                if (pending.isEmpty()) {
+                    start(completion, pending, trustAnchor, locations.get(next++));
+                }
+                final Future<X509ResourceCertificate> done = next < locations.size()
+                    ? completion.poll(hedgeDelayMs, TimeUnit.MILLISECONDS)
+                    : completion.take();
+                if (done == null) {
+                    log.info("No answer for trust anchor {} within {}ms, also trying {}", trustAnchor.getName(), hedgeDelayMs, locations.get(next));
+                    start(completion, pending, trustAnchor, locations.get(next++));
+                    continue;
+                }
+
+                final Attempt attempt = pending.remove(done);
+                final X509ResourceCertificate certificate = attempt.complete(done);
+                record(trustAnchor, attempt, certificate == null ? "failure" : "success");
+                validationResult.addAll(attempt.result);
+                if (certificate != null) {
+                    validationResult.setLocation(new ValidationLocation(attempt.uri));
+                    return Optional.of(new Tuple2<>(attempt.uri, certificate));
+                }
+                if (next < locations.size()) {
+                    start(completion, pending, trustAnchor, locations.get(next++));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            pending.forEach((future, attempt) -> {
+                future.cancel(true);
+                record(trustAnchor, attempt, "cancelled");
+            });
+        }
+
+        validationResult.setLocation(initialLocation);
+        return Optional.empty();
+    }
+
+    List<URI> locationsByLatency(TrustAnchor trustAnchor) {
+        final Map<URI, Double> known = trustAnchor.key() == null ? Collections.emptyMap() : latencies.getOrDefault(trustAnchor.key(), Collections.emptyMap());
+        return trustAnchor.getLocationsByPreference().stream()
+            .sorted(Comparator.comparingDouble(uri -> known.getOrDefault(uri, Double.MAX_VALUE)))
+            .collect(Collectors.toList());
+    }
+
+    private void start(CompletionService<X509ResourceCertificate> completion, Map<Future<X509ResourceCertificate>, Attempt> pending,
+                       TrustAnchor trustAnchor, URI uri) {
+        final Attempt attempt = new Attempt(uri);
+        pending.put(completion.submit(() -> {
+            final byte[] encoded = retrievalService.fetchTrustAnchorCertificate(uri, attempt.result);
+            return encoded == null ? null : parseCertificate(trustAnchor, encoded, uri, attempt.result);
+        }), attempt);
+    }
+
+    /**
+     * @return the certificate if it matches the trust anchor locator, otherwise <code>null</code> with the
+     * reason in the validation result.
+     */
+    private static X509ResourceCertificate parseCertificate(TrustAnchor trustAnchor, byte[] certificateData, URI trustAnchorCertificateURI, ValidationResult validationResult) {
+        // We provide the certificate uri because it can be one of multiple and the rsync prefetch
+        // uri can not be used since it can be null.
+        assert trustAnchor.getLocationsByPreference().contains(trustAnchorCertificateURI);
+
+        final long trustAnchorCertificateSize = certificateData.length;
+        validationResult.rejectIfTrue(trustAnchorCertificateSize < RpkiObject.MIN_SIZE, ErrorCodes.REPOSITORY_OBJECT_MINIMUM_SIZE,
+            trustAnchorCertificateURI.toASCIIString(), String.valueOf(trustAnchorCertificateSize), String.valueOf(RpkiObject.MIN_SIZE));
+        validationResult.rejectIfTrue(trustAnchorCertificateSize > RpkiObject.MAX_SIZE, ErrorCodes.REPOSITORY_OBJECT_MAXIMUM_SIZE,
+            trustAnchorCertificateURI.toASCIIString(), String.valueOf(trustAnchorCertificateSize), String.valueOf(RpkiObject.MAX_SIZE));
+        if (validationResult.hasFailureForCurrentLocation()) {
+            return null;
+        }
+
+        CertificateRepositoryObject trustAnchorCertificate = CertificateRepositoryObjectFactory.createCertificateRepositoryObject(certificateData, validationResult);
+        validationResult.rejectIfFalse(trustAnchorCertificate instanceof X509ResourceCertificate, ErrorCodes.REPOSITORY_OBJECT_IS_TRUST_ANCHOR_CERTIFICATE, trustAnchorCertificateURI.toASCIIString());
+        if (validationResult.hasFailureForCurrentLocation()) {
+            return null;
+        }
+
+        X509ResourceCertificate certificate = (X509ResourceCertificate) trustAnchorCertificate;
+
+        String encodedSubjectPublicKeyInfo = X509CertificateUtil.getEncodedSubjectPublicKeyInfo(certificate.getCertificate());
+        validationResult.rejectIfFalse(encodedSubjectPublicKeyInfo.equals(trustAnchor.getSubjectPublicKeyInfo()), "trust.anchor.subject.key.matches.locator");
+
+        boolean signatureValid;
+        try {
+            certificate.getCertificate().verify(certificate.getPublicKey());
+            signatureValid = true;
+        } catch (GeneralSecurityException e) {
+            signatureValid = false;
+        }
+
+        validationResult.rejectIfFalse(signatureValid, ErrorCodes.TRUST_ANCHOR_SIGNATURE, trustAnchorCertificateURI.toASCIIString(), trustAnchor.getSubjectPublicKeyInfo());
+
+        return validationResult.hasFailureForCurrentLocation() ? null : certificate;
+    }
+
+    private void record(TrustAnchor trustAnchor, Attempt attempt, String outcome) {
+        final long elapsedMs = System.currentTimeMillis() - attempt.startedAt;
+        Timer.builder("rpkivalidator.trust.anchor.fetch.duration")
+            .description("Time to retrieve a trust anchor certificate from one of its locations")
+            .tag("location", attempt.uri.toASCIIString())
+            .tag("outcome", outcome)
+            .register(registry)
+            .record(elapsedMs, TimeUnit.MILLISECONDS);
+
+        if (trustAnchor.key() != null) {
+            // A cancelled attempt was slower than the winner, so its elapsed time is a lower bound of its latency
+            final double sample = "failure".equals(outcome) ? Math.max(elapsedMs, 10 * hedgeDelayMs) : elapsedMs;
+            latencies.computeIfAbsent(trustAnchor.key(), k -> new ConcurrentHashMap<>())
+                .merge(attempt.uri, sample, (average, s) -> average + LATENCY_WEIGHT * (s - average));
+        }
+    }
+
+    private static class Attempt {
+        final URI uri;
+        final long startedAt = System.currentTimeMillis();
+        // Not thread-safe, only touched by the fetching thread until the attempt completes
+        final ValidationResult result;
+
+        Attempt(URI uri) {
+            this.uri = uri;
+            this.result = newValidationResult(uri);
+        }
+
+        X509ResourceCertificate complete(Future<X509ResourceCertificate> done) throws InterruptedException {
+            try {
+                return done.get();
+            } catch (ExecutionException e) {
+                log.error("Error while loading trust anchor certificate from {}", uri, e.getCause());
+                result.warn(ErrorCodes.TRUST_ANCHOR_FETCH, uri.toASCIIString(), String.valueOf(e.getCause().getMessage()));
+                return null;
+            }
+        }
+    }
+}
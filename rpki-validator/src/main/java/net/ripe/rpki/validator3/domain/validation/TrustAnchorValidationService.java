@@ -32,9 +32,6 @@ package net.ripe.rpki.validator3.domain.validation;
 import com.google.common.base.Joiner;
 import com.google.common.collect.Sets;
 import lombok.extern.slf4j.Slf4j;
-import net.ripe.rpki.commons.crypto.CertificateRepositoryObject;
-import net.ripe.rpki.commons.crypto.util.CertificateRepositoryObjectFactory;
-import net.ripe.rpki.commons.crypto.x509cert.X509CertificateUtil;
 import net.ripe.rpki.commons.crypto.x509cert.X509ResourceCertificate;
 import net.ripe.rpki.commons.rsync.CommandExecutionException;
 import net.ripe.rpki.commons.validation.ValidationLocation;
@@ -43,11 +40,9 @@ import net.ripe.rpki.commons.validation.ValidationString;
 import net.ripe.rpki.validator3.background.ValidationScheduler;
 import net.ripe.rpki.validator3.domain.ErrorCodes;
 import net.ripe.rpki.validator3.domain.metrics.TrustAnchorMetricsService;
-import net.ripe.rpki.validator3.domain.retrieval.TrustAnchorRetrievalService;
 import net.ripe.rpki.validator3.storage.Storage;
 import net.ripe.rpki.validator3.storage.data.Key;
 import net.ripe.rpki.validator3.storage.data.Ref;
-import net.ripe.rpki.validator3.storage.data.RpkiObject;
 import net.ripe.rpki.validator3.storage.data.RpkiRepository;
 import net.ripe.rpki.validator3.storage.data.TrustAnchor;
 import net.ripe.rpki.validator3.storage.data.validation.TrustAnchorValidationRun;
@@ -59,11 +54,8 @@ import org.jooq.lambda.tuple.Tuple2;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import java.io.IOException;
 import java.net.URI;
-import java.security.GeneralSecurityException;
 import java.util.Collections;
-import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
@@ -81,7 +73,7 @@ public class TrustAnchorValidationService {
     private final Storage storage;
 
     private final TrustAnchorMetricsService taMetricsService;
-    private final TrustAnchorRetrievalService trustAnchorRetrievalService;
+    private final TrustAnchorCertificateFetcher trustAnchorCertificateFetcher;
 
     private Set<Key> validatedAtLeastOnce = Collections.newSetFromMap(new ConcurrentHashMap<>());
 
@@ -95,7 +87,7 @@ public class TrustAnchorValidationService {
         RpkiRepositoryValidationService repositoryValidationService,
         Storage storage,
         TrustAnchorMetricsService trustAnchorMetricsService,
-        TrustAnchorRetrievalService trustAnchorRetrievalService) {
+        TrustAnchorCertificateFetcher trustAnchorCertificateFetcher) {
         this.trustAnchors = trustAnchors;
         this.rpkiRepositories = rpkiRepositories;
         this.validationRuns = validationRuns;
@@ -103,7 +95,7 @@ public class TrustAnchorValidationService {
         this.repositoryValidationService = repositoryValidationService;
         this.storage = storage;
         this.taMetricsService = trustAnchorMetricsService;
-        this.trustAnchorRetrievalService = trustAnchorRetrievalService;
+        this.trustAnchorCertificateFetcher = trustAnchorCertificateFetcher;
     }
 
     public void validate(long trustAnchorId) {
@@ -126,11 +118,11 @@ public class TrustAnchorValidationService {
 
         boolean updatedTrustAnchor = false;
         try {
-            final Optional<Tuple2<URI, byte[]>> maybeTrustAnchorCertificate = fetchPreferredTrustAnchorCertificate(trustAnchor, validationResult);
+            final Optional<Tuple2<URI, X509ResourceCertificate>> maybeTrustAnchorCertificate = fetchPreferredTrustAnchorCertificate(trustAnchor, validationResult);
 
             if (maybeTrustAnchorCertificate.isPresent()) {
-                final Tuple2<URI, byte[]> res = maybeTrustAnchorCertificate.get();
-                updatedTrustAnchor = readTrustAnchorFromLocation(res.v2, trustAnchor, res.v1, validationResult);
+                final Tuple2<URI, X509ResourceCertificate> res = maybeTrustAnchorCertificate.get();
+                updatedTrustAnchor = updateTrustAnchorCertificate(res.v2, trustAnchor, res.v1, validationResult);
             } else {
                 validationResult.error(
                         ErrorCodes.TRUST_ANCHOR_FETCH,
@@ -166,7 +158,7 @@ public class TrustAnchorValidationService {
                 }
                 affectedTrustAnchors.forEach(validationScheduler::triggerCertificateTreeValidation);
             }
-        } catch (CommandExecutionException | IOException e) {
+        } catch (CommandExecutionException e) {
             log.error("validation run for trust anchor {} failed", trustAnchor, e);
             validationRun.addCheck(new ValidationCheck(validationRun.getTrustAnchorCertificateURI(), ValidationCheck.Status.ERROR, ErrorCodes.UNHANDLED_EXCEPTION, e.toString()));
             validationRun.setFailed();
@@ -177,85 +169,30 @@ public class TrustAnchorValidationService {
     }
 
     /**
-     * Attempt to fetch a trust anchor (TA) certificate for this TrustAnchor by attempting to retrieve the TA certificates
-     * in order of preference. When successful, return the URI of the certificate as well as it's content.
+     * Attempt to fetch a trust anchor (TA) certificate for this TrustAnchor from its locations, starting with the
+     * fastest or most preferred one and hedging with the next ones when it does not answer in time or its certificate
+     * does not match the trust anchor locator. When successful, return the URI of the certificate as well as the
+     * certificate.
      *
      * @param trustAnchor to load certificate for
      * @param validationResult of current validation
-     * @return (URI of certificate, content of certificate)
+     * @return (URI of certificate, certificate)
      */
-    public Optional<Tuple2<URI, byte[]>> fetchPreferredTrustAnchorCertificate(TrustAnchor trustAnchor, ValidationResult validationResult) {
-        final ValidationLocation initialLocation = validationResult.getCurrentLocation();
-        final List<URI> rankedTrustAnchorLocations = trustAnchor.getLocationsByPreference();
-
-        // Try all locations until one was successful
-        for (URI currentLocation : rankedTrustAnchorLocations) {
-            // Switch validation location
-            validationResult.setLocation(new ValidationLocation(currentLocation));
-
-            byte[] trustAnchorCertificate = trustAnchorRetrievalService.fetchTrustAnchorCertificate(currentLocation, validationResult);
-
-            if (trustAnchorCertificate != null) {
-                return Optional.of(new Tuple2<>(currentLocation, trustAnchorCertificate));
-            }
-        }
-
-        validationResult.setLocation(initialLocation);
-        return Optional.empty();
+    public Optional<Tuple2<URI, X509ResourceCertificate>> fetchPreferredTrustAnchorCertificate(TrustAnchor trustAnchor, ValidationResult validationResult) {
+        return trustAnchorCertificateFetcher.fetch(trustAnchor, validationResult);
     }
 
-    private boolean readTrustAnchorFromLocation(byte[] trustAnchorCertificate, TrustAnchor trustAnchor, URI trustAnchorCertificateURI, ValidationResult validationResult) throws IOException {
-        long trustAnchorCertificateSize = trustAnchorCertificate.length;
-
-        if (trustAnchorCertificateSize < RpkiObject.MIN_SIZE) {
-            validationResult.error(ErrorCodes.REPOSITORY_OBJECT_MINIMUM_SIZE, trustAnchorCertificateURI.toASCIIString(), String.valueOf(trustAnchorCertificateSize), String.valueOf(RpkiObject.MIN_SIZE));
-        } else if (trustAnchorCertificateSize > RpkiObject.MAX_SIZE) {
-            validationResult.error(ErrorCodes.REPOSITORY_OBJECT_MAXIMUM_SIZE, trustAnchorCertificateURI.toASCIIString(), String.valueOf(trustAnchorCertificateSize), String.valueOf(RpkiObject.MAX_SIZE));
-        } else {
-            final X509ResourceCertificate parsedCertificate = parseCertificate(trustAnchor, trustAnchorCertificate, trustAnchorCertificateURI, validationResult);
-
-            if (!validationResult.hasFailureForCurrentLocation()) {
-                // validate(..) is called multiple times for the same trust anchor certificate (e.g. when the
-                // application restarts).
-                int comparedSerial = trustAnchor.getCertificate() == null ?
-                        1 : parsedCertificate.getSerialNumber().compareTo(trustAnchor.getCertificate().getSerialNumber());
-                validationResult.warnIfTrue(comparedSerial < 0, ValidationString.VALIDATOR_REPOSITORY_OBJECT_IS_OLDER_THAN_PREVIOUS_OBJECT, trustAnchorCertificateURI.toASCIIString());
-                if (comparedSerial != 0) {
-                    log.info("Setting certificate {} for the TA {}", trustAnchorCertificateURI, trustAnchor.getName());
-                    trustAnchor.setCertificate(parsedCertificate);
-                    return true;
-                }
-            }
+    private boolean updateTrustAnchorCertificate(X509ResourceCertificate parsedCertificate, TrustAnchor trustAnchor, URI trustAnchorCertificateURI, ValidationResult validationResult) {
+        // validate(..) is called multiple times for the same trust anchor certificate (e.g. when the
+        // application restarts).
+        int comparedSerial = trustAnchor.getCertificate() == null ?
+                1 : parsedCertificate.getSerialNumber().compareTo(trustAnchor.getCertificate().getSerialNumber());
+        validationResult.warnIfTrue(comparedSerial < 0, ValidationString.VALIDATOR_REPOSITORY_OBJECT_IS_OLDER_THAN_PREVIOUS_OBJECT, trustAnchorCertificateURI.toASCIIString());
+        if (comparedSerial != 0) {
+            log.info("Setting certificate {} for the TA {}", trustAnchorCertificateURI, trustAnchor.getName());
+            trustAnchor.setCertificate(parsedCertificate);
+            return true;
         }
         return false;
     }
-
-    private X509ResourceCertificate parseCertificate(TrustAnchor trustAnchor, byte[] certificateData, URI trustAnchorCertificateURI, ValidationResult validationResult) throws IOException {
-        // We provide the certificate uri because it can be one of multiple and the rsync prefetch
-        // uri can not be used since it can be null.
-        assert trustAnchor.getLocationsByPreference().contains(trustAnchorCertificateURI);
-
-        CertificateRepositoryObject trustAnchorCertificate = CertificateRepositoryObjectFactory.createCertificateRepositoryObject(certificateData, validationResult);
-        validationResult.rejectIfFalse(trustAnchorCertificate instanceof X509ResourceCertificate, ErrorCodes.REPOSITORY_OBJECT_IS_TRUST_ANCHOR_CERTIFICATE, trustAnchorCertificateURI.toASCIIString());
-        if (validationResult.hasFailureForCurrentLocation()) {
-            return null;
-        }
-
-        X509ResourceCertificate certificate = (X509ResourceCertificate) trustAnchorCertificate;
-
-        String encodedSubjectPublicKeyInfo = X509CertificateUtil.getEncodedSubjectPublicKeyInfo(certificate.getCertificate());
-        validationResult.rejectIfFalse(encodedSubjectPublicKeyInfo.equals(trustAnchor.getSubjectPublicKeyInfo()), "trust.anchor.subject.key.matches.locator");
-
-        boolean signatureValid;
-        try {
-            certificate.getCertificate().verify(certificate.getPublicKey());
-            signatureValid = true;
-        } catch (GeneralSecurityException e) {
-            signatureValid = false;
-        }
-
-        validationResult.rejectIfFalse(signatureValid, ErrorCodes.TRUST_ANCHOR_SIGNATURE, trustAnchorCertificateURI.toASCIIString(), trustAnchor.getSubjectPublicKeyInfo());
-
-        return certificate;
-    }
 }
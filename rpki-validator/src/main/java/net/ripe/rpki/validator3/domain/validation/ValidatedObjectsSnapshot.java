@@ -0,0 +1,216 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2018 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.rpki.validator3.domain.validation;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedSet;
+import lombok.Value;
+import net.ripe.ipresource.IpAddress;
+import net.ripe.ipresource.IpRange;
+import net.ripe.ipresource.IpResourceType;
+import net.ripe.ipresource.Ipv4Address;
+import net.ripe.ipresource.Ipv6Address;
+import net.ripe.rpki.validator3.domain.ValidatedRoaPrefix;
+import net.ripe.rpki.validator3.storage.data.Key;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigInteger;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Compact encoding of the validated ROA prefixes and router certificates of one trust anchor.
+ * <p>
+ * Prefixes are stored as raw address bytes and the (highly repetitive) object locations
+ * through a string table, and the whole is deflated. This keeps a snapshot of a large
+ * trust anchor at a few megabytes that decodes in well under a second.
+ */
+@Value
+class ValidatedObjectsSnapshot {
+
+    private static final int VERSION = 1;
+
+    String trustAnchorName;
+    Instant validatedAt;
+    ValidatedRpkiObjects.RoaPrefixesAndRouterCertificates objects;
+
+    boolean isOlderThan(Duration maxAge, Instant now) {
+        return validatedAt.plus(maxAge).isBefore(now);
+    }
+
+    /**
+     * @return the snapshot without the ROA prefixes whose ROA expired before `now`.
+     */
+    ValidatedObjectsSnapshot withoutExpiredRoaPrefixes(Instant now) {
+        final long nowMillis = now.toEpochMilli();
+        final ImmutableSet<ValidatedRoaPrefix> unexpired = objects.getRoaPrefixes().stream()
+            .filter(prefix -> prefix.getNotAfter() >= nowMillis)
+            .collect(ImmutableSet.toImmutableSet());
+        return new ValidatedObjectsSnapshot(trustAnchorName, validatedAt,
+            ValidatedRpkiObjects.RoaPrefixesAndRouterCertificates.of(unexpired, objects.getRouterCertificates()));
+    }
+
+    static byte[] encode(String trustAnchorName, Instant validatedAt, ValidatedRpkiObjects.RoaPrefixesAndRouterCertificates objects) {
+        final Map<String, Integer> locations = new LinkedHashMap<>();
+        for (ValidatedRoaPrefix prefix : objects.getRoaPrefixes()) {
+            for (String location : prefix.getLocations()) {
+                locations.putIfAbsent(location, locations.size());
+            }
+        }
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes))) {
+            out.writeByte(VERSION);
+            out.writeLong(validatedAt.toEpochMilli());
+            out.writeUTF(trustAnchorName);
+
+            out.writeInt(locations.size());
+            for (String location : locations.keySet()) {
+                out.writeUTF(location);
+            }
+
+            out.writeInt(objects.getRoaPrefixes().size());
+            for (ValidatedRoaPrefix prefix : objects.getRoaPrefixes()) {
+                out.writeInt((int) prefix.getAsn());
+                writePrefix(out, prefix.getPrefix());
+                out.writeShort(prefix.getMaximumLength() == null ? -1 : prefix.getMaximumLength());
+                out.writeLong(prefix.getNotBefore());
+                out.writeLong(prefix.getNotAfter());
+                final byte[] serial = prefix.getSerialNumber().toByteArray();
+                out.writeByte(serial.length);
+                out.write(serial);
+                out.writeShort(prefix.getLocations().size());
+                for (String location : prefix.getLocations()) {
+                    out.writeInt(locations.get(location));
+                }
+            }
+
+            out.writeInt(objects.getRouterCertificates().size());
+            for (ValidatedRpkiObjects.RouterCertificate certificate : objects.getRouterCertificates()) {
+                out.writeShort(certificate.getAsn().size());
+                for (String asn : certificate.getAsn()) {
+                    out.writeUTF(asn);
+                }
+                out.writeUTF(certificate.getSubjectKeyIdentifier());
+                out.writeUTF(certificate.getSubjectPublicKeyInfo());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    static ValidatedObjectsSnapshot decode(Key trustAnchorKey, byte[] encoded) {
+        try (DataInputStream in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(encoded)))) {
+            final int version = in.readUnsignedByte();
+            if (version != VERSION) {
+                throw new IllegalArgumentException("unsupported snapshot version " + version);
+            }
+            final Instant validatedAt = Instant.ofEpochMilli(in.readLong());
+            final String trustAnchorName = in.readUTF();
+            final ValidatedRpkiObjects.TrustAnchorData trustAnchor = ValidatedRpkiObjects.TrustAnchorData.of(trustAnchorKey, trustAnchorName);
+
+            final String[] locations = new String[in.readInt()];
+            for (int i = 0; i < locations.length; i++) {
+                locations[i] = in.readUTF();
+            }
+
+            final int prefixCount = in.readInt();
+            final ImmutableSet.Builder<ValidatedRoaPrefix> prefixes = ImmutableSet.builderWithExpectedSize(prefixCount);
+            for (int i = 0; i < prefixCount; i++) {
+                final long asn = Integer.toUnsignedLong(in.readInt());
+                final IpRange prefix = readPrefix(in);
+                final short maximumLength = in.readShort();
+                final long notBefore = in.readLong();
+                final long notAfter = in.readLong();
+                final byte[] serial = new byte[in.readUnsignedByte()];
+                in.readFully(serial);
+                final ImmutableSortedSet.Builder<String> prefixLocations = ImmutableSortedSet.naturalOrder();
+                final int locationCount = in.readUnsignedShort();
+                for (int j = 0; j < locationCount; j++) {
+                    prefixLocations.add(locations[in.readInt()]);
+                }
+                prefixes.add(ValidatedRoaPrefix.of(trustAnchor, asn, prefix,
+                    maximumLength < 0 ? null : (int) maximumLength,
+                    notBefore, notAfter, new BigInteger(serial), prefixLocations.build()));
+            }
+
+            final int certificateCount = in.readInt();
+            final ImmutableSet.Builder<ValidatedRpkiObjects.RouterCertificate> certificates = ImmutableSet.builderWithExpectedSize(certificateCount);
+            for (int i = 0; i < certificateCount; i++) {
+                final List<String> asns = new ArrayList<>();
+                final int asnCount = in.readUnsignedShort();
+                for (int j = 0; j < asnCount; j++) {
+                    asns.add(in.readUTF());
+                }
+                certificates.add(ValidatedRpkiObjects.RouterCertificate.of(trustAnchor, ImmutableList.copyOf(asns), in.readUTF(), in.readUTF()));
+            }
+
+            return new ValidatedObjectsSnapshot(trustAnchorName, validatedAt,
+                ValidatedRpkiObjects.RoaPrefixesAndRouterCertificates.of(prefixes.build(), certificates.build()));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writePrefix(DataOutputStream out, IpRange prefix) throws IOException {
+        final boolean ipv4 = prefix.getType() == IpResourceType.IPv4;
+        final int length = ipv4 ? 4 : 16;
+        final byte[] value = prefix.getStart().getValue().toByteArray();
+        // BigInteger bytes are minimal and signed: left pad with zeroes, or drop the sign byte.
+        final byte[] address = new byte[length];
+        final int copy = Math.min(value.length, length);
+        System.arraycopy(value, value.length - copy, address, length - copy, copy);
+        out.writeByte(ipv4 ? 4 : 6);
+        out.write(address);
+        out.writeByte(prefix.getPrefixLength());
+    }
+
+    private static IpRange readPrefix(DataInputStream in) throws IOException {
+        final boolean ipv4 = in.readUnsignedByte() == 4;
+        final byte[] address = new byte[ipv4 ? 4 : 16];
+        in.readFully(address);
+        final BigInteger value = new BigInteger(1, address);
+        final IpAddress start = ipv4 ? new Ipv4Address(value.longValue()) : new Ipv6Address(value);
+        return IpRange.prefix(start, in.readUnsignedByte());
+    }
+}
@@ -32,7 +32,6 @@ package net.ripe.rpki.validator3.domain.validation;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedSet;
-import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
 import net.ripe.rpki.commons.crypto.CertificateRepositoryObject;
 import net.ripe.rpki.commons.crypto.UnknownCertificateRepositoryObject;
@@ -51,19 +50,21 @@ import net.ripe.rpki.validator3.domain.ValidatedRoaPrefix;
 import net.ripe.rpki.validator3.storage.Storage;
 import net.ripe.rpki.validator3.storage.Tx;
 import net.ripe.rpki.validator3.storage.data.Key;
-import net.ripe.rpki.validator3.storage.data.Ref;
 import net.ripe.rpki.validator3.storage.data.RpkiObject;
 import net.ripe.rpki.validator3.storage.data.RpkiRepository;
 import net.ripe.rpki.validator3.storage.data.TrustAnchor;
 import net.ripe.rpki.validator3.storage.stores.RpkiObjects;
 import net.ripe.rpki.validator3.storage.stores.RpkiRepositories;
 import net.ripe.rpki.validator3.storage.stores.TrustAnchors;
+import net.ripe.rpki.validator3.storage.stores.ValidatedObjectsSnapshots;
 import net.ripe.rpki.validator3.util.Locks;
 import org.joda.time.DateTime;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.PostConstruct;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Base64;
@@ -85,6 +86,12 @@ public class ValidatedRpkiObjects {
 
     private final Map<Long, RoaPrefixesAndRouterCertificates> validatedObjectsByTrustAnchor = new HashMap<>();
 
+    /*
+     * Trust anchors for which the validated objects were loaded from the snapshot of the previous run
+     * and not validated again since, with the time of that validation.
+     */
+    private final Map<Long, Instant> carriedOverByTrustAnchor = new HashMap<>();
+
     @Autowired
     private RpkiObjects rpkiObjects;
 
@@ -94,11 +101,25 @@ public class ValidatedRpkiObjects {
     @Autowired
     private RpkiRepositories rpkiRepositories;
 
+    @Autowired
+    private ValidatedObjectsSnapshots snapshots;
+
     @Autowired
     private Storage storage;
 
+    /*
+     * Snapshots of validations older than this are not served after a restart. The objects in them
+     * may have been revoked or replaced in the meantime.
+     */
+    private Duration snapshotMaxAge = Duration.ofDays(1);
+
     private final ReentrantReadWriteLock dataLock = new ReentrantReadWriteLock();
 
+    @Autowired
+    public void setSnapshotMaxAge(@Value("${rpki.validator.validated.objects.snapshot.max.age:P1D}") String snapshotMaxAge) {
+        this.snapshotMaxAge = Duration.parse(snapshotMaxAge);
+    }
+
     @PostConstruct
     private void initialize() {
         // Mark trust anchors and repositories as pending on startup until first validation run completes, so we avoid
@@ -115,24 +136,65 @@ public class ValidatedRpkiObjects {
                 trustAnchors.update(tx, trustAnchor);
             }
         });
+        loadSnapshots();
+    }
+
+    /**
+     * Serve the objects of the last completed validation of each trust anchor until it has been
+     * validated again, instead of serving nothing for as long as the initial validation takes.
+     * Snapshots older than the maximum age are dropped, as are ROA prefixes that expired since.
+     */
+    private void loadSnapshots() {
+        final long begin = System.currentTimeMillis();
+        final Instant now = Instant.now();
+        final Map<Key, byte[]> encoded = storage.readTx(snapshots::all);
+        for (Map.Entry<Key, byte[]> entry : encoded.entrySet()) {
+            final Key trustAnchorKey = entry.getKey();
+            if (!storage.readTx(tx -> trustAnchors.get(tx, trustAnchorKey)).isPresent()) {
+                storage.writeTx0(tx -> snapshots.remove(tx, trustAnchorKey));
+                continue;
+            }
+            try {
+                final ValidatedObjectsSnapshot decoded = ValidatedObjectsSnapshot.decode(trustAnchorKey, entry.getValue());
+                if (decoded.isOlderThan(snapshotMaxAge, now)) {
+                    log.info("dropping validated objects snapshot for trust anchor {} validated at {}, older than {}",
+                        decoded.getTrustAnchorName(), decoded.getValidatedAt(), snapshotMaxAge);
+                    storage.writeTx0(tx -> snapshots.remove(tx, trustAnchorKey));
+                    continue;
+                }
+                final ValidatedObjectsSnapshot snapshot = decoded.withoutExpiredRoaPrefixes(now);
+                validatedObjectsByTrustAnchor.put(trustAnchorKey.asLong(), snapshot.getObjects());
+                carriedOverByTrustAnchor.put(trustAnchorKey.asLong(), snapshot.getValidatedAt());
+                log.info("carried over {} ROA prefixes and {} router certificates for trust anchor {} validated at {}",
+                    snapshot.getObjects().getRoaPrefixes().size(),
+                    snapshot.getObjects().getRouterCertificates().size(),
+                    snapshot.getTrustAnchorName(),
+                    snapshot.getValidatedAt());
+            } catch (RuntimeException e) {
+                log.warn("ignoring unreadable validated objects snapshot for trust anchor {}", trustAnchorKey, e);
+            }
+        }
+        log.info("loaded {} validated objects snapshots in {}ms", carriedOverByTrustAnchor.size(), System.currentTimeMillis() - begin);
     }
 
-    void updateByKey(Ref<TrustAnchor> trustAnchor, Accumulator validatedObjects) {
+    void update(TrustAnchor trustAnchor, Accumulator validatedObjects) {
+        final RoaPrefixesAndRouterCertificates objects = RoaPrefixesAndRouterCertificates.of(
+            ImmutableSet.copyOf(validatedObjects.getValidatedRoaPrefixes()),
+            ImmutableSet.copyOf(validatedObjects.getRouterCertificates())
+        );
         Locks.locked(dataLock.writeLock(), () -> {
             log.info("updating validation objects cache for trust anchor {} with {} ROA prefixes and {} router certificates",
                     trustAnchor,
                     validatedObjects.getValidatedRoaPrefixes().size(),
                     validatedObjects.getRouterCertificates().size()
             );
-            validatedObjectsByTrustAnchor.put(
-                    trustAnchor.key().asLong(),
-                    RoaPrefixesAndRouterCertificates.of(
-                            ImmutableSet.copyOf(validatedObjects.getValidatedRoaPrefixes()),
-                            ImmutableSet.copyOf(validatedObjects.getRouterCertificates())
-                    )
-            );
+            validatedObjectsByTrustAnchor.put(trustAnchor.key().asLong(), objects);
+            carriedOverByTrustAnchor.remove(trustAnchor.key().asLong());
         });
         notifyListeners();
+
+        final byte[] snapshot = ValidatedObjectsSnapshot.encode(trustAnchor.getName(), Instant.now(), objects);
+        storage.writeTx0(tx -> snapshots.put(tx, trustAnchor.key(), snapshot));
     }
 
     private Stream<RpkiObject> streamByType(Tx.Read tx, Collection<Key> rpkiObjectsKeys, RpkiObject.Type type) {
@@ -146,10 +208,27 @@ public class ValidatedRpkiObjects {
 
     public void remove(TrustAnchor trustAnchor) {
         long trustAnchorId = trustAnchor.key().asLong();
-        Locks.locked(dataLock.writeLock(), () -> validatedObjectsByTrustAnchor.remove(trustAnchorId));
+        Locks.locked(dataLock.writeLock(), () -> {
+            validatedObjectsByTrustAnchor.remove(trustAnchorId);
+            carriedOverByTrustAnchor.remove(trustAnchorId);
+        });
+        storage.writeTx0(tx -> snapshots.remove(tx, trustAnchor.key()));
         notifyListeners();
     }
 
+    /**
+     * @return the time of the oldest validation that was carried over from before the last restart,
+     * or empty when all served objects were validated since.
+     */
+    public Optional<Instant> carriedOverSince() {
+        return Locks.locked(dataLock.readLock(), () ->
+            carriedOverByTrustAnchor.values().stream().min(Instant::compareTo));
+    }
+
+    public boolean isCarriedOver(Key trustAnchorKey) {
+        return Locks.locked(dataLock.readLock(), () -> carriedOverByTrustAnchor.containsKey(trustAnchorKey.asLong()));
+    }
+
     public ValidatedObjects<ValidatedRoaPrefix> findCurrentlyValidatedRoaPrefixes() {
         return findCurrentlyValidatedRoaPrefixes(null, null, null);
     }
@@ -186,25 +265,25 @@ public class ValidatedRpkiObjects {
         });
     }
 
-    @Value(staticConstructor = "of")
+    @lombok.Value(staticConstructor = "of")
     public static class ValidatedObjects<T> {
         long totalCount;
         Stream<T> objects;
     }
 
-    @Value(staticConstructor = "of")
+    @lombok.Value(staticConstructor = "of")
     public static class RoaPrefixesAndRouterCertificates {
         ImmutableSet<ValidatedRoaPrefix> roaPrefixes;
         ImmutableSet<RouterCertificate> routerCertificates;
     }
 
-    @Value(staticConstructor = "of")
+    @lombok.Value(staticConstructor = "of")
     public static class TrustAnchorData {
         Key id;
         String name;
     }
 
-    @Value(staticConstructor = "of")
+    @lombok.Value(staticConstructor = "of")
     public static class RouterCertificate {
         TrustAnchorData trustAnchor;
         ImmutableList<String> asn;
@@ -31,33 +31,32 @@ package net.ripe.rpki.validator3.rrdp;
 
 import com.google.common.hash.HashCode;
 import com.google.common.hash.HashFunction;
-import com.google.common.hash.Hashing;
-import com.google.common.hash.HashingInputStream;
-import com.google.common.hash.HashingOutputStream;
+import com.google.common.hash.Hasher;
 import lombok.extern.slf4j.Slf4j;
 import net.ripe.rpki.validator3.api.util.BuildInformation;
 import net.ripe.rpki.validator3.domain.metrics.HttpClientMetricsService;
+import net.ripe.rpki.validator3.util.Futures;
 import net.ripe.rpki.validator3.util.HttpStreaming;
-import net.ripe.rpki.validator3.util.Time;
-import org.apache.commons.io.IOUtils;
 import org.eclipse.jetty.client.HttpClient;
 import org.eclipse.jetty.client.api.Request;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.concurrent.atomic.AtomicReference;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 import java.util.function.BiFunction;
 import java.util.function.Function;
 
-import static org.springframework.util.StreamUtils.copy;
-
 @Component
 @Slf4j
 public class HttpRrdpClient implements RrdpClient {
@@ -109,45 +108,119 @@ public class HttpRrdpClient implements RrdpClient {
 
     @Override
     public byte[] getBody(String uri) {
-        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        readStream(uri, s -> {
-            try {
-                return copy(s, baos);
-            } catch (IOException e) {
-                throw new RuntimeException(e);
-            }
-        });
-        return baos.toByteArray();
+        try {
+            return download(uri, new BodySink()).join();
+        } catch (CompletionException e) {
+            // download only ever fails with an RrdpException
+            throw (RrdpException) e.getCause();
+        }
     }
 
     @Override
-    public <T> T processUsingTemporaryFile(String uri, HashFunction hashFunction, BiFunction<Path, HashCode, T> process) {
+    public <T> CompletableFuture<T> readStream(String uri, Function<InputStream, T> reader, Executor executor) {
+        return download(uri, new BodySink())
+            .thenApplyAsync(body -> reader.apply(new ByteArrayInputStream(body)), executor);
+    }
+
+    @Override
+    public <T> CompletableFuture<T> processUsingTemporaryFile(String uri, HashFunction hashFunction, BiFunction<Path, HashCode, T> process, Executor executor) {
+        final Path tempFile;
+        final HttpStreaming.ContentSink<HashCode> sink;
         try {
             // Creates a file with default permissions (only readable/writable by owner)
-            final Path tempFile = Files.createTempFile("rrdp-", ".tmp");
-            try {
-                return readStream(uri, in -> {
-                    HashingInputStream hashingStream = new HashingInputStream(hashFunction, in);
-
-                    Long timedDownload = Time.timed(() -> {
-                        try (OutputStream out = new FileOutputStream(tempFile.toFile())) {
-                            IOUtils.copy(hashingStream, out);
-                        } catch (IOException e) {
-                            throw new RrdpException("Error downloading '" + uri + "', cause: " + fullMessage(e), e);
-                        }
-                    });
-                    log.info("file {} of {} bytes downloaded in {}ms", uri, tempFile.toFile().length(), timedDownload);
-
-                    return process.apply(tempFile, hashingStream.hash());
-                });
-            } finally {
+            tempFile = Files.createTempFile("rrdp-", ".tmp");
+            sink = new TemporaryFileSink(tempFile, hashFunction);
+        } catch (IOException e) {
+            return Futures.failed(new RrdpException("Error downloading '" + uri + "', cause: " + fullMessage(e), e));
+        }
+
+        final long before = System.currentTimeMillis();
+        return download(uri, sink)
+            .thenApplyAsync(hash -> {
+                log.info("file {} of {} bytes downloaded in {}ms", uri, tempFile.toFile().length(), System.currentTimeMillis() - before);
+                return process.apply(tempFile, hash);
+            }, executor)
+            .whenComplete((result, failure) -> {
                 try {
                     Files.deleteIfExists(tempFile);
                 } catch (IOException ignored) {
                 }
+            });
+    }
+
+    /**
+     * Starts the download, the future completes on one of the threads of the HTTP client. It fails
+     * with an {@link RrdpDownloadException} when the transfer fails.
+     */
+    private <T> CompletableFuture<T> download(String uri, HttpStreaming.ContentSink<T> sink) {
+        final long before = System.currentTimeMillis();
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        try {
+            HttpStreaming.download(httpClient.newRequest(uri), sink).whenComplete((value, failure) -> {
+                if (failure == null) {
+                    httpMetrics.update(uri, "200", System.currentTimeMillis() - before);
+                    result.complete(value);
+                } else {
+                    httpMetrics.update(uri, HttpClientMetricsService.unwrapExceptionString(failure), System.currentTimeMillis() - before);
+                    result.completeExceptionally(new RrdpDownloadException("Error downloading '" + uri + "', cause: " + fullMessage(failure), failure));
+                }
+            });
+        } catch (RuntimeException e) {
+            sink.abort();
+            httpMetrics.update(uri, HttpClientMetricsService.unwrapExceptionString(e), System.currentTimeMillis() - before);
+            result.completeExceptionally(new RrdpDownloadException("Error downloading '" + uri + "', cause: " + fullMessage(e), e));
+        }
+        return result;
+    }
+
+    private static class BodySink implements HttpStreaming.ContentSink<byte[]> {
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+        @Override
+        public void accept(ByteBuffer content) {
+            final byte[] bytes = new byte[content.remaining()];
+            content.get(bytes);
+            body.write(bytes, 0, bytes.length);
+        }
+
+        @Override
+        public byte[] complete(long lastModified) {
+            return body.toByteArray();
+        }
+    }
+
+    /**
+     * Hashes and writes the content as it arrives.
+     */
+    private static class TemporaryFileSink implements HttpStreaming.ContentSink<HashCode> {
+        private final FileChannel out;
+        private final Hasher hasher;
+
+        TemporaryFileSink(Path file, HashFunction hashFunction) throws IOException {
+            this.out = FileChannel.open(file, StandardOpenOption.WRITE);
+            this.hasher = hashFunction.newHasher();
+        }
+
+        @Override
+        public void accept(ByteBuffer content) throws IOException {
+            hasher.putBytes(content.duplicate());
+            while (content.hasRemaining()) {
+                out.write(content);
+            }
+        }
+
+        @Override
+        public HashCode complete(long lastModified) throws IOException {
+            out.close();
+            return hasher.hash();
+        }
+
+        @Override
+        public void abort() {
+            try {
+                out.close();
+            } catch (IOException ignored) {
             }
-        } catch (IOException e) {
-            throw new RrdpException("Error downloading '" + uri + "', cause: " + fullMessage(e), e);
         }
     }
 }
@@ -34,13 +34,29 @@ import com.google.common.hash.HashFunction;
 
 import java.io.InputStream;
 import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.function.BiFunction;
 import java.util.function.Function;
 
+/**
+ * The asynchronous methods do not hold on to a thread while waiting for the server. Only the
+ * reader or process function runs on the given executor, once the content is complete. Failures
+ * complete the future with an {@link RrdpException}.
+ */
 public interface RrdpClient {
     <T> T readStream(String uri, Function<InputStream, T> reader);
 
     byte[] getBody(String uri);
 
-    <T> T processUsingTemporaryFile(String uri, HashFunction hashFunction, BiFunction<Path, HashCode, T> process);
+    /**
+     * Downloads the (small) file into memory and reads it on the executor.
+     */
+    <T> CompletableFuture<T> readStream(String uri, Function<InputStream, T> reader, Executor executor);
+
+    /**
+     * Downloads the file to a temporary file while hashing it, then processes the file on the executor.
+     * The temporary file is removed after processing.
+     */
+    <T> CompletableFuture<T> processUsingTemporaryFile(String uri, HashFunction hashFunction, BiFunction<Path, HashCode, T> process, Executor executor);
 }
@@ -32,6 +32,17 @@ package net.ripe.rpki.validator3.rrdp;
 import net.ripe.rpki.validator3.storage.data.RpkiRepository;
 import net.ripe.rpki.validator3.storage.data.validation.RpkiRepositoryValidationRun;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
 public interface RrdpService {
-    boolean storeRepository(RpkiRepository rpkiRepository, RpkiRepositoryValidationRun validationRun);
+    /**
+     * Fetches the repository and stores its objects. No thread waits for the downloads, the
+     * parsing and storing runs on the executor.
+     *
+     * @return a future that completes with true if at least one object changed. Failures are added
+     * to the validation run, only when a transfer failed the future also fails, with an
+     * {@link RrdpDownloadException}.
+     */
+    CompletableFuture<Boolean> storeRepository(RpkiRepository rpkiRepository, RpkiRepositoryValidationRun validationRun, Executor executor);
 }
@@ -45,6 +45,7 @@ import net.ripe.rpki.validator3.storage.data.validation.RpkiRepositoryValidation
 import net.ripe.rpki.validator3.storage.data.validation.ValidationCheck;
 import net.ripe.rpki.validator3.storage.stores.RpkiObjects;
 import net.ripe.rpki.validator3.storage.stores.RpkiRepositories;
+import net.ripe.rpki.validator3.util.Futures;
 import net.ripe.rpki.validator3.util.Hex;
 import net.ripe.rpki.validator3.util.Sha256;
 import net.ripe.rpki.validator3.util.Time;
@@ -63,8 +64,12 @@ import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
@@ -110,67 +115,96 @@ public class RrdpServiceImpl implements RrdpService {
     }
 
     @Override
-    public boolean storeRepository(final RpkiRepository rpkiRepository, final RpkiRepositoryValidationRun validationRun) {
-        Pair<Boolean, Long> timed = Time.timed(() -> {
-            try {
-                return doStoreRepository(rpkiRepository, validationRun);
-            } catch (RrdpException e) {
-                log.warn("Error retrieving RRDP repository at {}: " + e.getMessage(), rpkiRepository.getRrdpNotifyUri());
+    public CompletableFuture<Boolean> storeRepository(final RpkiRepository rpkiRepository, final RpkiRepositoryValidationRun validationRun, final Executor executor) {
+        final long started = System.currentTimeMillis();
+        return doStoreRepository(rpkiRepository, validationRun, executor)
+            .exceptionally(failure -> {
+                final Throwable cause = Futures.unwrap(failure);
+                if (!(cause instanceof RrdpException)) {
+                    throw new CompletionException(cause);
+                }
+                log.warn("Error retrieving RRDP repository at {}: " + cause.getMessage(), rpkiRepository.getRrdpNotifyUri());
                 ValidationCheck validationCheck = new ValidationCheck(rpkiRepository.getRrdpNotifyUri(),
-                        ValidationCheck.Status.ERROR, ErrorCodes.RRDP_FETCH, e.getMessage());
+                        ValidationCheck.Status.ERROR, ErrorCodes.RRDP_FETCH, cause.getMessage());
                 validationRun.addCheck(validationCheck);
                 validationRun.setFailed();
-            }
-            return false;
-        });
-        log.info("RRDP repository job for {} took {}ms", rpkiRepository.getRrdpNotifyUri(), timed.getRight());
-        return timed.getLeft();
+                if (cause instanceof RrdpDownloadException) {
+                    // The caller backs off from servers that fail to transfer
+                    throw new CompletionException(cause);
+                }
+                return false;
+            })
+            .whenComplete((changed, failure) ->
+                log.info("RRDP repository job for {} took {}ms", rpkiRepository.getRrdpNotifyUri(), System.currentTimeMillis() - started));
     }
 
-    private boolean doStoreRepository(RpkiRepository rpkiRepository, RpkiRepositoryValidationRun validationRun) {
-        final Notification notification = rrdpClient.readStream(rpkiRepository.getRrdpNotifyUri(), rrdpParser::notification);
+    private CompletableFuture<Boolean> doStoreRepository(RpkiRepository rpkiRepository, RpkiRepositoryValidationRun validationRun, Executor executor) {
+        final AtomicBoolean changedObjects = new AtomicBoolean(false);
+        return rrdpClient.readStream(rpkiRepository.getRrdpNotifyUri(), rrdpParser::notification, executor)
+            .thenCompose(notification -> processNotification(rpkiRepository, validationRun, notification, changedObjects, executor))
+            .thenApply(done -> changedObjects.get());
+    }
 
+    private CompletableFuture<Void> processNotification(RpkiRepository rpkiRepository, RpkiRepositoryValidationRun validationRun, Notification notification, AtomicBoolean changedObjects, Executor executor) {
         log.info("Repository {}: local serial is '{}', latest serial is {}",
                 rpkiRepository.getRrdpNotifyUri(), rpkiRepository.getRrdpSerial(), notification.serial);
 
-        AtomicBoolean changedObjects = new AtomicBoolean(false);
         if (notification.sessionId.equals(rpkiRepository.getRrdpSessionId())) {
             // The RRDP session is still the same
             if (rpkiRepository.getRrdpSerial().compareTo(notification.serial) <= 0) {
                 // The notification contains updates that we do not have locally
-                try {
-                    List<DeltaInfo> orderedDeltas = verifyAndOrderDeltaSerials(notification, rpkiRepository);
-                    for (DeltaInfo deltaInfo : orderedDeltas) {
-                        processDelta(rpkiRepository, validationRun, notification, deltaInfo, changedObjects);
-                    }
-                } catch (RrdpException e) {
-                    log.info("Processing deltas failed {}, falling back to snapshot processing.", e.getMessage());
-                    rrdpMetrics.update(rpkiRepository.getRrdpNotifyUri(), ErrorCodes.RRDP_FETCH_DELTAS);
-                    final String errorCode = e.getErrorCode() != null ? e.getErrorCode() : ErrorCodes.RRDP_FETCH_DELTAS;
-                    ValidationCheck validationCheck = new ValidationCheck(rpkiRepository.getRrdpNotifyUri(),
-                            ValidationCheck.Status.WARNING, errorCode, e.getMessage());
-                    validationRun.addCheck(validationCheck);
-                    processSnapshot(rpkiRepository, validationRun, notification, changedObjects);
-                }
+                return processDeltas(rpkiRepository, validationRun, notification, changedObjects, executor)
+                    .handle((done, failure) -> {
+                        if (failure == null) {
+                            return CompletableFuture.<Void>completedFuture(null);
+                        }
+                        final Throwable cause = Futures.unwrap(failure);
+                        if (!(cause instanceof RrdpException)) {
+                            throw new CompletionException(cause);
+                        }
+                        final RrdpException e = (RrdpException) cause;
+                        log.info("Processing deltas failed {}, falling back to snapshot processing.", e.getMessage());
+                        rrdpMetrics.update(rpkiRepository.getRrdpNotifyUri(), ErrorCodes.RRDP_FETCH_DELTAS);
+                        final String errorCode = e.getErrorCode() != null ? e.getErrorCode() : ErrorCodes.RRDP_FETCH_DELTAS;
+                        ValidationCheck validationCheck = new ValidationCheck(rpkiRepository.getRrdpNotifyUri(),
+                                ValidationCheck.Status.WARNING, errorCode, e.getMessage());
+                        validationRun.addCheck(validationCheck);
+                        return processSnapshot(rpkiRepository, validationRun, notification, changedObjects, executor);
+                    })
+                    .thenCompose(Function.identity());
             } else {
                 // The local repository is *ahead* the snapshot (for the same session): This should not happen, fall back to snapshot.
                 log.info("Repository serial {} is ahead of serial in notification file {}, fetching the snapshot",
                         rpkiRepository.getRrdpSessionId(), notification.sessionId);
                 rrdpMetrics.update(rpkiRepository.getRrdpNotifyUri(), RRDP_SNAPSHOT_FETCH_LOCAL_AHEAD);
-                processSnapshot(rpkiRepository, validationRun, notification, changedObjects);
+                return processSnapshot(rpkiRepository, validationRun, notification, changedObjects, executor);
             }
         } else {
             // New RRDP session: Start from snapshot
             log.info("Repository has session id '{}' but the downloaded version has session id '{}', fetching the snapshot",
                     rpkiRepository.getRrdpSessionId(), notification.sessionId);
             rrdpMetrics.update(rpkiRepository.getRrdpNotifyUri(), RRDP_SNAPSHOT_FETCH_NEW_SESSION);
-            processSnapshot(rpkiRepository, validationRun, notification, changedObjects);
+            return processSnapshot(rpkiRepository, validationRun, notification, changedObjects, executor);
+        }
+    }
+
+    /**
+     * Applies the deltas one after the other, each one is only downloaded after the previous one was stored.
+     */
+    private CompletableFuture<Void> processDeltas(RpkiRepository rpkiRepository, RpkiRepositoryValidationRun validationRun, Notification notification, AtomicBoolean changedObjects, Executor executor) {
+        CompletableFuture<Void> deltas = CompletableFuture.completedFuture(null);
+        try {
+            for (DeltaInfo deltaInfo : verifyAndOrderDeltaSerials(notification, rpkiRepository)) {
+                deltas = deltas.thenCompose(done -> processDelta(rpkiRepository, validationRun, notification, deltaInfo, changedObjects, executor));
+            }
+        } catch (RrdpException e) {
+            deltas = Futures.failed(e);
         }
-        return changedObjects.get();
+        return deltas;
     }
 
-    private void processSnapshot(RpkiRepository rpkiRepository, RpkiRepositoryValidationRun validationRun, Notification notification, AtomicBoolean changedObjects) {
-        rrdpClient.processUsingTemporaryFile(notification.snapshotUri, Hashing.sha256(), (snapshotPath, snapshotHash) -> {
+    private CompletableFuture<Void> processSnapshot(RpkiRepository rpkiRepository, RpkiRepositoryValidationRun validationRun, Notification notification, AtomicBoolean changedObjects, Executor executor) {
+        return rrdpClient.processUsingTemporaryFile(notification.snapshotUri, Hashing.sha256(), (snapshotPath, snapshotHash) -> {
             if (!Arrays.equals(Hex.parse(notification.snapshotHash), snapshotHash.asBytes())) {
                 throw new RrdpException(ErrorCodes.RRDP_WRONG_SNAPSHOT_HASH, "Hash of the snapshot file " +
                         notification.snapshotUri + " is " + Hex.format(snapshotHash.asBytes()) + ", but notification file says " + notification.snapshotHash);
@@ -194,7 +228,7 @@ public class RrdpServiceImpl implements RrdpService {
             log.info("Storing snapshot {} time {}ms", rpkiRepository.getRrdpNotifyUri(), timedStoreSnapshot);
 
             return null;
-        });
+        }, executor);
     }
 
     private int processDownloadedSnapshot(RpkiRepository rpkiRepository, RpkiRepositoryValidationRun validationRun, Notification notification, Path snapshotPath, Predicate<RepositoryObjectType> typePredicate) {
@@ -247,8 +281,8 @@ public class RrdpServiceImpl implements RrdpService {
         }
     }
 
-    private void processDelta(RpkiRepository rpkiRepository, RpkiRepositoryValidationRun validationRun, Notification notification, DeltaInfo di, AtomicBoolean changedObjects) {
-        rrdpClient.processUsingTemporaryFile(di.getUri(), Hashing.sha256(), (deltaPath, deltaHash) -> {
+    private CompletableFuture<Void> processDelta(RpkiRepository rpkiRepository, RpkiRepositoryValidationRun validationRun, Notification notification, DeltaInfo di, AtomicBoolean changedObjects, Executor executor) {
+        return rrdpClient.processUsingTemporaryFile(di.getUri(), Hashing.sha256(), (deltaPath, deltaHash) -> {
             if (!Arrays.equals(Hex.parse(di.getHash()), deltaHash.asBytes())) {
                 rrdpMetrics.update(notification.snapshotUri, ErrorCodes.RRDP_WRONG_DELTA_HASH);
                 throw new RrdpException(ErrorCodes.RRDP_WRONG_DELTA_HASH, "Hash of the delta file " + di + " is " + Hex.format(deltaHash.asBytes()) +
@@ -273,7 +307,7 @@ public class RrdpServiceImpl implements RrdpService {
             log.info("Storing delta {} time {}ms", rpkiRepository.getRrdpNotifyUri(), timedStoreDelta);
 
             return null;
-        });
+        }, executor);
     }
 
     private int processDownloadedDelta(RpkiRepository rpkiRepository, RpkiRepositoryValidationRun validationRun, Notification notification, DeltaInfo di, Path deltaPath, Predicate<RepositoryObjectType> typePredicate) {
@@ -489,4 +523,5 @@ public class RrdpServiceImpl implements RrdpService {
         }
         return false;
     }
+
 }
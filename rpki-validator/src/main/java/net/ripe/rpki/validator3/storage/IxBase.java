@@ -39,6 +39,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.function.BiConsumer;
+import java.util.stream.Stream;
 
 public interface IxBase<T extends Serializable> {
 
@@ -52,6 +53,14 @@ public interface IxBase<T extends Serializable> {
 
     Map<Key, T> all(Tx.Read tx);
 
+    /**
+     * Lazy, cursor-backed streams over the map. They are valid within the transaction
+     * <code>tx</code> only, close them when not consumed to the end.
+     */
+    Stream<Key> streamKeys(Tx.Read tx);
+
+    Stream<T> streamValues(Tx.Read tx);
+
     void clear(Tx.Write tx);
 
     T toValue(byte[] bb);
@@ -39,6 +39,7 @@ import java.util.Set;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
+import java.util.stream.Stream;
 
 /**
  * Indexes Map of type T.
@@ -58,6 +59,14 @@ public interface IxMap<T extends Serializable> extends IxBase<T> {
 
     Set<Key> getPkByIndex(String indexName, Tx.Read tx, Key indexKey);
 
+    /**
+     * Lazy versions of {@link #getPkByIndex} and {@link #getByIndex}, valid within the transaction
+     * <code>tx</code> only.
+     */
+    Stream<Key> streamPkByIndex(String indexName, Tx.Read tx, Key indexKey);
+
+    Stream<T> streamByIndex(String indexName, Tx.Read tx, Key indexKey);
+
     Map<Key, T> getByIndexLessThan(String indexName, Tx.Read tx, Key indexKey);
 
     Map<Key, T> getByIndexNotLessThan(String indexName, Tx.Read tx, Key indexKey);
@@ -34,10 +34,16 @@ import org.apache.commons.lang3.tuple.Pair;
 
 import java.io.Serializable;
 import java.util.List;
+import java.util.stream.Stream;
 
 public interface MultIxMap<T extends Serializable> extends IxBase<T> {
     List<T> get(Tx.Read tx, Key primaryKey);
 
+    /**
+     * Lazy version of {@link #get}, valid within the transaction <code>tx</code> only.
+     */
+    Stream<T> stream(Tx.Read tx, Key primaryKey);
+
     int count(Tx.Read tx, Key primaryKey);
 
     void put(Tx.Write tx, Key primaryKey, T value);
@@ -0,0 +1,109 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2018 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.rpki.validator3.storage;
+
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Keeps track of the write-heavy work (repository downloads and tree validations) that is
+ * running against the storage, so that maintenance can be postponed until the validator is idle.
+ */
+@Component
+public class StorageLoad {
+
+    private final AtomicInteger running = new AtomicInteger();
+    private volatile long lastFinishedAt = 0;
+    private final List<Runnable> busyListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Registers a callback that runs (on the thread starting the work) when the storage goes from idle to busy.
+     */
+    public void whenBusy(Runnable listener) {
+        busyListeners.add(listener);
+    }
+
+    public void during(Runnable work) {
+        started();
+        try {
+            work.run();
+        } finally {
+            finished();
+        }
+    }
+
+    /**
+     * Like {@link #during(Runnable)}, but the work lasts until the returned future completes.
+     */
+    public <T> CompletableFuture<T> duringAsync(Supplier<CompletableFuture<T>> work) {
+        started();
+        final CompletableFuture<T> result;
+        try {
+            result = work.get();
+        } catch (RuntimeException e) {
+            finished();
+            throw e;
+        }
+        return result.whenComplete((value, failure) -> finished());
+    }
+
+    private void started() {
+        final boolean wasIdle = running.getAndIncrement() == 0;
+        if (wasIdle) {
+            try {
+                busyListeners.forEach(Runnable::run);
+            } catch (RuntimeException e) {
+                finished();
+                throw e;
+            }
+        }
+    }
+
+    private void finished() {
+        lastFinishedAt = System.currentTimeMillis();
+        running.decrementAndGet();
+    }
+
+    public boolean isBusy() {
+        return running.get() > 0;
+    }
+
+    /**
+     * Time in milliseconds at which the last piece of work finished.
+     */
+    public long getLastFinishedAt() {
+        return lastFinishedAt;
+    }
+}
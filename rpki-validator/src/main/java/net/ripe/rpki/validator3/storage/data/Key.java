@@ -40,6 +40,7 @@ import net.ripe.rpki.validator3.util.Hex;
 
 import java.io.Serializable;
 import java.math.BigInteger;
+import java.nio.Buffer;
 import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.Collections;
@@ -118,6 +119,7 @@ public class Key implements Serializable {
         final int size = Arrays.stream(keys).mapToInt(Key::size).sum();
         final ByteBuffer combined = ByteBuffer.allocate(size);
         Arrays.stream(keys).forEach(k -> combined.put(k.bytes));
+        ((Buffer) combined).flip();
         return new Key(combined);
     }
 
@@ -124,6 +124,20 @@ public class CoderFactory {
         };
     }
 
+    public static Coder<byte[]> bytesCoder() {
+        return new Coder<byte[]>() {
+            @Override
+            public byte[] toBytes(byte[] bytes) {
+                return bytes;
+            }
+
+            @Override
+            public byte[] fromBytes(byte[] bytes) {
+                return bytes;
+            }
+        };
+    }
+
     public static Coder<String> stringCoder() {
         return new Coder<String>() {
             @Override
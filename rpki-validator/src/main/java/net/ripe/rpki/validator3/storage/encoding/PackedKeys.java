@@ -0,0 +1,184 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2018 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.rpki.validator3.storage.encoding;
+
+import com.google.common.primitives.UnsignedBytes;
+import net.ripe.rpki.validator3.storage.data.Key;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Compact encoding of a set of keys, written once and read many times.
+ *
+ * Keys are sorted in unsigned byte order and front-coded: every key is stored as the length
+ * of the prefix it shares with the previous key followed by the remaining bytes. The number
+ * of keys is stored up front, so counting does not require decoding. When all keys have the
+ * same length (e.g. SHA-256 hashes) it is stored once instead of per key.
+ *
+ * <pre>
+ *   count (varint) key length or 0 (varint) { shared prefix length (varint) [suffix length (varint)] suffix bytes }*
+ * </pre>
+ */
+public final class PackedKeys {
+
+    private static final Comparator<byte[]> ORDER = UnsignedBytes.lexicographicalComparator();
+
+    private PackedKeys() {
+    }
+
+    public static byte[] pack(Collection<Key> keys) {
+        final byte[][] sorted = keys.stream()
+                .map(Key::getBytes)
+                .sorted(ORDER)
+                .toArray(byte[][]::new);
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(sorted.length * 32 + 8);
+        final int keyLength = fixedLength(sorted);
+        writeVarInt(out, countDistinct(sorted));
+        writeVarInt(out, keyLength);
+        byte[] previous = null;
+        for (byte[] current : sorted) {
+            if (previous != null && Arrays.equals(previous, current)) {
+                continue;
+            }
+            final int shared = previous == null ? 0 : sharedPrefix(previous, current);
+            writeVarInt(out, shared);
+            if (keyLength == 0) {
+                writeVarInt(out, current.length - shared);
+            }
+            out.write(current, shared, current.length - shared);
+            previous = current;
+        }
+        return out.toByteArray();
+    }
+
+    public static int count(byte[] packed) {
+        return readVarInt(ByteBuffer.wrap(packed));
+    }
+
+    /**
+     * Keys in unsigned byte order, decoded while the stream is consumed.
+     */
+    public static Stream<Key> stream(byte[] packed) {
+        final ByteBuffer bb = ByteBuffer.wrap(packed);
+        final int count = readVarInt(bb);
+        final int keyLength = readVarInt(bb);
+        return StreamSupport.stream(new Spliterators.AbstractSpliterator<Key>(count,
+                Spliterator.ORDERED | Spliterator.SORTED | Spliterator.DISTINCT | Spliterator.NONNULL | Spliterator.SIZED) {
+            private byte[] previous = new byte[0];
+            private int remaining = count;
+
+            @Override
+            public boolean tryAdvance(Consumer<? super Key> action) {
+                if (remaining == 0) {
+                    return false;
+                }
+                remaining--;
+                previous = readNext(bb, keyLength, previous);
+                action.accept(Key.of(previous));
+                return true;
+            }
+
+            @Override
+            public Comparator<? super Key> getComparator() {
+                return Comparator.comparing(Key::getBytes, ORDER);
+            }
+        }, false);
+    }
+
+    private static byte[] readNext(ByteBuffer bb, int keyLength, byte[] previous) {
+        final int shared = readVarInt(bb);
+        final int suffix = keyLength == 0 ? readVarInt(bb) : keyLength - shared;
+        final byte[] current = Arrays.copyOf(previous, shared + suffix);
+        bb.get(current, shared, suffix);
+        return current;
+    }
+
+    private static int fixedLength(byte[][] keys) {
+        if (keys.length == 0) {
+            return 0;
+        }
+        final int length = keys[0].length;
+        for (byte[] key : keys) {
+            if (key.length != length) {
+                return 0;
+            }
+        }
+        return length;
+    }
+
+    private static int countDistinct(byte[][] sorted) {
+        int count = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || !Arrays.equals(sorted[i - 1], sorted[i])) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static int sharedPrefix(byte[] a, byte[] b) {
+        final int max = Math.min(a.length, b.length);
+        int i = 0;
+        while (i < max && a[i] == b[i]) {
+            i++;
+        }
+        return i;
+    }
+
+    private static void writeVarInt(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarInt(ByteBuffer bb) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = bb.get();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+}
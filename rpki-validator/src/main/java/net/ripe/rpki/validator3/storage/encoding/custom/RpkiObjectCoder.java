@@ -56,7 +56,6 @@ public class RpkiObjectCoder implements Coder<RpkiObject> {
         encoded.append(SHA256_TAG, rpkiObject.getSha256());
         encoded.append(AKI_TAG, rpkiObject.getAuthorityKeyIdentifier());
         encoded.appendNotNull(SERIAL_TAG, rpkiObject.getSerialNumber(), Coders::toBytes);
-        encoded.appendNotNull(ENCODED_TAG, rpkiObject.getEncoded());
         encoded.appendNotNull(SIGNING_TIME_TAG, rpkiObject.getSigningTime(), Coders::toBytes);
 
         return encoded.toByteArray();
@@ -71,7 +70,9 @@ public class RpkiObjectCoder implements Coder<RpkiObject> {
 
         rpkiObject.setType(RpkiObject.Type.valueOf(Coders.toString(content.get(TYPE_TAG))));
         rpkiObject.setSha256(content.get(SHA256_TAG));
-        rpkiObject.setEncoded(content.get(ENCODED_TAG));
+        // The DER content lives in its own content-addressed map, only records written
+        // by older versions of the validator still carry it inline.
+        Encoded.field(content, ENCODED_TAG).ifPresent(rpkiObject::setEncoded);
         rpkiObject.setAuthorityKeyIdentifier(content.get(AKI_TAG));
         Encoded.field(content, SIGNING_TIME_TAG).ifPresent(b -> rpkiObject.setSigningTime(Coders.toInstant(b)));
         Encoded.field(content, SERIAL_TAG).ifPresent(b -> rpkiObject.setSerialNumber(Coders.toBigInteger(b)));
@@ -0,0 +1,84 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2018 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.rpki.validator3.storage.memory;
+
+import com.google.common.primitives.UnsignedBytes;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * One entry of an in-memory store, all stores share a single sorted tree.
+ *
+ * Cells are ordered by store, then by key in unsigned lexicographic order, the same
+ * order Xodus uses. In stores with duplicates the value is part of the identity of
+ * the cell, a <code>null</code> value sorts before all values of the same key.
+ */
+final class Cell implements Comparable<Cell> {
+    static final Comparator<byte[]> UNSIGNED = UnsignedBytes.lexicographicalComparator();
+
+    final int store;
+    final boolean duplicates;
+    final byte[] key;
+    final byte[] value;
+
+    Cell(int store, boolean duplicates, byte[] key, byte[] value) {
+        this.store = store;
+        this.duplicates = duplicates;
+        this.key = key;
+        this.value = value;
+    }
+
+    @Override
+    public int compareTo(Cell o) {
+        final int s = Integer.compare(store, o.store);
+        if (s != 0) {
+            return s;
+        }
+        final int k = UNSIGNED.compare(key, o.key);
+        if (k != 0 || !(duplicates || o.duplicates)) {
+            return k;
+        }
+        if (value == null || o.value == null) {
+            return value == null ? (o.value == null ? 0 : -1) : 1;
+        }
+        return UNSIGNED.compare(value, o.value);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Cell && compareTo((Cell) o) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * store + Arrays.hashCode(key);
+    }
+}
@@ -0,0 +1,160 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2018 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.rpki.validator3.storage.memory;
+
+import lombok.Getter;
+import net.ripe.rpki.validator3.storage.IxBase;
+import net.ripe.rpki.validator3.storage.Tx;
+import net.ripe.rpki.validator3.storage.data.Key;
+import net.ripe.rpki.validator3.storage.encoding.Coder;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public abstract class InMemoryIxBase<T extends Serializable> implements IxBase<T> {
+
+    protected final InMemoryStorage storage;
+    @Getter
+    private final String name;
+
+    final InMemoryStore mainDb;
+    final Coder<T> coder;
+
+    InMemoryIxBase(final InMemoryStorage storage,
+                   final String name,
+                   final Coder<T> coder,
+                   final boolean duplicates) {
+        this.storage = storage;
+        this.name = name;
+        this.coder = coder;
+        this.mainDb = storage.createStore(name + "-main", duplicates);
+    }
+
+    static void checkNotNull(Object v, String s) {
+        if (v == null) {
+            throw new NullPointerException(s);
+        }
+    }
+
+    public Tx.Read readTx() {
+        return storage.beginRead();
+    }
+
+    protected void verifyKey(Key k) {
+        checkNotNull(k, "Key is null");
+    }
+
+    void checkKeyAndValue(Key primaryKey, T value) {
+        verifyKey(primaryKey);
+        checkNotNull(value, "Value is null");
+    }
+
+    public boolean exists(Tx.Read tx, Key key) {
+        return mainDb.get(tx, key.getBytes()).isPresent();
+    }
+
+    /**
+     * Values are kept encoded, so that they don't share state with the objects
+     * that were stored or read.
+     */
+    protected byte[] toBytes(T value) {
+        return coder.toBytes(value);
+    }
+
+    public Set<Key> keys(Tx.Read tx) {
+        try (Stream<Key> keys = streamKeys(tx)) {
+            return keys.collect(Collectors.toSet());
+        }
+    }
+
+    public List<T> values(Tx.Read tx) {
+        try (Stream<T> values = streamValues(tx)) {
+            return values.collect(Collectors.toList());
+        }
+    }
+
+    @Override
+    public Stream<Key> streamKeys(Tx.Read tx) {
+        return mainDb.range(tx, null, null).map(c -> Key.of(c.key));
+    }
+
+    @Override
+    public Stream<T> streamValues(Tx.Read tx) {
+        return mainDb.range(tx, null, null).map(c -> coder.fromBytes(c.value));
+    }
+
+    public Map<Key, T> all(Tx.Read tx) {
+        final Map<Key, T> result = new HashMap<>();
+        forEach(tx, (k, v) -> result.put(k, coder.fromBytes(v)));
+        return result;
+    }
+
+    @Override
+    public void clear(Tx.Write tx) {
+        mainDb.truncate(tx);
+    }
+
+    @Override
+    public T toValue(byte[] bb) {
+        return coder.fromBytes(bb);
+    }
+
+    @Override
+    public void forEach(Tx.Read tx, BiConsumer<Key, byte[]> c) {
+        try (Stream<Cell> cells = mainDb.range(tx, null, null)) {
+            cells.forEach(cell -> c.accept(Key.of(cell.key), cell.value));
+        }
+    }
+
+    public long size(Tx.Read tx) {
+        AtomicLong s = new AtomicLong();
+        forEach(tx, (k, v) -> s.getAndIncrement());
+        return s.get();
+    }
+
+    @Override
+    public Sizes sizeInfo(Tx.Read tx) {
+        AtomicInteger count = new AtomicInteger();
+        AtomicLong size = new AtomicLong();
+        forEach(tx, (k, v) -> {
+            count.getAndIncrement();
+            size.addAndGet(k.size() + v.length);
+        });
+        return new Sizes(count.get(), size.get());
+    }
+}
@@ -0,0 +1,268 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2018 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.rpki.validator3.storage.memory;
+
+import net.ripe.rpki.validator3.storage.IxMap;
+import net.ripe.rpki.validator3.storage.OnDeleteRestrictException;
+import net.ripe.rpki.validator3.storage.Tx;
+import net.ripe.rpki.validator3.storage.data.Key;
+import net.ripe.rpki.validator3.storage.encoding.Coder;
+import org.apache.commons.lang3.tuple.Pair;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * In-memory counterpart of {@link net.ripe.rpki.validator3.storage.xodus.XodusIxMap}, every index
+ * is a store with duplicates from index key to primary key.
+ */
+public class InMemoryIxMap<T extends Serializable> extends InMemoryIxBase<T> implements IxMap<T> {
+
+    private final Map<String, InMemoryStore> indexes;
+    private final Map<String, Function<T, Set<Key>>> indexFunctions;
+    private final List<BiConsumer<Tx.Write, Key>> onDeleteTriggers = new ArrayList<>();
+
+    public InMemoryIxMap(final InMemoryStorage storage,
+                         final String name,
+                         final Coder<T> coder,
+                         final Map<String, Function<T, Set<Key>>> indexFunctions) {
+        super(storage, name, coder, false);
+        this.indexFunctions = indexFunctions;
+        final Pair<Map<String, InMemoryStore>, Boolean> p = storage.createIndexes(name, indexFunctions.keySet());
+        this.indexes = p.getLeft();
+        if (p.getRight()) {
+            reindex();
+        }
+    }
+
+    private void reindex() {
+        storage.writeTx0(tx -> {
+            indexes.values().forEach(idx -> idx.truncate(tx));
+            try (Stream<Cell> cells = mainDb.range(tx, null, null)) {
+                cells.forEach(c -> {
+                    final T value = coder.fromBytes(c.value);
+                    indexFunctions.forEach((n, idxFun) ->
+                            idxFun.apply(value).forEach(ik -> indexes.get(n).put(tx, ik.getBytes(), c.key)));
+                });
+            }
+        });
+    }
+
+    public Optional<T> get(Key primaryKey) {
+        return get(readTx(), primaryKey);
+    }
+
+    public Optional<T> get(Tx.Read tx, Key primaryKey) {
+        verifyKey(primaryKey);
+        return mainDb.get(tx, primaryKey.getBytes()).map(coder::fromBytes);
+    }
+
+    public List<T> get(Tx.Read txn, Set<Key> primaryKeys) {
+        return primaryKeys.stream()
+                .map(pk -> get(txn, pk))
+                .filter(Optional::isPresent)
+                .map(Optional::get)
+                .collect(Collectors.toList());
+    }
+
+    public Optional<T> put(Tx.Write tx, Key primaryKey, T value) {
+        checkKeyAndValue(primaryKey, value);
+        final byte[] pk = primaryKey.getBytes();
+        final byte[] newVal = toBytes(value);
+
+        final Optional<byte[]> oldVal = mainDb.get(tx, pk);
+        if (oldVal.isPresent() && Arrays.equals(newVal, oldVal.get())) {
+            // Exact same value already exists, no need to store it again or to update indexes.
+            return Optional.of(value);
+        }
+
+        mainDb.put(tx, pk, newVal);
+        final Optional<T> oldValue = oldVal.map(coder::fromBytes);
+        indexFunctions.forEach((idxName, idxFun) -> {
+            final Set<Key> oldIndexKeys = oldValue.map(idxFun).orElse(Collections.emptySet());
+            final Set<Key> indexKeys = idxFun.apply(value).stream()
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.toSet());
+            final InMemoryStore index = indexes.get(idxName);
+            oldIndexKeys.stream()
+                    .filter(oik -> !indexKeys.contains(oik))
+                    .forEach(oik -> index.delete(tx, oik.getBytes(), pk));
+            indexKeys.stream()
+                    .filter(ik -> !oldIndexKeys.contains(ik))
+                    .forEach(ik -> index.put(tx, ik.getBytes(), pk));
+        });
+        return oldValue;
+    }
+
+    public boolean modify(Tx.Write tx, Key primaryKey, Consumer<T> modifyValue) {
+        final Optional<T> t = get(tx, primaryKey);
+        t.ifPresent(v -> {
+            modifyValue.accept(v);
+            put(tx, primaryKey, v);
+        });
+        return t.isPresent();
+    }
+
+    public void delete(Tx.Write tx, Key primaryKey) {
+        checkNotNull(primaryKey, "Key is null");
+        final byte[] pk = primaryKey.getBytes();
+        mainDb.get(tx, pk).ifPresent(bytes -> {
+            mainDb.delete(tx, pk);
+            if (!indexFunctions.isEmpty()) {
+                final T value = coder.fromBytes(bytes);
+                indexFunctions.forEach((idxName, idxFun) ->
+                        idxFun.apply(value).forEach(ik -> indexes.get(idxName).delete(tx, ik.getBytes(), pk)));
+            }
+        });
+        try {
+            onDeleteTriggers.forEach(bf -> bf.accept(tx, primaryKey));
+        } catch (OnDeleteRestrictException o) {
+            tx.abort();
+        }
+    }
+
+    public Map<Key, T> getByIndex(String indexName, Tx.Read tx, Key indexKey) {
+        return values(tx, getPkByIndex(indexName, tx, indexKey));
+    }
+
+    public Map<Key, T> values(Tx.Read tx, Set<Key> pks) {
+        final Map<Key, T> m = new HashMap<>();
+        pks.forEach(pk -> get(tx, pk).ifPresent(v -> m.put(pk, v)));
+        return m;
+    }
+
+    public Stream<Key> streamPkByIndex(String indexName, Tx.Read tx, Key indexKey) {
+        checkNotNull(indexKey, "Index key is null");
+        final InMemoryStore index = indexes.get(indexName);
+        if (index == null) {
+            return Stream.empty();
+        }
+        return index.stream(tx, indexKey.getBytes()).map(c -> Key.of(c.value));
+    }
+
+    public Stream<T> streamByIndex(String indexName, Tx.Read tx, Key indexKey) {
+        return streamPkByIndex(indexName, tx, indexKey)
+                .map(pk -> get(tx, pk))
+                .filter(Optional::isPresent)
+                .map(Optional::get);
+    }
+
+    public Set<Key> getPkByIndex(String indexName, Tx.Read tx, Key indexKey) {
+        try (Stream<Key> pks = streamPkByIndex(indexName, tx, indexKey)) {
+            return pks.collect(Collectors.toSet());
+        }
+    }
+
+    public Map<Key, T> getByIndexLessThan(String indexName, Tx.Read tx, Key indexKey) {
+        return values(tx, getPkByIndexLessThan(indexName, tx, indexKey));
+    }
+
+    public Map<Key, T> getByIndexNotLessThan(String indexName, Tx.Read tx, Key indexKey) {
+        return values(tx, getPkByIndexGreaterThan(indexName, tx, indexKey));
+    }
+
+    public Set<Key> getPkByIndexLessThan(String indexName, Tx.Read tx, Key indexKey) {
+        checkNotNull(indexKey, "Index key is null");
+        return getPkByIndexKeyRange(indexName, tx, null, indexKey.getBytes());
+    }
+
+    public Set<Key> getPkByIndexGreaterThan(String indexName, Tx.Read tx, Key indexKey) {
+        checkNotNull(indexKey, "Index key is null");
+        return getPkByIndexKeyRange(indexName, tx, indexKey.getBytes(), null);
+    }
+
+    public Map<Key, T> getByIdxDescendingWhere(String indexName, Tx.Read tx, Predicate<T> p) {
+        return getOrderedMapWhere(indexName, tx, false, p);
+    }
+
+    public Map<Key, T> getByIdxAscendingWhere(String indexName, Tx.Read tx, Predicate<T> p) {
+        return getOrderedMapWhere(indexName, tx, true, p);
+    }
+
+    /**
+     * Same contract as the Xodus version: walks the index in order and returns the matching
+     * values of the first index key that has any.
+     */
+    private Map<Key, T> getOrderedMapWhere(String indexName, Tx.Read tx,
+                                           boolean ascending,
+                                           Predicate<T> predicate) {
+        final InMemoryStore index = indexes.get(indexName);
+        final Map<Key, T> m = new HashMap<>();
+        if (index == null) {
+            return m;
+        }
+        final AtomicReference<byte[]> foundAt = new AtomicReference<>();
+        try (Stream<Cell> cells = ascending ? index.range(tx, null, null) : index.descending(tx)) {
+            InMemoryStore.takeWhile(cells.iterator(), c -> foundAt.get() == null || Arrays.equals(foundAt.get(), c.key))
+                    .forEach(c -> get(tx, Key.of(c.value)).ifPresent(value -> {
+                        if (predicate.test(value)) {
+                            foundAt.compareAndSet(null, c.key);
+                            m.put(Key.of(c.value), value);
+                        }
+                    }));
+        }
+        return m;
+    }
+
+    public void onDelete(BiConsumer<Tx.Write, Key> bf) {
+        onDeleteTriggers.add(bf);
+    }
+
+    @Override
+    public void clear(Tx.Write tx) {
+        mainDb.truncate(tx);
+        indexes.values().forEach(idx -> idx.truncate(tx));
+    }
+
+    private Set<Key> getPkByIndexKeyRange(String indexName, Tx.Read tx, byte[] start, byte[] stop) {
+        final InMemoryStore index = indexes.get(indexName);
+        if (index == null) {
+            return Collections.emptySet();
+        }
+        try (Stream<Cell> cells = index.range(tx, start, stop)) {
+            return cells.map(c -> Key.of(c.value)).collect(Collectors.toSet());
+        }
+    }
+}
@@ -0,0 +1,229 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2018 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.rpki.validator3.storage.memory;
+
+import jetbrains.exodus.core.dataStructures.persistent.Persistent23Tree;
+import lombok.extern.slf4j.Slf4j;
+import net.ripe.rpki.validator3.storage.IxMap;
+import net.ripe.rpki.validator3.storage.MultIxMap;
+import net.ripe.rpki.validator3.storage.Storage;
+import net.ripe.rpki.validator3.storage.Tx;
+import net.ripe.rpki.validator3.storage.data.Key;
+import net.ripe.rpki.validator3.storage.encoding.Coder;
+import net.ripe.rpki.validator3.storage.encoding.CoderFactory;
+import net.ripe.rpki.validator3.util.ForkJoin;
+import org.apache.commons.lang3.tuple.Pair;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Storage that keeps everything in memory, for validator instances that don't need to
+ * keep state across restarts and for benchmarks that should not depend on disk I/O.
+ *
+ * All maps live in one persistent (copy-on-write) sorted tree. A read transaction works
+ * on the version of the tree that was current when it started, write transactions are
+ * exclusive and publish their version of the tree on commit. That gives the same isolation
+ * as the exclusive write and read-only transactions used with Xodus.
+ */
+@Profile("!test")
+@Component
+@Primary
+@ConditionalOnProperty(name = "rpki.validator.storage", havingValue = "memory")
+@Slf4j
+public class InMemoryStorage implements Storage {
+
+    private final Persistent23Tree<Cell> tree = new Persistent23Tree<>();
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    private final Map<String, Integer> storeIds = new HashMap<>();
+    private final Map<String, Set<String>> indexNames = new HashMap<>();
+
+    private final AtomicLong commits = new AtomicLong();
+    private final AtomicLong aborts = new AtomicLong();
+    private final AtomicInteger activeReads = new AtomicInteger();
+
+    public InMemoryStorage() {
+        log.info("Using in-memory storage, nothing is kept across restarts");
+    }
+
+    @Override
+    public <T> T writeTx(Function<Tx.Write, T> f) {
+        if (writeLock.isHeldByCurrentThread()) {
+            throw new IllegalStateException("Nested write transactions are not supported");
+        }
+        final InMemoryTx.Write tx = ForkJoin.blocking(() -> {
+            writeLock.lock();
+            return new InMemoryTx.Write(tree.beginWrite());
+        });
+        final T result;
+        try {
+            result = f.apply(tx);
+            if (tx.isAborted()) {
+                aborts.incrementAndGet();
+                return result;
+            }
+            if (!tx.tree().endWrite()) {
+                throw new IllegalStateException("Concurrent modification of the in-memory storage");
+            }
+            commits.incrementAndGet();
+        } catch (RuntimeException | Error e) {
+            aborts.incrementAndGet();
+            throw e;
+        } finally {
+            writeLock.unlock();
+        }
+
+        for (Runnable r : tx.getAfterCommitHooks()) {
+            try {
+                r.run();
+            } catch (Exception ignored) {
+                // this is just to keep the loop going, every Runnable
+                // has to take care of exceptions themselves
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void writeTx0(Consumer<Tx.Write> c) {
+        writeTx(tx -> {
+            c.accept(tx);
+            return null;
+        });
+    }
+
+    @Override
+    public <T> T readTx(Function<Tx.Read, T> f) {
+        activeReads.incrementAndGet();
+        try {
+            return f.apply(beginRead());
+        } finally {
+            activeReads.decrementAndGet();
+        }
+    }
+
+    @Override
+    public void readTx0(Consumer<Tx.Read> c) {
+        readTx(tx -> {
+            c.accept(tx);
+            return null;
+        });
+    }
+
+    InMemoryTx.Read beginRead() {
+        return new InMemoryTx.Read(tree.beginRead());
+    }
+
+    @Override
+    public String status() {
+        return "entries:" + tree.beginRead().size() + ",commits:" + commits.get() + ",aborts:" + aborts.get();
+    }
+
+    @Override
+    public <T extends Serializable> IxMap<T> createIxMap(String name,
+                                                         Map<String, Function<T, Set<Key>>> indexFunctions,
+                                                         Class<T> c) {
+        return createIxMap(name, indexFunctions, CoderFactory.makeCoder(c));
+    }
+
+    @Override
+    public <T extends Serializable> MultIxMap<T> createMultIxMap(String name, Coder<T> c) {
+        return new InMemoryMultIxMap<>(this, name, c);
+    }
+
+    @Override
+    public <T extends Serializable> IxMap<T> createIxMap(String name,
+                                                         Map<String, Function<T, Set<Key>>> indexFunctions,
+                                                         Coder<T> c) {
+        return new InMemoryIxMap<>(this, name, c, indexFunctions);
+    }
+
+    synchronized InMemoryStore createStore(String name, boolean duplicates) {
+        final int id = storeIds.computeIfAbsent(name, n -> storeIds.size());
+        return new InMemoryStore(name, id, duplicates);
+    }
+
+    /**
+     * Index stores of the map, and whether existing values have to be indexed again because
+     * the map was created before with other indexes.
+     */
+    synchronized Pair<Map<String, InMemoryStore>, Boolean> createIndexes(String name, Set<String> indexes) {
+        final Set<String> existing = indexNames.put(name, indexes);
+        final boolean reindex = existing != null && !existing.equals(indexes);
+        if (reindex) {
+            existing.stream()
+                    .filter(idx -> !indexes.contains(idx))
+                    .map(idx -> createStore(idxStoreName(name, idx), true))
+                    .forEach(store -> writeTx0(store::truncate));
+        }
+        final Map<String, InMemoryStore> stores = new HashMap<>();
+        indexes.forEach(idx -> stores.put(idx, createStore(idxStoreName(name, idx), true)));
+        return Pair.of(stores, reindex);
+    }
+
+    private static String idxStoreName(String name, String idx) {
+        return name + "-idx-" + idx;
+    }
+
+    @Override
+    public void gc() {
+        // old versions of the tree are collected by the JVM as soon as no transaction uses them
+    }
+
+    @NotNull
+    @Override
+    public Map<String, String> getDbStats() {
+        final Map<String, String> stats = new HashMap<>();
+        stats.put("ENTRIES", Integer.toString(tree.beginRead().size()));
+        stats.put("STORES", Integer.toString(storeIdCount()));
+        stats.put("COMMITS", Long.toString(commits.get()));
+        stats.put("ABORTS", Long.toString(aborts.get()));
+        stats.put("ACTIVE_READ_TRANSACTIONS", Integer.toString(activeReads.get()));
+        return Collections.unmodifiableMap(stats);
+    }
+
+    private synchronized int storeIdCount() {
+        return storeIds.size();
+    }
+}
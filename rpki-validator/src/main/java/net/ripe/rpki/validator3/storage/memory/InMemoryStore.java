@@ -0,0 +1,153 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2018 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.rpki.validator3.storage.memory;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Streams;
+import jetbrains.exodus.core.dataStructures.persistent.AbstractPersistent23Tree;
+import jetbrains.exodus.core.dataStructures.persistent.Persistent23Tree;
+import lombok.Getter;
+import net.ripe.rpki.validator3.storage.Tx;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Named key-value store within the in-memory tree, the counterpart of a Xodus store.
+ */
+class InMemoryStore {
+
+    private static final byte[] NO_KEY = new byte[0];
+
+    @Getter
+    private final String name;
+    private final int id;
+    private final boolean duplicates;
+
+    InMemoryStore(String name, int id, boolean duplicates) {
+        this.name = name;
+        this.id = id;
+        this.duplicates = duplicates;
+    }
+
+    Optional<byte[]> get(Tx.Read tx, byte[] key) {
+        return stream(tx, key).findFirst().map(c -> c.value);
+    }
+
+    boolean exists(Tx.Read tx, byte[] key, byte[] value) {
+        return InMemoryTx.tree(tx).contains(new Cell(id, duplicates, key, value));
+    }
+
+    /**
+     * Replaces the value of the key, in a store with duplicates adds the value to the key.
+     */
+    void put(Tx.Write tx, byte[] key, byte[] value) {
+        final Persistent23Tree.MutableTree<Cell> tree = InMemoryTx.mutableTree(tx);
+        final Cell cell = new Cell(id, duplicates, key, value);
+        tree.exclude(cell);
+        tree.add(cell);
+    }
+
+    void delete(Tx.Write tx, byte[] key) {
+        final Persistent23Tree.MutableTree<Cell> tree = InMemoryTx.mutableTree(tx);
+        try (Stream<Cell> cells = stream(tx, key)) {
+            cells.forEach(tree::exclude);
+        }
+    }
+
+    boolean delete(Tx.Write tx, byte[] key, byte[] value) {
+        return InMemoryTx.mutableTree(tx).exclude(new Cell(id, duplicates, key, value));
+    }
+
+    void truncate(Tx.Write tx) {
+        final Persistent23Tree.MutableTree<Cell> tree = InMemoryTx.mutableTree(tx);
+        try (Stream<Cell> cells = range(tx, null, null)) {
+            cells.forEach(tree::exclude);
+        }
+    }
+
+    /**
+     * All cells of the key, in the order of their values.
+     */
+    Stream<Cell> stream(Tx.Read tx, byte[] key) {
+        return from(InMemoryTx.tree(tx), key, k -> Arrays.equals(k, key));
+    }
+
+    /**
+     * Cells with keys from <code>start</code> (inclusive) to <code>stop</code> (exclusive),
+     * <code>null</code> means unbounded.
+     */
+    Stream<Cell> range(Tx.Read tx, byte[] start, byte[] stop) {
+        return from(InMemoryTx.tree(tx), start == null ? NO_KEY : start,
+                k -> stop == null || Cell.UNSIGNED.compare(k, stop) < 0);
+    }
+
+    /**
+     * The tree only iterates backwards over everything from a given element to its end,
+     * so the cells of the store are reversed here instead.
+     */
+    Stream<Cell> descending(Tx.Read tx) {
+        final List<Cell> cells;
+        try (Stream<Cell> ascending = range(tx, null, null)) {
+            cells = ascending.collect(Collectors.toList());
+        }
+        return Lists.reverse(cells).stream();
+    }
+
+    private Stream<Cell> from(AbstractPersistent23Tree<Cell> tree, byte[] start, Predicate<byte[]> keyWhile) {
+        return takeWhile(tree.tailIterator(new Cell(id, duplicates, start, null)),
+                c -> c.store == id && keyWhile.test(c.key));
+    }
+
+    /**
+     * Elements of the iterator up to the first one that does not match, <code>Stream.takeWhile</code>
+     * is not available before Java 9.
+     */
+    static <T> Stream<T> takeWhile(Iterator<T> it, Predicate<T> p) {
+        return Streams.stream(new AbstractIterator<T>() {
+            @Override
+            protected T computeNext() {
+                if (it.hasNext()) {
+                    final T next = it.next();
+                    if (p.test(next)) {
+                        return next;
+                    }
+                }
+                return endOfData();
+            }
+        });
+    }
+}
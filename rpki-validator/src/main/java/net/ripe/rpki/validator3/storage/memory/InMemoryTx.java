@@ -0,0 +1,130 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2018 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.rpki.validator3.storage.memory;
+
+import jetbrains.exodus.core.dataStructures.persistent.AbstractPersistent23Tree;
+import jetbrains.exodus.core.dataStructures.persistent.Persistent23Tree;
+import lombok.Getter;
+import net.ripe.rpki.validator3.storage.Tx;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Transactions over a version of the in-memory tree. A read transaction sees the immutable
+ * version that was current when it started, a write transaction works on a mutable copy that
+ * only becomes visible to others when it is committed.
+ */
+public abstract class InMemoryTx implements AutoCloseable {
+
+    private static final AtomicLong idseq = new AtomicLong(1);
+
+    @Getter
+    private final long threadId;
+    @Getter
+    private final long id;
+    private boolean aborted = false;
+
+    private InMemoryTx() {
+        threadId = Thread.currentThread().getId();
+        id = idseq.getAndIncrement();
+    }
+
+    abstract AbstractPersistent23Tree<Cell> tree();
+
+    public AbstractPersistent23Tree<Cell> txn() {
+        verifyState();
+        return tree();
+    }
+
+    static AbstractPersistent23Tree<Cell> tree(Tx.Read tx) {
+        return ((InMemoryTx) tx).txn();
+    }
+
+    static Persistent23Tree.MutableTree<Cell> mutableTree(Tx.Write tx) {
+        return ((Write) tx).tree();
+    }
+
+    private void verifyState() {
+        if (aborted) {
+            throw new RuntimeException("Transaction " + id + " was aborted.");
+        }
+        if (Thread.currentThread().getId() != threadId) {
+            throw new RuntimeException("This transaction was created in another " +
+                    "thread and cannot be used in the thread " + Thread.currentThread());
+        }
+    }
+
+    public void abort() {
+        aborted = true;
+    }
+
+    boolean isAborted() {
+        return aborted;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    public static class Read extends InMemoryTx implements Tx.Read {
+        private final Persistent23Tree.ImmutableTree<Cell> tree;
+
+        Read(Persistent23Tree.ImmutableTree<Cell> tree) {
+            this.tree = tree;
+        }
+
+        @Override
+        AbstractPersistent23Tree<Cell> tree() {
+            return tree;
+        }
+    }
+
+    public static class Write extends InMemoryTx implements Tx.Write {
+        private final Persistent23Tree.MutableTree<Cell> tree;
+
+        @Getter
+        private final List<Runnable> afterCommitHooks = new ArrayList<>();
+
+        Write(Persistent23Tree.MutableTree<Cell> tree) {
+            this.tree = tree;
+        }
+
+        @Override
+        Persistent23Tree.MutableTree<Cell> tree() {
+            return tree;
+        }
+
+        public synchronized void afterCommit(Runnable r) {
+            afterCommitHooks.add(r);
+        }
+    }
+}
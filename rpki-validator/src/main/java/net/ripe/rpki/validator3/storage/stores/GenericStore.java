@@ -38,6 +38,7 @@ import java.nio.ByteBuffer;
 import java.util.List;
 import java.util.Set;
 import java.util.function.BiConsumer;
+import java.util.stream.Stream;
 
 public interface GenericStore<T extends Serializable> {
     Ref<T> makeRef(Tx.Read tx, Key key);
@@ -55,4 +56,9 @@ public interface GenericStore<T extends Serializable> {
     boolean exists(Tx.Read tx, Key key);
 
     Set<Key> keys(Tx.Read tx);
+
+    /**
+     * Keys in ascending (unsigned byte) order, see {@link net.ripe.rpki.validator3.storage.IxBase#streamKeys}.
+     */
+    Stream<Key> streamKeys(Tx.Read tx);
 }
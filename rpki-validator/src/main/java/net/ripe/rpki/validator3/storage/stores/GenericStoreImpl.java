@@ -38,6 +38,7 @@ import java.io.Serializable;
 import java.util.List;
 import java.util.Set;
 import java.util.function.BiConsumer;
+import java.util.stream.Stream;
 
 public abstract class GenericStoreImpl<T extends Serializable> implements GenericStore<T> {
     public Ref<T> makeRef(Tx.Read tx, Key key) {
@@ -73,5 +74,10 @@ public abstract class GenericStoreImpl<T extends Serializable> implements Generi
         return ixMap().keys(tx);
     }
 
+    @Override
+    public Stream<Key> streamKeys(Tx.Read tx) {
+        return ixMap().streamKeys(tx);
+    }
+
     protected abstract IxMap<T> ixMap();
 }
@@ -41,14 +41,14 @@ import java.util.stream.Stream;
 public interface RpkiObjects extends GenericStore<RpkiObject> {
     Optional<RpkiObject> get(Tx.Read tx, Key key);
 
+    Optional<byte[]> getEncoded(Tx.Read tx, Key key);
+
     void put(Tx.Write tx, RpkiObject rpkiObject);
 
     void put(Tx.Write tx, RpkiObject rpkiObject, String location);
 
     void delete(Tx.Write tx, RpkiObject o);
 
-    void markReachable(Tx.Write tx, Key pk, InstantWithoutNanos i);
-
     void addLocation(Tx.Write tx, Key pk, String location);
 
     SortedSet<String> getLocations(Tx.Read tx, Key pk);
@@ -68,4 +68,9 @@ public interface RpkiObjects extends GenericStore<RpkiObject> {
     Set<Key> getPkByType(Tx.Read tx, RpkiObject.Type type);
 
     void markReachable(Tx.Write tx, List<Key> rpkiObjectsKeys);
+
+    /**
+     * Marks the objects as reachable in short transactions, for large numbers of objects.
+     */
+    void markReachable(List<Key> rpkiObjectsKeys);
 }
@@ -34,4 +34,6 @@ import net.ripe.rpki.validator3.storage.Tx;
 public interface Settings extends GenericStore<String> {
     void markInitialValidationRunCompleted(Tx.Write tx);
     boolean isInitialValidationRunCompleted(Tx.Read tx);
+    void setTrue(Tx.Write tx, String key);
+    boolean isTrue(Tx.Read tx, String key);
 }
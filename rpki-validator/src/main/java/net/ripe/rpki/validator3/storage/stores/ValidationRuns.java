@@ -41,6 +41,7 @@ import net.ripe.rpki.validator3.storage.data.TrustAnchor;
 import net.ripe.rpki.validator3.storage.data.validation.*;
 import org.apache.commons.lang3.tuple.Pair;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
@@ -65,17 +66,28 @@ public interface ValidationRuns {
 
     Optional<CertificateTreeValidationRun> findLatestCompletedCaTreeValidationRun(Tx.Read tx, TrustAnchor trustAnchor);
 
-    int removeOldValidationRuns(Tx.Write tx, InstantWithoutNanos completedBefore);
+    /**
+     * Removes the runs completed (or, when not completed, started) before <code>completedBefore</code>, except
+     * for the latest successful ones, in several (short) write transactions.
+     */
+    int removeOldValidationRuns(InstantWithoutNanos completedBefore);
 
     Stream<ValidationCheck> findValidationChecksForValidationRun(Tx.Read tx, long validationRunId, Paging paging, SearchTerm searchTerm, Sorting sorting);
 
     int countValidationChecksForValidationRun(Tx.Read tx, long validationRunId, SearchTerm searchTerm);
 
+    List<ValidationCheck> findValidationChecks(Tx.Read tx, ValidationRun validationRun);
+
+    int countValidationChecks(Tx.Read tx, ValidationRun validationRun, ValidationCheck.Status status);
+
     void associate(Tx.Write writeTx, RpkiRepositoryValidationRun validationRun, RpkiObject o);
 
     void associate(Tx.Write writeTx, RpkiRepositoryValidationRun validationRun, RpkiRepository r);
 
-    void associateRpkiObjectKey(Tx.Write tx, CertificateTreeValidationRun validationRun, Key rpkiObjectKey);
+    /**
+     * Stores all the objects validated by the run at once, it is not possible to add more later.
+     */
+    void associateRpkiObjectKeys(Tx.Write tx, CertificateTreeValidationRun validationRun, Collection<Key> rpkiObjectKeys);
 
     Set<Key> findAssociatedPks(Tx.Read tx, CertificateTreeValidationRun validationRun);
 
@@ -85,5 +97,9 @@ public interface ValidationRuns {
 
     int getObjectCount(Tx.Read tx, ValidationRun validationRun);
 
-    int removeOrphanValidationRunAssociations(Tx.Write tx);
+    /**
+     * Removes the associations with objects and repositories that no longer exist, in several
+     * (short) write transactions.
+     */
+    int removeOrphanValidationRunAssociations();
 }
@@ -0,0 +1,132 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2018 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.rpki.validator3.storage.stores.impl;
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnel;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import net.ripe.rpki.validator3.storage.data.Key;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * In-memory Bloom filter over the keys (SHA-256 hashes) of the stored RPKI objects, so that looking
+ * up an object that is not stored usually does not need to touch the storage.
+ *
+ * Keys are added before the transaction storing them commits, so the filter never misses an object
+ * that a reader can see. Deleted objects are not removed (a Bloom filter cannot do that), they become
+ * false positives until the filter is rebuilt from the stored keys.
+ */
+class ObjectHashFilter {
+
+    private static final double FALSE_POSITIVE_PROBABILITY = 0.01;
+    private static final long MIN_CAPACITY = 100_000;
+
+    private static final Funnel<Key> KEY_FUNNEL = (key, into) -> into.putBytes(key.getBytes());
+
+    private volatile BloomFilter<Key> filter;
+    private volatile long capacity;
+    private final AtomicLong deletedSinceRebuild = new AtomicLong();
+
+    private final Counter avoided;
+    private final Counter found;
+    private final Counter falsePositives;
+
+    ObjectHashFilter(MeterRegistry registry) {
+        this.capacity = MIN_CAPACITY;
+        this.filter = BloomFilter.create(KEY_FUNNEL, capacity, FALSE_POSITIVE_PROBABILITY);
+
+        this.avoided = lookups(registry, "avoided");
+        this.found = lookups(registry, "found");
+        this.falsePositives = lookups(registry, "false_positive");
+        Gauge.builder("rpkivalidator.storage.object.filter.fpp", this, f -> f.filter.expectedFpp())
+                .description("Expected false positive probability of the object hash filter")
+                .register(registry);
+    }
+
+    private static Counter lookups(MeterRegistry registry, String result) {
+        return Counter.builder("rpkivalidator.storage.object.filter.lookups")
+                .description("Object lookups by hash, by whether the filter avoided a storage lookup")
+                .tag("result", result)
+                .register(registry);
+    }
+
+    /**
+     * Replaces the filter with one built from <code>keys</code>, sized for twice their number. The caller
+     * must make sure no objects are stored concurrently (e.g. by running this in a write transaction).
+     */
+    void rebuild(long size, Stream<Key> keys) {
+        final long newCapacity = Math.max(MIN_CAPACITY, 2 * size);
+        final BloomFilter<Key> newFilter = BloomFilter.create(KEY_FUNNEL, newCapacity, FALSE_POSITIVE_PROBABILITY);
+        keys.forEach(newFilter::put);
+        filter = newFilter;
+        capacity = newCapacity;
+        deletedSinceRebuild.set(0);
+    }
+
+    void add(Key key) {
+        filter.put(key);
+    }
+
+    void deleted(long count) {
+        deletedSinceRebuild.addAndGet(count);
+    }
+
+    boolean mightContain(Key key) {
+        return filter.mightContain(key);
+    }
+
+    /**
+     * Looks up <code>key</code> in the filter and records the outcome. Pass the result of the storage lookup
+     * (when the filter let it through) to {@link #recordLookup(boolean)}.
+     */
+    boolean lookup(Key key) {
+        if (filter.mightContain(key)) {
+            return true;
+        }
+        avoided.increment();
+        return false;
+    }
+
+    void recordLookup(boolean present) {
+        (present ? found : falsePositives).increment();
+    }
+
+    /**
+     * The filter is over capacity or too many keys in it have been deleted, so its false positive
+     * rate is (well) above the target.
+     */
+    boolean needsRebuild() {
+        return filter.approximateElementCount() > capacity || deletedSinceRebuild.get() > capacity / 4;
+    }
+}
@@ -0,0 +1,290 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2018 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.rpki.validator3.storage.stores.impl;
+
+import com.google.common.collect.ImmutableMap;
+import net.ripe.rpki.validator3.api.util.InstantWithoutNanos;
+import net.ripe.rpki.validator3.storage.IxMap;
+import net.ripe.rpki.validator3.storage.Storage;
+import net.ripe.rpki.validator3.storage.Tx;
+import net.ripe.rpki.validator3.storage.data.Key;
+import net.ripe.rpki.validator3.storage.encoding.CoderFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Keeps track of reachable RPKI objects per epoch instead of per object.
+ *
+ * Every object gets a dense ordinal when it is stored for the first time. Marking objects
+ * as reachable sets their ordinals in the bitset of the current epoch, which is stored as
+ * a single value, so a validation run writes one record instead of one per object.
+ *
+ * The epochs are keyed by their start time, so finding unreachable objects only has to look
+ * at the ordinals of the epochs that expire (objects last seen in them) and at the objects
+ * that were stored before the cut-off and are still pending their first check. Neither
+ * requires a scan over all objects.
+ *
+ * The ordinals of deleted objects are recycled, so that the bitsets grow with the number of
+ * live objects. A deleted ordinal is first released, and only becomes free for reuse once
+ * {@link #clearReleased} has cleared it in all epochs.
+ */
+class ReachabilityEpochs {
+
+    static final Duration EPOCH_DURATION = Duration.ofHours(1);
+
+    private static final String ORDINAL_SEQUENCE = "rpki-objects-ordinal";
+    private static final String BY_EPOCH_INDEX = "by-epoch";
+
+    private final IxMap<Long> ordinals;
+    private final IxMap<byte[]> keysByOrdinal;
+    private final IxMap<byte[]> epochs;
+    private final IxMap<Long> pending;
+    // Ordinals of deleted objects, that may still be set in some epochs
+    private final IxMap<Long> released;
+    // Ordinals of deleted objects that are not set in any epoch
+    private final IxMap<Long> free;
+    private final SequencesStore sequences;
+
+    ReachabilityEpochs(Storage storage, SequencesStore sequences,
+                       String ordinalMapName, String ordinalKeysMapName, String epochMapName, String pendingMapName,
+                       String releasedMapName, String freeMapName) {
+        this.sequences = sequences;
+        this.ordinals = storage.createIxMap(ordinalMapName, ImmutableMap.of(), CoderFactory.longCoder());
+        this.keysByOrdinal = storage.createIxMap(ordinalKeysMapName, ImmutableMap.of(), CoderFactory.bytesCoder());
+        this.epochs = storage.createIxMap(epochMapName, ImmutableMap.of(), CoderFactory.bytesCoder());
+        this.pending = storage.createIxMap(pendingMapName,
+            ImmutableMap.of(BY_EPOCH_INDEX, epoch -> Key.keys(Key.of(epoch))),
+            CoderFactory.longCoder());
+        this.released = storage.createIxMap(releasedMapName, ImmutableMap.of(), CoderFactory.longCoder());
+        this.free = storage.createIxMap(freeMapName, ImmutableMap.of(), CoderFactory.longCoder());
+    }
+
+    /**
+     * Assigns an ordinal to new objects and (re)schedules the object to be checked for reachability
+     * once the epoch it was created in expires.
+     */
+    void register(Tx.Write tx, Key key, InstantWithoutNanos createdAt) {
+        if (!ordinals.exists(tx, key)) {
+            final long ordinal = nextOrdinal(tx);
+            ordinals.put(tx, key, ordinal);
+            keysByOrdinal.put(tx, Key.of(ordinal), key.getBytes());
+        }
+        pending.put(tx, key, epochStart(createdAt == null ? InstantWithoutNanos.now() : createdAt));
+    }
+
+    private long nextOrdinal(Tx.Write tx) {
+        final Optional<Key> recycled;
+        try (Stream<Key> keys = free.streamKeys(tx)) {
+            recycled = keys.findFirst();
+        }
+        if (recycled.isPresent()) {
+            free.delete(tx, recycled.get());
+            return recycled.get().asLong();
+        }
+        return sequences.next(tx, ORDINAL_SEQUENCE);
+    }
+
+    boolean isRegistered(Tx.Read tx, Key key) {
+        return ordinals.exists(tx, key);
+    }
+
+    void delete(Tx.Write tx, Key key) {
+        ordinals.get(tx, key).ifPresent(ordinal -> {
+            keysByOrdinal.delete(tx, Key.of(ordinal));
+            released.put(tx, Key.of(ordinal), ordinal);
+        });
+        ordinals.delete(tx, key);
+        pending.delete(tx, key);
+    }
+
+    /**
+     * Clears the released ordinals in all epochs, rewriting each epoch at most once, and makes them
+     * free for reuse.
+     *
+     * @return the number of ordinals made free.
+     */
+    int clearReleased(Tx.Write tx) {
+        final BitSet cleared = new BitSet();
+        released.forEach(tx, (k, bytes) -> cleared.set(index(k.asLong())));
+        if (cleared.isEmpty()) {
+            return 0;
+        }
+
+        final List<Key> epochKeys;
+        try (Stream<Key> keys = epochs.streamKeys(tx)) {
+            epochKeys = keys.collect(Collectors.toList());
+        }
+        epochKeys.forEach(epoch -> epochs.get(tx, epoch).ifPresent(bytes -> {
+            final BitSet marked = BitSet.valueOf(bytes);
+            if (marked.intersects(cleared)) {
+                marked.andNot(cleared);
+                epochs.put(tx, epoch, marked.toByteArray());
+            }
+        }));
+
+        released.clear(tx);
+        cleared.stream().forEach(ordinal -> free.put(tx, Key.of((long) ordinal), (long) ordinal));
+        return cleared.cardinality();
+    }
+
+    void markReachable(Tx.Write tx, Collection<Key> keys) {
+        markReachable(tx, keys, InstantWithoutNanos.now());
+    }
+
+    void markReachable(Tx.Write tx, Collection<Key> keys, InstantWithoutNanos at) {
+        markReachable(tx, ordinalsOf(tx, keys), at);
+    }
+
+    /**
+     * The ordinals of the objects, to be marked as reachable in a later transaction. An object deleted
+     * in the meantime leaves an ordinal that doesn't map to a key any more, or that was recycled for a
+     * new object. The new object is then kept for one more grace period, it is never deleted early.
+     */
+    BitSet ordinalsOf(Tx.Read tx, Collection<Key> keys) {
+        final BitSet result = new BitSet();
+        keys.forEach(k -> ordinals.get(tx, k).ifPresent(ordinal -> result.set(index(ordinal))));
+        return result;
+    }
+
+    void markReachable(Tx.Write tx, BitSet ordinals, InstantWithoutNanos at) {
+        final Key epoch = epochKey(at);
+        final BitSet reachable = epochs.get(tx, epoch).map(BitSet::valueOf).orElseGet(BitSet::new);
+        reachable.or(ordinals);
+        epochs.put(tx, epoch, reachable.toByteArray());
+    }
+
+    /**
+     * Objects that are not marked as reachable in any epoch ending after <code>since</code>, out of
+     * the objects last marked in an older epoch and the objects pending since before that.
+     */
+    List<Key> findUnreachable(Tx.Read tx, InstantWithoutNanos since) {
+        final long firstEpoch = epochStart(since);
+        final BitSet reachable = new BitSet();
+        final BitSet expired = new BitSet();
+        epochs.forEach(tx, (k, bytes) -> {
+            final BitSet marked = BitSet.valueOf(epochs.toValue(bytes));
+            if (k.asLong() >= firstEpoch) {
+                reachable.or(marked);
+            } else {
+                expired.or(marked);
+            }
+        });
+
+        final List<Key> unreachable = new ArrayList<>();
+        expired.andNot(reachable);
+        expired.stream().forEach(ordinal -> keysByOrdinal.get(tx, Key.of(ordinal)).ifPresent(k -> unreachable.add(Key.of(k))));
+        pending.getPkByIndexLessThan(BY_EPOCH_INDEX, tx, Key.of(firstEpoch)).forEach(k ->
+            ordinals.get(tx, k).ifPresent(ordinal -> {
+                if (!reachable.get(index(ordinal)) && !expired.get(index(ordinal))) {
+                    unreachable.add(k);
+                }
+            }));
+        return unreachable;
+    }
+
+    /**
+     * Objects out of <code>keys</code> that have been marked reachable in the epoch of <code>since</code>
+     * or later. Only reads the epochs since then, so it is cheap for recent instants.
+     */
+    Set<Key> markedSince(Tx.Read tx, InstantWithoutNanos since, Collection<Key> keys) {
+        final BitSet marked = new BitSet();
+        final long lastEpoch = epochStart(InstantWithoutNanos.now());
+        for (long epoch = epochStart(since); epoch <= lastEpoch; epoch += EPOCH_DURATION.toMillis()) {
+            epochs.get(tx, Key.of(epoch)).ifPresent(bytes -> marked.or(BitSet.valueOf(bytes)));
+        }
+        final Set<Key> result = new HashSet<>();
+        keys.forEach(k -> ordinals.get(tx, k).ifPresent(ordinal -> {
+            if (marked.get(index(ordinal))) {
+                result.add(k);
+            }
+        }));
+        return result;
+    }
+
+    /**
+     * Objects still pending that were created in an epoch before the one of <code>before</code>.
+     */
+    List<Key> findPendingBefore(Tx.Read tx, InstantWithoutNanos before) {
+        return new ArrayList<>(pending.getPkByIndexLessThan(BY_EPOCH_INDEX, tx, Key.of(epochStart(before))));
+    }
+
+    /**
+     * Marks the objects as checked, unless they were registered again in the meantime.
+     */
+    void settlePending(Tx.Write tx, Collection<Key> keys, InstantWithoutNanos before) {
+        final long firstEpoch = epochStart(before);
+        keys.forEach(k -> pending.get(tx, k).ifPresent(epoch -> {
+            if (epoch < firstEpoch) {
+                pending.delete(tx, k);
+            }
+        }));
+    }
+
+    int deleteEpochsBefore(Tx.Write tx, InstantWithoutNanos before) {
+        final long firstEpoch = epochStart(before);
+        final List<Key> expired = new ArrayList<>();
+        try (Stream<Key> keys = epochs.streamKeys(tx)) {
+            keys.filter(k -> k.asLong() < firstEpoch).forEach(expired::add);
+        }
+        expired.forEach(k -> epochs.delete(tx, k));
+        return expired.size();
+    }
+
+    void clear(Tx.Write tx) {
+        ordinals.clear(tx);
+        keysByOrdinal.clear(tx);
+        epochs.clear(tx);
+        pending.clear(tx);
+        released.clear(tx);
+        free.clear(tx);
+    }
+
+    private static Key epochKey(InstantWithoutNanos i) {
+        return Key.of(epochStart(i));
+    }
+
+    private static long epochStart(InstantWithoutNanos i) {
+        final long epochMillis = EPOCH_DURATION.toMillis();
+        return i.toEpochMilli() / epochMillis * epochMillis;
+    }
+
+    private static int index(long ordinal) {
+        return Math.toIntExact(ordinal);
+    }
+}
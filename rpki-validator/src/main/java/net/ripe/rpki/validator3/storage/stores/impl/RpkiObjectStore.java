@@ -32,6 +32,7 @@ package net.ripe.rpki.validator3.storage.stores.impl;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.google.common.primitives.UnsignedBytes;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import net.ripe.rpki.commons.crypto.cms.manifest.ManifestCms;
 import net.ripe.rpki.validator3.api.util.InstantWithoutNanos;
@@ -44,11 +45,13 @@ import net.ripe.rpki.validator3.storage.data.RpkiObject;
 import net.ripe.rpki.validator3.storage.encoding.CoderFactory;
 import net.ripe.rpki.validator3.storage.stores.GenericStoreImpl;
 import net.ripe.rpki.validator3.storage.stores.RpkiObjects;
+import net.ripe.rpki.validator3.storage.stores.Settings;
 import net.ripe.rpki.validator3.util.Bench;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
@@ -67,14 +70,32 @@ import java.util.stream.Stream;
 public class RpkiObjectStore extends GenericStoreImpl<RpkiObject> implements RpkiObjects {
 
     private static final String RPKI_OBJECTS = "rpki-objects";
+    private static final String CONTENT_MAP = "rpki-objects-content";
     private static final String REACHABLE_MAP = "rpki-objects-reachable";
+    private static final String ORDINAL_MAP = "rpki-objects-ordinal";
+    private static final String ORDINAL_KEYS_MAP = "rpki-objects-ordinal-keys";
+    private static final String REACHABLE_EPOCHS_MAP = "rpki-objects-reachable-epochs";
+    private static final String PENDING_MAP = "rpki-objects-reachability-pending";
+    private static final String RELEASED_ORDINALS_MAP = "rpki-objects-ordinal-released";
+    private static final String FREE_ORDINALS_MAP = "rpki-objects-ordinal-free";
     private static final String LOCATION_MAP = "rpki-objects-location";
     private static final String BY_AKI_MFT_INDEX = "by-aki-mft";
     private static final String BY_TYPE_INDEX = "by-type";
+    private static final String CONTENT_MIGRATED = "internal.rpki-objects.content.migrated";
+    private static final String REACHABILITY_MIGRATED = "internal.rpki-objects.reachability.migrated";
+
+    /**
+     * Deleting an object cascades through several maps, keep the write transactions short.
+     */
+    private static final int DELETE_BATCH_SIZE = 250;
+
+    private static final int REACHABILITY_CHUNK_SIZE = 10_000;
 
     private final IxMap<RpkiObject> ixMap;
-    private final IxMap<Long> reachableMap;
+    private final IxMap<byte[]> contentMap;
+    private final ReachabilityEpochs reachability;
     private final MultIxMap<String> locationMap;
+    private final ObjectHashFilter hashFilter;
     private final Storage storage;
 
     private Set<Key> akiMftKey(RpkiObject rpkiObject) {
@@ -89,7 +110,7 @@ public class RpkiObjectStore extends GenericStoreImpl<RpkiObject> implements Rpk
     }
 
     @Autowired
-    public RpkiObjectStore(Storage storage) {
+    public RpkiObjectStore(Storage storage, Settings settings, SequencesStore sequences, MeterRegistry registry) {
         this.storage = storage;
         this.ixMap = storage.createIxMap(
                 RPKI_OBJECTS,
@@ -98,21 +119,91 @@ public class RpkiObjectStore extends GenericStoreImpl<RpkiObject> implements Rpk
                         BY_TYPE_INDEX, this::typeKey),
                 CoderFactory.makeCoder(RpkiObject.class));
 
-        this.reachableMap = storage.createIxMap(REACHABLE_MAP, ImmutableMap.of(), CoderFactory.longCoder());
+        this.reachability = new ReachabilityEpochs(storage, sequences, ORDINAL_MAP, ORDINAL_KEYS_MAP, REACHABLE_EPOCHS_MAP, PENDING_MAP,
+            RELEASED_ORDINALS_MAP, FREE_ORDINALS_MAP);
         this.locationMap = storage.createMultIxMap(LOCATION_MAP, CoderFactory.stringCoder());
+        // Content is keyed by its own SHA-256, so it is written once and shared by
+        // every metadata record pointing to it.
+        this.contentMap = storage.createIxMap(CONTENT_MAP, ImmutableMap.of(), CoderFactory.bytesCoder());
 
         ixMap.onDelete((tx, k) -> {
-            reachableMap.delete(tx, k);
+            reachability.delete(tx, k);
             locationMap.delete(tx, k);
+            contentMap.delete(tx, k);
+        });
+
+        if (!storage.readTx(tx -> settings.isTrue(tx, CONTENT_MIGRATED))) {
+            migrateInlineContent();
+            storage.writeTx0(tx -> settings.setTrue(tx, CONTENT_MIGRATED));
+        }
+        if (!storage.readTx(tx -> settings.isTrue(tx, REACHABILITY_MIGRATED))) {
+            migrateReachability(storage.createIxMap(REACHABLE_MAP, ImmutableMap.of(), CoderFactory.longCoder()));
+            storage.writeTx0(tx -> settings.setTrue(tx, REACHABILITY_MIGRATED));
+        }
+
+        this.hashFilter = new ObjectHashFilter(registry);
+        rebuildHashFilter();
+    }
+
+    private void rebuildHashFilter() {
+        // The exclusive write transaction keeps objects from being stored while the keys are read
+        storage.writeTx0(tx -> {
+            try (Stream<Key> keys = ixMap.streamKeys(tx)) {
+                hashFilter.rebuild(ixMap.size(tx), keys);
+            }
         });
     }
 
+    /**
+     * Replace the per-object timestamps of older versions with ordinals, all objects
+     * are considered reachable in the current epoch.
+     */
+    private void migrateReachability(IxMap<Long> reachableMap) {
+        final List<Key> unregistered = storage.readTx(tx -> ixMap.keys(tx).stream()
+            .filter(pk -> !reachability.isRegistered(tx, pk))
+            .collect(Collectors.toList()));
+        log.info("Assigning reachability ordinals to {} RPKI objects", unregistered.size());
+        Lists.partition(unregistered, 1000).forEach(chunk ->
+            storage.writeTx0(tx -> {
+                chunk.forEach(pk -> reachability.register(tx, pk, null));
+                reachability.markReachable(tx, chunk);
+            }));
+        storage.writeTx0(reachableMap::clear);
+    }
+
+    /**
+     * Move the DER content of objects stored by older versions out of the metadata records.
+     */
+    private void migrateInlineContent() {
+        final List<Key> inline = new ArrayList<>();
+        storage.readTx0(tx -> ixMap.forEach(tx, (k, bytes) -> {
+            if (ixMap.toValue(bytes).getEncoded() != null) {
+                inline.add(k);
+            }
+        }));
+        if (inline.isEmpty()) {
+            return;
+        }
+        log.info("Moving content of {} RPKI objects to the {} map", inline.size(), CONTENT_MAP);
+        Lists.partition(inline, 1000).forEach(chunk ->
+            storage.writeTx0(tx ->
+                chunk.forEach(pk -> ixMap.get(tx, pk).ifPresent(o -> {
+                    contentMap.put(tx, pk, o.getEncoded());
+                    // the coder no longer writes the content, so this shrinks the record
+                    ixMap.put(tx, pk, o);
+                }))));
+    }
+
     @Override
     public void put(Tx.Write tx, RpkiObject o) {
-        ixMap.put(tx, o.key(), o);
-        // mark every object as reachable at the moment of inserting, otherwise
-        // we will keep the objects that have never been reached forever
-        markReachable(tx, o.key(), o.getCreatedAt());
+        final Key key = o.key();
+        final boolean maybeStored = hashFilter.mightContain(key);
+        hashFilter.add(key);
+        if (o.getEncoded() != null && !(maybeStored && contentMap.exists(tx, key))) {
+            contentMap.put(tx, key, o.getEncoded());
+        }
+        ixMap.put(tx, key, o);
+        reachability.register(tx, key, o.getCreatedAt());
     }
 
     @Override
@@ -126,11 +217,6 @@ public class RpkiObjectStore extends GenericStoreImpl<RpkiObject> implements Rpk
         ixMap.delete(tx, o.key());
     }
 
-    @Override
-    public void markReachable(Tx.Write tx, Key pk, InstantWithoutNanos i) {
-        reachableMap.put(tx, pk, i.toEpochMilli());
-    }
-
     @Override
     public void addLocation(Tx.Write tx, Key pk, String location) {
         if(!locationMap.exists(tx, pk, location)) {
@@ -150,40 +236,104 @@ public class RpkiObjectStore extends GenericStoreImpl<RpkiObject> implements Rpk
 
     @Override
     public Optional<RpkiObject> get(Tx.Read tx, Key key) {
-        return ixMap.get(tx, key);
+        return ixMap.get(tx, key).map(o -> withContent(tx, o));
+    }
+
+    @Override
+    public Optional<byte[]> getEncoded(Tx.Read tx, Key key) {
+        return contentMap.get(tx, key);
+    }
+
+    @Override
+    public List<RpkiObject> values(Tx.Read tx) {
+        return ixMap.values(tx).stream()
+            .map(o -> withContent(tx, o))
+            .collect(Collectors.toList());
+    }
+
+    @Override
+    public void clear(Tx.Write tx) {
+        ixMap.clear(tx);
+        contentMap.clear(tx);
+        reachability.clear(tx);
+    }
+
+    private RpkiObject withContent(Tx.Read tx, RpkiObject o) {
+        if (o.getEncoded() == null) {
+            contentMap.get(tx, o.key()).ifPresent(o::setEncoded);
+        }
+        return o;
     }
 
     @Override
     public Optional<RpkiObject> findBySha256(Tx.Read tx, byte[] sha256) {
-        return Bench.mark("findBySha256", () -> get(tx, Key.of(sha256)));
+        final Key key = Key.of(sha256);
+        if (!hashFilter.lookup(key)) {
+            return Optional.empty();
+        }
+        return Bench.mark("findBySha256", () -> {
+            final Optional<RpkiObject> object = get(tx, key);
+            hashFilter.recordLookup(object.isPresent());
+            return object;
+        });
     }
 
     @Override
     public Optional<RpkiObject> findLatestMftByAKI(Tx.Read tx, byte[] authorityKeyIdentifier) {
+        // Pick the latest manifest by its metadata only and load the content of the winner
         return ixMap.getByIndex(BY_AKI_MFT_INDEX, tx, Key.of(authorityKeyIdentifier))
             .values()
             .stream()
             .max(Comparator.comparing(RpkiObject::getSigningTime)
-                .thenComparing(RpkiObject::getSerialNumber));
+                .thenComparing(RpkiObject::getSerialNumber))
+            .map(o -> withContent(tx, o));
     }
 
     @Override
     public long deleteUnreachableObjects(InstantWithoutNanos unreachableSince) {
-        final List<Key> toDelete = new ArrayList<>();
-        storage.readTx0(tx ->
-                reachableMap.forEach(tx, (k, bytes) -> {
-                    if (reachableMap.toValue(bytes) < unreachableSince.toEpochMilli()) {
-                        // do not do ixMap.delete(tx, k) right here -- it will cause onDelete
-                        // trigger and deletion of pair at the current cursor position, which is
-                        // potentially a problem
-                        toDelete.add(k);
-                    }
-                }));
-        // Divide the list to smaller chunks to avoid very long writing transaction
-        Lists.partition(toDelete, 1000).forEach(chunk ->
-            storage.writeTx0(tx ->
-                chunk.forEach(pk -> ixMap.delete(tx, pk))));
-        return (long) toDelete.size();
+        final InstantWithoutNanos checkedAt = InstantWithoutNanos.now();
+        final List<Key> candidates = storage.readTx(tx -> reachability.findUnreachable(tx, unreachableSince));
+
+        long deleted = 0;
+        for (List<Key> chunk : Lists.partition(candidates, DELETE_BATCH_SIZE)) {
+            deleted += storage.writeTx(tx -> deleteUnreachable(tx, chunk, unreachableSince, checkedAt));
+        }
+
+        final List<Key> checked = storage.readTx(tx -> reachability.findPendingBefore(tx, unreachableSince));
+        Lists.partition(checked, DELETE_BATCH_SIZE).forEach(chunk ->
+            storage.writeTx0(tx -> reachability.settlePending(tx, chunk, unreachableSince)));
+        storage.writeTx0(tx -> {
+            reachability.deleteEpochsBefore(tx, unreachableSince);
+            reachability.clearReleased(tx);
+        });
+
+        hashFilter.deleted(deleted);
+        if (hashFilter.needsRebuild()) {
+            rebuildHashFilter();
+        }
+        return deleted;
+    }
+
+    private long deleteUnreachable(Tx.Write tx, List<Key> candidates, InstantWithoutNanos unreachableSince, InstantWithoutNanos checkedAt) {
+        // validation may have reached some of them after the candidates were found
+        final Set<Key> marked = reachability.markedSince(tx, checkedAt, candidates);
+        long deleted = 0;
+        for (Key pk : candidates) {
+            if (marked.contains(pk)) {
+                continue;
+            }
+            final Optional<RpkiObject> object = ixMap.get(tx, pk);
+            if (!object.isPresent()) {
+                reachability.delete(tx, pk);
+            } else if (object.get().getCreatedAt() == null || object.get().getCreatedAt().isBefore(unreachableSince)) {
+                ixMap.delete(tx, pk);
+                deleted++;
+            } else {
+                // stored within the grace period and may not have been validated yet, check again later
+                reachability.register(tx, pk, object.get().getCreatedAt());
+            }
+        }
+        return deleted;
     }
 
     @Override
@@ -202,11 +352,10 @@ public class RpkiObjectStore extends GenericStoreImpl<RpkiObject> implements Rpk
 
     @Override
     public Stream<byte[]> streamObjects(Tx.Read tx, RpkiObject.Type type) {
-        final List<byte[]> objectBytes = new ArrayList<>();
-        getPkByType(tx, type).forEach(pk ->
-                ixMap.get(tx, pk).ifPresent(ro ->
-                        objectBytes.add(ro.getEncoded())));
-        return objectBytes.stream();
+        return ixMap.streamPkByIndex(BY_TYPE_INDEX, tx, Key.of(type.toString()))
+                .map(pk -> getEncoded(tx, pk))
+                .filter(Optional::isPresent)
+                .map(Optional::get);
     }
 
     @Override
@@ -216,8 +365,19 @@ public class RpkiObjectStore extends GenericStoreImpl<RpkiObject> implements Rpk
 
     @Override
     public void markReachable(Tx.Write tx, List<Key> rpkiObjectsKeys) {
-        final InstantWithoutNanos now = InstantWithoutNanos.now();
-        rpkiObjectsKeys.forEach(pk -> markReachable(tx, pk, now));
+        reachability.markReachable(tx, rpkiObjectsKeys);
+    }
+
+    /**
+     * Looks up the ordinals in read transactions of {@link #REACHABILITY_CHUNK_SIZE} objects, so that
+     * only setting them in the bitset of the current epoch needs the write lock.
+     */
+    @Override
+    public void markReachable(List<Key> rpkiObjectsKeys) {
+        final BitSet ordinals = new BitSet();
+        Lists.partition(rpkiObjectsKeys, REACHABILITY_CHUNK_SIZE).forEach(chunk ->
+            storage.readTx0(tx -> ordinals.or(reachability.ordinalsOf(tx, chunk))));
+        storage.writeTx0(tx -> reachability.markReachable(tx, ordinals, InstantWithoutNanos.now()));
     }
 
     @Override
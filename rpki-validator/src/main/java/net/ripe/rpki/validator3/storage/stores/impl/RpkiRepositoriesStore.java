@@ -169,21 +169,20 @@ public class RpkiRepositoriesStore extends GenericStoreImpl<RpkiRepository> impl
     public Stream<RpkiRepository> findAll(Tx.Read tx, RpkiRepository.Status optionalStatus, Key taId,
                                           boolean hideChildrenOfDownloadedParent,
                                           SearchTerm searchTerm, Sorting sorting, Paging paging) {
-        return applyPaged(
-                applySorting(
-                        applyFiltered(tx, optionalStatus, taId, hideChildrenOfDownloadedParent, searchTerm),
-                        sorting),
-                paging);
+        final Comparator<RpkiRepository> comparator = comparator(sorting);
+        // Select the page while reading the repositories, instead of sorting all of them
+        try (Stream<RpkiRepository> filtered = applyFiltered(tx, optionalStatus, taId, hideChildrenOfDownloadedParent, searchTerm)) {
+            return paging != null ? paging.apply(filtered, comparator) : filtered.sorted(comparator).collect(Collectors.toList()).stream();
+        }
     }
 
-    // TODO Optimize it with forEach
     private Stream<RpkiRepository> applyFiltered(Tx.Read tx,
                                                  RpkiRepository.Status optionalStatus,
                                                  Key taId, boolean hideChildrenOfDownloadedParent,
                                                  SearchTerm searchTerm) {
         Stream<RpkiRepository> stream = taId != null ?
-                ixMap.getByIndex(BY_TA, tx, taId).values().stream() :
-                ixMap.values(tx).stream();
+                ixMap.streamByIndex(BY_TA, tx, taId) :
+                ixMap.streamValues(tx);
 
         if (optionalStatus != null) {
             stream = stream.filter(r -> r.getStatus() == optionalStatus);
@@ -210,7 +209,7 @@ public class RpkiRepositoriesStore extends GenericStoreImpl<RpkiRepository> impl
         return stream;
     }
 
-    private Stream<RpkiRepository> applySorting(Stream<RpkiRepository> stream, Sorting sorting) {
+    private static Comparator<RpkiRepository> comparator(Sorting sorting) {
         if (sorting == null) {
             sorting = Sorting.of(Sorting.By.LOCATION, Sorting.Direction.ASC);
         }
@@ -230,23 +229,17 @@ public class RpkiRepositoriesStore extends GenericStoreImpl<RpkiRepository> impl
                 comparator = Comparator.comparing(RpkiRepository::getLocationUri);
                 break;
         }
-        return stream.sorted(
-                sorting.getDirection() == Sorting.Direction.DESC ?
-                        comparator :
-                        comparator.reversed());
-    }
-
-    private Stream<RpkiRepository> applyPaged(Stream<RpkiRepository> stream, Paging paging) {
-        if (paging != null) {
-            return paging.apply(stream);
-        }
-        return stream;
+        return sorting.getDirection() == Sorting.Direction.DESC ?
+                comparator :
+                comparator.reversed();
     }
 
     @Override
     public long countAll(Tx.Read tx, RpkiRepository.Status optionalStatus, Key taId,
                          boolean hideChildrenOfDownloadedParent, SearchTerm searchTerm) {
-        return applyFiltered(tx, optionalStatus, taId, hideChildrenOfDownloadedParent, searchTerm).count();
+        try (Stream<RpkiRepository> filtered = applyFiltered(tx, optionalStatus, taId, hideChildrenOfDownloadedParent, searchTerm)) {
+            return filtered.count();
+        }
     }
 
     @Override
@@ -262,8 +255,9 @@ public class RpkiRepositoriesStore extends GenericStoreImpl<RpkiRepository> impl
 
     @Override
     public Map<RpkiRepository.Status, Long> countByStatus(Tx.Read tx, Key taId, boolean hideChildrenOfDownloadedParent) {
-        return findAll(tx, null, taId, hideChildrenOfDownloadedParent, null, null, null)
-                .collect(Collectors.groupingBy(RpkiRepository::getStatus, Collectors.counting()));
+        try (Stream<RpkiRepository> filtered = applyFiltered(tx, null, taId, hideChildrenOfDownloadedParent, null)) {
+            return filtered.collect(Collectors.groupingBy(RpkiRepository::getStatus, Collectors.counting()));
+        }
     }
 
     @Override
@@ -60,15 +60,17 @@ public class SettingsStore extends GenericStoreImpl<String> implements Settings
 
     @Override
     public boolean isInitialValidationRunCompleted(Tx.Read tx) {
-        return isTrue(tx);
+        return isTrue(tx, INITIAL_VALIDATION_RUN_COMPLETED);
     }
 
-    public void setTrue(Tx.Write tx, String preconfiguredTalSettingsKey) {
-        ixMap.put(tx, Key.of(preconfiguredTalSettingsKey), "true");
+    @Override
+    public void setTrue(Tx.Write tx, String key) {
+        ixMap.put(tx, Key.of(key), "true");
     }
 
-    private boolean isTrue(Tx.Read tx) {
-        return ixMap.get(tx, Key.of(SettingsStore.INITIAL_VALIDATION_RUN_COMPLETED)).filter("true"::equals).isPresent();
+    @Override
+    public boolean isTrue(Tx.Read tx, String key) {
+        return ixMap.get(tx, Key.of(key)).filter("true"::equals).isPresent();
     }
 
     @Override
@@ -125,8 +125,8 @@ public class TrustAnchorStore extends GenericStoreImpl<TrustAnchor> implements T
         return findAll(tx).stream().map(ta ->
                 validationRuns.findLatestCompletedCaTreeValidationRun(tx, ta).map(vr -> {
                     Pair<Integer, Long> objectCount = Time.timed(() -> validationRuns.getObjectCount(tx, vr));
-                    int warnings = vr.countChecks(ValidationCheck.Status.WARNING);
-                    int errors = vr.countChecks(ValidationCheck.Status.ERROR);
+                    int warnings = validationRuns.countValidationChecks(tx, vr, ValidationCheck.Status.WARNING);
+                    int errors = validationRuns.countValidationChecks(tx, vr, ValidationCheck.Status.ERROR);
                     return TaStatus.of(
                             String.valueOf(ta.key().asLong()),
                             ta.getName(),
@@ -0,0 +1,228 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2018 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.rpki.validator3.storage.stores.impl;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.primitives.Ints;
+import lombok.Getter;
+import net.ripe.rpki.validator3.storage.IxMap;
+import net.ripe.rpki.validator3.storage.Storage;
+import net.ripe.rpki.validator3.storage.Tx;
+import net.ripe.rpki.validator3.storage.data.Key;
+import net.ripe.rpki.validator3.storage.data.validation.ValidationCheck;
+import net.ripe.rpki.validator3.storage.encoding.CoderFactory;
+import net.ripe.rpki.validator3.storage.encoding.custom.validation.ValidationCheckCoder;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Validation checks of completed runs, written once per run.
+ *
+ * The rows of a run are keyed by their position in location order, so that order needs no
+ * extra data. For the other orders the permutation of row numbers is stored in slices of
+ * {@link #SLICE_SIZE} rows, separately from the summary with the counts per status. Reading
+ * a page fetches only the slices and the rows of that page.
+ */
+class ValidationChecksTable {
+
+    enum Order {
+        LOCATION(Comparator.comparing(ValidationCheck::getLocation)),
+        KEY(Comparator.comparing(ValidationCheck::getKey)),
+        STATUS(Comparator.comparing(ValidationCheck::getStatus)),
+        CREATED_AT(Comparator.comparing(ValidationCheck::getCreatedAt));
+
+        @Getter
+        private final Comparator<ValidationCheck> comparator;
+
+        Order(Comparator<ValidationCheck> comparator) {
+            this.comparator = comparator;
+        }
+    }
+
+    static final int SLICE_SIZE = 1024;
+
+    private final IxMap<ValidationCheck> rows;
+    private final IxMap<byte[]> summaries;
+    private final IxMap<byte[]> slices;
+
+    ValidationChecksTable(Storage storage, String rowsMapName, String summaryMapName, String slicesMapName) {
+        this.rows = storage.createIxMap(rowsMapName, ImmutableMap.of(), new ValidationCheckCoder());
+        this.summaries = storage.createIxMap(summaryMapName, ImmutableMap.of(), CoderFactory.bytesCoder());
+        this.slices = storage.createIxMap(slicesMapName, ImmutableMap.of(), CoderFactory.bytesCoder());
+    }
+
+    boolean isStored(Tx.Read tx, Key vrKey) {
+        return summaries.exists(tx, vrKey);
+    }
+
+    void store(Tx.Write tx, Key vrKey, List<ValidationCheck> checks) {
+        final int[] byLocation = sortedPositions(checks, Order.LOCATION);
+        final int[] rowOf = new int[checks.size()];
+        for (int row = 0; row < byLocation.length; row++) {
+            rows.put(tx, rowKey(vrKey, row), checks.get(byLocation[row]));
+            rowOf[byLocation[row]] = row;
+        }
+
+        for (Order order : Order.values()) {
+            if (order != Order.LOCATION) {
+                final int[] permutation = IntStream.of(sortedPositions(checks, order)).map(i -> rowOf[i]).toArray();
+                for (int slice = 0; slice * SLICE_SIZE < permutation.length; slice++) {
+                    final int from = slice * SLICE_SIZE;
+                    final int to = Math.min(from + SLICE_SIZE, permutation.length);
+                    final ByteBuffer bb = ByteBuffer.allocate(Integer.BYTES * (to - from));
+                    bb.asIntBuffer().put(permutation, from, to - from);
+                    slices.put(tx, sliceKey(vrKey, order, slice), bb.array());
+                }
+            }
+        }
+        final int warnings = Math.toIntExact(checks.stream().filter(c -> c.getStatus() == ValidationCheck.Status.WARNING).count());
+        summaries.put(tx, vrKey, new Summary(checks.size(), warnings, checks.size() - warnings).toBytes());
+    }
+
+    Optional<Summary> summary(Tx.Read tx, Key vrKey) {
+        return summaries.get(tx, vrKey).map(Summary::fromBytes);
+    }
+
+    /**
+     * Checks of the run in the given order, rows before <code>offset</code> are not read.
+     */
+    Stream<ValidationCheck> stream(Tx.Read tx, Key vrKey, Summary summary, Order order, boolean reversed, long offset, long limit) {
+        final int count = summary.getCount();
+        final int from = (int) Math.min(offset, count);
+        final int to = (int) Math.min(count, from + Math.min(limit, count));
+        final Permutation permutation = new Permutation(tx, vrKey, order);
+        return IntStream.range(from, to)
+                .map(i -> reversed ? count - 1 - i : i)
+                .map(permutation::row)
+                .mapToObj(row -> rows.get(tx, rowKey(vrKey, row)))
+                .filter(Optional::isPresent)
+                .map(Optional::get);
+    }
+
+    void delete(Tx.Write tx, Key vrKey) {
+        summary(tx, vrKey).ifPresent(summary -> {
+            for (int row = 0; row < summary.getCount(); row++) {
+                rows.delete(tx, rowKey(vrKey, row));
+            }
+            for (Order order : Order.values()) {
+                for (int slice = 0; order != Order.LOCATION && slice * SLICE_SIZE < summary.getCount(); slice++) {
+                    slices.delete(tx, sliceKey(vrKey, order, slice));
+                }
+            }
+            summaries.delete(tx, vrKey);
+        });
+    }
+
+    void clear(Tx.Write tx) {
+        rows.clear(tx);
+        summaries.clear(tx);
+        slices.clear(tx);
+    }
+
+    private static int[] sortedPositions(List<ValidationCheck> checks, Order order) {
+        return IntStream.range(0, checks.size())
+                .boxed()
+                .sorted(Comparator.comparing(checks::get, order.getComparator()))
+                .mapToInt(Integer::intValue)
+                .toArray();
+    }
+
+    private static Key rowKey(Key vrKey, int row) {
+        return vrKey.concat(Key.of(Ints.toByteArray(row)));
+    }
+
+    private static Key sliceKey(Key vrKey, Order order, int slice) {
+        return vrKey.concat(Key.of(new byte[]{(byte) order.ordinal()})).concat(Key.of(Ints.toByteArray(slice)));
+    }
+
+    /**
+     * Row numbers of positions in one order, reading a slice when a position falls outside the last one read.
+     */
+    private class Permutation {
+        private final Tx.Read tx;
+        private final Key vrKey;
+        private final Order order;
+        private int slice = -1;
+        private IntBuffer rows;
+
+        Permutation(Tx.Read tx, Key vrKey, Order order) {
+            this.tx = tx;
+            this.vrKey = vrKey;
+            this.order = order;
+        }
+
+        int row(int position) {
+            if (order == Order.LOCATION) {
+                return position;
+            }
+            if (position / SLICE_SIZE != slice) {
+                slice = position / SLICE_SIZE;
+                rows = ByteBuffer.wrap(slices.get(tx, sliceKey(vrKey, order, slice))
+                    .orElseThrow(() -> new IllegalStateException("missing validation checks of run " + vrKey)))
+                    .asIntBuffer();
+            }
+            return rows.get(position % SLICE_SIZE);
+        }
+    }
+
+    static class Summary {
+        @Getter
+        private final int count;
+        @Getter
+        private final int warnings;
+        @Getter
+        private final int errors;
+
+        private Summary(int count, int warnings, int errors) {
+            this.count = count;
+            this.warnings = warnings;
+            this.errors = errors;
+        }
+
+        int count(ValidationCheck.Status status) {
+            return status == ValidationCheck.Status.WARNING ? warnings : errors;
+        }
+
+        private byte[] toBytes() {
+            return ByteBuffer.allocate(Integer.BYTES * 3).putInt(count).putInt(warnings).putInt(errors).array();
+        }
+
+        private static Summary fromBytes(byte[] bytes) {
+            final ByteBuffer bb = ByteBuffer.wrap(bytes);
+            return new Summary(bb.getInt(), bb.getInt(), bb.getInt());
+        }
+    }
+}
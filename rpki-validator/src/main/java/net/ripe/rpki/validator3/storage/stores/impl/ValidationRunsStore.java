@@ -29,7 +29,12 @@
  */
 package net.ripe.rpki.validator3.storage.stores.impl;
 
+import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
+import com.google.common.collect.PeekingIterator;
+import com.google.common.collect.Streams;
 import lombok.extern.slf4j.Slf4j;
 import net.ripe.rpki.validator3.api.Paging;
 import net.ripe.rpki.validator3.api.SearchTerm;
@@ -52,6 +57,7 @@ import net.ripe.rpki.validator3.storage.data.validation.ValidationCheck;
 import net.ripe.rpki.validator3.storage.data.validation.ValidationRun;
 import net.ripe.rpki.validator3.storage.encoding.Coder;
 import net.ripe.rpki.validator3.storage.encoding.CoderFactory;
+import net.ripe.rpki.validator3.storage.encoding.PackedKeys;
 import net.ripe.rpki.validator3.storage.stores.RpkiObjects;
 import net.ripe.rpki.validator3.storage.stores.RpkiRepositories;
 import net.ripe.rpki.validator3.storage.stores.TrustAnchors;
@@ -62,10 +68,12 @@ import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Component;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -74,6 +82,8 @@ import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+
 @Component
 @Slf4j
 public class ValidationRunsStore implements ValidationRuns {
@@ -84,13 +94,39 @@ public class ValidationRunsStore implements ValidationRuns {
     private static final String RR_RPKI_VALIDATION_RUNS = "rrdp-repository-validation-runs";
     private static final String TA_RPKI_VALIDATION_RUNS = "trust-anchor-validation-runs";
     private static final String VALIDATION_RUNS_TO_RPKI_OBJECTS = "validation-runs-to-rpki-objects";
+    private static final String VALIDATION_RUNS_TO_PACKED_RPKI_OBJECTS = "validation-runs-to-rpki-objects-packed";
     private static final String VALIDATION_RUNS_TO_RPKI_REPOSITORIES = "validation-runs-to-repositories";
+    private static final String LATEST_VALIDATION_RUNS = "validation-runs-latest";
+    private static final String VALIDATION_CHECKS = "validation-checks";
+    private static final String VALIDATION_CHECKS_SUMMARY = "validation-checks-summary";
+    private static final String VALIDATION_CHECKS_ORDER = "validation-checks-order";
     private static final String BY_TA_INDEX = "by-ta";
     private static final String BY_COMPLETED_AT_INDEX = "by-completed-at";
+    private static final String BY_VALIDATION_RUN_INDEX = "by-validation-run";
+    private static final String BY_INCOMPLETE_SINCE_INDEX = "by-incomplete-since";
+
+    private static final String LATEST_COMPLETED = "completed";
+    private static final String LATEST_SUCCEEDED = "succeeded";
+
+    private static final int ORPHAN_BATCH_SIZE = 1000;
+    private static final int REMOVE_BATCH_SIZE = 100;
 
     private MultIxMap<Key> vr2ro;
+    /**
+     * Object keys of certificate tree validation runs, one {@link PackedKeys} value per run.
+     * Runs stored by older versions still have their objects in {@link #vr2ro}.
+     */
+    private IxMap<byte[]> vr2roPacked;
     private IxMap<Key> vr2repo;
 
+    /**
+     * Pointers to the latest completed and latest successful runs, per type and per trust anchor,
+     * maintained in the same transaction as the run completion.
+     */
+    private IxMap<Key> latestRuns;
+
+    private ValidationChecksTable checksTable;
+
     private IxMap<CertificateTreeValidationRun> ctIxMap;
     private IxMap<RsyncRepositoryValidationRun> rsIxMap;
     private IxMap<RrdpRepositoryValidationRun> rrIxMap;
@@ -103,6 +139,7 @@ public class ValidationRunsStore implements ValidationRuns {
     private final TrustAnchors trustAnchors;
 
     private final SequencesStore sequences;
+    private final Storage storage;
 
     public ValidationRunsStore(RpkiObjects rpkiObjects,
                                @Lazy TrustAnchors trustAnchors,
@@ -113,27 +150,32 @@ public class ValidationRunsStore implements ValidationRuns {
         this.rpkiRepositories = rpkiRepositories;
         this.trustAnchors = trustAnchors;
         this.sequences = sequences;
+        this.storage = storage;
 
         ctIxMap = storage.createIxMap(
                 CT_RPKI_VALIDATION_RUNS,
                 ImmutableMap.of(BY_TA_INDEX, vr -> Key.keys(vr.getTrustAnchor().key()),
-                        BY_COMPLETED_AT_INDEX, this::completedAtIndexKeys),
+                        BY_COMPLETED_AT_INDEX, this::completedAtIndexKeys,
+                        BY_INCOMPLETE_SINCE_INDEX, this::incompleteSinceIndexKeys),
                 CertificateTreeValidationRun.class);
 
         taIxMap = storage.createIxMap(
                 TA_RPKI_VALIDATION_RUNS,
                 ImmutableMap.of(BY_TA_INDEX, vr -> Key.keys(vr.getTrustAnchor().key()),
-                        BY_COMPLETED_AT_INDEX, this::completedAtIndexKeys),
+                        BY_COMPLETED_AT_INDEX, this::completedAtIndexKeys,
+                        BY_INCOMPLETE_SINCE_INDEX, this::incompleteSinceIndexKeys),
                 TrustAnchorValidationRun.class);
 
         rsIxMap = storage.createIxMap(
                 RS_RPKI_VALIDATION_RUNS,
-                ImmutableMap.of(BY_COMPLETED_AT_INDEX, this::completedAtIndexKeys),
+                ImmutableMap.of(BY_COMPLETED_AT_INDEX, this::completedAtIndexKeys,
+                        BY_INCOMPLETE_SINCE_INDEX, this::incompleteSinceIndexKeys),
                 RsyncRepositoryValidationRun.class);
 
         rrIxMap = storage.createIxMap(
                 RR_RPKI_VALIDATION_RUNS,
-                ImmutableMap.of(BY_COMPLETED_AT_INDEX, this::completedAtIndexKeys),
+                ImmutableMap.of(BY_COMPLETED_AT_INDEX, this::completedAtIndexKeys,
+                        BY_INCOMPLETE_SINCE_INDEX, this::incompleteSinceIndexKeys),
                 RrdpRepositoryValidationRun.class);
 
         maps.put(CertificateTreeValidationRun.TYPE, ctIxMap);
@@ -143,15 +185,30 @@ public class ValidationRunsStore implements ValidationRuns {
 
         final Coder<Key> keyCoder = CoderFactory.keyCoder();
         vr2ro = storage.createMultIxMap(VALIDATION_RUNS_TO_RPKI_OBJECTS, keyCoder);
+        vr2roPacked = storage.createIxMap(VALIDATION_RUNS_TO_PACKED_RPKI_OBJECTS, Collections.emptyMap(), CoderFactory.bytesCoder());
         vr2repo = storage.createIxMap(VALIDATION_RUNS_TO_RPKI_REPOSITORIES, Collections.emptyMap(), keyCoder);
+        latestRuns = storage.createIxMap(LATEST_VALIDATION_RUNS,
+                ImmutableMap.of(BY_VALIDATION_RUN_INDEX, Key::keys),
+                keyCoder);
+
+        checksTable = new ValidationChecksTable(storage, VALIDATION_CHECKS, VALIDATION_CHECKS_SUMMARY, VALIDATION_CHECKS_ORDER);
 
         trustAnchors.onDelete(this::removeAllForTrustAnchor);
 
         maps.values().forEach(ixMap ->
                 ixMap.onDelete((tx, vrKey) -> {
                     vr2ro.delete(tx, vrKey);
+                    vr2roPacked.delete(tx, vrKey);
                     vr2repo.delete(tx, vrKey);
+                    checksTable.delete(tx, vrKey);
+                    removeLatest(tx, ixMap, vrKey);
                 }));
+
+        storage.writeTx0(tx -> {
+            if (latestRuns.size(tx) == 0) {
+                maps.values().forEach(ixMap -> rebuildLatest(tx, ixMap));
+            }
+        });
     }
 
     private Set<Key> completedAtIndexKeys(ValidationRun vr) {
@@ -159,17 +216,140 @@ public class ValidationRunsStore implements ValidationRuns {
         return completedAt != null ? Key.keys(Key.of(completedAt.toEpochMilli())) : Collections.emptySet();
     }
 
+    /**
+     * Runs that have not completed (still running or abandoned) by the earliest of their creation and update time.
+     */
+    private Set<Key> incompleteSinceIndexKeys(ValidationRun vr) {
+        if (vr.getCompletedAt() != null || vr.getCreatedAt() == null) {
+            return Collections.emptySet();
+        }
+        InstantWithoutNanos since = vr.getUpdatedAt() != null && vr.getUpdatedAt().isBefore(vr.getCreatedAt()) ?
+                vr.getUpdatedAt() : vr.getCreatedAt();
+        return Key.keys(Key.of(since.toEpochMilli()));
+    }
+
     @Override
     public <T extends ValidationRun> T add(Tx.Write tx, T vr) {
         vr.setId(Key.of(sequences.next(tx, RPKI_VALIDATION_RUNS + ":pk")));
-        pickIxMap(vr.getType()).put(tx, vr.key(), vr);
+        put(tx, pickIxMap(vr.getType()), vr);
+        updateLatest(tx, vr);
         return vr;
     }
 
     @Override
     public <T extends ValidationRun> void update(Tx.Write tx, T vr) {
         vr.setUpdatedAt(InstantWithoutNanos.now());
-        pickIxMap(vr.getType()).put(tx, vr.key(), vr);
+        final IxMap<T> ixMap = pickIxMap(vr.getType());
+        put(tx, ixMap, vr);
+        if (vr.getCompletedAt() == null || !vr.isSucceeded()) {
+            // the run may be pointed to while it no longer qualifies
+            removeLatest(tx, ixMap, vr.key());
+        }
+        updateLatest(tx, vr);
+    }
+
+    /**
+     * The checks of a completed run are written once to the checks table and left out
+     * of the run record itself.
+     */
+    private <T extends ValidationRun> void put(Tx.Write tx, IxMap<T> ixMap, T vr) {
+        if (vr.getCompletedAt() == null) {
+            ixMap.put(tx, vr.key(), vr);
+            return;
+        }
+        if (!checksTable.isStored(tx, vr.key())) {
+            checksTable.store(tx, vr.key(), vr.getValidationChecks());
+        }
+        final List<ValidationCheck> checks = vr.getValidationChecks();
+        vr.setValidationChecks(new ArrayList<>());
+        try {
+            ixMap.put(tx, vr.key(), vr);
+        } finally {
+            vr.setValidationChecks(checks);
+        }
+    }
+
+    private void updateLatest(Tx.Write tx, ValidationRun vr) {
+        if (vr.getCompletedAt() == null) {
+            return;
+        }
+        final Optional<Key> taKey = trustAnchorKey(vr);
+        taKey.ifPresent(ta -> setLatest(tx, latestKey(LATEST_COMPLETED, vr.getType(), ta), vr));
+        if (vr.isSucceeded()) {
+            setLatest(tx, latestKey(LATEST_SUCCEEDED, vr.getType(), null), vr);
+            taKey.ifPresent(ta -> setLatest(tx, latestKey(LATEST_SUCCEEDED, vr.getType(), ta), vr));
+        }
+    }
+
+    private void setLatest(Tx.Write tx, Key pointer, ValidationRun vr) {
+        final boolean isLatest = latestRuns.get(tx, pointer)
+                .filter(current -> !current.equals(vr.key()))
+                .flatMap(current -> pickIxMap(vr.getType()).get(tx, current))
+                .map(current -> !vr.getCompletedAt().isBefore(current.getCompletedAt()))
+                .orElse(true);
+        if (isLatest) {
+            latestRuns.put(tx, pointer, vr.key());
+        }
+    }
+
+    /**
+     * Runs pointed to are rarely deleted (the latest successful ones are kept on cleanup),
+     * so it is fine to find their successors with a scan.
+     */
+    private void removeLatest(Tx.Write tx, IxMap<? extends ValidationRun> ixMap, Key vrKey) {
+        final Set<Key> pointers = latestRuns.getPkByIndex(BY_VALIDATION_RUN_INDEX, tx, vrKey);
+        pointers.forEach(pointer -> {
+            latestRuns.delete(tx, pointer);
+            replaceLatest(tx, ixMap, pointer, vrKey);
+        });
+    }
+
+    /**
+     * Points <code>pointer</code> to the latest other run it applies to, walking the runs from the
+     * most recently completed one.
+     */
+    private <T extends ValidationRun> void replaceLatest(Tx.Write tx, IxMap<T> ixMap, Key pointer, Key removed) {
+        // pointers are "kind:type" or "kind:type:trust anchor id", see latestKey
+        final String[] parts = new String(pointer.getBytes(), UTF_8).split(":");
+        final boolean succeededOnly = LATEST_SUCCEEDED.equals(parts[0]);
+        final Optional<Long> taId = parts.length > 2 ? Optional.of(Long.parseLong(parts[2])) : Optional.empty();
+        ixMap.getByIdxDescendingWhere(BY_COMPLETED_AT_INDEX, tx, vr ->
+                !vr.key().equals(removed) &&
+                (!succeededOnly || vr.isSucceeded()) &&
+                taId.map(id -> trustAnchorKey(vr).map(ta -> ta.asLong() == id).orElse(false)).orElse(true))
+            .keySet().stream()
+            .max(Comparator.comparing(Key::asLong))
+            .ifPresent(latest -> latestRuns.put(tx, pointer, latest));
+    }
+
+    private boolean isLatestSuccessful(Tx.Read tx, Key vrKey) {
+        return latestRuns.getPkByIndex(BY_VALIDATION_RUN_INDEX, tx, vrKey).stream()
+                .anyMatch(pointer -> new String(pointer.getBytes(), UTF_8).startsWith(LATEST_SUCCEEDED + ":"));
+    }
+
+    private void rebuildLatest(Tx.Write tx, IxMap<? extends ValidationRun> ixMap) {
+        final List<ValidationRun> runs = new ArrayList<>(ixMap.values(tx));
+        runs.forEach(vr -> updateLatest(tx, vr));
+    }
+
+    private <T extends ValidationRun> Optional<T> getLatest(Tx.Read tx, IxMap<T> ixMap, Key pointer) {
+        return latestRuns.get(tx, pointer).flatMap(vrKey -> ixMap.get(tx, vrKey));
+    }
+
+    private static Key latestKey(String kind, String vrType, Key taKey) {
+        return Key.of(taKey == null ?
+                kind + ":" + vrType :
+                kind + ":" + vrType + ":" + taKey.asLong());
+    }
+
+    private static Optional<Key> trustAnchorKey(ValidationRun vr) {
+        if (vr instanceof CertificateTreeValidationRun) {
+            return Optional.of(((CertificateTreeValidationRun) vr).getTrustAnchor().key());
+        }
+        if (vr instanceof TrustAnchorValidationRun) {
+            return Optional.of(((TrustAnchorValidationRun) vr).getTrustAnchor().key());
+        }
+        return Optional.empty();
     }
 
     @Override
@@ -203,29 +383,25 @@ public class ValidationRunsStore implements ValidationRuns {
     @SuppressWarnings("unchecked")
     public <T extends ValidationRun> List<T> findLatestSuccessful(Tx.Read tx, Class<T> type) {
         final List<T> result = new ArrayList<>();
-        List<IxMap<? extends ValidationRun>> ixMaps = pickIxMaps(type);
-        ixMaps.forEach(ixMap ->
-                ixMap.getByIdxDescendingWhere(BY_COMPLETED_AT_INDEX, tx, ValidationRun::isSucceeded)
-                        .forEach((k, v) -> result.add((T) v)));
+        pickTypes(type).forEach(vrType ->
+                getLatest(tx, pickIxMap(vrType), latestKey(LATEST_SUCCEEDED, vrType, null))
+                        .ifPresent(vr -> result.add((T) vr)));
         return result;
     }
 
     @Override
     public Optional<CertificateTreeValidationRun> findLatestSuccessfulCaTreeValidationRun(Tx.Read tx, TrustAnchor trustAnchor) {
-        return ctIxMap.getByIdxDescendingWhere(BY_COMPLETED_AT_INDEX, tx, vr ->
-                vr.isSucceeded() && trustAnchor.key().equals(vr.getTrustAnchor().key())).values().stream().findFirst();
+        return getLatest(tx, ctIxMap, latestKey(LATEST_SUCCEEDED, CertificateTreeValidationRun.TYPE, trustAnchor.key()));
     }
 
     @Override
     public Optional<TrustAnchorValidationRun> findLatestCompletedForTrustAnchor(Tx.Read tx, TrustAnchor trustAnchor) {
-        return taIxMap.getByIdxDescendingWhere(BY_COMPLETED_AT_INDEX, tx,
-                vr -> trustAnchor.key().equals(vr.getTrustAnchor().key())).values().stream().findFirst();
+        return getLatest(tx, taIxMap, latestKey(LATEST_COMPLETED, TrustAnchorValidationRun.TYPE, trustAnchor.key()));
     }
 
     @Override
     public Optional<CertificateTreeValidationRun> findLatestCompletedCaTreeValidationRun(Tx.Read tx, TrustAnchor trustAnchor) {
-        return ctIxMap.getByIdxDescendingWhere(BY_COMPLETED_AT_INDEX, tx,
-                vr -> trustAnchor.key().equals(vr.getTrustAnchor().key())).values().stream().findFirst();
+        return getLatest(tx, ctIxMap, latestKey(LATEST_COMPLETED, CertificateTreeValidationRun.TYPE, trustAnchor.key()));
     }
 
     private void removeAllForTrustAnchor(Tx.Write tx, Key trustAnchorKey) {
@@ -235,115 +411,217 @@ public class ValidationRunsStore implements ValidationRuns {
     }
 
     @Override
-    public int removeOldValidationRuns(Tx.Write tx, InstantWithoutNanos completedBefore) {
-        final AtomicInteger count = new AtomicInteger(0);
-        final Set<Key> taKeys = trustAnchors.keys(tx);
-        maps.forEach((type, ixMap) -> {
-            // Don't delete the most recent one successful for every trust anchor
-            final Set<Key> latestSuccessfulKeys = taKeys.stream().flatMap(taKey ->
-                    ixMap.getByIdxDescendingWhere(BY_COMPLETED_AT_INDEX, tx, vr -> {
-                                if (vr instanceof CertificateTreeValidationRun) {
-                                    return taKey.equals(((CertificateTreeValidationRun) vr).getTrustAnchor().key()) && vr.isSucceeded();
-                                }
-                                if (vr instanceof TrustAnchorValidationRun) {
-                                    return taKey.equals(((TrustAnchorValidationRun) vr).getTrustAnchor().key()) && vr.isSucceeded();
-                                }
-                                return vr.isSucceeded();
-                            }
-                    ).keySet().stream())
-                    .collect(Collectors.toSet());
-
-//            final Set<Key> latestSuccessfulKeys = ixMap.getByIdxDescendingWhere(BY_COMPLETED_AT_INDEX, tx, ValidationRun::isSucceeded).keySet();
-
-            final Set<Key> toDelete = new HashSet<>();
-            ixMap.forEach(tx, (k, bytes) -> {
-                ValidationRun validationRun = ixMap.toValue(bytes);
-                boolean deleteIt = false;
-                if (validationRun.getCompletedAt() != null) {
-                    if (validationRun.getCompletedAt().isBefore(completedBefore)) {
-                        deleteIt = true;
-                    }
-                } else {
-                    if (validationRun.getUpdatedAt() != null && validationRun.getUpdatedAt().isBefore(completedBefore)) {
-                        deleteIt = true;
-                    } else if (validationRun.getCreatedAt().isBefore(completedBefore)) {
-                        deleteIt = true;
+    public int removeOldValidationRuns(InstantWithoutNanos completedBefore) {
+        final Key cutoff = Key.of(completedBefore.toEpochMilli());
+        int count = 0;
+        for (IxMap<? extends ValidationRun> ixMap : maps.values()) {
+            final List<Key> candidates = storage.readTx(tx -> {
+                final Set<Key> old = new HashSet<>(ixMap.getPkByIndexLessThan(BY_COMPLETED_AT_INDEX, tx, cutoff));
+                old.addAll(ixMap.getPkByIndexLessThan(BY_INCOMPLETE_SINCE_INDEX, tx, cutoff));
+                return new ArrayList<>(old);
+            });
+            // Small transactions, so that RRDP and validation runs can commit in between
+            for (List<Key> chunk : Lists.partition(candidates, REMOVE_BATCH_SIZE)) {
+                count += storage.writeTx(tx -> {
+                    int deleted = 0;
+                    for (Key vrKey : chunk) {
+                        // Don't delete the most recent successful one for every trust anchor
+                        if (ixMap.exists(tx, vrKey) && !isLatestSuccessful(tx, vrKey)) {
+                            ixMap.delete(tx, vrKey);
+                            deleted++;
+                        }
                     }
-                }
-                if (deleteIt && !latestSuccessfulKeys.contains(k)) {
-                    toDelete.add(k);
+                    return deleted;
+                });
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public int removeOrphanValidationRunAssociations() {
+        final int orphans = removeOrphanObjectAssociations();
+
+        // there is one repository per validation run and only a few thousand repositories
+        final List<Key> reposToDelete = storage.readTx(tx -> {
+            final Set<Key> repoKeys = rpkiRepositories.keys(tx);
+            final List<Key> orphanRuns = new ArrayList<>();
+            vr2repo.forEach(tx, (vrKey, bytes) -> {
+                if (!repoKeys.contains(vr2repo.toValue(bytes))) {
+                    orphanRuns.add(vrKey);
                 }
             });
-            toDelete.forEach(pk -> ixMap.delete(tx, pk));
-            count.addAndGet(toDelete.size());
+            return orphanRuns;
         });
-        return count.get();
+        Lists.partition(reposToDelete, ORPHAN_BATCH_SIZE).forEach(chunk ->
+                storage.writeTx0(tx -> chunk.forEach(vrKey -> vr2repo.delete(tx, vrKey))));
+        return orphans + reposToDelete.size();
     }
 
-    @Override
-    public int removeOrphanValidationRunAssociations(Tx.Write tx) {
-        final Set<Key> roKeys = rpkiObjects.keys(tx);
-        final Set<Key> repoKeys = rpkiRepositories.keys(tx);
-        final List<Pair<Key, Key>> toDelete = new ArrayList<>();
-        vr2ro.forEach(tx, (vrKey, bytes) -> {
-            final Key roKey = vr2ro.toValue(bytes);
-            if (!roKeys.contains(roKey)) {
-                toDelete.add(Pair.of(vrKey, roKey));
+    /**
+     * Removes the (validation run, object) associations of which the object no longer exists.
+     *
+     * The associations are read one validation run at a time, in a read transaction per run, and the
+     * object of every association is looked up once, so the work is a single pass over the associations.
+     * Orphans are collected across runs and deleted after a run once at least {@link #ORPHAN_BATCH_SIZE}
+     * have been found, so less than a batch plus the orphans of a single run are held in memory.
+     */
+    private int removeOrphanObjectAssociations() {
+        final List<Key> vrKeys = storage.readTx(tx -> {
+            try (Stream<Key> keys = vr2ro.streamKeys(tx)) {
+                return keys.distinct().collect(Collectors.toList());
             }
         });
-        int c1 = toDelete.size();
-        vr2ro.deleteBatch(tx, toDelete);
-
-        final Set<Key> reposToDelete = new HashSet<>();
-        vr2repo.forEach(tx, (vrKey, bytes) -> {
-            final Key repoKey = vr2repo.toValue(bytes);
-            if (!repoKeys.contains(repoKey)) {
-                reposToDelete.add(vrKey);
+
+        final List<Pair<Key, Key>> orphans = new ArrayList<>();
+        int removed = 0;
+        for (Key vrKey : vrKeys) {
+            storage.readTx0(tx -> {
+                try (Stream<Key> roKeys = vr2ro.stream(tx, vrKey)) {
+                    roKeys.filter(roKey -> !rpkiObjects.exists(tx, roKey))
+                        .forEach(roKey -> orphans.add(Pair.of(vrKey, roKey)));
+                }
+            });
+            if (orphans.size() >= ORPHAN_BATCH_SIZE) {
+                removed += deleteOrphans(orphans);
             }
-        });
-        reposToDelete.forEach(vrKey -> vr2repo.delete(tx, vrKey));
-        return c1 + reposToDelete.size();
+        }
+        return removed + deleteOrphans(orphans);
+    }
+
+    private int deleteOrphans(List<Pair<Key, Key>> orphans) {
+        Lists.partition(orphans, ORPHAN_BATCH_SIZE).forEach(chunk ->
+                storage.writeTx0(tx -> vr2ro.deleteBatch(tx, chunk)));
+        final int deleted = orphans.size();
+        orphans.clear();
+        return deleted;
     }
 
     @Override
     public Stream<ValidationCheck> findValidationChecksForValidationRun(Tx.Read tx, long trustAnchorId, Paging paging, SearchTerm searchTerm, Sorting sorting) {
-        return applyPaging(paging,
-                applySorting(sorting,
-                        applySearchTerm(searchTerm, validationCheckForTaStreams(tx, trustAnchorId))));
+        if (sorting == null) {
+            sorting = Sorting.of(Sorting.By.LOCATION, Sorting.Direction.ASC);
+        }
+        final ValidationChecksTable.Order order = checksOrder(sorting.getBy());
+        // DESC has always meant the natural order of the column here
+        final boolean reversed = sorting.getDirection() != Sorting.Direction.DESC;
+        final long offset = paging == null ? 0 : paging.getStartFrom();
+        final long limit = paging == null ? Long.MAX_VALUE : paging.getPageSize();
+
+        final List<ValidationRun> runs = latestRunsForTrustAnchor(tx, trustAnchorId);
+        if (searchTerm == null) {
+            final List<ValidationRun> withChecks = runs.stream()
+                    .filter(vr -> countChecks(tx, vr) > 0)
+                    .collect(Collectors.toList());
+            if (withChecks.size() == 1) {
+                return sortedChecks(tx, withChecks.get(0), order, reversed, offset, limit);
+            }
+            // no run needs to contribute more than offset + limit rows to the page
+            final long needed = limit > Long.MAX_VALUE - offset ? Long.MAX_VALUE : offset + limit;
+            return mergeSorted(withChecks.stream()
+                            .map(vr -> sortedChecks(tx, vr, order, reversed, 0, needed))
+                            .collect(Collectors.toList()),
+                    reversed ? order.getComparator().reversed() : order.getComparator())
+                    .skip(offset)
+                    .limit(limit);
+        }
+        return applySearchTerm(searchTerm, mergeSorted(runs.stream()
+                        .map(vr -> sortedChecks(tx, vr, order, reversed, 0, Long.MAX_VALUE))
+                        .collect(Collectors.toList()),
+                reversed ? order.getComparator().reversed() : order.getComparator()))
+                .skip(offset)
+                .limit(limit);
     }
 
     @Override
     public int countValidationChecksForValidationRun(Tx.Read tx, long trustAnchorId, SearchTerm searchTerm) {
-        return (int) applySearchTerm(searchTerm, validationCheckForTaStreams(tx, trustAnchorId)).count();
+        final List<ValidationRun> runs = latestRunsForTrustAnchor(tx, trustAnchorId);
+        if (searchTerm == null) {
+            return runs.stream().mapToInt(vr -> countChecks(tx, vr)).sum();
+        }
+        return (int) applySearchTerm(searchTerm, runs.stream()
+                .flatMap(vr -> sortedChecks(tx, vr, ValidationChecksTable.Order.LOCATION, false, 0, Long.MAX_VALUE)))
+                .count();
     }
 
-    private Stream<ValidationCheck> validationCheckForTaStreams(Tx.Read tx, long trustAnchorId) {
-        Stream<ValidationCheck> taChecks = taIxMap.getByIdxDescendingWhere(BY_COMPLETED_AT_INDEX, tx,
-                vr -> trustAnchorId == vr.getTrustAnchor().key().asLong())
-                .values()
-                .stream()
-                .findFirst()
-                .map(ValidationRun::getValidationChecks)
-                .orElse(Collections.emptyList())
-                .stream();
+    @Override
+    public List<ValidationCheck> findValidationChecks(Tx.Read tx, ValidationRun validationRun) {
+        return checksTable.summary(tx, validationRun.key())
+                .map(summary -> checksTable.stream(tx, validationRun.key(), summary, ValidationChecksTable.Order.CREATED_AT, false, 0, Long.MAX_VALUE)
+                        .collect(Collectors.toList()))
+                .orElseGet(validationRun::getValidationChecks);
+    }
 
-        Stream<ValidationCheck> ctChecks = ctIxMap.getByIdxDescendingWhere(BY_COMPLETED_AT_INDEX, tx,
-                vr -> trustAnchorId == vr.getTrustAnchor().key().asLong())
-                .values()
-                .stream()
-                .findFirst()
-                .map(ValidationRun::getValidationChecks)
-                .orElse(Collections.emptyList())
-                .stream();
+    @Override
+    public int countValidationChecks(Tx.Read tx, ValidationRun validationRun, ValidationCheck.Status status) {
+        return checksTable.summary(tx, validationRun.key())
+                .map(summary -> summary.count(status))
+                .orElseGet(() -> validationRun.countChecks(status));
+    }
+
+    private List<ValidationRun> latestRunsForTrustAnchor(Tx.Read tx, long trustAnchorId) {
+        final Key taKey = Key.of(trustAnchorId);
+        final List<ValidationRun> runs = new ArrayList<>(2);
+        getLatest(tx, taIxMap, latestKey(LATEST_COMPLETED, TrustAnchorValidationRun.TYPE, taKey)).ifPresent(runs::add);
+        getLatest(tx, ctIxMap, latestKey(LATEST_COMPLETED, CertificateTreeValidationRun.TYPE, taKey)).ifPresent(runs::add);
+        return runs;
+    }
+
+    private int countChecks(Tx.Read tx, ValidationRun vr) {
+        return checksTable.summary(tx, vr.key())
+                .map(ValidationChecksTable.Summary::getCount)
+                .orElseGet(() -> vr.getValidationChecks().size());
+    }
+
+    /**
+     * Runs stored by older versions keep their checks in the run itself.
+     */
+    private Stream<ValidationCheck> sortedChecks(Tx.Read tx, ValidationRun vr, ValidationChecksTable.Order order,
+                                                 boolean reversed, long offset, long limit) {
+        return checksTable.summary(tx, vr.key())
+                .map(summary -> checksTable.stream(tx, vr.key(), summary, order, reversed, offset, limit))
+                .orElseGet(() -> vr.getValidationChecks().stream()
+                        .sorted(reversed ? order.getComparator().reversed() : order.getComparator())
+                        .skip(offset)
+                        .limit(limit));
+    }
 
-        return Stream.concat(taChecks, ctChecks);
+    private static ValidationChecksTable.Order checksOrder(Sorting.By by) {
+        switch (by) {
+            case KEY:
+                return ValidationChecksTable.Order.KEY;
+            case STATUS:
+                return ValidationChecksTable.Order.STATUS;
+            case LOCATION:
+                return ValidationChecksTable.Order.LOCATION;
+            default:
+                return ValidationChecksTable.Order.CREATED_AT;
+        }
     }
 
-    private Stream<ValidationCheck> applyPaging(Paging paging, Stream<ValidationCheck> validationChecks) {
-        if (paging != null) {
-            validationChecks = paging.apply(validationChecks);
+    /**
+     * Merges sorted streams, on equal elements the earlier stream goes first.
+     */
+    private static <T> Stream<T> mergeSorted(List<Stream<T>> streams, Comparator<? super T> comparator) {
+        if (streams.size() == 1) {
+            return streams.get(0);
         }
-        return validationChecks;
+        final List<PeekingIterator<T>> iterators = streams.stream()
+                .map(stream -> Iterators.peekingIterator(stream.iterator()))
+                .collect(Collectors.toList());
+        final Iterator<T> merged = new AbstractIterator<T>() {
+            @Override
+            protected T computeNext() {
+                PeekingIterator<T> min = null;
+                for (PeekingIterator<T> it : iterators) {
+                    if (it.hasNext() && (min == null || comparator.compare(it.peek(), min.peek()) < 0)) {
+                        min = it;
+                    }
+                }
+                return min == null ? endOfData() : min.next();
+            }
+        };
+        return Streams.stream(merged);
     }
 
     private Stream<ValidationCheck> applySearchTerm(SearchTerm searchTerm, Stream<ValidationCheck> validationChecks) {
@@ -358,40 +636,17 @@ public class ValidationRunsStore implements ValidationRuns {
         return validationChecks;
     }
 
-
-    private Stream<ValidationCheck> applySorting(Sorting sorting, Stream<ValidationCheck> validationChecks) {
-        if (sorting == null) {
-            sorting = Sorting.of(Sorting.By.LOCATION, Sorting.Direction.ASC);
-        }
-        Comparator<ValidationCheck> comparator;
-        switch (sorting.getBy()) {
-            case KEY:
-                comparator = Comparator.comparing(ValidationCheck::getKey);
-                break;
-            case STATUS:
-                comparator = Comparator.comparing(ValidationCheck::getStatus);
-                break;
-            case LOCATION:
-                comparator = Comparator.comparing(ValidationCheck::getLocation);
-                break;
-            default:
-                comparator = Comparator.comparing(ValidationCheck::getCreatedAt);
-                break;
-        }
-        return validationChecks.sorted(
-                sorting.getDirection() == Sorting.Direction.DESC ?
-                        comparator :
-                        comparator.reversed());
-    }
-
     @Override
     public void associate(Tx.Write tx, RpkiRepositoryValidationRun validationRun, RpkiObject rpkiObject) {
         vr2ro.put(tx, validationRun.key(), rpkiObject.key());
     }
 
     @Override
-    public void associateRpkiObjectKey(Tx.Write tx, CertificateTreeValidationRun validationRun, Key rpkiObjectKey) {
-        vr2ro.put(tx, validationRun.key(), rpkiObjectKey);
+    public void associateRpkiObjectKeys(Tx.Write tx, CertificateTreeValidationRun validationRun, Collection<Key> rpkiObjectKeys) {
+        final Key vrKey = validationRun.key();
+        final byte[] packed = PackedKeys.pack(rpkiObjectKeys);
+        vr2roPacked.put(tx, vrKey, packed);
+        log.debug("Stored {} object keys of the validation run {} in {} bytes", rpkiObjectKeys.size(), vrKey, packed.length);
     }
 
     @Override
@@ -401,7 +656,13 @@ public class ValidationRunsStore implements ValidationRuns {
 
     @Override
     public Set<Key> findAssociatedPks(Tx.Read tx, CertificateTreeValidationRun validationRun) {
-        return new HashSet<>(vr2ro.get(tx, validationRun.key()));
+        return associatedPks(tx, validationRun.key()).collect(Collectors.toSet());
+    }
+
+    private Stream<Key> associatedPks(Tx.Read tx, Key vrKey) {
+        return vr2roPacked.get(tx, vrKey)
+                .map(PackedKeys::stream)
+                .orElseGet(() -> vr2ro.get(tx, vrKey).stream());
     }
 
     @Override
@@ -409,8 +670,7 @@ public class ValidationRunsStore implements ValidationRuns {
         final Set<Key> byType = rpkiObjects.getPkByType(tx, type);
         return findLatestSuccessful(tx, CertificateTreeValidationRun.class)
                 .stream()
-                .flatMap(ct -> vr2ro.get(tx, ct.key())
-                        .stream()
+                .flatMap(ct -> associatedPks(tx, ct.key())
                         .filter(byType::contains)
                         .map(roKey -> rpkiObjects.get(tx, roKey))
                         .filter(Optional::isPresent)
@@ -421,13 +681,16 @@ public class ValidationRunsStore implements ValidationRuns {
 
     @Override
     public void clear(Tx.Write tx) {
-        Stream.of(vr2ro, vr2repo, ctIxMap, taIxMap, rsIxMap, rrIxMap)
+        Stream.of(vr2ro, vr2roPacked, vr2repo, latestRuns, ctIxMap, taIxMap, rsIxMap, rrIxMap)
                 .forEach(ixMap -> ixMap.clear(tx));
+        checksTable.clear(tx);
     }
 
     @Override
     public int getObjectCount(Tx.Read tx, ValidationRun validationRun) {
-        return vr2ro.count(tx, validationRun.key());
+        return vr2roPacked.get(tx, validationRun.key())
+                .map(PackedKeys::count)
+                .orElseGet(() -> vr2ro.count(tx, validationRun.key()));
     }
 
     @SuppressWarnings("unchecked")
@@ -439,15 +702,18 @@ public class ValidationRunsStore implements ValidationRuns {
         return (IxMap<T>) ixMap;
     }
 
-    private List<IxMap<? extends ValidationRun>> pickIxMaps(Class<? extends ValidationRun> c) {
-        List<IxMap<? extends ValidationRun>> ixMaps = new ArrayList<>();
+    private List<String> pickTypes(Class<? extends ValidationRun> c) {
         try {
-            String validationRunType = FieldUtils.readDeclaredStaticField(c, "TYPE").toString();
-            ixMaps.add(pickIxMap(validationRunType));
+            return Collections.singletonList(FieldUtils.readDeclaredStaticField(c, "TYPE").toString());
         } catch (IllegalAccessException | IllegalArgumentException e) {
-            ixMaps.addAll(maps.values());
+            return new ArrayList<>(maps.keySet());
         }
-        return ixMaps;
+    }
+
+    private List<IxMap<? extends ValidationRun>> pickIxMaps(Class<? extends ValidationRun> c) {
+        return pickTypes(c).stream()
+                .<IxMap<? extends ValidationRun>>map(this::pickIxMap)
+                .collect(Collectors.toList());
     }
 
 }
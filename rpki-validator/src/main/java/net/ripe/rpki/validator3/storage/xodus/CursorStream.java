@@ -0,0 +1,97 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2018 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.rpki.validator3.storage.xodus;
+
+import jetbrains.exodus.env.Cursor;
+
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Lazy stream over a Xodus cursor.
+ *
+ * Entries are read one by one while the stream is consumed, the cursor is closed as soon as
+ * it is exhausted or the stream is closed. The stream is only valid within the transaction
+ * the cursor was opened in and must be consumed in the thread of that transaction.
+ */
+class CursorStream<R> extends Spliterators.AbstractSpliterator<R> {
+
+    private final Cursor cursor;
+    private final Predicate<Cursor> first;
+    private final Predicate<Cursor> next;
+    private final Function<Cursor, R> extract;
+
+    private boolean started = false;
+    private boolean finished = false;
+
+    private CursorStream(Cursor cursor, Predicate<Cursor> first, Predicate<Cursor> next, Function<Cursor, R> extract) {
+        super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+        this.cursor = cursor;
+        this.first = first;
+        this.next = next;
+        this.extract = extract;
+    }
+
+    static <R> Stream<R> of(Cursor cursor, Predicate<Cursor> first, Predicate<Cursor> next, Function<Cursor, R> extract) {
+        final CursorStream<R> spliterator = new CursorStream<>(cursor, first, next, extract);
+        return StreamSupport.stream(spliterator, false).onClose(spliterator::close);
+    }
+
+    static <R> Stream<R> of(Cursor cursor, Function<Cursor, R> extract) {
+        return of(cursor, Cursor::getNext, Cursor::getNext, extract);
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super R> action) {
+        if (finished) {
+            return false;
+        }
+        final boolean found = started ? next.test(cursor) : first.test(cursor);
+        started = true;
+        if (!found) {
+            close();
+            return false;
+        }
+        action.accept(extract.apply(cursor));
+        return true;
+    }
+
+    private void close() {
+        if (!finished) {
+            finished = true;
+            cursor.close();
+        }
+    }
+}
@@ -31,6 +31,9 @@ package net.ripe.rpki.validator3.storage.xodus;
 
 import com.google.common.collect.Sets;
 import com.google.gson.Gson;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
 import jetbrains.exodus.ArrayByteIterable;
 import jetbrains.exodus.ByteIterable;
 import jetbrains.exodus.env.*;
@@ -51,6 +54,7 @@ import java.io.Serializable;
 import java.time.Instant;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 import java.util.function.Function;
@@ -60,12 +64,28 @@ import static java.nio.charset.StandardCharsets.UTF_8;
 import static jetbrains.exodus.env.StoreConfig.WITHOUT_DUPLICATES;
 
 @Slf4j
-public abstract class Xodus implements Storage {
+public abstract class Xodus implements Storage, MeterBinder {
 
     private static final String METADATA_MAP_NAME = "meta";
     private Gson gson = new Gson();
     private Store metadata;
 
+    /**
+     * Time in milliseconds at which the last write transaction finished.
+     */
+    @Getter
+    private volatile long lastWriteAt = 0;
+
+    /**
+     * Time writers wait for the exclusive transaction and hold it, once bound to a registry.
+     */
+    private volatile Timer writeWait;
+    private volatile Timer writeDuration;
+
+    private final Object gcState = new Object();
+    private boolean gcDeferred = false;
+    private boolean gcRequested = false;
+
     protected synchronized Store meta() {
         if (metadata == null) {
             metadata = getEnv().computeInTransaction(txn ->
@@ -76,11 +96,24 @@ public abstract class Xodus implements Storage {
 
     protected abstract Environment getEnv();
 
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        writeWait = Timer.builder("rpkivalidator.storage.write.wait")
+            .description("Time writers wait for the exclusive write transaction")
+            .register(registry);
+        writeDuration = Timer.builder("rpkivalidator.storage.write.duration")
+            .description("Time the exclusive write transaction is held")
+            .register(registry);
+    }
+
     public <T> T writeTx(Function<Tx.Write, T> f) {
         AtomicReference<List<Runnable>> afterCommitHooks = new AtomicReference<>(Collections.emptyList());
 
         Environment env = getEnv();
+        final long requestedAt = System.nanoTime();
         T result = ForkJoin.blocking(() -> env.computeInExclusiveTransaction(txn -> {
+            final long acquiredAt = System.nanoTime();
+            record(writeWait, acquiredAt - requestedAt);
             XodusTx.Write tx = XodusTx.fromRWNative(env, txn);
             txs.put(tx.getId(), new TxInfo(tx));
             try {
@@ -89,6 +122,8 @@ public abstract class Xodus implements Storage {
                 return innerResult;
             } finally {
                 txs.remove(tx.getId());
+                lastWriteAt = System.currentTimeMillis();
+                record(writeDuration, System.nanoTime() - acquiredAt);
             }
         }));
 
@@ -104,6 +139,12 @@ public abstract class Xodus implements Storage {
         return result;
     }
 
+    private static void record(Timer timer, long nanos) {
+        if (timer != null) {
+            timer.record(nanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
     public void writeTx0(Consumer<Tx.Write> c) {
         writeTx(tx -> {
             c.accept(tx);
@@ -147,7 +188,56 @@ public abstract class Xodus implements Storage {
 
     @Override
     public void gc() {
+        synchronized (gcState) {
+            if (gcDeferred) {
+                gcRequested = true;
+                return;
+            }
+        }
+        getEnv().gc();
+    }
+
+    /**
+     * Suspends the log garbage collector, including the explicit {@link #gc()} calls, which are
+     * remembered and picked up again by {@link #resumeGc()}.
+     */
+    public void deferGc() {
+        synchronized (gcState) {
+            if (!gcDeferred) {
+                getEnv().suspendGC();
+                gcDeferred = true;
+            }
+        }
+    }
+
+    /**
+     * @return true if {@link #gc()} was called while the garbage collector was deferred
+     */
+    public boolean resumeGc() {
+        synchronized (gcState) {
+            final boolean requested = gcRequested;
+            if (gcDeferred) {
+                getEnv().resumeGC();
+                gcDeferred = false;
+            }
+            gcRequested = false;
+            return requested;
+        }
+    }
+
+    /**
+     * Runs the garbage collector and waits for it to finish cleaning the log.
+     */
+    public void gcAndWait() {
         getEnv().gc();
+        if (getEnv() instanceof EnvironmentImpl) {
+            ((EnvironmentImpl) getEnv()).getGC().waitForPendingGC();
+        }
+    }
+
+    public long getStatistic(EnvironmentStatistics.Type type) {
+        final EnvironmentStatistics statistics = (EnvironmentStatistics) getEnv().getStatistics();
+        return statistics.getStatisticsItem(type).getTotal();
     }
 
     @Getter
@@ -198,13 +288,9 @@ public abstract class Xodus implements Storage {
         return Key.of(dbName + "-key");
     }
 
-    <T extends Serializable> Pair<Map<String, Store>, Boolean> createIndexes(
-            String name,
-            Map<String, Function<T, Set<Key>>> indexFunctions,
-            StoreConfig storeConfigs) {
-
+    private IxMapInfo loadDbMeta(String name) {
         final Store meta = meta();
-        Xodus.IxMapInfo existingIxMapInfo = getEnv().computeInReadonlyTransaction(txn -> {
+        return getEnv().computeInReadonlyTransaction(txn -> {
             ByteIterable byteIterable = meta.get(txn, dbMetaKey(name).toByteIterable());
             if (byteIterable == null) {
                 return null;
@@ -212,6 +298,19 @@ public abstract class Xodus implements Storage {
             String json = new String(Bytes.toBytes(byteIterable), UTF_8);
             return gson.fromJson(json, Xodus.IxMapInfo.class);
         });
+    }
+
+    /**
+     * Opens the index stores of the map. The indexes have to be rebuilt when the set of index
+     * definitions changed, or when an earlier rebuild did not finish: the map info keeps a marker
+     * until {@link #indexesRebuilt(String)} is called.
+     */
+    <T extends Serializable> Pair<Map<String, Store>, Boolean> createIndexes(
+            String name,
+            Map<String, Function<T, Set<Key>>> indexFunctions,
+            StoreConfig storeConfigs) {
+
+        Xodus.IxMapInfo existingIxMapInfo = loadDbMeta(name);
 
         final Map<String, Store> indexes = new HashMap<>();
         boolean reindex = false;
@@ -229,8 +328,12 @@ public abstract class Xodus implements Storage {
                         );
                     });
                     existingIxMapInfo.setIndexes(indexFunctions.keySet());
+                    existingIxMapInfo.setRebuilding(true);
                     saveDbMeta(existingIxMapInfo);
                     reindex = true;
+                } else if (existingIxMapInfo.isRebuilding()) {
+                    log.info("Rebuilding the indexes of {} did not finish, starting over", name);
+                    reindex = true;
                 }
             } else {
                 existingIxMapInfo.setIndexes(indexFunctions.keySet());
@@ -242,6 +345,15 @@ public abstract class Xodus implements Storage {
             mapInfo.setIndexes(indexFunctions.keySet());
             saveDbMeta(mapInfo);
         }
+        if (reindex) {
+            // Truncate before opening, store handles opened earlier would keep pointing at the old content
+            getEnv().executeInExclusiveTransaction(txn -> indexFunctions.keySet().forEach(n -> {
+                final String idxStoreName = idxStoreName(name, n);
+                if (getEnv().storeExists(idxStoreName, txn)) {
+                    getEnv().truncateStore(idxStoreName, txn);
+                }
+            }));
+        }
         getEnv().executeInTransaction(txn -> {
             indexFunctions.forEach((n, idxFun) -> {
                 Store store = getEnv().openStore(idxStoreName(name, n), storeConfigs, txn);
@@ -252,6 +364,17 @@ public abstract class Xodus implements Storage {
         return Pair.of(indexes, reindex);
     }
 
+    /**
+     * Clears the marker set by {@link #createIndexes} once all indexes of the map are complete.
+     */
+    void indexesRebuilt(String name) {
+        final IxMapInfo mapInfo = loadDbMeta(name);
+        if (mapInfo != null && mapInfo.isRebuilding()) {
+            mapInfo.setRebuilding(false);
+            saveDbMeta(mapInfo);
+        }
+    }
+
     private String idxStoreName(String name, String idx) {
         return name + "-idx-" + idx;
     }
@@ -289,6 +412,8 @@ public abstract class Xodus implements Storage {
     private static class IxMapInfo {
         private String name;
         private Set<String> indexes;
+        // The indexes are being rebuilt and are incomplete until this is cleared.
+        private boolean rebuilding;
     }
 
     @Data
@@ -35,6 +35,7 @@ import jetbrains.exodus.env.Environments;
 import lombok.extern.slf4j.Slf4j;
 import net.ripe.rpki.validator3.storage.XodusInitialisationException;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Primary;
 import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Component;
@@ -44,6 +45,7 @@ import javax.annotation.PreDestroy;
 import java.io.File;
 
 @Profile("!test")
+@ConditionalOnProperty(name = "rpki.validator.storage", havingValue = "xodus", matchIfMissing = true)
 @Component
 @Slf4j
 @Primary
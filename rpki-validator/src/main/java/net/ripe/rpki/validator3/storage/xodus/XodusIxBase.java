@@ -46,15 +46,15 @@ import net.ripe.rpki.validator3.storage.encoding.Coder;
 
 import java.io.Serializable;
 import java.nio.ByteBuffer;
-import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import java.util.zip.CRC32;
 
 public abstract class XodusIxBase<T extends Serializable> implements IxBase<T> {
@@ -152,15 +152,25 @@ public abstract class XodusIxBase<T extends Serializable> implements IxBase<T> {
     }
 
     public Set<Key> keys(Tx.Read tx) {
-        final Set<Key> result = new HashSet<>();
-        forEach(tx, (k, v) -> result.add(k));
-        return result;
+        try (Stream<Key> keys = streamKeys(tx)) {
+            return keys.collect(Collectors.toSet());
+        }
     }
 
     public List<T> values(Tx.Read tx) {
-        final List<T> result = new ArrayList<>();
-        forEach(tx, (k, v) -> result.add(getValue(k, v)));
-        return result;
+        try (Stream<T> values = streamValues(tx)) {
+            return values.collect(Collectors.toList());
+        }
+    }
+
+    @Override
+    public Stream<Key> streamKeys(Tx.Read tx) {
+        return CursorStream.of(getMainDb().openCursor(castTxn(tx)), c -> new Key(c.getKey()));
+    }
+
+    @Override
+    public Stream<T> streamValues(Tx.Read tx) {
+        return CursorStream.of(getMainDb().openCursor(castTxn(tx)), c -> getValue(new Key(c.getKey()), Bytes.toBytes(c.getValue())));
     }
 
     public Map<Key, T> all(Tx.Read tx) {
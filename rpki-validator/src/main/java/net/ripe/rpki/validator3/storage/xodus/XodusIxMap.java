@@ -29,12 +29,14 @@
  */
 package net.ripe.rpki.validator3.storage.xodus;
 
+import jetbrains.exodus.ArrayByteIterable;
 import jetbrains.exodus.ByteIterable;
 import jetbrains.exodus.env.Cursor;
 import jetbrains.exodus.env.Store;
 import jetbrains.exodus.env.StoreConfig;
 import jetbrains.exodus.env.Transaction;
 import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
 import net.ripe.rpki.validator3.storage.Bytes;
 import net.ripe.rpki.validator3.storage.IxMap;
 import net.ripe.rpki.validator3.storage.Tx;
@@ -45,23 +47,41 @@ import org.apache.commons.lang3.tuple.Pair;
 
 import java.io.Serializable;
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
+ * When the set of index definitions changes, the indexes are rebuilt in the background in chunks
+ * of {@link #REINDEX_CHUNK_SIZE} entries, so that opening the map doesn't block on a full scan.
+ * Until the rebuild is visible to a transaction, index queries in that transaction are answered
+ * by scanning the main database and applying the index functions. A rebuild that is interrupted,
+ * for example by a restart, starts over the next time the map is opened.
  *
  * @param <T>
  */
+@Slf4j
 public class XodusIxMap<T extends Serializable> extends XodusIxBase<T> implements IxMap<T> {
 
+    static final int REINDEX_CHUNK_SIZE = 10_000;
+
     private final Map<String, Store> indexes;
     private final Map<String, Function<T, Set<Key>>> indexFunctions;
     private final List<BiConsumer<Tx.Write, Key>> onDeleteTriggers = new ArrayList<>();
 
+    /**
+     * Transactions with a high address at or above this one see complete indexes.
+     */
+    private volatile long indexedAsOf = 0;
+    private final CountDownLatch reindexed = new CountDownLatch(1);
+
     public XodusIxMap(final Xodus xodus,
                       final String name,
                       final Coder<T> coder,
@@ -72,24 +92,105 @@ public class XodusIxMap<T extends Serializable> extends XodusIxBase<T> implement
         indexes = p.getLeft();
         boolean reindex = p.getRight();
         if (reindex) {
-            reindex();
+            indexedAsOf = Long.MAX_VALUE;
+            final Thread reindexer = new Thread(() -> reindex(xodus), "reindex-" + name);
+            reindexer.setDaemon(true);
+            reindexer.start();
+        } else {
+            reindexed.countDown();
         }
     }
 
-    private void reindex() {
-        this.env.executeInExclusiveTransaction(txn -> {
-            indexes.forEach((name, idx) -> env.truncateStore(idx.getName(), txn));
-            try (final Cursor ci = getMainDb().openCursor(txn)) {
-                while (ci.getNext()) {
-                    ByteIterable pk = ci.getKey();
-                    final T value = getValue(new Key(pk), Bytes.toBytes(ci.getValue()));
-                    indexFunctions.forEach((n, idxFun) -> {
-                        final Store idx = getIdx(n);
-                        idxFun.apply(value).forEach(ik -> idx.put(txn, ik.toByteIterable(), pk));
-                    });
-                }
-            }
-        });
+    /**
+     * Rebuild the indexes from the main database, one chunk per transaction. Concurrent puts and
+     * deletes maintain the indexes themselves, so a chunk only has to add the entries of the keys
+     * it visits; adding an index entry that already exists is a no-op.
+     */
+    private void reindex(Xodus xodus) {
+        final long total = env.computeInReadonlyTransaction(txn -> getMainDb().count(txn));
+        log.info("Rebuilding indexes {} of {} for {} entries", indexFunctions.keySet(), getName(), total);
+        final long started = System.currentTimeMillis();
+        final AtomicLong indexed = new AtomicLong();
+        try {
+            ByteIterable lastKey = null;
+            do {
+                final ByteIterable from = lastKey;
+                final AtomicInteger count = new AtomicInteger();
+                lastKey = env.computeInTransaction(txn -> {
+                    count.set(0);
+                    ByteIterable last = null;
+                    try (final Cursor ci = getMainDb().openCursor(txn)) {
+                        boolean hasNext = from == null ? ci.getNext() : ci.getSearchKeyRange(from) != null;
+                        if (hasNext && from != null && ci.getKey().equals(from)) {
+                            hasNext = ci.getNext();
+                        }
+                        while (hasNext && count.get() < REINDEX_CHUNK_SIZE) {
+                            final ByteIterable pk = ci.getKey();
+                            final T value = getValue(new Key(pk), Bytes.toBytes(ci.getValue()));
+                            indexFunctions.forEach((n, idxFun) -> {
+                                final Store idx = getIdx(n);
+                                idxFun.apply(value).stream()
+                                        .filter(Objects::nonNull)
+                                        .forEach(ik -> idx.put(txn, ik.toByteIterable(), pk));
+                            });
+                            last = pk;
+                            count.incrementAndGet();
+                            hasNext = ci.getNext();
+                        }
+                        return hasNext && last != null ? new ArrayByteIterable(Bytes.toBytes(last)) : null;
+                    }
+                });
+                log.info("Rebuilding indexes of {}: {} of {} entries done", getName(), indexed.addAndGet(count.get()), total);
+            } while (lastKey != null);
+
+            xodus.indexesRebuilt(getName());
+            indexedAsOf = env.computeInReadonlyTransaction(Transaction::getHighAddress);
+            log.info("Rebuilt indexes of {} in {}ms", getName(), System.currentTimeMillis() - started);
+        } catch (RuntimeException e) {
+            log.error("Rebuilding indexes of " + getName() + " failed, queries will keep scanning", e);
+        } finally {
+            reindexed.countDown();
+        }
+    }
+
+    /**
+     * @return true when the indexes are still being rebuilt and index queries fall back to scans.
+     */
+    public boolean isReindexing() {
+        return indexedAsOf == Long.MAX_VALUE;
+    }
+
+    boolean awaitIndexes(long timeout, TimeUnit unit) throws InterruptedException {
+        return reindexed.await(timeout, unit) && !isReindexing();
+    }
+
+    private boolean indexesVisible(Transaction txn) {
+        final long asOf = indexedAsOf;
+        return asOf == 0 || txn.getHighAddress() >= asOf;
+    }
+
+    /**
+     * Primary keys of the index entries with an index key in the range, found by applying the index
+     * function to every entry of the main database. The keys are streamed in primary key order (which
+     * is the index order for an exact match) and nothing but the current entry is kept in memory.
+     */
+    private Stream<Key> scanIndex(String indexName, Transaction txn, ByteIterable start, ByteIterable stop) {
+        final Function<T, Set<Key>> idxFun = indexFunctions.get(indexName);
+        if (idxFun == null) {
+            return Stream.empty();
+        }
+        final Predicate<ByteIterable> inRange = start != null && start.equals(stop)
+                ? start::equals
+                : ik -> (start == null || ik.compareTo(start) >= 0) && (stop == null || ik.compareTo(stop) < 0);
+        return CursorStream.of(getMainDb().openCursor(txn), c -> {
+            final Key pk = new Key(c.getKey());
+            return idxFun.apply(getValue(pk, Bytes.toBytes(c.getValue()))).stream()
+                    .filter(Objects::nonNull)
+                    .map(Key::toByteIterable)
+                    .filter(inRange)
+                    .map(ik -> pk)
+                    .collect(Collectors.toList());
+        }).flatMap(List::stream);
     }
 
     private Store getIdx(String name) {
@@ -227,6 +328,19 @@ public class XodusIxMap<T extends Serializable> extends XodusIxBase<T> implement
         return m;
     }
 
+    public Stream<Key> streamPkByIndex(String indexName, Tx.Read tx, Key indexKey) {
+        checkNotNull(indexKey, "Index key is null");
+        final ByteIterable idxKey = indexKey.toByteIterable();
+        return streamPkByIndexKeyRange(indexName, tx, idxKey, idxKey);
+    }
+
+    public Stream<T> streamByIndex(String indexName, Tx.Read tx, Key indexKey) {
+        return streamPkByIndex(indexName, tx, indexKey)
+                .map(pk -> get(tx, pk))
+                .filter(Optional::isPresent)
+                .map(Optional::get);
+    }
+
     public Set<Key> getPkByIndex(String indexName, Tx.Read tx, Key indexKey) {
         checkNotNull(indexKey, "Index key is null");
         final ByteIterable idxKey = indexKey.toByteIterable();
@@ -271,7 +385,34 @@ public class XodusIxMap<T extends Serializable> extends XodusIxBase<T> implement
 
         Store index = getIdx(indexName);
         final Map<Key, T> m = new HashMap<>();
-        if (index != null) {
+        if (index != null && !indexesVisible(castTxn(tx))) {
+            // Keep only the matching entries of the first index key seen so far.
+            final Function<T, Set<Key>> idxFun = indexFunctions.get(indexName);
+            ByteIterable first = null;
+            try (final Cursor ci = getMainDb().openCursor(castTxn(tx))) {
+                while (ci.getNext()) {
+                    final Key pk = new Key(ci.getKey());
+                    final T value = getValue(pk, Bytes.toBytes(ci.getValue()));
+                    if (!predicate.test(value)) {
+                        continue;
+                    }
+                    for (Key indexKey : idxFun.apply(value)) {
+                        if (indexKey == null) {
+                            continue;
+                        }
+                        final ByteIterable ik = indexKey.toByteIterable();
+                        final int cmp = first == null ? -1 : ascending ? ik.compareTo(first) : first.compareTo(ik);
+                        if (cmp < 0) {
+                            first = ik;
+                            m.clear();
+                        }
+                        if (cmp <= 0) {
+                            m.put(pk, value);
+                        }
+                    }
+                }
+            }
+        } else if (index != null) {
             Store mainDb = getMainDb();
             Transaction txn = castTxn(tx);
             try (Cursor cursor = index.openCursor(txn)) {
@@ -314,56 +455,34 @@ public class XodusIxMap<T extends Serializable> extends XodusIxBase<T> implement
     }
 
     private Set<Key> getPkByIndexKeyRange(String indexName, Tx.Read tx, ByteIterable start, ByteIterable stop) {
+        try (Stream<Key> pks = streamPkByIndexKeyRange(indexName, tx, start, stop)) {
+            return pks.collect(Collectors.toSet());
+        }
+    }
+
+    private Stream<Key> streamPkByIndexKeyRange(String indexName, Tx.Read tx, ByteIterable start, ByteIterable stop) {
         final Store index = getIdx(indexName);
         if (index == null) {
-            return Collections.emptySet();
+            return Stream.empty();
         }
-        final Transaction txn = castTxn(tx);
-        final Set<Key> pks = new HashSet<>();
-        try (Cursor cursor = index.openCursor(txn)) {
-            if (start == null) {
-                if (stop == null) {
-                    // This is actually getting everything.
-                    while (cursor.getNext()) {
-                        pks.add(new Key(cursor.getValue()));
-                    }
-                } else {
-                    while (cursor.getNext() && cursor.getKey().compareTo(stop) < 0) {
-                        pks.add(new Key(cursor.getValue()));
-                    }
-                }
-            } else {
-                if (stop == null) {
-                    ByteIterable startKey = cursor.getSearchKeyRange(start);
-                    if (startKey != null) {
-                        pks.add(new Key(cursor.getValue()));
-                        while (cursor.getNext()) {
-                            pks.add(new Key(cursor.getValue()));
-                        }
-                    }
-                } else {
-                    if (start.equals(stop)) {
-                        // special case of exact match
-                        ByteIterable startKey = cursor.getSearchKey(start);
-                        if (startKey != null) {
-                            pks.add(new Key(cursor.getValue()));
-                            while (cursor.getNextDup()) {
-                                pks.add(new Key(cursor.getValue()));
-                            }
-                        }
-                    } else {
-                        ByteIterable startKey = cursor.getSearchKeyRange(start);
-                        if (startKey != null) {
-                            pks.add(new Key(cursor.getValue()));
-                            while (cursor.getNext() && cursor.getKey().compareTo(stop) < 0) {
-                                pks.add(new Key(cursor.getValue()));
-                            }
-                        }
-                    }
-                }
-            }
+        if (!indexesVisible(castTxn(tx))) {
+            return scanIndex(indexName, castTxn(tx), start, stop);
+        }
+        final Cursor cursor = index.openCursor(castTxn(tx));
+        final Predicate<Cursor> first;
+        final Predicate<Cursor> next;
+        if (start != null && start.equals(stop)) {
+            // special case of exact match
+            first = c -> c.getSearchKey(start) != null;
+            next = Cursor::getNextDup;
+        } else {
+            final Predicate<Cursor> beforeStop = c -> stop == null || c.getKey().compareTo(stop) < 0;
+            first = start == null ?
+                    c -> c.getNext() && beforeStop.test(c) :
+                    c -> c.getSearchKeyRange(start) != null && beforeStop.test(c);
+            next = c -> c.getNext() && beforeStop.test(c);
         }
-        return pks;
+        return CursorStream.of(cursor, first, next, c -> new Key(c.getValue()));
     }
 
     @Override
@@ -0,0 +1,150 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2018 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.rpki.validator3.storage.xodus;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jetbrains.exodus.env.EnvironmentStatistics;
+import lombok.extern.slf4j.Slf4j;
+import net.ripe.rpki.validator3.storage.StorageLoad;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Schedules the Xodus log garbage collection around the work of the validator.
+ *
+ * Log GC copies live data out of sparsely used log files, which competes for I/O with the large write
+ * bursts of repository downloads and tree validation. The collector is kept suspended while there is
+ * such work running (or it ended less than the quiet period ago) and catches up once the validator is
+ * idle, either because a GC was requested in the meantime or the log utilisation dropped below the
+ * threshold. GC is never deferred longer than the maximum deferral.
+ */
+@Component
+@Profile("!test")
+@ConditionalOnProperty(name = "rpki.validator.storage", havingValue = "xodus", matchIfMissing = true)
+@Slf4j
+public class XodusMaintenance {
+
+    private final Xodus xodus;
+    private final StorageLoad storageLoad;
+    private final Duration quietPeriod;
+    private final Duration maxDeferral;
+    private final int minUtilization;
+
+    private final Timer gcDuration;
+    private final Counter gcReclaimed;
+    private final Counter gcMoved;
+    private final Counter gcDeferred;
+
+    private long lastGcAt = System.currentTimeMillis();
+
+    @Autowired
+    public XodusMaintenance(Xodus xodus,
+                            StorageLoad storageLoad,
+                            MeterRegistry registry,
+                            @Value("${rpki.validator.storage.gc.quiet.period:PT1M}") Duration quietPeriod,
+                            @Value("${rpki.validator.storage.gc.max.deferral:PT30M}") Duration maxDeferral,
+                            @Value("${rpki.validator.storage.gc.min.utilization:50}") int minUtilization) {
+        this.xodus = xodus;
+        this.storageLoad = storageLoad;
+        this.quietPeriod = quietPeriod;
+        this.maxDeferral = maxDeferral;
+        this.minUtilization = minUtilization;
+
+        Gauge.builder("rpkivalidator.storage.log.utilization", xodus, x -> x.getStatistic(EnvironmentStatistics.Type.UTILIZATION_PERCENT))
+                .description("Percentage of the Xodus log that contains live data")
+                .register(registry);
+        Gauge.builder("rpkivalidator.storage.disk.usage", xodus, x -> x.getStatistic(EnvironmentStatistics.Type.DISK_USAGE))
+                .description("Size of the Xodus log on disk")
+                .baseUnit("bytes")
+                .register(registry);
+
+        this.gcDuration = Timer.builder("rpkivalidator.storage.gc.duration")
+                .description("Time spent in log garbage collection started by the maintenance schedule")
+                .register(registry);
+        this.gcReclaimed = Counter.builder("rpkivalidator.storage.gc.reclaimed")
+                .description("Disk space reclaimed by log garbage collection")
+                .baseUnit("bytes")
+                .register(registry);
+        this.gcMoved = Counter.builder("rpkivalidator.storage.gc.moved")
+                .description("Live data copied by log garbage collection")
+                .baseUnit("bytes")
+                .register(registry);
+        this.gcDeferred = Counter.builder("rpkivalidator.storage.gc.deferred")
+                .description("Number of times log garbage collection was postponed because the validator was busy")
+                .register(registry);
+
+        storageLoad.whenBusy(xodus::deferGc);
+        xodus.deferGc();
+    }
+
+    public void run() {
+        final long now = System.currentTimeMillis();
+        if (isBusy(now) && now - lastGcAt < maxDeferral.toMillis()) {
+            xodus.deferGc();
+            gcDeferred.increment();
+            return;
+        }
+
+        final boolean requested = xodus.resumeGc();
+        final long utilization = xodus.getStatistic(EnvironmentStatistics.Type.UTILIZATION_PERCENT);
+        if (requested || utilization < minUtilization) {
+            collect(utilization);
+        }
+        lastGcAt = now;
+    }
+
+    private boolean isBusy(long now) {
+        final long lastActivity = Math.max(xodus.getLastWriteAt(), storageLoad.getLastFinishedAt());
+        return storageLoad.isBusy() || now - lastActivity < quietPeriod.toMillis();
+    }
+
+    private void collect(long utilization) {
+        final long diskUsageBefore = xodus.getStatistic(EnvironmentStatistics.Type.DISK_USAGE);
+        final long movedBefore = xodus.getStatistic(EnvironmentStatistics.Type.BYTES_MOVED_BY_GC);
+
+        final long begin = System.currentTimeMillis();
+        gcDuration.record(xodus::gcAndWait);
+        final long duration = System.currentTimeMillis() - begin;
+
+        final long reclaimed = Math.max(0, diskUsageBefore - xodus.getStatistic(EnvironmentStatistics.Type.DISK_USAGE));
+        final long moved = Math.max(0, xodus.getStatistic(EnvironmentStatistics.Type.BYTES_MOVED_BY_GC) - movedBefore);
+        gcReclaimed.increment(reclaimed);
+        gcMoved.increment(moved);
+        log.info("Xodus GC at {}% utilisation moved {} bytes and reclaimed {} bytes in {}ms", utilization, moved, reclaimed, duration);
+    }
+}
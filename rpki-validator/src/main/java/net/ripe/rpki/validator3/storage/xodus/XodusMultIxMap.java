@@ -40,8 +40,9 @@ import net.ripe.rpki.validator3.storage.encoding.Coder;
 import org.apache.commons.lang3.tuple.Pair;
 
 import java.io.Serializable;
-import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class XodusMultIxMap<T extends Serializable> extends XodusIxBase<T> implements MultIxMap<T> {
 
@@ -57,18 +58,19 @@ public class XodusMultIxMap<T extends Serializable> extends XodusIxBase<T> imple
 
     @Override
     public List<T> get(Tx.Read tx, Key primaryKey) {
-        verifyKey(primaryKey);
-        final List<T> result = new ArrayList<>();
-        try (Cursor cursor = getMainDb().openCursor(castTxn(tx))) {
-            ByteIterable startKey = cursor.getSearchKey(primaryKey.toByteIterable());
-            if (startKey != null) {
-                result.add(getValue(primaryKey, Bytes.toBytes(cursor.getValue())));
-                while (cursor.getNextDup()) {
-                    result.add(getValue(primaryKey, Bytes.toBytes(cursor.getValue())));
-                }
-            }
+        try (Stream<T> values = stream(tx, primaryKey)) {
+            return values.collect(Collectors.toList());
         }
-        return result;
+    }
+
+    @Override
+    public Stream<T> stream(Tx.Read tx, Key primaryKey) {
+        verifyKey(primaryKey);
+        final ByteIterable pk = primaryKey.toByteIterable();
+        return CursorStream.of(getMainDb().openCursor(castTxn(tx)),
+                c -> c.getSearchKey(pk) != null,
+                Cursor::getNextDup,
+                c -> getValue(primaryKey, Bytes.toBytes(c.getValue())));
     }
 
     @Override
@@ -33,13 +33,16 @@ import lombok.extern.slf4j.Slf4j;
 
 import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Supplier;
 
 @Slf4j
 public class ForkJoin {
 
+    private static final int maximumManagedBlockersCount;
     private static final Semaphore maximumManagedBlockers;
+    private static final AtomicLong unmanagedBlockingCount = new AtomicLong();
 
     static {
         // The default maximumSpares used by the common fork-join pool
@@ -50,9 +53,26 @@ public class ForkJoin {
         // Furthermore, using a large number of additional threads is probably not optimal anyway.
         int max = Math.min(2 * ForkJoinPool.getCommonPoolParallelism(), maximumSpares / 4);
         log.info("maximum additional concurrent blocking threads for common fork-join pool is {}", max);
+        maximumManagedBlockersCount = max;
         maximumManagedBlockers = new Semaphore(max);
     }
 
+    public static int maximumManagedBlockers() {
+        return maximumManagedBlockersCount;
+    }
+
+    public static int activeManagedBlockers() {
+        return maximumManagedBlockersCount - maximumManagedBlockers.availablePermits();
+    }
+
+    /**
+     * @return the number of blocking calls that ran without a compensating thread because all managed
+     * blockers were in use.
+     */
+    public static long unmanagedBlockingCount() {
+        return unmanagedBlockingCount.get();
+    }
+
     /**
      * Indicates that supplier is potentially blocking so {@link ForkJoinPool} can spawn additional threads if needed.
      *
@@ -70,6 +90,7 @@ public class ForkJoin {
      */
     public static <T> T blocking(Supplier<T> supplier) {
         if (!maximumManagedBlockers.tryAcquire()) {
+            unmanagedBlockingCount.incrementAndGet();
             return supplier.get();
         }
 
@@ -33,10 +33,13 @@ import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.eclipse.jetty.client.api.Request;
 import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.client.api.Result;
 import org.eclipse.jetty.client.util.InputStreamResponseListener;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
@@ -55,6 +58,105 @@ public class HttpStreaming {
         return ForkJoin.blocking(() -> doReadStream(requestF, reader));
     }
 
+    /**
+     * Downloads the response body without holding on to a thread for the duration of the transfer:
+     * content is handed to the sink from Jetty's content callbacks as it arrives, so the number of
+     * concurrent transfers is limited by the connection pool of the client only.
+     * <p>
+     * The future completes with the result of {@link ContentSink#complete(long)}, or exceptionally
+     * with an {@link HttpFailureException}.
+     */
+    public static <T> CompletableFuture<T> download(final Request request, final ContentSink<T> sink) {
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        result.whenComplete((value, failure) -> {
+            if (result.isCancelled()) {
+                request.abort(failure);
+            }
+        });
+        request.timeout(1, TimeUnit.HOURS);
+        request.idleTimeout(1, TimeUnit.MINUTES);
+        request.send(new Response.Listener.Adapter() {
+            @Override
+            public void onHeaders(Response response) {
+                if (response.getStatus() == 304) {
+                    response.abort(new NotModifiedException(request.getURI().toString()));
+                } else if (response.getStatus() != 200) {
+                    response.abort(new HttpStatusException(response, request));
+                }
+            }
+
+            @Override
+            public void onContent(Response response, ByteBuffer content) {
+                try {
+                    sink.accept(content);
+                } catch (IOException | RuntimeException e) {
+                    response.abort(e);
+                }
+            }
+
+            @Override
+            public void onComplete(Result r) {
+                if (r.isFailed()) {
+                    sink.abort();
+                    final Throwable failure = r.getFailure();
+                    result.completeExceptionally(failure instanceof HttpFailureException
+                        ? failure
+                        : new HttpFailureException("failed reading response stream for " + request.getURI() + ": " + failure, failure));
+                    return;
+                }
+                try {
+                    result.complete(sink.complete(r.getResponse().getHeaders().getDateField("Last-Modified")));
+                } catch (IOException | RuntimeException e) {
+                    sink.abort();
+                    result.completeExceptionally(new HttpFailureException("failed processing response for " + request.getURI() + ": " + e, e));
+                }
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Waits for a download started with {@link #download(Request, ContentSink)}, unwrapping its failure.
+     */
+    public static <T> T await(CompletableFuture<T> download) {
+        return ForkJoin.blocking(() -> {
+            try {
+                return download.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                download.cancel(true);
+                throw new HttpFailureException("interrupted while waiting for download", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof HttpFailureException) {
+                    throw (HttpFailureException) e.getCause();
+                }
+                throw new HttpFailureException("download failed: " + e.getCause(), e.getCause());
+            }
+        });
+    }
+
+    /**
+     * Receives the content of a download. Called by a single thread at a time, but not
+     * necessarily always the same one.
+     */
+    public interface ContentSink<T> {
+        /**
+         * Consumes the content, which is only valid for the duration of the call.
+         */
+        void accept(ByteBuffer content) throws IOException;
+
+        /**
+         * Called after the last content was accepted.
+         */
+        T complete(long lastModified) throws IOException;
+
+        /**
+         * Called instead of {@link #complete(long)} when the download failed, to release resources.
+         */
+        default void abort() {
+        }
+    }
+
     private static <T> T doReadStream(Supplier<Request> requestF, BiFunction<InputStream, Long, T> reader) {
         InputStreamResponseListener listener = new InputStreamResponseListener();
 
@@ -0,0 +1,117 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2018 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.rpki.validator3.util;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Thread pools with named threads that export their saturation through Micrometer.
+ * <p>
+ * All pools report the same meters, tagged with the name of the pool: <code>executor.active</code>,
+ * <code>executor.queued</code>, <code>executor.pool.size</code> and <code>executor.pool.max</code> gauges,
+ * the <code>executor.idle</code> (time in the queue) and <code>executor</code> (time running) timers and
+ * the <code>executor.rejected</code> counter.
+ */
+public class InstrumentedExecutors {
+
+    public static ExecutorService newFixedThreadPool(String name, int threads, MeterRegistry registry) {
+        final Counter rejected = rejected(name, registry);
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<>(),
+            new ThreadFactoryBuilder().setNameFormat(name + "-%d").setDaemon(true).build(),
+            (r, e) -> {
+                rejected.increment();
+                throw new RejectedExecutionException("Task " + r + " rejected by " + name);
+            });
+        return ExecutorServiceMetrics.monitor(registry, executor, name, Tags.empty());
+    }
+
+    /**
+     * Thread pool for Jetty components, e.g. the {@link org.eclipse.jetty.client.HttpClient}. Jobs that Jetty
+     * hands to reserved threads don't pass through the queue and are not timed.
+     */
+    public static QueuedThreadPool newJettyThreadPool(String name, int maxThreads, MeterRegistry registry) {
+        final QueuedThreadPool pool = new InstrumentedQueuedThreadPool(name, maxThreads, registry);
+        pool.setName(name);
+        pool.setDaemon(true);
+        Gauge.builder("executor.active", pool, QueuedThreadPool::getBusyThreads).tag("name", name).register(registry);
+        Gauge.builder("executor.queued", pool, QueuedThreadPool::getQueueSize).tag("name", name).register(registry);
+        Gauge.builder("executor.pool.size", pool, QueuedThreadPool::getThreads).tag("name", name).register(registry);
+        Gauge.builder("executor.pool.max", pool, QueuedThreadPool::getMaxThreads).tag("name", name).register(registry);
+        return pool;
+    }
+
+    public static Counter rejected(String name, MeterRegistry registry) {
+        return Counter.builder("executor.rejected")
+            .description("The number of tasks that were not accepted for execution")
+            .tag("name", name)
+            .register(registry);
+    }
+
+    private static class InstrumentedQueuedThreadPool extends QueuedThreadPool {
+        private final Timer idle;
+        private final Timer execution;
+        private final Counter rejected;
+
+        InstrumentedQueuedThreadPool(String name, int maxThreads, MeterRegistry registry) {
+            super(maxThreads);
+            this.idle = Timer.builder("executor.idle").tag("name", name).register(registry);
+            this.execution = Timer.builder("executor").tag("name", name).register(registry);
+            this.rejected = rejected(name, registry);
+        }
+
+        @Override
+        public void execute(Runnable job) {
+            final long queuedAt = System.nanoTime();
+            try {
+                super.execute(() -> {
+                    idle.record(System.nanoTime() - queuedAt, TimeUnit.NANOSECONDS);
+                    execution.record(job);
+                });
+            } catch (RejectedExecutionException e) {
+                rejected.increment();
+                throw e;
+            }
+        }
+    }
+}
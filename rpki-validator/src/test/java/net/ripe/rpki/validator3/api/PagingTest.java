@@ -0,0 +1,64 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2018 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.rpki.validator3.api;
+
+import org.junit.Test;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PagingTest {
+
+    private final List<String> values = IntStream.range(0, 100)
+        .mapToObj(i -> String.format("%02d-%d", (i * 37) % 100 / 10, i))
+        .collect(Collectors.toList());
+
+    @Test
+    public void should_select_the_same_page_as_sorting_everything() {
+        final Comparator<String> byPrefix = Comparator.comparing(s -> s.substring(0, 2));
+        for (long startFrom : new long[]{0, 5, 42, 95, 120}) {
+            final Paging paging = Paging.of(startFrom, 10L);
+            assertThat(paging.apply(values.stream(), byPrefix).collect(Collectors.toList()))
+                .isEqualTo(paging.apply(values.stream().sorted(byPrefix)).collect(Collectors.toList()));
+        }
+    }
+
+    @Test
+    public void should_sort_everything_for_unbounded_pages() {
+        final Paging paging = Paging.of(0L, Long.MAX_VALUE);
+        assertThat(paging.apply(Stream.of("c", "a", "b"), Comparator.naturalOrder()).collect(Collectors.toList()))
+            .containsExactly("a", "b", "c");
+    }
+}
@@ -31,8 +31,12 @@ package net.ripe.rpki.validator3.api.bgp;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSortedSet;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import net.ripe.ipresource.Asn;
 import net.ripe.ipresource.IpRange;
+import net.ripe.rpki.validator3.api.Paging;
+import net.ripe.rpki.validator3.api.SearchTerm;
+import net.ripe.rpki.validator3.api.Sorting;
 import net.ripe.rpki.validator3.api.bgp.BgpPreviewService.BgpPreviewEntry;
 import net.ripe.rpki.validator3.api.ignorefilters.IgnoreFilter;
 import net.ripe.rpki.validator3.api.ignorefilters.IgnoreFilterService;
@@ -66,6 +70,8 @@ public class BgpPreviewServiceTest {
 
     private BgpPreviewService subject;
 
+    private SimpleMeterRegistry meterRegistry;
+
     @Rule
     public final TemporaryFolder tmp = new TemporaryFolder();
 
@@ -77,7 +83,7 @@ public class BgpPreviewServiceTest {
     @Test
     public void should_mark_non_matching_bgp_entry_as_unknown() {
         DateTime lastModified = DateTime.now();
-        subject.updateBgpRisDump(ImmutableList.of(BgpRisDump.of("", lastModified, Optional.of(ImmutableList.of(BgpPreviewEntry.of(AS_3333, IpRange.parse("10.0.0.0/8"), UNKNOWN))))));
+        subject.updateBgpRisDump(ImmutableList.of(BgpRisDump.of("", lastModified, Optional.of(PackedBgpRisEntries.of(ImmutableList.of(BgpRisEntry.of(AS_3333, IpRange.parse("10.0.0.0/8"), 10)))))));
         subject.updateValidatedRoaPrefixes(ImmutableList.of(roa(AS_3333, "127.0.0.0/8", 8)).stream());
 
         BgpPreviewService.BgpPreviewResult bgpPreviewResult = subject.find(null, null, null);
@@ -89,7 +95,7 @@ public class BgpPreviewServiceTest {
 
     @Test
     public void should_validate_matching_bgp_entry() {
-        subject.updateBgpRisDump(ImmutableList.of(BgpRisDump.of("", null, Optional.of(ImmutableList.of(BgpPreviewEntry.of(AS_3333, IpRange.parse("10.0.0.0/8"), UNKNOWN))))));
+        subject.updateBgpRisDump(ImmutableList.of(BgpRisDump.of("", null, Optional.of(PackedBgpRisEntries.of(ImmutableList.of(BgpRisEntry.of(AS_3333, IpRange.parse("10.0.0.0/8"), 10)))))));
         subject.updateValidatedRoaPrefixes(ImmutableList.of(roa(AS_3333, "0.0.0.0/4", 8)).stream());
 
         assertThat(subject.find(null, null, null).getData()).contains(
@@ -99,7 +105,7 @@ public class BgpPreviewServiceTest {
 
     @Test
     public void should_reject_too_specific_bgp_entry() {
-        subject.updateBgpRisDump(ImmutableList.of(BgpRisDump.of("", null, Optional.of(ImmutableList.of(BgpPreviewEntry.of(AS_3333, IpRange.parse("10.0.0.0/8"), UNKNOWN))))));
+        subject.updateBgpRisDump(ImmutableList.of(BgpRisDump.of("", null, Optional.of(PackedBgpRisEntries.of(ImmutableList.of(BgpRisEntry.of(AS_3333, IpRange.parse("10.0.0.0/8"), 10)))))));
         subject.updateValidatedRoaPrefixes(ImmutableList.of(roa(AS_3333, "0.0.0.0/4", null)).stream());
 
         assertThat(subject.find(null, null, null).getData()).contains(
@@ -109,7 +115,7 @@ public class BgpPreviewServiceTest {
 
     @Test
     public void should_reject_bgp_entry_for_different_asn() {
-        subject.updateBgpRisDump(ImmutableList.of(BgpRisDump.of("", null, Optional.of(ImmutableList.of(BgpPreviewEntry.of(AS_3333, IpRange.parse("10.0.0.0/8"), UNKNOWN))))));
+        subject.updateBgpRisDump(ImmutableList.of(BgpRisDump.of("", null, Optional.of(PackedBgpRisEntries.of(ImmutableList.of(BgpRisEntry.of(AS_3333, IpRange.parse("10.0.0.0/8"), 10)))))));
         subject.updateValidatedRoaPrefixes(ImmutableList.of(roa(Asn.parse("AS3"), "10.0.0.0/8", null)).stream());
 
         assertThat(subject.find(null, null, null).getData()).contains(
@@ -120,7 +126,7 @@ public class BgpPreviewServiceTest {
     @Test
     public void should_reject_bgp_entry_when_roa_exists_but_ignored_by_asn_based_filter() {
         subject = createBgpPreviewService(ImmutableList.of(ignoreFilter(AS_3333.longValue(), null)));
-        subject.updateBgpRisDump(ImmutableList.of(BgpRisDump.of("", null, Optional.of(ImmutableList.of(BgpPreviewEntry.of(AS_3333, IpRange.parse("10.0.0.0/8"), UNKNOWN))))));
+        subject.updateBgpRisDump(ImmutableList.of(BgpRisDump.of("", null, Optional.of(PackedBgpRisEntries.of(ImmutableList.of(BgpRisEntry.of(AS_3333, IpRange.parse("10.0.0.0/8"), 10)))))));
         subject.updateValidatedRoaPrefixes(ImmutableList.of(roa(AS_3333, "10.0.0.0/8", 8)).stream());
 
         assertThat(subject.find(null, null, null).getData()).contains(
@@ -131,7 +137,7 @@ public class BgpPreviewServiceTest {
     @Test
     public void should_reject_bgp_entry_when_roa_exists_but_ignored_by_prefix_based_filter() {
         subject = createBgpPreviewService(ImmutableList.of(ignoreFilter(null, "10.0.0.0/8")));
-        subject.updateBgpRisDump(ImmutableList.of(BgpRisDump.of("", null, Optional.of(ImmutableList.of(BgpPreviewEntry.of(AS_3333, IpRange.parse("10.0.0.0/8"), UNKNOWN))))));
+        subject.updateBgpRisDump(ImmutableList.of(BgpRisDump.of("", null, Optional.of(PackedBgpRisEntries.of(ImmutableList.of(BgpRisEntry.of(AS_3333, IpRange.parse("10.0.0.0/8"), 10)))))));
         subject.updateValidatedRoaPrefixes(ImmutableList.of(roa(AS_3333, "10.0.0.0/8", 8)).stream());
 
         assertThat(subject.find(null, null, null).getData()).contains(
@@ -142,7 +148,7 @@ public class BgpPreviewServiceTest {
     @Test
     public void should_reject_bgp_entry_when_roa_exists_but_ignored_by_filter_with_covering_prefix() {
         subject = createBgpPreviewService(ImmutableList.of(ignoreFilter(null, "0.0.0.0/4")));
-        subject.updateBgpRisDump(ImmutableList.of(BgpRisDump.of("", null, Optional.of(ImmutableList.of(BgpPreviewEntry.of(AS_3333, IpRange.parse("10.0.0.0/8"), UNKNOWN))))));
+        subject.updateBgpRisDump(ImmutableList.of(BgpRisDump.of("", null, Optional.of(PackedBgpRisEntries.of(ImmutableList.of(BgpRisEntry.of(AS_3333, IpRange.parse("10.0.0.0/8"), 10)))))));
         subject.updateValidatedRoaPrefixes(ImmutableList.of(roa(AS_3333, "10.0.0.0/8", 8)).stream());
 
         assertThat(subject.find(null, null, null).getData()).contains(
@@ -153,7 +159,7 @@ public class BgpPreviewServiceTest {
     @Test
     public void should_reject_bgp_entry_when_roa_exists_but_ignored_by_ans_and_prefix_based_filter() {
         subject = createBgpPreviewService(ImmutableList.of(ignoreFilter(AS_3333.longValue(), "10.0.0.0/8")));
-        subject.updateBgpRisDump(ImmutableList.of(BgpRisDump.of("", null, Optional.of(ImmutableList.of(BgpPreviewEntry.of(AS_3333, IpRange.parse("10.0.0.0/8"), UNKNOWN))))));
+        subject.updateBgpRisDump(ImmutableList.of(BgpRisDump.of("", null, Optional.of(PackedBgpRisEntries.of(ImmutableList.of(BgpRisEntry.of(AS_3333, IpRange.parse("10.0.0.0/8"), 10)))))));
         subject.updateValidatedRoaPrefixes(ImmutableList.of(roa(AS_3333, "10.0.0.0/8", 8)).stream());
 
         assertThat(subject.find(null, null, null).getData()).contains(
@@ -164,7 +170,7 @@ public class BgpPreviewServiceTest {
     @Test
     public void should_accept_bgp_entry_when_ignore_filter_is_not_exactly_matching_because_asn_differs() {
         subject = createBgpPreviewService(ImmutableList.of(ignoreFilter(AS_2222.longValue(), "10.0.0.0/8")));
-        subject.updateBgpRisDump(ImmutableList.of(BgpRisDump.of("", null, Optional.of(ImmutableList.of(BgpPreviewEntry.of(AS_3333, IpRange.parse("10.0.0.0/8"), UNKNOWN))))));
+        subject.updateBgpRisDump(ImmutableList.of(BgpRisDump.of("", null, Optional.of(PackedBgpRisEntries.of(ImmutableList.of(BgpRisEntry.of(AS_3333, IpRange.parse("10.0.0.0/8"), 10)))))));
         subject.updateValidatedRoaPrefixes(ImmutableList.of(roa(AS_3333, "10.0.0.0/8", 8)).stream());
 
         assertThat(subject.find(null, null, null).getData()).contains(
@@ -175,7 +181,7 @@ public class BgpPreviewServiceTest {
     @Test
     public void should_accept_bgp_entry_when_ignore_filter_is_not_exactly_matching_because_prefix_is_too_small() {
         subject = createBgpPreviewService(ImmutableList.of(ignoreFilter(AS_3333.longValue(), "10.10.0.0/16")));
-        subject.updateBgpRisDump(ImmutableList.of(BgpRisDump.of("", null, Optional.of(ImmutableList.of(BgpPreviewEntry.of(AS_3333, IpRange.parse("10.0.0.0/8"), UNKNOWN))))));
+        subject.updateBgpRisDump(ImmutableList.of(BgpRisDump.of("", null, Optional.of(PackedBgpRisEntries.of(ImmutableList.of(BgpRisEntry.of(AS_3333, IpRange.parse("10.0.0.0/8"), 10)))))));
         subject.updateValidatedRoaPrefixes(ImmutableList.of(roa(AS_3333, "10.0.0.0/8", 8)).stream());
 
         assertThat(subject.find(null, null, null).getData()).contains(
@@ -183,6 +189,88 @@ public class BgpPreviewServiceTest {
         );
     }
 
+    @Test
+    public void should_page_through_entries_in_each_sort_order() {
+        BgpPreviewEntry first = BgpPreviewEntry.of(AS_3333, IpRange.parse("10.0.0.0/8"), UNKNOWN);
+        BgpPreviewEntry second = BgpPreviewEntry.of(AS_2222, IpRange.parse("10.0.0.0/16"), UNKNOWN);
+        BgpPreviewEntry third = BgpPreviewEntry.of(AS_3333, IpRange.parse("192.168.0.0/16"), UNKNOWN);
+        BgpPreviewEntry fourth = BgpPreviewEntry.of(AS_2222, IpRange.parse("2001:db8::/32"), UNKNOWN);
+        subject.updateBgpRisDump(ImmutableList.of(
+            BgpRisDump.of("ipv4", null, Optional.of(risEntries(third, second, first))),
+            BgpRisDump.of("ipv6", null, Optional.of(risEntries(fourth)))
+        ));
+        subject.updateValidatedRoaPrefixes(ImmutableList.of(roa(AS_3333, "10.0.0.0/8", 8)).stream());
+        first = first.ofValidity(BgpPreviewService.Validity.VALID);
+        second = second.ofValidity(BgpPreviewService.Validity.INVALID_ASN);
+
+        BgpPreviewService.BgpPreviewResult page = subject.find(null, Sorting.of(Sorting.By.PREFIX, Sorting.Direction.ASC), Paging.of(1L, 2L));
+        assertThat(page.getTotalCount()).isEqualTo(4);
+        assertThat(page.getData()).containsExactly(second, third);
+
+        assertThat(subject.find(null, Sorting.of(Sorting.By.PREFIX, Sorting.Direction.DESC), null).getData())
+            .containsExactly(fourth, third, second, first);
+        assertThat(subject.find(null, Sorting.of(Sorting.By.ASN, Sorting.Direction.ASC), null).getData())
+            .containsExactly(second, fourth, first, third);
+        assertThat(subject.find(null, Sorting.of(Sorting.By.VALIDITY, Sorting.Direction.ASC), Paging.of(3L, 20L)).getData())
+            .containsExactly(second);
+    }
+
+    @Test
+    public void should_search_entries_by_asn_prefix_and_validity() {
+        BgpPreviewEntry covering = BgpPreviewEntry.of(AS_3333, IpRange.parse("10.0.0.0/8"), UNKNOWN);
+        BgpPreviewEntry before = BgpPreviewEntry.of(AS_3333, IpRange.parse("10.0.0.0/16"), UNKNOWN);
+        BgpPreviewEntry inside = BgpPreviewEntry.of(AS_2222, IpRange.parse("10.1.2.0/24"), UNKNOWN);
+        BgpPreviewEntry after = BgpPreviewEntry.of(AS_2222, IpRange.parse("10.2.0.0/16"), UNKNOWN);
+        subject.updateBgpRisDump(ImmutableList.of(BgpRisDump.of("", null, Optional.of(risEntries(after, inside, before, covering)))));
+        subject.updateValidatedRoaPrefixes(ImmutableList.of(roa(AS_2222, "10.1.0.0/16", 24)).stream());
+        inside = inside.ofValidity(BgpPreviewService.Validity.VALID);
+
+        Sorting byPrefix = Sorting.of(Sorting.By.PREFIX, Sorting.Direction.ASC);
+        assertThat(subject.find(new SearchTerm("10.1.0.0/16"), byPrefix, null).getData()).containsExactly(covering, inside);
+        assertThat(subject.find(new SearchTerm("10.1.2.3"), byPrefix, null).getData()).containsExactly(covering, inside);
+        assertThat(subject.find(new SearchTerm("AS2222"), Sorting.of(Sorting.By.VALIDITY, Sorting.Direction.DESC), null).getData()).containsExactly(inside, after);
+        assertThat(subject.find(new SearchTerm("unknown"), byPrefix, null).getData()).containsExactly(covering, before, after);
+        assertThat(subject.find(new SearchTerm("valid"), byPrefix, null).getTotalCount()).isEqualTo(1);
+        assertThat(subject.find(new SearchTerm("nonsense"), byPrefix, null).getTotalCount()).isEqualTo(0);
+
+        assertThat(subject.findAffected(IpRange.parse("10.0.0.0/15"), null)).containsExactly(before, inside);
+    }
+
+    @Test
+    public void should_only_revalidate_entries_contained_in_changed_roa_prefixes() {
+        BgpPreviewEntry covering = BgpPreviewEntry.of(AS_3333, IpRange.parse("10.0.0.0/8"), UNKNOWN);
+        BgpPreviewEntry contained = BgpPreviewEntry.of(AS_3333, IpRange.parse("10.1.0.0/16"), UNKNOWN);
+        BgpPreviewEntry other = BgpPreviewEntry.of(AS_2222, IpRange.parse("192.168.0.0/16"), UNKNOWN);
+        subject.updateBgpRisDump(ImmutableList.of(BgpRisDump.of("", null, Optional.of(risEntries(covering, contained, other)))));
+
+        subject.updateValidatedRoaPrefixes(Stream.of(roa(AS_3333, "10.1.0.0/16", null)));
+        assertThat(revalidatedEntries()).isEqualTo(1.0);
+        assertThat(subject.find(null, null, null).getData()).containsExactly(
+            covering, contained.ofValidity(BgpPreviewService.Validity.VALID), other
+        );
+
+        subject.updateValidatedRoaPrefixes(Stream.of(roa(AS_3333, "10.1.0.0/16", null), roa(AS_3333, "192.168.0.0/16", null)));
+        assertThat(revalidatedEntries()).isEqualTo(2.0);
+        assertThat(subject.find(null, null, null).getData()).containsExactly(
+            covering, contained.ofValidity(BgpPreviewService.Validity.VALID), other.ofValidity(BgpPreviewService.Validity.INVALID_ASN)
+        );
+
+        subject.updateValidatedRoaPrefixes(Stream.of(roa(AS_3333, "192.168.0.0/16", null)));
+        assertThat(revalidatedEntries()).isEqualTo(3.0);
+        assertThat(subject.find(new SearchTerm("unknown"), null, null).getData()).containsExactly(covering, contained);
+        assertThat(subject.find(new SearchTerm("invalid"), null, null).getData()).containsExactly(other.ofValidity(BgpPreviewService.Validity.INVALID_ASN));
+    }
+
+    private static PackedBgpRisEntries risEntries(BgpPreviewEntry... entries) {
+        return PackedBgpRisEntries.of(Stream.of(entries)
+            .map(entry -> BgpRisEntry.of(entry.getOrigin(), entry.getPrefix(), 10))
+            .collect(ImmutableList.toImmutableList()));
+    }
+
+    private double revalidatedEntries() {
+        return meterRegistry.summary("rpkivalidator.bgp.preview.revalidated.entries").totalAmount();
+    }
+
     private ValidatedRoaPrefix roa(Asn asn, String prefix, Integer maximumLength) {
         return ValidatedRoaPrefix.of(null, asn.longValue(), IpRange.parse(prefix), maximumLength,
                 Instant.now().toEpochMilli(),Instant.now().plus(365, DAYS).toEpochMilli(), BigInteger.ONE,
@@ -205,7 +293,7 @@ public class BgpPreviewServiceTest {
             public Stream<RoaPrefixAssertionEntity> all() {
                 return Stream.empty();
             }
-        });
+        }, meterRegistry = new SimpleMeterRegistry());
     }
 
     private SlurmStore createSlurmStore()  {
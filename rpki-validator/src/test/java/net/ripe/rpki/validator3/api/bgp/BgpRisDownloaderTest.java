@@ -36,7 +36,6 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.test.context.junit4.SpringRunner;
 
 import java.util.Optional;
-import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.*;
 
@@ -49,18 +48,18 @@ public class BgpRisDownloaderTest {
 
     @Test
     public void download_ipv4() {
-        BgpRisDump<BgpRisEntry> dump = bgpRisDownloader.fetch(
+        BgpRisDump dump = bgpRisDownloader.fetch(
                 BgpRisDump.of("http://www.ris.ripe.net/dumps/riswhoisdump.IPv4.gz", null, Optional.empty()),
-                Stream::of
+                BgpRisDumpParser.ALL
         );
         assertThat(dump.getEntries()).hasValueSatisfying(entries -> assertThat(entries.size()).isGreaterThan(800_000));
     }
 
     @Test
     public void download_ipv6() {
-        BgpRisDump<BgpRisEntry> dump = bgpRisDownloader.fetch(
+        BgpRisDump dump = bgpRisDownloader.fetch(
                 BgpRisDump.of("http://www.ris.ripe.net/dumps/riswhoisdump.IPv6.gz", null, Optional.empty()),
-                Stream::of
+                BgpRisDumpParser.ALL
         );
         assertThat(dump.getEntries()).hasValueSatisfying(entries -> assertThat(entries.size()).isGreaterThan(60_000));
     }
@@ -34,15 +34,20 @@ import net.ripe.ipresource.IpRange;
 import org.junit.Test;
 
 import java.io.ByteArrayInputStream;
-import java.io.UnsupportedEncodingException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.Assert.assertEquals;
 
 public class BgpRisParsingTest {
     @Test
-    public void parse1() throws UnsupportedEncodingException {
+    public void parse1() throws IOException {
         final String line = "4200003018	47.88.45.0/24	3";
         List<BgpRisEntry> parsed = parse(line);
         assertEquals(1, parsed.size());
@@ -52,7 +57,7 @@ public class BgpRisParsingTest {
     }
 
     @Test
-    public void parse2() throws UnsupportedEncodingException {
+    public void parse2() throws IOException {
         final String content =
                 "blabla	65.88.145.0/24	344\n" +
                 "4200003018	47.88.45.0/24	3";
@@ -63,7 +68,78 @@ public class BgpRisParsingTest {
         assertEquals(3, parsed.get(0).visibility);
     }
 
-    private List<BgpRisEntry> parse(String content) throws UnsupportedEncodingException {
-        return BgpRisDownloader.parse(new ByteArrayInputStream(content.getBytes("UTF-8"))).collect(Collectors.toList());
+    @Test
+    public void parse_ipv6() throws IOException {
+        final String content =
+                "3333\t2001:db8::/32\t10\n" +
+                "3333\t2001:db8:0:1:2:3:4:0/112\t10\n" +
+                "3333\t::/0\t10\n" +
+                "3333\t2001:DB8:ffff::/48\t10\n";
+        assertThat(parse(content)).extracting(BgpRisEntry::getPrefix).containsExactly(
+                IpRange.parse("::/0"),
+                IpRange.parse("2001:db8::/32"),
+                IpRange.parse("2001:db8:0:1:2:3:4:0/112"),
+                IpRange.parse("2001:db8:ffff::/48"));
+    }
+
+    @Test
+    public void parse_skips_lines_that_are_not_announcements() throws IOException {
+        final String content =
+                "% This file contains origin ASes as seen in the RIS full-table BGP dumps.\n" +
+                "\n" +
+                "3333\t10.0.0.1/8\t10\n" +
+                "3333\t10.0.0.0/33\t10\n" +
+                "3333\t256.0.0.0/8\t10\n" +
+                "4294967296\t10.0.0.0/8\t10\n" +
+                "3333\t2001:db8::1::/32\t10\n" +
+                "3333\t2001:db8/32\t10\n" +
+                "3333\t10.0.0.0/8\n" +
+                "3333\t10.0.0.0/8\t10 extra\n" +
+                "  3333  10.0.0.0/8  10  \r\n" +
+                "3333\t11.0.0.0/8\t10";
+        assertThat(parse(content)).containsExactly(
+                BgpRisEntry.of(new Asn(3333), IpRange.parse("10.0.0.0/8"), 10),
+                BgpRisEntry.of(new Asn(3333), IpRange.parse("11.0.0.0/8"), 10));
+    }
+
+    @Test
+    public void parse_applies_filter() throws IOException {
+        final String content =
+                "3333\t10.0.0.0/8\t9\n" +
+                "3333\t11.0.0.0/8\t10\n" +
+                "3333\t0.0.0.0/0\t10\n";
+        final PackedBgpRisEntries entries = BgpRisDumpParser.parse(stream(content),
+                (origin, prefixLength, visibility) -> visibility >= 10 && prefixLength > 0);
+        assertThat(unpack(entries)).containsExactly(BgpRisEntry.of(new Asn(3333), IpRange.parse("11.0.0.0/8"), 10));
+    }
+
+    @Test
+    public void parse_lines_across_buffers_and_chunks() throws IOException {
+        final String content = IntStream.range(0, 200_000)
+                .mapToObj(i -> (i % 65536) + "\t10." + (i >> 16) + "." + ((i >> 8) & 0xFF) + "." + (i & 0xFF) + "/32\t" + (i % 100) + "\n")
+                .collect(Collectors.joining());
+        final List<BgpRisEntry> expected = unpack(BgpRisDumpParser.parse(stream(content), BgpRisDumpParser.ALL));
+        assertThat(expected).hasSize(200_000);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            assertThat(unpack(BgpRisDumpParser.parse(stream(content), BgpRisDumpParser.ALL, executor, 4))).isEqualTo(expected);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private List<BgpRisEntry> parse(String content) throws IOException {
+        return unpack(BgpRisDumpParser.parse(stream(content), BgpRisDumpParser.ALL));
+    }
+
+    private static ByteArrayInputStream stream(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static List<BgpRisEntry> unpack(PackedBgpRisEntries entries) {
+        return IntStream.range(0, entries.size())
+                .mapToObj(row -> BgpRisEntry.of(new Asn(entries.getOrigin(row)), entries.getPrefix(row), entries.getVisibility(row)))
+                .collect(Collectors.toList());
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,99 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2018 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.rpki.validator3.api.bgp;
+
+import com.google.common.collect.ImmutableList;
+import com.pholser.junit.quickcheck.Property;
+import com.pholser.junit.quickcheck.runner.JUnitQuickcheck;
+import net.ripe.ipresource.Asn;
+import net.ripe.ipresource.IpRange;
+import net.ripe.ipresource.Ipv4Address;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(JUnitQuickcheck.class)
+public class PackedBgpRisEntriesTest {
+
+    @Property(trials = 100)
+    public void packIpv4SortedByPrefixAndOrigin(List<Integer> addresses) {
+        final List<BgpRisEntry> entries = addresses.stream()
+            .map(address -> BgpRisEntry.of(
+                new Asn(Integer.toUnsignedLong(address * 31)),
+                prefix(address, Math.floorMod(address, 33)),
+                Math.abs(address % 100)))
+            .collect(Collectors.toList());
+
+        final List<BgpRisEntry> expected = entries.stream()
+            .sorted(Comparator.comparing(BgpRisEntry::getPrefix).thenComparing(BgpRisEntry::getOrigin))
+            .collect(Collectors.toList());
+        assertEquals(expected, unpack(PackedBgpRisEntries.of(entries)));
+    }
+
+    @Test
+    public void packIpv6AfterIpv4() {
+        final BgpRisEntry ipv4 = BgpRisEntry.of(new Asn(4200003018L), IpRange.parse("255.255.255.0/24"), 3);
+        final BgpRisEntry ipv6 = BgpRisEntry.of(new Asn(3333), IpRange.parse("2001:db8::/32"), 7);
+        final BgpRisEntry highIpv6 = BgpRisEntry.of(new Asn(3333), IpRange.parse("ffff:ffff:ffff:ffff:8000::/65"), 7);
+
+        final PackedBgpRisEntries packed = PackedBgpRisEntries.of(ImmutableList.of(highIpv6, ipv6, ipv4));
+
+        assertEquals(ImmutableList.of(ipv4, ipv6, highIpv6), unpack(packed));
+        assertTrue(packed.isIpv4(0));
+        assertTrue(packed.comparePrefix(2, packed, 1) > 0);
+    }
+
+    @Test
+    public void clampVisibility() {
+        final PackedBgpRisEntries packed = PackedBgpRisEntries.of(ImmutableList.of(
+            BgpRisEntry.of(new Asn(3333), IpRange.parse("10.0.0.0/8"), 100_000)
+        ));
+
+        assertEquals(Short.MAX_VALUE, packed.getVisibility(0));
+    }
+
+    private static IpRange prefix(int address, int prefixLength) {
+        final long mask = (0xFFFFFFFFL << (32 - prefixLength)) & 0xFFFFFFFFL;
+        return IpRange.prefix(new Ipv4Address(Integer.toUnsignedLong(address) & mask), prefixLength);
+    }
+
+    private static List<BgpRisEntry> unpack(PackedBgpRisEntries packed) {
+        return IntStream.range(0, packed.size())
+            .mapToObj(row -> BgpRisEntry.of(new Asn(packed.getOrigin(row)), packed.getPrefix(row), packed.getVisibility(row)))
+            .collect(Collectors.toList());
+    }
+}
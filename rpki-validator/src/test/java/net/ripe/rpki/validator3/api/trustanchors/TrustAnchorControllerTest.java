@@ -118,6 +118,32 @@ public class TrustAnchorControllerTest {
             .andExpect(jsonPath("$.data.name").value(TEST_CA_NAME));
     }
 
+    @Test
+    public void should_accept_manual_validation_of_trust_anchor() throws Exception {
+        ResultActions result = mvc.perform(
+            post("/api/trust-anchors")
+                .accept(ValidatorApi.API_MIME_TYPE)
+                .contentType(ValidatorApi.API_MIME_TYPE)
+                .content(objectMapper.writeValueAsString(ApiCommand.of(AddTrustAnchor.builder()
+                    .type(TrustAnchor.TYPE)
+                    .name(TEST_CA_NAME)
+                    .locations(Arrays.asList("rsync://example.com/rpki", "https://example.com/rpki"))
+                    .subjectPublicKeyInfo("jdfakljkldf;adsfjkdsfkl;nasdjfnsldajfklsd;ajfk;ljdsakjfkla;sdhfkjdshfkljadsl;kjfdklfjdaksl;jdfkl;jafkldjsfkl;adjsfkl;adjsf;lkjkl;dj;adskjfdljadjbkfbkjblafkjdfbasfjlka")
+                    .build()
+                )))
+        ).andExpect(status().isCreated());
+
+        Link selfRel = addTrustAnchorResponse(result).getData().getLinks().getLink("self");
+        mvc.perform(post(selfRel.getHref() + "/validate"))
+            .andExpect(status().isAccepted());
+    }
+
+    @Test
+    public void should_not_validate_unknown_trust_anchor() throws Exception {
+        mvc.perform(post("/api/trust-anchors/" + Long.MAX_VALUE + "/validate"))
+            .andExpect(status().isNotFound());
+    }
+
     @Test
     public void should_fail_on_invalid_request() throws Exception {
         ResultActions result = mvc.perform(
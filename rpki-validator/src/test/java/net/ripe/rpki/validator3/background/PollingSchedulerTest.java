@@ -0,0 +1,170 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2018 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.rpki.validator3.background;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.stream.Collectors.toList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PollingSchedulerTest {
+
+    private static final long TICK = 1_000;
+    private static final Duration INTERVAL = Duration.ofMinutes(2);
+    private static final int REPOSITORIES = 50_000;
+
+    private final AtomicLong now = new AtomicLong(1_000_000);
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final PollingScheduler<Integer> scheduler =
+        new PollingScheduler<>("test", TICK, 512, 0.1, now::get, Runnable::run, registry);
+
+    @Test(timeout = 10_000)
+    public void should_poll_many_repositories_spread_over_the_jitter_window() {
+        final Map<Integer, List<Long>> runs = new HashMap<>();
+        final Map<Long, AtomicInteger> runsPerTick = new HashMap<>();
+        for (int i = 0; i < REPOSITORIES; i++) {
+            final int key = i;
+            runs.put(key, new ArrayList<>());
+            scheduler.schedule(key, INTERVAL, () -> {
+                runs.get(key).add(now.get());
+                runsPerTick.computeIfAbsent(now.get(), t -> new AtomicInteger()).incrementAndGet();
+            });
+        }
+
+        // Three intervals of one second ticks.
+        scheduler.advanceTo(now.get());
+        for (int tick = 0; tick < 3 * INTERVAL.getSeconds(); tick++) {
+            scheduler.advanceTo(now.addAndGet(TICK));
+        }
+
+        final long window = INTERVAL.toMillis() / 10;
+        final long start = 1_000_000;
+        for (List<Long> times : runs.values()) {
+            assertThat(times).hasSizeBetween(3, 4);
+            assertThat(times.get(0) - start).isBetween(0L, window + TICK);
+            for (int i = 1; i < times.size(); i++) {
+                assertThat(times.get(i) - times.get(i - 1))
+                    .isBetween(INTERVAL.toMillis() - window / 2, INTERVAL.toMillis() + window / 2 + TICK);
+            }
+        }
+        // Without jitter all repositories would run in the same tick.
+        final List<Integer> perTick = runsPerTick.values().stream().map(AtomicInteger::get).collect(toList());
+        assertThat(perTick.stream().mapToInt(Integer::intValue).max().getAsInt())
+            .isLessThan(2 * REPOSITORIES / (int) (window / TICK));
+        assertThat(registry.get("rpkivalidator.polling.runs").counter().count())
+            .isEqualTo(runs.values().stream().mapToInt(List::size).sum());
+    }
+
+    @Test
+    public void should_not_schedule_a_key_twice() {
+        final AtomicInteger count = new AtomicInteger();
+        assertTrue(scheduler.schedule(1, INTERVAL, count::incrementAndGet));
+        assertFalse(scheduler.schedule(1, INTERVAL, count::incrementAndGet));
+
+        advance(INTERVAL.multipliedBy(2));
+
+        assertThat(count.get()).isBetween(2, 3);
+    }
+
+    @Test
+    public void should_stop_polling_cancelled_key() {
+        final AtomicInteger count = new AtomicInteger();
+        scheduler.schedule(1, INTERVAL, count::incrementAndGet);
+        advance(INTERVAL.dividedBy(2));
+        assertThat(count.get()).isEqualTo(1);
+
+        assertTrue(scheduler.cancel(1));
+        assertFalse(scheduler.isScheduled(1));
+        advance(INTERVAL.multipliedBy(2));
+
+        assertThat(count.get()).isEqualTo(1);
+        assertFalse(scheduler.cancel(1));
+    }
+
+    @Test
+    public void should_schedule_the_next_run_of_an_async_action_after_it_completes() {
+        final List<CompletableFuture<Void>> started = new ArrayList<>();
+        scheduler.scheduleAsync(1, INTERVAL, workers -> {
+            final CompletableFuture<Void> run = new CompletableFuture<>();
+            started.add(run);
+            return run;
+        });
+
+        advance(INTERVAL.multipliedBy(3));
+        assertThat(started).hasSize(1);
+
+        started.get(0).complete(null);
+        advance(INTERVAL.multipliedBy(2));
+        assertThat(started).hasSize(2);
+    }
+
+    @Test
+    public void should_run_with_real_clock_and_workers() throws InterruptedException {
+        try (PollingScheduler<Integer> realScheduler = new PollingScheduler<>("real", Duration.ofMillis(10), 2, 0.5, registry)) {
+            final CountDownLatch polled = new CountDownLatch(3);
+            realScheduler.schedule(1, Duration.ofMillis(50), polled::countDown);
+
+            assertTrue(polled.await(2, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void should_stop_polling_when_closed() throws InterruptedException {
+        final AtomicInteger count = new AtomicInteger();
+        final PollingScheduler<Integer> realScheduler = new PollingScheduler<>("closed", Duration.ofMillis(10), 2, 0.5, registry);
+        realScheduler.schedule(1, Duration.ofMillis(20), count::incrementAndGet);
+
+        realScheduler.close();
+        assertFalse(realScheduler.isScheduled(1));
+        final int runs = count.get();
+        Thread.sleep(200);
+        assertThat(count.get()).isEqualTo(runs);
+    }
+
+    private void advance(Duration duration) {
+        for (long t = 0; t < duration.toMillis(); t += TICK) {
+            scheduler.advanceTo(now.addAndGet(TICK));
+        }
+    }
+}
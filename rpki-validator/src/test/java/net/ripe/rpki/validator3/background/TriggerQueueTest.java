@@ -0,0 +1,239 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2018 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.rpki.validator3.background;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.SneakyThrows;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static net.ripe.rpki.validator3.background.TriggerQueue.Priority.EXPIRING;
+import static net.ripe.rpki.validator3.background.TriggerQueue.Priority.MANUAL;
+import static net.ripe.rpki.validator3.background.TriggerQueue.Priority.PENDING;
+import static net.ripe.rpki.validator3.background.TriggerQueue.Priority.ROUTINE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TriggerQueueTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private final AtomicInteger counter = new AtomicInteger(0);
+
+    private final List<TriggerQueue<String>> queues = new ArrayList<>();
+
+    private final Runnable slowIncrement = () -> {
+        waitATinyBit();
+        counter.incrementAndGet();
+    };
+
+    @After
+    public void closeQueues() {
+        queues.forEach(TriggerQueue::close);
+    }
+
+    @Test
+    public void testTriggerDoesntTriggerTooOften() throws InterruptedException {
+        counter.set(0);
+        final TriggerQueue<String> throttled = queue(10_000, 1);
+        throttled.trigger("x", ROUTINE, slowIncrement);
+        assertEquals(0, counter.get());
+        throttled.trigger("x", ROUTINE, slowIncrement);
+        assertEquals(0, counter.get());
+
+        waitALittleToAllowExecutorToProcessRunnables();
+        assertEquals(1, counter.get());
+
+        for (int i = 0; i < 10; i++) {
+            throttled.trigger("x", ROUTINE, counter::incrementAndGet);
+        }
+        Thread.sleep(1100);
+        assertEquals(1, counter.get());
+    }
+
+    @Test
+    public void testTriggerDoesTriggerAfterInterval() throws InterruptedException {
+        counter.set(0);
+        final TriggerQueue<String> throttled = queue(1000, 1);
+
+        throttled.trigger("x", ROUTINE, slowIncrement);
+        waitALittleToAllowExecutorToProcessRunnables();
+        assertEquals(1, counter.get());
+
+        Thread.sleep(2000);
+        throttled.trigger("x", ROUTINE, slowIncrement);
+        waitALittleToAllowExecutorToProcessRunnables();
+        assertEquals(2, counter.get());
+    }
+
+    @Test
+    public void trigger_during_execution_should_run_action_immediately_after_finishing_current_execution() {
+        final TriggerQueue<String> throttled = queue(200, 1);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch triggeredDuringExecution = new CountDownLatch(1);
+        CountDownLatch completed = new CountDownLatch(1);
+
+        throttled.trigger("x", ROUTINE, () -> {
+            started.countDown();
+            await(triggeredDuringExecution);
+        });
+
+        await(started);
+
+        throttled.trigger("x", ROUTINE, () -> completed.countDown());
+        triggeredDuringExecution.countDown();
+
+        assertTrue(await(completed));
+    }
+
+    @Test
+    public void trigger_during_wait_replaces_runnable() {
+        final TriggerQueue<String> throttled = queue(200, 1);
+        CountDownLatch firstTerminated = new CountDownLatch(1);
+        CountDownLatch replacedTaskRan = new CountDownLatch(1);
+        CountDownLatch replacementTaskRan = new CountDownLatch(1);
+
+        throttled.trigger("x", ROUTINE, () -> {
+            firstTerminated.countDown();
+        });
+
+        await(firstTerminated);
+        waitATinyBit();
+
+        throttled.trigger("x", ROUTINE, replacedTaskRan::countDown);
+        throttled.trigger("x", ROUTINE, replacementTaskRan::countDown);
+
+        assertTrue("replacement task ran", await(replacementTaskRan));
+        assertFalse("replaced task ran", await(replacedTaskRan));
+    }
+
+    @Test
+    public void merges_triggers_for_the_same_key_keeping_the_most_urgent_priority() {
+        final TriggerQueue<String> queue = queue(200, 1);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch completed = new CountDownLatch(1);
+
+        queue.trigger("x", ROUTINE, () -> {
+            started.countDown();
+            await(release);
+        });
+        await(started);
+
+        queue.trigger("y", ROUTINE, counter::incrementAndGet);
+        queue.trigger("y", EXPIRING, counter::incrementAndGet);
+        queue.trigger("y", ROUTINE, completed::countDown);
+        assertEquals(1, queue.queued());
+        release.countDown();
+
+        assertTrue(await(completed));
+        assertEquals(0, counter.get());
+        assertEquals(2.0, registry.get("rpkivalidator.trigger.merged").counter().count(), 0.0);
+        assertEquals(1, registry.get("rpkivalidator.trigger.latency").tag("priority", "expiring").timer().count());
+    }
+
+    @Test
+    public void runs_most_urgent_action_first() {
+        final TriggerQueue<String> queue = queue(200, 1);
+        final List<String> order = new CopyOnWriteArrayList<>();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch completed = new CountDownLatch(4);
+
+        queue.trigger("busy", ROUTINE, () -> {
+            started.countDown();
+            await(release);
+        });
+        await(started);
+
+        queue.trigger("routine", ROUTINE, () -> { order.add("routine"); completed.countDown(); });
+        queue.trigger("expiring", EXPIRING, () -> { order.add("expiring"); completed.countDown(); });
+        queue.trigger("pending", PENDING, () -> { order.add("pending"); completed.countDown(); });
+        queue.trigger("manual", MANUAL, () -> { order.add("manual"); completed.countDown(); });
+        release.countDown();
+
+        assertTrue(await(completed));
+        assertEquals(Arrays.asList("manual", "pending", "expiring", "routine"), order);
+    }
+
+    @Test
+    public void manual_trigger_skips_the_minimum_interval() {
+        final TriggerQueue<String> queue = queue(10_000, 1);
+        queue.trigger("x", ROUTINE, slowIncrement);
+        waitALittleToAllowExecutorToProcessRunnables();
+
+        CountDownLatch completed = new CountDownLatch(1);
+        queue.trigger("x", MANUAL, completed::countDown);
+        assertTrue(await(completed));
+    }
+
+    @Test
+    public void should_not_run_queued_actions_after_close() {
+        final TriggerQueue<String> queue = queue(10_000, 1);
+        queue.trigger("x", ROUTINE, slowIncrement);
+        waitALittleToAllowExecutorToProcessRunnables();
+        queue.trigger("x", ROUTINE, counter::incrementAndGet);
+
+        queue.close();
+        assertEquals(0, queue.queued());
+        waitALittleToAllowExecutorToProcessRunnables();
+        assertEquals(1, counter.get());
+    }
+
+    private TriggerQueue<String> queue(long minIntervalMs, int workers) {
+        final TriggerQueue<String> queue = new TriggerQueue<>("test", minIntervalMs, workers, registry);
+        queues.add(queue);
+        return queue;
+    }
+
+    @SneakyThrows
+    private void waitALittleToAllowExecutorToProcessRunnables() {
+        Thread.sleep(100);
+    }
+
+    @SneakyThrows
+    private void waitATinyBit() {
+        Thread.sleep(30);
+    }
+
+    @SneakyThrows
+    private boolean await(CountDownLatch latch) {
+        return latch.await(500, TimeUnit.MILLISECONDS);
+    }
+}
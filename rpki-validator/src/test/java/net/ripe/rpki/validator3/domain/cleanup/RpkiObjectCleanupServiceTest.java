@@ -98,7 +98,8 @@ public class RpkiObjectCleanupServiceTest extends GenericStorageTest {
         // Orphan is still new, so nothing to delete
         assertThat(subject.cleanupRpkiObjects()).isEqualTo(0);
 
-        wtx0(tx -> rpkiObjects.markReachable(tx, orphan.key(), InstantWithoutNanos.now().minus(Duration.ofDays(10))));
+        orphan.setCreatedAt(InstantWithoutNanos.now().minus(Duration.ofDays(10)));
+        wtx0(tx -> rpkiObjects.put(tx, orphan));
 
         // Orphan is now old, so should be deleted
         assertThat(subject.cleanupRpkiObjects()).isEqualTo(1);
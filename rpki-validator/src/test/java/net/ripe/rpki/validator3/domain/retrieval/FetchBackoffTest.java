@@ -0,0 +1,140 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2018 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.rpki.validator3.domain.retrieval;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FetchBackoffTest {
+
+    private static final String REPOSITORY = "https://rrdp.example.org/notification.xml";
+    private static final String OTHER_REPOSITORY = "rsync://rrdp.example.org/repository/";
+    private static final String OTHER_HOST = "https://rpki.example.net/notification.xml";
+
+    private final MutableClock clock = new MutableClock();
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final FetchBackoff backoff = new FetchBackoff(clock, Duration.ofMinutes(1), Duration.ofHours(1), 3, registry);
+
+    @Test
+    public void should_back_off_exponentially_after_failures() {
+        assertThat(backoff.shouldAttempt(REPOSITORY)).isTrue();
+        backoff.failed(REPOSITORY, 1000);
+        assertThat(backoff.shouldAttempt(REPOSITORY)).isFalse();
+
+        clock.advance(Duration.ofMinutes(1));
+        assertThat(backoff.shouldAttempt(REPOSITORY)).isTrue();
+        backoff.failed(REPOSITORY, 1000);
+
+        clock.advance(Duration.ofSeconds(59));
+        assertThat(backoff.shouldAttempt(REPOSITORY)).isFalse();
+        clock.advance(Duration.ofSeconds(61));
+        assertThat(backoff.shouldAttempt(REPOSITORY)).isTrue();
+
+        assertThat(registry.get("rpkivalidator.fetch.failed.duration").tag("protocol", "rrdp").timer().count()).isEqualTo(2);
+        assertThat(registry.get("rpkivalidator.fetch.skipped").tag("reason", "backoff").counter().count()).isEqualTo(2.0);
+    }
+
+    @Test
+    public void should_clear_backoff_after_success() {
+        backoff.failed(REPOSITORY, 1000);
+        clock.advance(Duration.ofMinutes(1));
+        backoff.failed(REPOSITORY, 1000);
+        clock.advance(Duration.ofMinutes(2));
+
+        backoff.succeeded(REPOSITORY);
+        backoff.failed(REPOSITORY, 1000);
+
+        clock.advance(Duration.ofMinutes(1));
+        assertThat(backoff.shouldAttempt(REPOSITORY)).isTrue();
+    }
+
+    @Test
+    public void should_fail_fast_for_all_repositories_on_host_with_open_breaker() {
+        for (int i = 0; i < 3; i++) {
+            clock.advance(Duration.ofHours(1));
+            assertThat(backoff.shouldAttempt(REPOSITORY)).isTrue();
+            backoff.failed(REPOSITORY, 60_000);
+        }
+        assertThat(backoff.openBreakers()).isEqualTo(1);
+
+        assertThat(backoff.shouldAttempt(OTHER_REPOSITORY)).isFalse();
+        assertThat(backoff.shouldAttempt(OTHER_HOST)).isTrue();
+        assertThat(registry.get("rpkivalidator.fetch.skipped").tag("reason", "breaker").counter().count()).isEqualTo(1.0);
+    }
+
+    @Test
+    public void should_let_single_probe_through_and_recover_immediately() {
+        for (int i = 0; i < 3; i++) {
+            clock.advance(Duration.ofHours(1));
+            backoff.failed(REPOSITORY, 60_000);
+        }
+
+        clock.advance(Duration.ofMinutes(1));
+        assertThat(backoff.shouldAttempt(OTHER_REPOSITORY)).isTrue();
+        assertThat(backoff.shouldAttempt(OTHER_REPOSITORY)).isFalse();
+
+        backoff.succeeded(OTHER_REPOSITORY);
+
+        assertThat(backoff.openBreakers()).isZero();
+        assertThat(backoff.shouldAttempt(REPOSITORY)).isTrue();
+        assertThat(backoff.shouldAttempt(OTHER_REPOSITORY)).isTrue();
+    }
+
+    private static class MutableClock extends Clock {
+        private Instant now = Instant.parse("2020-01-01T00:00:00Z");
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
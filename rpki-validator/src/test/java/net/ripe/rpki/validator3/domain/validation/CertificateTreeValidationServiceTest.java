@@ -280,7 +280,7 @@ public class CertificateTreeValidationServiceTest extends GenericStorageTest {
         rtx0(tx -> {
             List<CertificateTreeValidationRun> completed = this.getValidationRuns().findAll(tx, CertificateTreeValidationRun.class);
             assertThat(completed).hasSize(1);
-            final List<net.ripe.rpki.validator3.storage.data.validation.ValidationCheck> checks = completed.get(0).getValidationChecks();
+            final List<net.ripe.rpki.validator3.storage.data.validation.ValidationCheck> checks = this.getValidationRuns().findValidationChecks(tx, completed.get(0));
             assertThat(checks.get(0).getKey()).isEqualTo(ValidationString.VALIDATOR_NO_MANIFEST_REPOSITORY_FAILED);
             assertThat(checks.get(0).getParameters()).isEqualTo(Collections.singletonList(repository.getRrdpNotifyUri()));
         });
@@ -314,7 +314,7 @@ public class CertificateTreeValidationServiceTest extends GenericStorageTest {
         rtx0(tx -> {
             List<CertificateTreeValidationRun> completed = this.getValidationRuns().findAll(tx, CertificateTreeValidationRun.class);
             assertThat(completed).hasSize(1);
-            final List<ValidationCheck> checks = completed.get(0).getValidationChecks();
+            final List<ValidationCheck> checks = this.getValidationRuns().findValidationChecks(tx, completed.get(0));
             assertThat(checks.get(0).getKey()).isEqualTo(ValidationString.VALIDATOR_NO_LOCAL_MANIFEST_NO_MANIFEST_IN_REPOSITORY);
             assertThat(checks.get(0).getParameters()).isEqualTo(Lists.newArrayList(manifestUri.toString(), repository.getRrdpNotifyUri()));
         });
@@ -361,7 +361,7 @@ public class CertificateTreeValidationServiceTest extends GenericStorageTest {
         rtx0(tx -> {
             List<CertificateTreeValidationRun> completed = this.getValidationRuns().findAll(tx, CertificateTreeValidationRun.class);
             assertThat(completed).hasSize(1);
-            final List<ValidationCheck> checks = completed.get(0).getValidationChecks();
+            final List<ValidationCheck> checks = this.getValidationRuns().findValidationChecks(tx, completed.get(0));
             assertThat(checks.get(0).getKey()).isEqualTo(ValidationString.VALIDATOR_OLD_LOCAL_MANIFEST_REPOSITORY_FAILED);
             assertThat(checks.get(0).getParameters()).isEqualTo(Collections.singletonList(repository.getRrdpNotifyUri()));
         });
@@ -427,7 +427,7 @@ public class CertificateTreeValidationServiceTest extends GenericStorageTest {
         List<CertificateTreeValidationRun> completed = rtx(tx -> this.getValidationRuns().findAll(tx, CertificateTreeValidationRun.class));
         assertThat(completed).hasSize(1);
 
-        ValidationCheck check = completed.get(0).getValidationChecks().get(0);
+        ValidationCheck check = rtx(tx -> this.getValidationRuns().findValidationChecks(tx, completed.get(0))).get(0);
         assertThat(check.getStatus()).isEqualTo(ValidationCheck.Status.ERROR);
         assertThat(check.getKey()).isEqualTo("cert.not.valid.after");
 
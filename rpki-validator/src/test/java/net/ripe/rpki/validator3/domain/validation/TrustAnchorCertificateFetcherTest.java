@@ -0,0 +1,184 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2018 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.rpki.validator3.domain.validation;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.Resources;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.ripe.ipresource.IpResourceSet;
+import net.ripe.rpki.commons.crypto.x509cert.X509ResourceCertificate;
+import net.ripe.rpki.commons.validation.ValidationLocation;
+import net.ripe.rpki.commons.validation.ValidationResult;
+import net.ripe.rpki.validator3.domain.retrieval.TrustAnchorRetrievalService;
+import net.ripe.rpki.validator3.domain.ta.TrustAnchorsFactory;
+import net.ripe.rpki.validator3.storage.data.Key;
+import net.ripe.rpki.validator3.storage.data.TrustAnchor;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.jooq.lambda.tuple.Tuple2;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.IOException;
+import java.net.URI;
+import java.security.KeyPair;
+import java.security.Security;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static net.ripe.rpki.validator3.domain.validation.TrustAnchorValidationServiceTest.createRipeNccTrustAnchor;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.then;
+import static org.mockito.Mockito.never;
+
+@ExtendWith(MockitoExtension.class)
+public class TrustAnchorCertificateFetcherTest {
+    private static final URI HTTPS_URI = URI.create("https://rpki.example.org/ta/ta.cer");
+    private static final URI RSYNC_URI = URI.create("rsync://rpki.example.org/ta/ta.cer");
+
+    @Mock
+    private TrustAnchorRetrievalService retrievalService;
+
+    private ExecutorService executor;
+    private TrustAnchorCertificateFetcher subject;
+    private TrustAnchor trustAnchor;
+    private final CountDownLatch hanging = new CountDownLatch(1);
+    private byte[] certificate;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        certificate = Resources.toByteArray(Resources.getResource("ripe-ncc-ta.cer"));
+        executor = Executors.newCachedThreadPool();
+        subject = new TrustAnchorCertificateFetcher(retrievalService, Duration.ofMillis(100), executor, new SimpleMeterRegistry());
+        trustAnchor = createRipeNccTrustAnchor();
+        trustAnchor.setId(Key.of(1));
+        trustAnchor.setLocations(ImmutableList.of(RSYNC_URI.toString(), HTTPS_URI.toString()));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        hanging.countDown();
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void should_hedge_with_next_location_when_preferred_one_hangs() {
+        given(retrievalService.fetchTrustAnchorCertificate(eq(HTTPS_URI), any())).willAnswer(invocation -> {
+            hanging.await();
+            return null;
+        });
+        given(retrievalService.fetchTrustAnchorCertificate(eq(RSYNC_URI), any())).willReturn(certificate);
+
+        final long t0 = System.currentTimeMillis();
+        final Optional<Tuple2<URI, X509ResourceCertificate>> result = subject.fetch(trustAnchor, ValidationResult.withLocation("ta"));
+
+        assertFetched(result, RSYNC_URI);
+        assertThat(System.currentTimeMillis() - t0).isLessThan(5_000);
+        // The location that answered is preferred from now on
+        assertThat(subject.locationsByLatency(trustAnchor)).containsExactly(RSYNC_URI, HTTPS_URI);
+    }
+
+    @Test
+    public void should_try_next_location_right_away_on_failure() {
+        given(retrievalService.fetchTrustAnchorCertificate(eq(HTTPS_URI), any())).willAnswer(invocation -> {
+            ValidationResult result = invocation.getArgument(1);
+            result.warn("trust.anchor.fetch", HTTPS_URI.toASCIIString(), "HTTP 404 - Not Found");
+            return null;
+        });
+        given(retrievalService.fetchTrustAnchorCertificate(eq(RSYNC_URI), any())).willReturn(certificate);
+
+        final ValidationResult validationResult = ValidationResult.withLocation("ta");
+        final Optional<Tuple2<URI, X509ResourceCertificate>> result = subject.fetch(trustAnchor, validationResult);
+
+        assertFetched(result, RSYNC_URI);
+        assertThat(validationResult.getCurrentLocation().getName()).isEqualTo(RSYNC_URI.toASCIIString());
+        assertThat(validationResult.getWarnings(new ValidationLocation(HTTPS_URI))).hasSize(1);
+    }
+
+    @Test
+    public void should_not_start_other_locations_when_preferred_one_answers() {
+        given(retrievalService.fetchTrustAnchorCertificate(eq(HTTPS_URI), any())).willReturn(certificate);
+
+        assertFetched(subject.fetch(trustAnchor, ValidationResult.withLocation("ta")), HTTPS_URI);
+        then(retrievalService).should(never()).fetchTrustAnchorCertificate(eq(RSYNC_URI), any());
+    }
+
+    @Test
+    public void should_fail_when_all_locations_fail() {
+        given(retrievalService.fetchTrustAnchorCertificate(any(), any())).willReturn(null);
+
+        final ValidationResult validationResult = ValidationResult.withLocation("ta");
+        assertThat(subject.fetch(trustAnchor, validationResult)).isEmpty();
+        assertThat(validationResult.getCurrentLocation().getName()).isEqualTo("ta");
+    }
+
+    @Test
+    public void should_try_next_location_when_certificate_does_not_match_locator() {
+        given(retrievalService.fetchTrustAnchorCertificate(eq(HTTPS_URI), any())).willReturn(certificateWithOtherKey());
+        given(retrievalService.fetchTrustAnchorCertificate(eq(RSYNC_URI), any())).willReturn(certificate);
+
+        final ValidationResult validationResult = ValidationResult.withLocation("ta");
+        final Optional<Tuple2<URI, X509ResourceCertificate>> result = subject.fetch(trustAnchor, validationResult);
+
+        assertFetched(result, RSYNC_URI);
+        assertThat(validationResult.getFailures(new ValidationLocation(HTTPS_URI)))
+            .anyMatch(check -> check.getKey().equals("trust.anchor.subject.key.matches.locator"));
+        assertThat(subject.locationsByLatency(trustAnchor)).containsExactly(RSYNC_URI, HTTPS_URI);
+    }
+
+    private void assertFetched(Optional<Tuple2<URI, X509ResourceCertificate>> result, URI location) {
+        assertThat(result).isPresent();
+        assertThat(result.get().v1).isEqualTo(location);
+        assertThat(result.get().v2.getEncoded()).isEqualTo(certificate);
+    }
+
+    private static byte[] certificateWithOtherKey() {
+        Security.addProvider(new BouncyCastleProvider());
+        final KeyPair keyPair = TrustAnchorsFactory.KEY_PAIR_FACTORY.generate();
+        final TrustAnchorsFactory.CertificateAuthority ca = TrustAnchorsFactory.CertificateAuthority.builder()
+            .dn("CN=other-ta")
+            .resources(IpResourceSet.parse("10.0.0.0/8"))
+            .manifestURI("rsync://rpki.example.org/repository/other-ta.mft")
+            .repositoryURI("rsync://rpki.example.org/repository/")
+            .build();
+        return new TrustAnchorsFactory()
+            .createCaCertificate(ca, keyPair.getPublic(), "CN=other-ta", "rsync://rpki.example.org/repository/other-ta.crl", keyPair)
+            .getEncoded();
+    }
+}
@@ -159,7 +159,7 @@ public class TrustAnchorValidationServiceLocationTest extends GenericStorageTest
         assertThat(validationRun).isPresent();
         assertThat(validationRun.get().isFailed()).isTrue();
 
-        final List<ValidationCheck> validationChecks = validationRun.get().getValidationChecks();
+        final List<ValidationCheck> validationChecks = rtx(tx -> validationRuns.findValidationChecks(tx, validationRun.get()));
         assertThat(validationChecks).anyMatch(vc -> ErrorCodes.TRUST_ANCHOR_FETCH.equals(vc.getKey()) && ValidationCheck.Status.ERROR.equals(vc.getStatus()));
 
         then(trustAnchorRetrievalService).should(inOrder).fetchTrustAnchorCertificate(eq(URI.create(DUMMY_HTTPS_URI)), any());
@@ -92,7 +92,8 @@ public class TrustAnchorValidationServiceTest extends GenericStorageTest {
         assertThat(validationRun).isPresent();
         assertThat(validationRun.get().getStatus()).isEqualTo(ValidationRun.Status.SUCCEEDED);
 
-        assertThat(validationRun.get().getValidationChecks()).isEmpty();
+        List<ValidationCheck> validationChecks = rtx(tx -> validationRuns.findValidationChecks(tx, validationRun.get()));
+        assertThat(validationChecks).isEmpty();
     }
 
     @Test
@@ -108,7 +109,7 @@ public class TrustAnchorValidationServiceTest extends GenericStorageTest {
         Optional<TrustAnchorValidationRun> validationRun = rtx(tx -> validationRuns.findLatestCompletedForTrustAnchor(tx, ta));
         assertThat(validationRun).isPresent();
 
-        List<ValidationCheck> validationChecks = validationRun.get().getValidationChecks();
+        List<ValidationCheck> validationChecks = rtx(tx -> validationRuns.findValidationChecks(tx, validationRun.get()));
         assertThat(validationChecks).hasSize(2);
 
         assertThat(validationChecks).anyMatch(vc -> vc.getKey().equals(ErrorCodes.RSYNC_FETCH));
@@ -130,9 +131,10 @@ public class TrustAnchorValidationServiceTest extends GenericStorageTest {
         Optional<TrustAnchorValidationRun> validationRun = rtx(tx -> validationRuns.findLatestCompletedForTrustAnchor(tx, ta));
         assertThat(validationRun).isPresent();
 
-        List<ValidationCheck> validationChecks = validationRun.get().getValidationChecks();
-        assertThat(validationChecks).hasSize(1);
-        assertThat(validationChecks.get(0).getKey()).isEqualTo(ErrorCodes.REPOSITORY_OBJECT_MINIMUM_SIZE);
+        List<ValidationCheck> validationChecks = rtx(tx -> validationRuns.findValidationChecks(tx, validationRun.get()));
+        // The only location is rejected, so no certificate could be loaded
+        assertThat(validationChecks).extracting(ValidationCheck::getKey)
+            .containsExactlyInAnyOrder(ErrorCodes.REPOSITORY_OBJECT_MINIMUM_SIZE, ErrorCodes.TRUST_ANCHOR_FETCH);
     }
 
     @Test
@@ -149,9 +151,9 @@ public class TrustAnchorValidationServiceTest extends GenericStorageTest {
         Optional<TrustAnchorValidationRun> validationRun = rtx(tx -> validationRuns.findLatestCompletedForTrustAnchor(tx, ta));
         assertThat(validationRun).isPresent();
 
-        List<ValidationCheck> validationChecks = validationRun.get().getValidationChecks();
-        assertThat(validationChecks).hasSize(1);
-        assertThat(validationChecks.get(0).getKey()).isEqualTo("trust.anchor.subject.key.matches.locator");
+        List<ValidationCheck> validationChecks = rtx(tx -> validationRuns.findValidationChecks(tx, validationRun.get()));
+        assertThat(validationChecks).extracting(ValidationCheck::getKey)
+            .containsExactlyInAnyOrder("trust.anchor.subject.key.matches.locator", ErrorCodes.TRUST_ANCHOR_FETCH);
     }
 
     public static TrustAnchor createRipeNccTrustAnchor() {
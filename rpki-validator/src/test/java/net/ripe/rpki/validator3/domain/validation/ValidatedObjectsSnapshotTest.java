@@ -0,0 +1,124 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2018 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.rpki.validator3.domain.validation;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedSet;
+import net.ripe.ipresource.IpRange;
+import net.ripe.rpki.validator3.domain.ValidatedRoaPrefix;
+import net.ripe.rpki.validator3.storage.data.Key;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.zip.DeflaterOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ValidatedObjectsSnapshotTest {
+
+    private static final Key TA_KEY = Key.of(1234L);
+    private static final ValidatedRpkiObjects.TrustAnchorData TA = ValidatedRpkiObjects.TrustAnchorData.of(TA_KEY, "RIPE NCC RPKI Root");
+    private static final Instant VALIDATED_AT = Instant.parse("2020-05-04T12:34:56.789Z");
+
+    @Test
+    public void should_round_trip_roa_prefixes_and_router_certificates() {
+        final ValidatedRpkiObjects.RoaPrefixesAndRouterCertificates objects = ValidatedRpkiObjects.RoaPrefixesAndRouterCertificates.of(
+            ImmutableSet.of(
+                ValidatedRoaPrefix.of(TA, 3333, IpRange.parse("193.0.0.0/21"), 24, 1_000L, 2_000L,
+                    BigInteger.valueOf(42), ImmutableSortedSet.of("rsync://example.org/a.roa")),
+                ValidatedRoaPrefix.of(TA, 4294967295L, IpRange.parse("2001:67c:2e8::/48"), null, 1_000L, 2_000L,
+                    new BigInteger("1234567890123456789012345678901234567890"),
+                    ImmutableSortedSet.of("rsync://example.org/a.roa", "rsync://example.org/b.roa")),
+                ValidatedRoaPrefix.of(TA, 0, IpRange.parse("0.0.0.0/0"), 32, 0L, Long.MAX_VALUE,
+                    BigInteger.ONE, ImmutableSortedSet.of("rsync://example.org/b.roa")),
+                ValidatedRoaPrefix.of(TA, 65000, IpRange.parse("ffff::/16"), 128, 0L, 1L,
+                    BigInteger.TEN, ImmutableSortedSet.of())
+            ),
+            ImmutableSet.of(
+                ValidatedRpkiObjects.RouterCertificate.of(TA, ImmutableList.of("AS3333", "AS65000"), "c2tp", "cHVibGljIGtleQ==")
+            )
+        );
+
+        final byte[] encoded = ValidatedObjectsSnapshot.encode(TA.getName(), VALIDATED_AT, objects);
+        final ValidatedObjectsSnapshot decoded = ValidatedObjectsSnapshot.decode(TA_KEY, encoded);
+
+        assertThat(decoded.getTrustAnchorName()).isEqualTo(TA.getName());
+        assertThat(decoded.getValidatedAt()).isEqualTo(VALIDATED_AT);
+        assertThat(decoded.getObjects()).isEqualTo(objects);
+    }
+
+    @Test
+    public void should_be_older_than_the_maximum_age() {
+        final ValidatedObjectsSnapshot snapshot = new ValidatedObjectsSnapshot(TA.getName(), VALIDATED_AT,
+            ValidatedRpkiObjects.RoaPrefixesAndRouterCertificates.of(ImmutableSet.of(), ImmutableSet.of()));
+
+        assertThat(snapshot.isOlderThan(Duration.ofHours(24), VALIDATED_AT.plus(Duration.ofHours(23)))).isFalse();
+        assertThat(snapshot.isOlderThan(Duration.ofHours(24), VALIDATED_AT.plus(Duration.ofHours(24)))).isFalse();
+        assertThat(snapshot.isOlderThan(Duration.ofHours(24), VALIDATED_AT.plus(Duration.ofHours(25)))).isTrue();
+    }
+
+    @Test
+    public void should_drop_expired_roa_prefixes() {
+        final long now = VALIDATED_AT.plus(Duration.ofHours(1)).toEpochMilli();
+        final ValidatedRoaPrefix expired = ValidatedRoaPrefix.of(TA, 3333, IpRange.parse("193.0.0.0/21"), 24, 0L, now - 1,
+            BigInteger.ONE, ImmutableSortedSet.of("rsync://example.org/a.roa"));
+        final ValidatedRoaPrefix expiresNow = ValidatedRoaPrefix.of(TA, 3333, IpRange.parse("193.0.8.0/21"), 24, 0L, now,
+            BigInteger.TEN, ImmutableSortedSet.of("rsync://example.org/b.roa"));
+        final ValidatedRoaPrefix valid = ValidatedRoaPrefix.of(TA, 65000, IpRange.parse("2001:67c:2e8::/48"), null, 0L, now + 1,
+            BigInteger.TEN, ImmutableSortedSet.of("rsync://example.org/c.roa"));
+        final ValidatedRpkiObjects.RouterCertificate certificate =
+            ValidatedRpkiObjects.RouterCertificate.of(TA, ImmutableList.of("AS3333"), "c2tp", "cHVibGljIGtleQ==");
+        final ValidatedObjectsSnapshot snapshot = new ValidatedObjectsSnapshot(TA.getName(), VALIDATED_AT,
+            ValidatedRpkiObjects.RoaPrefixesAndRouterCertificates.of(ImmutableSet.of(expired, expiresNow, valid), ImmutableSet.of(certificate)));
+
+        final ValidatedObjectsSnapshot unexpired = snapshot.withoutExpiredRoaPrefixes(Instant.ofEpochMilli(now));
+
+        assertThat(unexpired.getValidatedAt()).isEqualTo(VALIDATED_AT);
+        assertThat(unexpired.getObjects().getRoaPrefixes()).containsExactlyInAnyOrder(expiresNow, valid);
+        assertThat(unexpired.getObjects().getRouterCertificates()).containsExactly(certificate);
+    }
+
+    @Test
+    public void should_reject_unknown_version() throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DeflaterOutputStream out = new DeflaterOutputStream(bytes)) {
+            out.write(99);
+        }
+
+        assertThatThrownBy(() -> ValidatedObjectsSnapshot.decode(TA_KEY, bytes.toByteArray()))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+}
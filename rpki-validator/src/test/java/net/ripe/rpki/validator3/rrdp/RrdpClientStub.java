@@ -33,13 +33,21 @@ import com.google.common.hash.HashCode;
 import com.google.common.hash.HashFunction;
 import net.ripe.rpki.validator3.api.util.BuildInformation;
 import net.ripe.rpki.validator3.domain.metrics.HttpClientMetricsService;
+import net.ripe.rpki.validator3.util.Futures;
 import org.eclipse.jetty.client.HttpClient;
 
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.function.BiFunction;
 import java.util.function.Function;
 
@@ -47,6 +55,8 @@ public class RrdpClientStub extends HttpRrdpClient {
 
     private Map<String, byte[]> contents = new HashMap<>();
 
+    private Set<String> unavailable = new HashSet<>();
+
     public RrdpClientStub() {
         super(null, null, null);
     }
@@ -62,7 +72,40 @@ public class RrdpClientStub extends HttpRrdpClient {
         return contents.get(uri);
     }
 
+    @Override
+    public <T> CompletableFuture<T> readStream(String uri, Function<InputStream, T> reader, Executor executor) {
+        if (unavailable.contains(uri)) {
+            return Futures.failed(new RrdpDownloadException("Error downloading '" + uri + "'", null));
+        }
+        return CompletableFuture.supplyAsync(() -> readStream(uri, reader), executor);
+    }
+
+    @Override
+    public <T> CompletableFuture<T> processUsingTemporaryFile(String uri, HashFunction hashFunction, BiFunction<Path, HashCode, T> process, Executor executor) {
+        if (unavailable.contains(uri)) {
+            return Futures.failed(new RrdpDownloadException("Error downloading '" + uri + "'", null));
+        }
+        return CompletableFuture.supplyAsync(() -> {
+            final byte[] bytes = contents.get(uri);
+            try {
+                final Path tempFile = Files.createTempFile("rrdp-", ".tmp");
+                try {
+                    Files.write(tempFile, bytes);
+                    return process.apply(tempFile, hashFunction.hashBytes(bytes));
+                } finally {
+                    Files.deleteIfExists(tempFile);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, executor);
+    }
+
     public void add(String uri, byte[] content) {
         contents.put(uri, content);
     }
+
+    public void unavailable(String uri) {
+        unavailable.add(uri);
+    }
 }
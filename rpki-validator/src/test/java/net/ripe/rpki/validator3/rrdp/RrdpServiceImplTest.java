@@ -51,13 +51,18 @@ import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.test.context.junit4.SpringRunner;
 
 import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
 import java.util.Collections;
 import java.util.List;
 import java.util.SortedSet;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 @RunWith(SpringRunner.class)
 @IntegrationTest
@@ -152,7 +157,7 @@ public class RrdpServiceImplTest extends GenericStorageTest {
             return this.getValidationRuns().add(tx, new RrdpRepositoryValidationRun(ref));
         });
 
-        subject.storeRepository(rpkiRepository, validationRun);
+        subject.storeRepository(rpkiRepository, validationRun, Runnable::run).join();
 
         final List<RpkiObject> objects = rtx(tx -> this.getRpkiObjects().values(tx));
         assertEquals(2, objects.size());
@@ -192,7 +197,7 @@ public class RrdpServiceImplTest extends GenericStorageTest {
                 this.getRpkiRepositories().makeRef(tx, rpkiRepository.key()));
         final RrdpRepositoryValidationRun validationRun = new RrdpRepositoryValidationRun(rpkiRepositoryRef);
 
-        subject.storeRepository(rpkiRepository, validationRun);
+        subject.storeRepository(rpkiRepository, validationRun, Runnable::run).join();
 
         final List<RpkiObject> objects = rtx(tx -> this.getRpkiObjects().values(tx));
         assertEquals(0, objects.size());
@@ -206,6 +211,64 @@ public class RrdpServiceImplTest extends GenericStorageTest {
         assertEquals(rpkiRepository.getRrdpNotifyUri(), validationCheck.getLocation());
     }
 
+    @Test
+    public void should_record_corrupted_snapshot_without_failing_the_transfer() {
+        final int serial = 1;
+        final String sessionId = UUID.randomUUID().toString();
+        final byte[] snapshotXml = "<snapshot".getBytes(StandardCharsets.UTF_8);
+
+        final Objects.SnapshotInfo snapshot = new Objects.SnapshotInfo(SNAPSHOT_URL, Sha256.hash(snapshotXml));
+        rrdpClient.add(snapshot.uri, snapshotXml);
+        rrdpClient.add(RRDP_RIPE_NET_NOTIFICATION_XML, Objects.notificationXml(serial, sessionId, snapshot));
+
+        final RpkiRepository rpkiRepository = registerRepository();
+        final RrdpRepositoryValidationRun validationRun = new RrdpRepositoryValidationRun(
+            rtx(tx -> this.getRpkiRepositories().makeRef(tx, rpkiRepository.key())));
+
+        final CompletableFuture<Boolean> stored = subject.storeRepository(rpkiRepository, validationRun, Runnable::run);
+
+        assertFalse(stored.isCompletedExceptionally());
+        assertFalse(stored.join());
+        assertTrue(validationRun.isFailed());
+        assertEquals(1, validationRun.getValidationChecks().size());
+        assertEquals(ValidationCheck.Status.ERROR, validationRun.getValidationChecks().get(0).getStatus());
+    }
+
+    @Test
+    public void should_fail_with_download_exception_when_the_snapshot_transfer_fails() {
+        final int serial = 1;
+        final String sessionId = UUID.randomUUID().toString();
+
+        final Objects.SnapshotInfo snapshot = new Objects.SnapshotInfo(SNAPSHOT_URL, Hex.parse("FFFFFF"));
+        rrdpClient.unavailable(snapshot.uri);
+        rrdpClient.add(RRDP_RIPE_NET_NOTIFICATION_XML, Objects.notificationXml(serial, sessionId, snapshot));
+
+        final RpkiRepository rpkiRepository = registerRepository();
+        final RrdpRepositoryValidationRun validationRun = new RrdpRepositoryValidationRun(
+            rtx(tx -> this.getRpkiRepositories().makeRef(tx, rpkiRepository.key())));
+
+        final CompletableFuture<Boolean> stored = subject.storeRepository(rpkiRepository, validationRun, Runnable::run);
+
+        assertTrue(stored.isCompletedExceptionally());
+        try {
+            stored.join();
+            fail("transfer failure should fail the future");
+        } catch (CompletionException e) {
+            assertTrue(e.getCause() instanceof RrdpDownloadException);
+        }
+        assertTrue(validationRun.isFailed());
+        assertEquals(ErrorCodes.RRDP_FETCH, validationRun.getValidationChecks().get(0).getKey());
+    }
+
+    private RpkiRepository registerRepository() {
+        final TrustAnchor trustAnchor = TestObjects.newTrustAnchor();
+        wtx0(tx -> this.getTrustAnchors().add(tx, trustAnchor));
+
+        final Ref<TrustAnchor> trustAnchorRef = rtx(tx -> this.getTrustAnchors().makeRef(tx, trustAnchor.key()));
+        return wtx(tx -> this.getRpkiRepositories().register(tx,
+                trustAnchorRef, RRDP_RIPE_NET_NOTIFICATION_XML, RpkiRepository.Type.RRDP));
+    }
+
     @Test
     public void should_parse_notification_use_delta() {
         final byte[] certificate = Objects.aParseableCertificate();
@@ -240,7 +303,7 @@ public class RrdpServiceImplTest extends GenericStorageTest {
         // do the first run to get the snapshot
         final RrdpRepositoryValidationRun validationRun = wtx(tx ->
                 this.getValidationRuns().add(tx, new RrdpRepositoryValidationRun(rpkiRepositoryRef)));
-        subject.storeRepository(rpkiRepository, validationRun);
+        subject.storeRepository(rpkiRepository, validationRun, Runnable::run).join();
         assertEquals(0, validationRun.getValidationChecks().size());
 
         final List<RpkiObject> objects = rtx(tx -> this.getRpkiObjects().values(tx));
@@ -286,7 +349,7 @@ public class RrdpServiceImplTest extends GenericStorageTest {
         // do the first run to get the snapshot
         final RrdpRepositoryValidationRun validationRun = wtx(tx ->
                 this.getValidationRuns().add(tx, new RrdpRepositoryValidationRun(rpkiRepositoryRef)));
-        subject.storeRepository(rpkiRepository, validationRun);
+        subject.storeRepository(rpkiRepository, validationRun, Runnable::run).join();
 
         assertEquals(1, validationRun.getValidationChecks().size());
         final ValidationCheck validationCheck = validationRun.getValidationChecks().get(0);
@@ -336,7 +399,7 @@ public class RrdpServiceImplTest extends GenericStorageTest {
         final RrdpRepositoryValidationRun validationRun = wtx(tx ->
                 this.getValidationRuns().add(tx, new RrdpRepositoryValidationRun(rpkiRepositoryRef)));
 
-        subject.storeRepository(rpkiRepository, validationRun);
+        subject.storeRepository(rpkiRepository, validationRun, Runnable::run).join();
         assertEquals(0, validationRun.getValidationChecks().size());
 
         final List<RpkiObject> objects = rtx(tx -> this.getRpkiObjects().values(tx));
@@ -385,7 +448,7 @@ public class RrdpServiceImplTest extends GenericStorageTest {
         // do the first run to get the snapshot
         final RrdpRepositoryValidationRun validationRun = wtx(tx ->
                 this.getValidationRuns().add(tx, new RrdpRepositoryValidationRun(rpkiRepositoryRef)));
-        subject.storeRepository(rpkiRepository, validationRun);
+        subject.storeRepository(rpkiRepository, validationRun, Runnable::run).join();
         assertEquals(0, validationRun.getValidationChecks().size());
 
         final List<RpkiObject> objects = rtx(tx -> this.getRpkiObjects().values(tx));
@@ -431,7 +494,7 @@ public class RrdpServiceImplTest extends GenericStorageTest {
         // do the first run to get the snapshot
         final RrdpRepositoryValidationRun validationRun = wtx(tx ->
                 this.getValidationRuns().add(tx, new RrdpRepositoryValidationRun(rpkiRepositoryRef)));
-        subject.storeRepository(rpkiRepository, validationRun);
+        subject.storeRepository(rpkiRepository, validationRun, Runnable::run).join();
         System.out.println(validationRun.getValidationChecks());
         assertEquals(1, validationRun.getValidationChecks().size());
 
@@ -488,7 +551,7 @@ public class RrdpServiceImplTest extends GenericStorageTest {
         // do the first run to get the snapshot
         final RrdpRepositoryValidationRun validationRun = wtx(tx ->
                 this.getValidationRuns().add(tx, new RrdpRepositoryValidationRun(rpkiRepositoryRef)));
-        subject.storeRepository(rpkiRepository, validationRun);
+        subject.storeRepository(rpkiRepository, validationRun, Runnable::run).join();
         assertEquals(1, validationRun.getValidationChecks().size());
 
         final ValidationCheck validationCheck = validationRun.getValidationChecks().get(0);
@@ -539,7 +602,7 @@ public class RrdpServiceImplTest extends GenericStorageTest {
         // do the first run to get the snapshot
         final RrdpRepositoryValidationRun validationRun = wtx(tx ->
                 this.getValidationRuns().add(tx, new RrdpRepositoryValidationRun(rpkiRepositoryRef)));
-        subject.storeRepository(rpkiRepository, validationRun);
+        subject.storeRepository(rpkiRepository, validationRun, Runnable::run).join();
         assertEquals(1, validationRun.getValidationChecks().size());
         final ValidationCheck validationCheck = validationRun.getValidationChecks().get(0);
         assertEquals(ErrorCodes.RRDP_WRONG_DELTA_HASH, validationCheck.getKey());
@@ -34,11 +34,14 @@ import net.ripe.rpki.validator3.storage.data.validation.RpkiRepositoryValidation
 import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Service;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
 @Service
 @Profile("test")
 public class RrdpServiceStub implements RrdpService {
     @Override
-    public boolean storeRepository(RpkiRepository rpkiRepository, RpkiRepositoryValidationRun validationRun) {
-        return true;
+    public CompletableFuture<Boolean> storeRepository(RpkiRepository rpkiRepository, RpkiRepositoryValidationRun validationRun, Executor executor) {
+        return CompletableFuture.completedFuture(true);
     }
 }
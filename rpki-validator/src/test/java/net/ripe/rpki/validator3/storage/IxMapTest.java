@@ -38,6 +38,7 @@ import org.junit.rules.TemporaryFolder;
 
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
@@ -52,6 +53,7 @@ import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
@@ -295,6 +297,35 @@ public abstract class IxMapTest {
         });
     }
 
+    @Test
+    public void testStreamValuesAndKeys() {
+        wtx0(tx -> IntStream.range(0, 10).forEach(i -> ixMap.put(tx, Key.of(i), "v" + i)));
+
+        rtx0(tx -> {
+            try (Stream<String> values = ixMap.streamValues(tx)) {
+                assertEquals(Arrays.asList("v0", "v1", "v2"), values.limit(3).collect(Collectors.toList()));
+            }
+            try (Stream<Key> keys = ixMap.streamKeys(tx)) {
+                assertEquals(Optional.of(Key.of(0)), keys.findFirst());
+            }
+            assertEquals(10, ixMap.streamValues(tx).count());
+        });
+    }
+
+    @Test
+    public void testStreamByIndex() {
+        putAndGet("a");
+        putAndGet("aa");
+        putAndGet("ab");
+        putAndGet("bbb");
+
+        rtx0(tx -> {
+            assertEquals(Sets.newHashSet("aa", "ab"), ixMap.streamByIndex(LENGTH_INDEX, tx, intKey(2)).collect(Collectors.toSet()));
+            assertEquals(ixMap.getPkByIndex(LENGTH_INDEX, tx, intKey(2)), ixMap.streamPkByIndex(LENGTH_INDEX, tx, intKey(2)).collect(Collectors.toSet()));
+            assertEquals(0, ixMap.streamByIndex(LENGTH_INDEX, tx, intKey(5)).count());
+        });
+    }
+
     @Test
     public void testOnDeleteCascade() {
         final Set<Key> deleteKeys = new HashSet<>();
@@ -38,6 +38,7 @@ import org.junit.rules.TemporaryFolder;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.UUID;
+import java.util.stream.Collectors;
 
 import static org.junit.Assert.assertEquals;
 
@@ -81,6 +82,23 @@ public abstract class MultiIxMapTest {
         });
     }
 
+    @Test
+    public void streamByKey() {
+        final Key k1 = Key.of(UUID.randomUUID());
+        final Key k2 = Key.of(UUID.randomUUID());
+        storage.writeTx0(tx -> {
+            multIxMap.put(tx, k1, "a");
+            multIxMap.put(tx, k1, "b");
+            multIxMap.put(tx, k2, "c");
+        });
+
+        storage.readTx0(tx -> {
+            assertEquals(Sets.newHashSet("a", "b"), multIxMap.stream(tx, k1).collect(Collectors.toSet()));
+            assertEquals(Sets.newHashSet("c"), multIxMap.stream(tx, k2).collect(Collectors.toSet()));
+            assertEquals(0, multIxMap.stream(tx, Key.of(UUID.randomUUID())).count());
+        });
+    }
+
     @Test
     public void putAndDelete() {
         final Key k1 = Key.of(UUID.randomUUID());
@@ -0,0 +1,91 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2018 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.rpki.validator3.storage.encoding;
+
+import net.ripe.rpki.validator3.storage.data.Key;
+import net.ripe.rpki.validator3.util.Sha256;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PackedKeysTest {
+
+    @Test
+    public void should_round_trip_sorted_and_without_duplicates() {
+        final List<Key> keys = Arrays.asList(Key.of(3), Key.of(1), Key.of(2), Key.of(1), Key.of("abc"), Key.of("ab"));
+        final byte[] packed = PackedKeys.pack(keys);
+
+        assertThat(PackedKeys.count(packed)).isEqualTo(5);
+        assertThat(PackedKeys.stream(packed).collect(Collectors.toList()))
+            .containsExactly(Key.of(1), Key.of(2), Key.of(3), Key.of("ab"), Key.of("abc"));
+    }
+
+    @Test
+    public void should_unpack_many_keys() {
+        final List<Key> keys = sha256Keys(1000);
+        final byte[] packed = PackedKeys.pack(keys);
+
+        assertThat(PackedKeys.count(packed)).isEqualTo(1000);
+        assertThat(PackedKeys.stream(packed).collect(Collectors.toSet())).isEqualTo(new HashSet<>(keys));
+    }
+
+    @Test
+    public void should_pack_empty_set() {
+        final byte[] packed = PackedKeys.pack(Collections.emptyList());
+
+        assertThat(PackedKeys.count(packed)).isZero();
+        assertThat(PackedKeys.stream(packed)).isEmpty();
+        assertThat(packed).hasSize(2);
+    }
+
+    @Test
+    public void should_be_smaller_than_the_keys() {
+        final List<Key> keys = sha256Keys(100_000);
+        final byte[] packed = PackedKeys.pack(keys);
+
+        assertThat(PackedKeys.stream(packed).collect(Collectors.toSet())).isEqualTo(new HashSet<>(keys));
+        // neighbouring hashes share ~2 bytes at this size, which is more than the byte for the prefix length
+        assertThat(packed.length).isLessThan(keys.size() * 32);
+    }
+
+    private static List<Key> sha256Keys(int n) {
+        final List<Key> keys = new ArrayList<>(n);
+        IntStream.range(0, n).forEach(i -> keys.add(Key.of(Sha256.hash(Integer.toString(i).getBytes()))));
+        return keys;
+    }
+}
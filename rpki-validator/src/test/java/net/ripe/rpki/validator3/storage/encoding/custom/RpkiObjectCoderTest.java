@@ -54,6 +54,7 @@ import java.security.KeyPair;
 
 import static net.ripe.rpki.validator3.domain.ta.TrustAnchorsFactory.KEY_PAIR_FACTORY;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 
 @RunWith(SpringRunner.class)
 @IntegrationTest
@@ -77,6 +78,9 @@ public class RpkiObjectCoderTest {
         RpkiObjectCoder coder = new RpkiObjectCoder();
         RpkiObject rpkiObject1 = coder.fromBytes(coder.toBytes(rpkiObject));
 
+        // content is stored separately from the metadata
+        assertNull(rpkiObject1.getEncoded());
+        rpkiObject.setEncoded(null);
         assertEquals(rpkiObject, rpkiObject1);
     }
 
@@ -92,6 +96,9 @@ public class RpkiObjectCoderTest {
         RpkiObjectCoder coder = new RpkiObjectCoder();
         RpkiObject rpkiObject1 = coder.fromBytes(coder.toBytes(rpkiObject));
 
+        // content is stored separately from the metadata
+        assertNull(rpkiObject1.getEncoded());
+        rpkiObject.setEncoded(null);
         assertEquals(rpkiObject, rpkiObject1);
     }
 
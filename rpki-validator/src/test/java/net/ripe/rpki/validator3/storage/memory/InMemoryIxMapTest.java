@@ -0,0 +1,130 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2018 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.rpki.validator3.storage.memory;
+
+import com.google.common.collect.ImmutableMap;
+import net.ripe.rpki.validator3.storage.IxMapTest;
+import net.ripe.rpki.validator3.storage.Tx;
+import net.ripe.rpki.validator3.storage.data.Key;
+import net.ripe.rpki.validator3.storage.encoding.CoderFactory;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class InMemoryIxMapTest extends IxMapTest {
+
+    private InMemoryStorage storage;
+
+    @Before
+    public void setUp() {
+        storage = new InMemoryStorage();
+        ixMap = storage.createIxMap("test",
+                ImmutableMap.of(
+                        LENGTH_INDEX, IxMapTest::stringLen,
+                        PAIRS_INDEX, s -> charPairSet(s).stream().map(Key::of).collect(Collectors.toSet())),
+                CoderFactory.makeCoder(String.class));
+    }
+
+    @Override
+    protected <T> T rtx(Function<Tx.Read, T> f) {
+        return storage.readTx(f);
+    }
+
+    @Override
+    protected <T> T wtx(Function<Tx.Write, T> f) {
+        return storage.writeTx(f);
+    }
+
+    @Test
+    public void testReadersSeeTheVersionTheyStartedWith() {
+        wtx0(tx -> ixMap.put(tx, Key.of(1L), "a"));
+
+        rtx0(tx -> {
+            wtx0(wtx -> {
+                ixMap.put(wtx, Key.of(1L), "b");
+                ixMap.put(wtx, Key.of(2L), "cc");
+                assertEquals(Optional.of("b"), ixMap.get(wtx, Key.of(1L)));
+            });
+            assertEquals(Optional.of("a"), ixMap.get(tx, Key.of(1L)));
+            assertFalse(ixMap.exists(tx, Key.of(2L)));
+            assertEquals(ImmutableMap.of(), ixMap.getByIndex(LENGTH_INDEX, tx, intKey(2)));
+        });
+
+        rtx0(tx -> {
+            assertEquals(Optional.of("b"), ixMap.get(tx, Key.of(1L)));
+            assertEquals(ImmutableMap.of(Key.of(2L), "cc"), ixMap.getByIndex(LENGTH_INDEX, tx, intKey(2)));
+        });
+    }
+
+    @Test
+    public void testAbortedAndFailedWritesAreNotVisible() {
+        wtx0(tx -> ixMap.put(tx, Key.of(1L), "a"));
+
+        wtx0(tx -> {
+            ixMap.put(tx, Key.of(1L), "b");
+            tx.abort();
+        });
+        try {
+            wtx0(tx -> {
+                ixMap.put(tx, Key.of(2L), "c");
+                throw new IllegalStateException("fail");
+            });
+        } catch (IllegalStateException ignored) {
+            // expected
+        }
+
+        rtx0(tx -> {
+            assertEquals(Optional.of("a"), ixMap.get(tx, Key.of(1L)));
+            assertFalse(ixMap.exists(tx, Key.of(2L)));
+            assertTrue(ixMap.getByIndex(LENGTH_INDEX, tx, intKey(1)).containsKey(Key.of(1L)));
+        });
+    }
+
+    @Test
+    public void testReindex() {
+        wtx0(tx -> ixMap.put(tx, Key.of(1L), "aa"));
+
+        ixMap = storage.createIxMap("test",
+                ImmutableMap.of("lenPlus1", s -> Key.keys(intKey(s.length() + 1))),
+                CoderFactory.makeCoder(String.class));
+
+        rtx0(tx -> {
+            assertEquals(ImmutableMap.of(), ixMap.getByIndex(LENGTH_INDEX, tx, intKey(2)));
+            assertEquals(ImmutableMap.of(Key.of(1L), "aa"), ixMap.getByIndex("lenPlus1", tx, intKey(3)));
+        });
+    }
+}
@@ -0,0 +1,162 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2018 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.rpki.validator3.storage.stores.impl;
+
+import net.ripe.rpki.validator3.IntegrationTest;
+import net.ripe.rpki.validator3.api.util.InstantWithoutNanos;
+import net.ripe.rpki.validator3.storage.data.Key;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(SpringRunner.class)
+@IntegrationTest
+public class ReachabilityEpochsTest extends GenericStorageTest {
+
+    private static final Duration GRACE = Duration.ofDays(7);
+
+    private final Key a = Key.of("a");
+    private final Key b = Key.of("b");
+    private final Key c = Key.of("c");
+
+    private ReachabilityEpochs reachability;
+
+    @Before
+    public void setUpReachability() {
+        reachability = new ReachabilityEpochs(getStorage(), getSequences(),
+            "test-ordinal", "test-ordinal-keys", "test-epochs", "test-pending",
+            "test-ordinal-released", "test-ordinal-free");
+        wtx0(reachability::clear);
+    }
+
+    @Test
+    public void should_find_objects_last_reachable_in_expired_epochs() {
+        final InstantWithoutNanos longAgo = InstantWithoutNanos.now().minus(Duration.ofDays(10));
+        final InstantWithoutNanos since = InstantWithoutNanos.now().minus(GRACE);
+        wtx0(tx -> {
+            Arrays.asList(a, b, c).forEach(k -> reachability.register(tx, k, longAgo));
+            reachability.markReachable(tx, Arrays.asList(a, b), longAgo);
+            reachability.markReachable(tx, Collections.singletonList(b));
+        });
+
+        // c was never reachable, a was last reachable before the grace period
+        final List<Key> unreachable = rtx(tx -> reachability.findUnreachable(tx, since));
+        assertThat(unreachable).containsExactlyInAnyOrder(a, c);
+
+        final List<Key> pending = rtx(tx -> reachability.findPendingBefore(tx, since));
+        assertThat(pending).containsExactlyInAnyOrder(a, b, c);
+        wtx0(tx -> {
+            reachability.settlePending(tx, pending, since);
+            reachability.deleteEpochsBefore(tx, since);
+        });
+
+        // both the expired epoch and the pending checks are gone, so nothing is found again
+        final List<Key> again = rtx(tx -> reachability.findUnreachable(tx, since));
+        assertThat(again).isEmpty();
+    }
+
+    @Test
+    public void should_not_report_recent_objects() {
+        final InstantWithoutNanos since = InstantWithoutNanos.now().minus(GRACE);
+        wtx0(tx -> reachability.register(tx, a, InstantWithoutNanos.now()));
+
+        final List<Key> unreachable = rtx(tx -> reachability.findUnreachable(tx, since));
+        final List<Key> pending = rtx(tx -> reachability.findPendingBefore(tx, since));
+        assertThat(unreachable).isEmpty();
+        assertThat(pending).isEmpty();
+    }
+
+    @Test
+    public void should_tell_which_objects_were_marked_since() {
+        wtx0(tx -> {
+            reachability.register(tx, a, null);
+            reachability.register(tx, b, null);
+            reachability.markReachable(tx, Collections.singletonList(a));
+        });
+
+        final Set<Key> marked = rtx(tx -> reachability.markedSince(tx, InstantWithoutNanos.now(), Arrays.asList(a, b)));
+        assertThat(marked).containsExactly(a);
+    }
+
+    @Test
+    public void should_forget_deleted_objects() {
+        final InstantWithoutNanos longAgo = InstantWithoutNanos.now().minus(Duration.ofDays(10));
+        final InstantWithoutNanos since = InstantWithoutNanos.now().minus(GRACE);
+        wtx0(tx -> {
+            reachability.register(tx, a, longAgo);
+            reachability.markReachable(tx, Collections.singletonList(a), longAgo);
+            reachability.delete(tx, a);
+        });
+
+        final List<Key> unreachable = rtx(tx -> reachability.findUnreachable(tx, since));
+        assertThat(unreachable).isEmpty();
+    }
+
+    @Test
+    public void should_recycle_ordinals_of_deleted_objects_once_cleared_in_all_epochs() {
+        final InstantWithoutNanos longAgo = InstantWithoutNanos.now().minus(Duration.ofDays(10));
+        wtx0(tx -> {
+            reachability.register(tx, a, longAgo);
+            reachability.markReachable(tx, Collections.singletonList(a), longAgo);
+            reachability.markReachable(tx, Collections.singletonList(a));
+            reachability.delete(tx, a);
+        });
+        final BitSet released = rtx(tx -> reachability.ordinalsOf(tx, Collections.singletonList(a)));
+        assertThat(released.isEmpty()).isTrue();
+
+        // not free before its bits are cleared
+        wtx0(tx -> reachability.register(tx, b, null));
+        final Set<Key> markedB = rtx(tx -> reachability.markedSince(tx, InstantWithoutNanos.now(), Collections.singletonList(b)));
+        assertThat(markedB).isEmpty();
+
+        final int cleared = wtx(tx -> reachability.clearReleased(tx));
+        assertThat(cleared).isEqualTo(1);
+        wtx0(tx -> reachability.register(tx, c, null));
+
+        // c reuses the ordinal of a, which is no longer marked in any epoch
+        final BitSet ordinalOfB = rtx(tx -> reachability.ordinalsOf(tx, Collections.singletonList(b)));
+        final BitSet ordinalOfC = rtx(tx -> reachability.ordinalsOf(tx, Collections.singletonList(c)));
+        assertThat(ordinalOfC.nextSetBit(0)).isLessThan(ordinalOfB.nextSetBit(0));
+        final Set<Key> markedC = rtx(tx -> reachability.markedSince(tx, longAgo, Collections.singletonList(c)));
+        final List<Key> unreachable = rtx(tx -> reachability.findUnreachable(tx, InstantWithoutNanos.now().minus(GRACE)));
+        assertThat(markedC).isEmpty();
+        assertThat(unreachable).isEmpty();
+    }
+}
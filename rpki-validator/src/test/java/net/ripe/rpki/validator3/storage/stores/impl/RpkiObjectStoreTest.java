@@ -0,0 +1,167 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2018 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.rpki.validator3.storage.stores.impl;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import net.ripe.ipresource.IpResourceSet;
+import net.ripe.rpki.commons.crypto.ValidityPeriod;
+import net.ripe.rpki.commons.crypto.x509cert.X509ResourceCertificateBuilder;
+import net.ripe.rpki.validator3.IntegrationTest;
+import net.ripe.rpki.validator3.api.util.InstantWithoutNanos;
+import net.ripe.rpki.validator3.domain.ta.TrustAnchorsFactory;
+import net.ripe.rpki.validator3.storage.data.RpkiObject;
+import org.joda.time.DateTime;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import javax.security.auth.x500.X500Principal;
+import java.security.KeyPair;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Optional;
+
+import static net.ripe.rpki.validator3.domain.ta.TrustAnchorsFactory.KEY_PAIR_FACTORY;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(SpringRunner.class)
+@IntegrationTest
+public class RpkiObjectStoreTest extends GenericStorageTest {
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Test
+    public void should_store_content_separately_from_metadata() {
+        final RpkiObject object = newCertificate();
+        wtx0(tx -> getRpkiObjects().put(tx, object, "rsync://example.org/repo/object.cer"));
+
+        rtx0(tx -> {
+            final Optional<RpkiObject> stored = getRpkiObjects().get(tx, object.key());
+            assertThat(stored).isPresent();
+            assertThat(stored.get().getEncoded()).isEqualTo(object.getEncoded());
+            assertThat(getRpkiObjects().getEncoded(tx, object.key())).hasValue(object.getEncoded());
+            assertThat(getRpkiObjects().streamObjects(tx, RpkiObject.Type.CER)).containsExactly(object.getEncoded());
+        });
+    }
+
+    @Test
+    public void should_delete_content_with_the_object() {
+        final RpkiObject object = newCertificate();
+        wtx0(tx -> getRpkiObjects().put(tx, object));
+        wtx0(tx -> getRpkiObjects().delete(tx, object));
+
+        rtx0(tx -> {
+            assertThat(getRpkiObjects().get(tx, object.key())).isEmpty();
+            assertThat(getRpkiObjects().getEncoded(tx, object.key())).isEmpty();
+        });
+    }
+
+    @Test
+    public void should_delete_only_old_objects_not_marked_reachable() {
+        final InstantWithoutNanos longAgo = InstantWithoutNanos.now().minus(Duration.ofDays(10));
+        final RpkiObject reachable = newCertificate();
+        final RpkiObject unreachable = newCertificate();
+        final RpkiObject recent = newCertificate();
+        reachable.setCreatedAt(longAgo);
+        unreachable.setCreatedAt(longAgo);
+        wtx0(tx -> {
+            getRpkiObjects().put(tx, reachable);
+            getRpkiObjects().put(tx, unreachable);
+            getRpkiObjects().put(tx, recent);
+            getRpkiObjects().markReachable(tx, Collections.singletonList(reachable.key()));
+        });
+
+        assertThat(getRpkiObjects().deleteUnreachableObjects(InstantWithoutNanos.now().minus(Duration.ofDays(7)))).isEqualTo(1);
+
+        rtx0(tx -> {
+            assertThat(getRpkiObjects().get(tx, reachable.key())).isPresent();
+            assertThat(getRpkiObjects().get(tx, unreachable.key())).isEmpty();
+            assertThat(getRpkiObjects().get(tx, recent.key())).isPresent();
+        });
+    }
+
+    @Test
+    public void should_mark_objects_reachable_outside_of_a_write_transaction() {
+        final InstantWithoutNanos longAgo = InstantWithoutNanos.now().minus(Duration.ofDays(10));
+        final RpkiObject reachable = newCertificate();
+        final RpkiObject unreachable = newCertificate();
+        reachable.setCreatedAt(longAgo);
+        unreachable.setCreatedAt(longAgo);
+        wtx0(tx -> {
+            getRpkiObjects().put(tx, reachable);
+            getRpkiObjects().put(tx, unreachable);
+        });
+
+        getRpkiObjects().markReachable(Collections.singletonList(reachable.key()));
+
+        assertThat(getRpkiObjects().deleteUnreachableObjects(InstantWithoutNanos.now().minus(Duration.ofDays(7)))).isEqualTo(1);
+        rtx0(tx -> {
+            assertThat(getRpkiObjects().get(tx, reachable.key())).isPresent();
+            assertThat(getRpkiObjects().get(tx, unreachable.key())).isEmpty();
+        });
+    }
+
+    @Test
+    public void should_answer_lookups_of_unknown_hashes_from_the_filter() {
+        final RpkiObject stored = newCertificate();
+        final RpkiObject unknown = newCertificate();
+        wtx0(tx -> getRpkiObjects().put(tx, stored));
+
+        final double avoidedBefore = lookups("avoided");
+        final double foundBefore = lookups("found");
+        rtx0(tx -> {
+            assertThat(getRpkiObjects().findBySha256(tx, stored.getSha256())).isPresent();
+            assertThat(getRpkiObjects().findBySha256(tx, unknown.getSha256())).isEmpty();
+        });
+
+        assertThat(lookups("found") - foundBefore).isEqualTo(1.0);
+        assertThat(lookups("avoided") - avoidedBefore).isEqualTo(1.0);
+    }
+
+    private double lookups(String result) {
+        return meterRegistry.counter("rpkivalidator.storage.object.filter.lookups", "result", result).count();
+    }
+
+    static RpkiObject newCertificate() {
+        final KeyPair keyPair = KEY_PAIR_FACTORY.generate();
+        return new RpkiObject(
+            new X509ResourceCertificateBuilder()
+                .withResources(IpResourceSet.parse("10.0.0.0/8"))
+                .withIssuerDN(new X500Principal("CN=issuer"))
+                .withSubjectDN(new X500Principal("CN=subject"))
+                .withSerial(TrustAnchorsFactory.nextSerial())
+                .withPublicKey(keyPair.getPublic())
+                .withSigningKeyPair(keyPair)
+                .withValidityPeriod(new ValidityPeriod(DateTime.now(), DateTime.now().plusYears(1)))
+                .build());
+    }
+}
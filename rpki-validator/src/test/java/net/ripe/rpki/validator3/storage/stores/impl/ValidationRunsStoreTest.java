@@ -32,18 +32,34 @@ package net.ripe.rpki.validator3.storage.stores.impl;
 import lombok.extern.slf4j.Slf4j;
 import net.ripe.rpki.validator3.IntegrationTest;
 import net.ripe.rpki.validator3.TestObjects;
+import net.ripe.rpki.validator3.api.Paging;
+import net.ripe.rpki.validator3.api.SearchTerm;
+import net.ripe.rpki.validator3.api.Sorting;
+import net.ripe.rpki.validator3.api.util.InstantWithoutNanos;
 import net.ripe.rpki.validator3.storage.data.Ref;
+import net.ripe.rpki.validator3.storage.data.RpkiObject;
 import net.ripe.rpki.validator3.storage.data.TrustAnchor;
 import net.ripe.rpki.validator3.storage.data.validation.CertificateTreeValidationRun;
+import net.ripe.rpki.validator3.storage.data.validation.RsyncRepositoryValidationRun;
+import net.ripe.rpki.validator3.storage.data.validation.TrustAnchorValidationRun;
+import net.ripe.rpki.validator3.storage.data.validation.ValidationCheck;
 import net.ripe.rpki.validator3.storage.data.validation.ValidationRun;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.test.context.junit4.SpringRunner;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 @RunWith(SpringRunner.class)
@@ -140,4 +156,175 @@ public class ValidationRunsStoreTest extends GenericStorageTest {
         });
 
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testLatestPointersFollowRemovedRuns() throws Exception {
+        final TrustAnchor trustAnchor = TestObjects.newTrustAnchor();
+        final TrustAnchor otherTrustAnchor = TestObjects.newTrustAnchor();
+        wtx0(tx -> {
+            this.getTrustAnchors().add(tx, trustAnchor);
+            this.getTrustAnchors().add(tx, otherTrustAnchor);
+        });
+
+        final CertificateTreeValidationRun succeeded = wtx(tx -> {
+            CertificateTreeValidationRun vr = new CertificateTreeValidationRun(this.getTrustAnchors().makeRef(tx, trustAnchor.key()));
+            vr.setSucceeded();
+            return this.getValidationRuns().add(tx, vr);
+        });
+        Thread.sleep(5);
+        final CertificateTreeValidationRun failed = wtx(tx -> {
+            CertificateTreeValidationRun vr = new CertificateTreeValidationRun(this.getTrustAnchors().makeRef(tx, trustAnchor.key()));
+            vr.setFailed();
+            return this.getValidationRuns().add(tx, vr);
+        });
+
+        rtx0(tx -> {
+            assertEquals(Optional.of(failed), this.getValidationRuns().findLatestCompletedCaTreeValidationRun(tx, trustAnchor));
+            assertEquals(Optional.of(succeeded), this.getValidationRuns().findLatestSuccessfulCaTreeValidationRun(tx, trustAnchor));
+            assertFalse(this.getValidationRuns().findLatestCompletedCaTreeValidationRun(tx, otherTrustAnchor).isPresent());
+        });
+
+        // everything but the latest successful run is removed
+        this.getValidationRuns().removeOldValidationRuns(InstantWithoutNanos.from(Instant.now().plus(Duration.ofMinutes(1))));
+
+        rtx0(tx -> {
+            assertEquals(Optional.of(succeeded), this.getValidationRuns().findLatestCompletedCaTreeValidationRun(tx, trustAnchor));
+            assertEquals(Optional.of(succeeded), this.getValidationRuns().findLatestSuccessfulCaTreeValidationRun(tx, trustAnchor));
+        });
+    }
+
+    @Test
+    public void testOldRunsAreRemovedByCompletionOrStartTime() {
+        final InstantWithoutNanos longAgo = InstantWithoutNanos.now().minus(Duration.ofDays(2));
+        final RsyncRepositoryValidationRun oldSucceeded = new RsyncRepositoryValidationRun();
+        oldSucceeded.setSucceeded();
+        final RsyncRepositoryValidationRun oldFailed = new RsyncRepositoryValidationRun();
+        oldFailed.setFailed();
+        final RsyncRepositoryValidationRun abandoned = new RsyncRepositoryValidationRun();
+        abandoned.setCreatedAt(longAgo);
+        final RsyncRepositoryValidationRun running = new RsyncRepositoryValidationRun();
+        wtx0(tx -> Stream.of(oldSucceeded, oldFailed, abandoned, running).forEach(vr -> getValidationRuns().add(tx, vr)));
+
+        final InstantWithoutNanos cutoff = InstantWithoutNanos.now().minus(Duration.ofDays(1));
+        assertEquals(1, getValidationRuns().removeOldValidationRuns(cutoff));
+        // the completed runs are recent, only the abandoned run is removed
+        assertFalse(rtx(tx -> getValidationRuns().get(tx, RsyncRepositoryValidationRun.class, abandoned.key().asLong())).isPresent());
+
+        assertEquals(2, getValidationRuns().removeOldValidationRuns(InstantWithoutNanos.from(Instant.now().plus(Duration.ofMinutes(1)))));
+        // only the latest successful run is kept
+        rtx0(tx -> {
+            assertTrue(getValidationRuns().get(tx, RsyncRepositoryValidationRun.class, oldSucceeded.key().asLong()).isPresent());
+            assertFalse(getValidationRuns().get(tx, RsyncRepositoryValidationRun.class, oldFailed.key().asLong()).isPresent());
+            assertFalse(getValidationRuns().get(tx, RsyncRepositoryValidationRun.class, running.key().asLong()).isPresent());
+        });
+    }
+
+    @Test
+    public void testOrphanAssociationsAreRemoved() {
+        final List<RpkiObject> objects = Stream.generate(RpkiObjectStoreTest::newCertificate).limit(5).collect(Collectors.toList());
+        final RsyncRepositoryValidationRun first = wtx(tx -> getValidationRuns().add(tx, new RsyncRepositoryValidationRun()));
+        final RsyncRepositoryValidationRun second = wtx(tx -> getValidationRuns().add(tx, new RsyncRepositoryValidationRun()));
+        wtx0(tx -> {
+            objects.forEach(o -> getRpkiObjects().put(tx, o));
+            objects.subList(0, 3).forEach(o -> getValidationRuns().associate(tx, first, o));
+            objects.subList(2, 5).forEach(o -> getValidationRuns().associate(tx, second, o));
+        });
+
+        assertEquals(0, getValidationRuns().removeOrphanValidationRunAssociations());
+
+        wtx0(tx -> {
+            getRpkiObjects().delete(tx, objects.get(0));
+            getRpkiObjects().delete(tx, objects.get(2));
+            getRpkiObjects().delete(tx, objects.get(4));
+        });
+
+        // objects 0 and 2 of the first run and 2 and 4 of the second one
+        assertEquals(4, getValidationRuns().removeOrphanValidationRunAssociations());
+        assertEquals(1, (int) rtx(tx -> getValidationRuns().getObjectCount(tx, first)));
+        assertEquals(1, (int) rtx(tx -> getValidationRuns().getObjectCount(tx, second)));
+        assertEquals(0, getValidationRuns().removeOrphanValidationRunAssociations());
+    }
+
+    @Test
+    public void testValidationChecksArePagedSortedAndCounted() {
+        final TrustAnchor trustAnchor = TestObjects.newTrustAnchor();
+        wtx0(tx -> this.getTrustAnchors().add(tx, trustAnchor));
+
+        wtx0(tx -> {
+            TrustAnchorValidationRun ta = new TrustAnchorValidationRun(this.getTrustAnchors().makeRef(tx, trustAnchor.key()), "rsync://ta.cer");
+            ta.addCheck(new ValidationCheck("rsync://b", ValidationCheck.Status.WARNING, "ta.warning"));
+            ta.setSucceeded();
+            this.getValidationRuns().add(tx, ta);
+        });
+        final CertificateTreeValidationRun ct = wtx(tx -> {
+            CertificateTreeValidationRun vr = new CertificateTreeValidationRun(this.getTrustAnchors().makeRef(tx, trustAnchor.key()));
+            vr.addCheck(new ValidationCheck("rsync://c", ValidationCheck.Status.ERROR, "ct.error", "x"));
+            vr.addCheck(new ValidationCheck("rsync://a", ValidationCheck.Status.WARNING, "ct.warning"));
+            vr.addCheck(new ValidationCheck("rsync://d", ValidationCheck.Status.ERROR, "ct.error", "y"));
+            vr.setSucceeded();
+            return this.getValidationRuns().add(tx, vr);
+        });
+
+        final long taId = trustAnchor.key().asLong();
+        final Sorting byLocation = Sorting.of(Sorting.By.LOCATION, Sorting.Direction.DESC);
+        rtx0(tx -> {
+            assertEquals(4, this.getValidationRuns().countValidationChecksForValidationRun(tx, taId, null));
+            assertEquals(2, this.getValidationRuns().countValidationChecksForValidationRun(tx, taId, new SearchTerm("ct.error")));
+            assertEquals(2, this.getValidationRuns().countValidationChecks(tx, ct, ValidationCheck.Status.ERROR));
+            assertEquals(1, this.getValidationRuns().countValidationChecks(tx, ct, ValidationCheck.Status.WARNING));
+
+            assertEquals(Arrays.asList("rsync://a", "rsync://b", "rsync://c", "rsync://d"),
+                    locations(this.getValidationRuns().findValidationChecksForValidationRun(tx, taId, null, null, byLocation)));
+            assertEquals(Arrays.asList("rsync://b", "rsync://c"),
+                    locations(this.getValidationRuns().findValidationChecksForValidationRun(tx, taId, Paging.of(1L, 2L), null, byLocation)));
+            assertEquals(Arrays.asList("rsync://d", "rsync://c"),
+                    locations(this.getValidationRuns().findValidationChecksForValidationRun(tx, taId, Paging.of(0L, 2L), null,
+                            Sorting.of(Sorting.By.LOCATION, Sorting.Direction.ASC))));
+            assertEquals(Collections.singletonList("rsync://d"),
+                    locations(this.getValidationRuns().findValidationChecksForValidationRun(tx, taId, Paging.of(1L, 10L), new SearchTerm("ct.error"), byLocation)));
+
+            // the stored run keeps its checks in the checks table
+            CertificateTreeValidationRun stored = this.getValidationRuns().get(tx, CertificateTreeValidationRun.class, ct.key().asLong()).get();
+            assertTrue(stored.getValidationChecks().isEmpty());
+            assertEquals(ct.getValidationChecks(), this.getValidationRuns().findValidationChecks(tx, stored));
+        });
+
+        wtx0(tx -> this.getTrustAnchors().remove(tx, trustAnchor));
+
+        rtx0(tx -> {
+            assertEquals(0, this.getValidationRuns().countValidationChecksForValidationRun(tx, taId, null));
+            assertEquals(0, this.getValidationRuns().findValidationChecksForValidationRun(tx, taId, null, null, byLocation).count());
+        });
+    }
+
+    @Test
+    public void testValidationChecksArePagedAcrossSlices() {
+        final TrustAnchor trustAnchor = TestObjects.newTrustAnchor();
+        wtx0(tx -> this.getTrustAnchors().add(tx, trustAnchor));
+        wtx0(tx -> {
+            CertificateTreeValidationRun vr = new CertificateTreeValidationRun(this.getTrustAnchors().makeRef(tx, trustAnchor.key()));
+            // the keys sort in a different order than the locations
+            IntStream.range(0, 2 * ValidationChecksTable.SLICE_SIZE + 100).forEach(i ->
+                vr.addCheck(new ValidationCheck(String.format("rsync://%05d", i), ValidationCheck.Status.WARNING, "key." + (i * 7919) % 10007)));
+            vr.setSucceeded();
+            this.getValidationRuns().add(tx, vr);
+        });
+
+        final long taId = trustAnchor.key().asLong();
+        for (Sorting.Direction direction : Sorting.Direction.values()) {
+            final Sorting byKey = Sorting.of(Sorting.By.KEY, direction);
+            rtx0(tx -> {
+                final List<String> all = locations(this.getValidationRuns().findValidationChecksForValidationRun(tx, taId, null, null, byKey));
+                final int offset = ValidationChecksTable.SLICE_SIZE - 5;
+                assertEquals(all.subList(offset, offset + 10),
+                        locations(this.getValidationRuns().findValidationChecksForValidationRun(tx, taId, Paging.of((long) offset, 10L), null, byKey)));
+                assertEquals(all.subList(all.size() - 3, all.size()),
+                        locations(this.getValidationRuns().findValidationChecksForValidationRun(tx, taId, Paging.of(all.size() - 3L, 10L), null, byKey)));
+            });
+        }
+    }
+
+    private static List<String> locations(Stream<ValidationCheck> checks) {
+        return checks.map(ValidationCheck::getLocation).collect(Collectors.toList());
+    }
+}
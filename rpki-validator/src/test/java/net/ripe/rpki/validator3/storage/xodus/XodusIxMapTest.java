@@ -46,6 +46,7 @@ import java.util.HashSet;
 import java.util.Optional;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
@@ -107,6 +108,87 @@ public class XodusIxMapTest extends IxMapTest {
         assertEquals(ImmutableMap.of(Key.of(2L), "aBa"), xodus.readTx(tx -> ixMap.getByIndex("lower", tx, Key.of("aba"))));
     }
 
+    @Test
+    public void testReindexInBackground() throws Exception {
+        final int entries = 2 * XodusIxMap.REINDEX_CHUNK_SIZE + 17;
+        ixMap = xodus.createIxMap("testBackgroundReindex",
+                ImmutableMap.of("len", IxMapTest::stringLen),
+                CoderFactory.makeCoder(String.class));
+        wtx0(tx -> {
+            for (long i = 0; i < entries; i++) {
+                ixMap.put(tx, Key.of(i), "x" + (i % 10 == 0 ? "y" : "") + i);
+            }
+        });
+
+        // A transaction started before the rebuild never sees the new index and has to scan
+        try (XodusTx.Read before = XodusTx.read(xodus.getEnv())) {
+            final XodusIxMap<String> reopened = (XodusIxMap<String>) xodus.createIxMap("testBackgroundReindex",
+                    ImmutableMap.of(
+                            "len", IxMapTest::stringLen,
+                            "xy", s -> s.startsWith("xy") ? Key.keys(Key.of("xy")) : Key.keys(Key.of("x"))),
+                    CoderFactory.makeCoder(String.class));
+            ixMap = reopened;
+
+            assertEquals(entries / 10 + 1, ixMap.getPkByIndex("xy", before, Key.of("xy")).size());
+            assertEquals(9, ixMap.getPkByIndex("len", before, intKey(2)).size());
+            assertEquals(9, ixMap.getPkByIndexLessThan("len", before, intKey(3)).size());
+            assertEquals(ImmutableMap.of(Key.of(0L), "xy0"), ixMap.getByIdxAscendingWhere("len", before, s -> s.startsWith("xy")));
+
+            assertTrue(reopened.awaitIndexes(30, TimeUnit.SECONDS));
+            assertFalse(reopened.isReindexing());
+        }
+
+        wtx0(tx -> ixMap.put(tx, Key.of((long) entries), "xyzzy"));
+        assertEquals(entries / 10 + 2, (int) rtx(tx -> ixMap.getPkByIndex("xy", tx, Key.of("xy")).size()));
+        assertEquals(entries - entries / 10 - 1, (int) rtx(tx -> ixMap.getPkByIndex("xy", tx, Key.of("x")).size()));
+        assertEquals(ImmutableMap.of(Key.of(0L), "xy0"), rtx(tx -> ixMap.getByIdxAscendingWhere("len", tx, s -> s.startsWith("xy"))));
+    }
+
+    @Test
+    public void testInterruptedReindexStartsOverWhenReopened() throws Exception {
+        final int entries = 100;
+        ixMap = xodus.createIxMap("testInterruptedReindex",
+                ImmutableMap.of("len", IxMapTest::stringLen),
+                CoderFactory.makeCoder(String.class));
+        wtx0(tx -> {
+            for (long i = 0; i < entries; i++) {
+                ixMap.put(tx, Key.of(i), "x" + i);
+            }
+        });
+
+        final XodusIxMap<String> failing = (XodusIxMap<String>) xodus.createIxMap("testInterruptedReindex",
+                ImmutableMap.of(
+                        "len", IxMapTest::stringLen,
+                        "first", s -> {
+                            if (s.equals("x50")) {
+                                throw new IllegalStateException("index function failed");
+                            }
+                            return Key.keys(Key.of(s.substring(0, 1)));
+                        }),
+                CoderFactory.makeCoder(String.class));
+        assertFalse(failing.awaitIndexes(30, TimeUnit.SECONDS));
+        assertTrue(failing.isReindexing());
+
+        // Same index definitions, but the rebuild never finished
+        final XodusIxMap<String> reopened = (XodusIxMap<String>) xodus.createIxMap("testInterruptedReindex",
+                ImmutableMap.of(
+                        "len", IxMapTest::stringLen,
+                        "first", s -> Key.keys(Key.of(s.substring(0, 1)))),
+                CoderFactory.makeCoder(String.class));
+        ixMap = reopened;
+        assertTrue(reopened.awaitIndexes(30, TimeUnit.SECONDS));
+        assertEquals(entries, (int) rtx(tx -> ixMap.getPkByIndex("first", tx, Key.of("x")).size()));
+
+        final XodusIxMap<String> complete = (XodusIxMap<String>) xodus.createIxMap("testInterruptedReindex",
+                ImmutableMap.of(
+                        "len", IxMapTest::stringLen,
+                        "first", s -> Key.keys(Key.of(s.substring(0, 1)))),
+                CoderFactory.makeCoder(String.class));
+        ixMap = complete;
+        assertFalse(complete.isReindexing());
+        assertEquals(entries, (int) rtx(tx -> ixMap.getPkByIndex("first", tx, Key.of("x")).size()));
+    }
+
     @Override
     protected <T> T rtx(Function<Tx.Read, T> f) {
         return xodus.readTx(f);
@@ -0,0 +1,108 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2018 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.rpki.validator3.storage.xodus;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.ripe.rpki.validator3.storage.StorageLoad;
+import net.ripe.rpki.validator3.storage.TmpXodus;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class XodusMaintenanceTest {
+
+    private TmpXodus xodus;
+    private StorageLoad storageLoad;
+    private MeterRegistry registry;
+
+    @Before
+    public void setUp() throws IOException {
+        xodus = new TmpXodus();
+        storageLoad = new StorageLoad();
+        registry = new SimpleMeterRegistry();
+    }
+
+    @After
+    public void tearDown() {
+        xodus.close();
+    }
+
+    @Test
+    public void should_defer_gc_while_busy() {
+        final XodusMaintenance maintenance = new XodusMaintenance(xodus, storageLoad, registry, Duration.ofMinutes(1), Duration.ofHours(1), 100);
+
+        storageLoad.during(() -> {
+            xodus.gc();
+            maintenance.run();
+        });
+
+        assertThat(registry.counter("rpkivalidator.storage.gc.deferred").count()).isEqualTo(1.0);
+        assertThat(registry.timer("rpkivalidator.storage.gc.duration").count()).isZero();
+        // still within the quiet period after the work finished
+        maintenance.run();
+        assertThat(registry.counter("rpkivalidator.storage.gc.deferred").count()).isEqualTo(2.0);
+        assertThat(xodus.resumeGc()).isTrue();
+    }
+
+    @Test
+    public void should_catch_up_on_requested_gc_when_idle() {
+        final XodusMaintenance maintenance = new XodusMaintenance(xodus, storageLoad, registry, Duration.ZERO, Duration.ofHours(1), 0);
+
+        xodus.gc();
+        maintenance.run();
+
+        assertThat(registry.counter("rpkivalidator.storage.gc.deferred").count()).isZero();
+        assertThat(registry.timer("rpkivalidator.storage.gc.duration").count()).isEqualTo(1);
+        assertThat(xodus.resumeGc()).isFalse();
+
+        // nothing was requested and utilisation is above the threshold
+        maintenance.run();
+        assertThat(registry.timer("rpkivalidator.storage.gc.duration").count()).isEqualTo(1);
+    }
+
+    @Test
+    public void should_not_defer_gc_beyond_the_maximum() {
+        final XodusMaintenance maintenance = new XodusMaintenance(xodus, storageLoad, registry, Duration.ofMinutes(1), Duration.ZERO, 100);
+
+        storageLoad.during(() -> {
+            xodus.gc();
+            maintenance.run();
+        });
+
+        assertThat(registry.counter("rpkivalidator.storage.gc.deferred").count()).isZero();
+        assertThat(registry.timer("rpkivalidator.storage.gc.duration").count()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,199 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2018 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.rpki.validator3.util;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.sun.net.httpserver.HttpServer;
+import net.ripe.rpki.validator3.domain.metrics.HttpClientMetricsService;
+import net.ripe.rpki.validator3.rrdp.HttpRrdpClient;
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+
+public class HttpStreamingTest {
+
+    private static final int TRANSFERS = 300;
+    private static final int CLIENT_THREADS = 16;
+    private static final int CHUNKS = 10;
+    private static final byte[] CHUNK = new byte[1024];
+
+    static {
+        Arrays.fill(CHUNK, (byte) 'x');
+    }
+
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger peakActive = new AtomicInteger();
+
+    private HttpServer server;
+    private ExecutorService serverThreads;
+    private HttpClient client;
+    private String baseUri;
+
+    @Before
+    public void setUp() throws Exception {
+        serverThreads = Executors.newFixedThreadPool(TRANSFERS + 10);
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), TRANSFERS * 2);
+        server.setExecutor(serverThreads);
+        server.createContext("/slow", exchange -> {
+            peakActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+            try {
+                exchange.sendResponseHeaders(200, (long) CHUNK.length * CHUNKS);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    for (int i = 0; i < CHUNKS; i++) {
+                        out.write(CHUNK);
+                        out.flush();
+                        Thread.sleep(50);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                active.decrementAndGet();
+            }
+        });
+        server.createContext("/missing", exchange -> {
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+        });
+        server.start();
+        baseUri = "http://127.0.0.1:" + server.getAddress().getPort();
+
+        client = new HttpClient();
+        client.setExecutor(new QueuedThreadPool(CLIENT_THREADS, 4));
+        client.setMaxConnectionsPerDestination(TRANSFERS);
+        client.setMaxRequestsQueuedPerDestination(TRANSFERS);
+        client.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        client.stop();
+        server.stop(0);
+        serverThreads.shutdownNow();
+    }
+
+    @Test(timeout = 60_000)
+    public void should_run_many_slow_transfers_concurrently_on_few_threads() {
+        final List<CompletableFuture<HashCode>> downloads = new ArrayList<>();
+        for (int i = 0; i < TRANSFERS; i++) {
+            downloads.add(HttpStreaming.download(client.newRequest(baseUri + "/slow"), new HashingSink()));
+        }
+
+        final HashCode expected = expectedHash();
+        for (CompletableFuture<HashCode> download : downloads) {
+            assertThat(HttpStreaming.await(download)).isEqualTo(expected);
+        }
+
+        // A blocking reader per transfer could never have more transfers in flight than client threads.
+        assertThat(peakActive.get()).isGreaterThan(4 * CLIENT_THREADS);
+    }
+
+    @Test(timeout = 60_000)
+    public void should_fetch_many_rrdp_files_concurrently_with_a_single_worker() throws Exception {
+        final HttpRrdpClient rrdpClient = new HttpRrdpClient(client, mock(HttpClientMetricsService.class), null);
+        final ExecutorService worker = Executors.newSingleThreadExecutor(r -> new Thread(r, "rrdp-worker"));
+        try {
+            final List<CompletableFuture<HashCode>> downloads = new ArrayList<>();
+            for (int i = 0; i < TRANSFERS; i++) {
+                downloads.add(rrdpClient.processUsingTemporaryFile(baseUri + "/slow", Hashing.sha256(), (path, hash) -> {
+                    assertThat(Thread.currentThread().getName()).isEqualTo("rrdp-worker");
+                    try {
+                        assertThat(Files.size(path)).isEqualTo((long) CHUNK.length * CHUNKS);
+                    } catch (IOException e) {
+                        throw new AssertionError(e);
+                    }
+                    return hash;
+                }, worker));
+            }
+
+            final HashCode expected = expectedHash();
+            for (CompletableFuture<HashCode> download : downloads) {
+                assertThat(download.get()).isEqualTo(expected);
+            }
+            assertThat(peakActive.get()).isGreaterThan(4 * CLIENT_THREADS);
+        } finally {
+            worker.shutdownNow();
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void should_fail_with_status_exception() {
+        final CompletableFuture<HashCode> download = HttpStreaming.download(client.newRequest(baseUri + "/missing"), new HashingSink());
+
+        assertThatThrownBy(() -> HttpStreaming.await(download))
+            .isInstanceOf(HttpStreaming.HttpStatusException.class)
+            .hasFieldOrPropertyWithValue("code", 404);
+    }
+
+    private static HashCode expectedHash() {
+        final Hasher hasher = Hashing.sha256().newHasher();
+        for (int i = 0; i < CHUNKS; i++) {
+            hasher.putBytes(CHUNK);
+        }
+        return hasher.hash();
+    }
+
+    private static class HashingSink implements HttpStreaming.ContentSink<HashCode> {
+        private final Hasher hasher = Hashing.sha256().newHasher();
+
+        @Override
+        public void accept(ByteBuffer content) {
+            hasher.putBytes(content);
+        }
+
+        @Override
+        public HashCode complete(long lastModified) {
+            return hasher.hash();
+        }
+    }
+}